@@ -0,0 +1,78 @@
+package org.sparsebitset.benchmarks;
+
+import java.util.Random;
+
+/**
+ * <p>Addresses as they appear in real lists (e.g. geo databases, block lists): dense networks where the lowest byte
+ * is fully populated ({@code /24} for IPv4) plus scattered single hosts ({@code /32} for IPv4). IPv6 addresses are
+ * taken from a small pool of provider allocations, so they share the upper levels as the real ones do.</p>
+ */
+public final class AddressDistribution {
+
+    private static final int ALLOCATIONS = 64;
+
+    private static final int ALLOCATION_BYTES = 4;
+
+    private final int levels;
+
+    private final Random random;
+
+    private final byte[][] allocations;
+
+    /**
+     * Constructs a distribution
+     *
+     * @param levels Length of the addresses in bytes
+     * @param seed Seed of the random generator, the same seed gives the same addresses
+     */
+    public AddressDistribution(int levels, long seed) {
+        this.levels = levels;
+        this.random = new Random(seed);
+
+        this.allocations = new byte[ALLOCATIONS][ALLOCATION_BYTES];
+        for (byte[] allocation : allocations) {
+            random.nextBytes(allocation);
+        }
+    }
+
+    /**
+     * Generate the first address of a dense network
+     *
+     * @return Address with the lowest byte of {@code 0x00}
+     */
+    public byte[] networkFrom() {
+        byte[] address = host();
+        address[levels - 1] = 0;
+        return address;
+    }
+
+    /**
+     * Get the last address of a dense network
+     *
+     * @param from The first address of the network
+     *
+     * @return Address with the lowest byte of {@code 0xFF}
+     */
+    public byte[] networkTo(byte[] from) {
+        byte[] address = from.clone();
+        address[levels - 1] = (byte) 0xFF;
+        return address;
+    }
+
+    /**
+     * Generate a single host
+     *
+     * @return Address
+     */
+    public byte[] host() {
+        byte[] address = new byte[levels];
+        random.nextBytes(address);
+
+        if (levels > ALLOCATION_BYTES) {
+            System.arraycopy(allocations[random.nextInt(ALLOCATIONS)], 0, address, 0, ALLOCATION_BYTES);
+        }
+
+        return address;
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.sparsebitset.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers and a writer sharing the thread-safe proxy
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedBenchmark {
+
+    @Param({"INT", "LONG2"})
+    public IndexKind index;
+
+    @Param({"16", "256"})
+    public int maximumOccupancy;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = new Workload(index, SetKind.CONCURRENT, maximumOccupancy, 1024, 16384);
+    }
+
+    @Benchmark
+    @Group("proxy")
+    @GroupThreads(3)
+    public boolean get() {
+        // the cursor of the workload is not shared between threads
+        return workload.set().get(workload.point(ThreadLocalRandom.current().nextInt(Workload.QUERIES)));
+    }
+
+    @Benchmark
+    @Group("proxy")
+    @GroupThreads(1)
+    public void flip() {
+        workload.set().flip(workload.point(ThreadLocalRandom.current().nextInt(Workload.QUERIES)));
+    }
+
+}
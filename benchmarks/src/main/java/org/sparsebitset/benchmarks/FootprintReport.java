@@ -0,0 +1,83 @@
+package org.sparsebitset.benchmarks;
+
+import org.sparsebitset.SparseBitSet;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Prints the heap footprint per set bit for every index type, set implementation and occupancy. The numbers
+ * are taken from the used heap after a full GC, so run it with a fixed heap and without other load:</p>
+ *
+ * <pre>
+ *     java -Xms2g -Xmx2g -cp benchmarks/target/benchmarks.jar org.sparsebitset.benchmarks.FootprintReport
+ * </pre>
+ */
+public final class FootprintReport {
+
+    private static final int NETWORKS = 4096;
+
+    private static final int HOSTS = 65536;
+
+    private static final int[] OCCUPANCIES = {2, 16, 64, 256};
+
+    private static volatile Object sink;
+
+    private FootprintReport() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%-6s %-11s %9s %12s %14s%n", "index", "set", "occupancy", "bytes", "bytes/entry");
+
+        for (IndexKind index : IndexKind.values()) {
+            for (SetKind kind : SetKind.values()) {
+                for (int maximumOccupancy : OCCUPANCIES) {
+                    if (!kind.isOccupancyTunable() && maximumOccupancy != SparseBitUtil.LEVEL_SIZE) {
+                        continue;
+                    }
+
+                    long before = usedHeap();
+
+                    Workload workload = new Workload(index, kind, maximumOccupancy, NETWORKS, HOSTS);
+
+                    long after = usedHeap();
+
+                    // the workload keeps the queried indexes too, they are not a part of the set
+                    long bytes = after - before - queriesFootprint(index);
+
+                    System.out.printf("%-6s %-11s %9d %12d %14.2f%n", index, kind, maximumOccupancy, bytes,
+                            (double) bytes / workload.entries());
+
+                    keep(workload.set());
+                }
+            }
+        }
+    }
+
+    private static long queriesFootprint(IndexKind index) throws InterruptedException {
+        long before = usedHeap();
+
+        Workload empty = new Workload(index, SetKind.DEEP, 256, 0, 0);
+
+        long after = usedHeap();
+
+        keep(empty.set());
+
+        return after - before;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void keep(SparseBitSet<SparseBitIndex> set) {
+        sink = set;
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.sparsebitset.benchmarks;
+
+import org.sparsebitset.index.SparseBitBytesIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLong2Index;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+/**
+ * Index types under benchmark along with the kind of addresses they hold
+ */
+public enum IndexKind {
+
+    /**
+     * IPv4 addresses
+     */
+    INT(SparseBitIntIndex.FACTORY),
+
+    /**
+     * IPv6 networks of {@code /64}
+     */
+    LONG(SparseBitLongIndex.FACTORY),
+
+    /**
+     * IPv6 addresses
+     */
+    LONG2(SparseBitLong2Index.FACTORY),
+
+    /**
+     * IPv6 addresses as {@code byte} arrays
+     */
+    BYTES(SparseBitBytesIndex.factory(16));
+
+    private final SparseBitIndexFactory<? extends SparseBitIndex> factory;
+
+    IndexKind(SparseBitIndexFactory<? extends SparseBitIndex> factory) {
+        this.factory = factory;
+    }
+
+    public int levels() {
+        return factory.levels();
+    }
+
+    @SuppressWarnings("unchecked")
+    public SparseBitIndexFactory<SparseBitIndex> factory() {
+        return (SparseBitIndexFactory<SparseBitIndex>) factory;
+    }
+
+    /**
+     * Create an index of the address
+     *
+     * @param address Address bytes (the first byte is the highest), exactly {@link #levels()} of them
+     *
+     * @return Index instance
+     */
+    public SparseBitIndex index(byte[] address) {
+        return factory.create(SparseBitBytesIndex.of(address));
+    }
+
+}
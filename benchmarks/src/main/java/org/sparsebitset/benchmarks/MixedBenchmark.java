@@ -0,0 +1,82 @@
+package org.sparsebitset.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single bit and range operations of mixed sets, they don't take the maximum occupancy into account so there
+ * is no occupancy sweep
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedBenchmark {
+
+    @Param({"INT", "LONG", "LONG2", "BYTES"})
+    public IndexKind index;
+
+    @Param({"MIXED", "ADAPTIVE"})
+    public SetKind kind;
+
+    @Param({"1024"})
+    public int networks;
+
+    @Param({"16384"})
+    public int hosts;
+
+    private Workload workload;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        workload = new Workload(index, kind, SparseBitUtil.LEVEL_SIZE, networks, hosts);
+    }
+
+    @Benchmark
+    public boolean get() {
+        return workload.set().get(workload.point(workload.next()));
+    }
+
+    @Benchmark
+    public boolean set() {
+        return workload.set().set(workload.point(workload.next()));
+    }
+
+    @Benchmark
+    public boolean clear() {
+        return workload.set().clear(workload.point(workload.next()));
+    }
+
+    @Benchmark
+    public void setRange() {
+        int query = workload.next();
+        workload.set().set(workload.rangeFrom(query), workload.rangeTo(query));
+    }
+
+    @Benchmark
+    public void clearRange() {
+        int query = workload.next();
+        workload.set().clear(workload.rangeFrom(query), workload.rangeTo(query));
+    }
+
+    @Benchmark
+    public void flip() {
+        workload.set().flip(workload.point(workload.next()));
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.sparsebitset.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single bit operations, a half of the queried bits is set
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointBenchmark {
+
+    @Param({"INT", "LONG", "LONG2", "BYTES"})
+    public IndexKind index;
+
+    // mixed sets don't take the occupancy into account, they are measured by MixedBenchmark
+    @Param({"DEEP", "CONCURRENT"})
+    public SetKind kind;
+
+    @Param({"2", "16", "64", "256"})
+    public int maximumOccupancy;
+
+    @Param({"1024"})
+    public int networks;
+
+    @Param({"16384"})
+    public int hosts;
+
+    private Workload workload;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // cleared bits are restored for every iteration
+        workload = new Workload(index, kind, maximumOccupancy, networks, hosts);
+    }
+
+    @Benchmark
+    public boolean get() {
+        return workload.set().get(workload.point(workload.next()));
+    }
+
+    @Benchmark
+    public boolean set() {
+        return workload.set().set(workload.point(workload.next()));
+    }
+
+    @Benchmark
+    public boolean clear() {
+        return workload.set().clear(workload.point(workload.next()));
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.sparsebitset.benchmarks;
+
+import org.sparsebitset.ConcurrentSparseBitSetProxy;
+import org.sparsebitset.DeepSparseBitSet;
+import org.sparsebitset.MixedSparseBitSet;
+import org.sparsebitset.SparseBitSet;
+import org.sparsebitset.index.SparseBitIndex;
+
+/**
+ * Set implementations under benchmark
+ */
+public enum SetKind {
+
+    DEEP(true) {
+        @Override
+        public SparseBitSet<SparseBitIndex> create(IndexKind index, int maximumOccupancy) {
+            return new DeepSparseBitSet<>(index.factory(), maximumOccupancy);
+        }
+    },
+
+    /**
+     * Mixed set keeps its ranges in a set of the default occupancy
+     */
+    MIXED(false) {
+        @Override
+        public SparseBitSet<SparseBitIndex> create(IndexKind index, int maximumOccupancy) {
+            return new MixedSparseBitSet<>(index.factory());
+        }
+    },
+
+    /**
+     * Mixed set which moves clusters of single bits to the ranges and lone bits back
+     */
+    ADAPTIVE(false) {
+        @Override
+        public SparseBitSet<SparseBitIndex> create(IndexKind index, int maximumOccupancy) {
+            return new MixedSparseBitSet<>(index.factory(), true);
+        }
+    },
+
+    CONCURRENT(true) {
+        @Override
+        public SparseBitSet<SparseBitIndex> create(IndexKind index, int maximumOccupancy) {
+            return ConcurrentSparseBitSetProxy.proxy(new DeepSparseBitSet<>(index.factory(), maximumOccupancy));
+        }
+    };
+
+    private final boolean occupancyTunable;
+
+    SetKind(boolean occupancyTunable) {
+        this.occupancyTunable = occupancyTunable;
+    }
+
+    /**
+     * Check if the set takes the maximum occupancy into account, other sets are measured only once
+     *
+     * @return {@code true} if the maximum occupancy changes the set
+     */
+    public boolean isOccupancyTunable() {
+        return occupancyTunable;
+    }
+
+    /**
+     * Create an empty set
+     *
+     * @param index Type of index
+     * @param maximumOccupancy Maximum occupancy of the levels (ignored by the sets which are not tunable)
+     *
+     * @return Set instance
+     */
+    public abstract SparseBitSet<SparseBitIndex> create(IndexKind index, int maximumOccupancy);
+
+}
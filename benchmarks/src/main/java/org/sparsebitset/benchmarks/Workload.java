@@ -0,0 +1,108 @@
+package org.sparsebitset.benchmarks;
+
+import org.sparsebitset.SparseBitSet;
+import org.sparsebitset.index.SparseBitIndex;
+
+/**
+ * Populated set along with the indexes the benchmarks query it with
+ */
+public final class Workload {
+
+    /**
+     * Count of the queried indexes, the benchmarks cycle over them
+     */
+    public static final int QUERIES = 4096;
+
+    private static final long SEED = 20180901L;
+
+    private final SparseBitSet<SparseBitIndex> set;
+
+    private final SparseBitIndex[] points;
+
+    private final SparseBitIndex[] rangeFrom;
+
+    private final SparseBitIndex[] rangeTo;
+
+    private final long entries;
+
+    private int cursor;
+
+    /**
+     * Constructs a workload
+     *
+     * @param index Type of index
+     * @param kind Set implementation
+     * @param maximumOccupancy Maximum occupancy of the levels
+     * @param networks Count of dense networks in the set
+     * @param hosts Count of single hosts in the set
+     */
+    public Workload(IndexKind index, SetKind kind, int maximumOccupancy, int networks, int hosts) {
+        AddressDistribution distribution = new AddressDistribution(index.levels(), SEED);
+
+        this.set = kind.create(index, maximumOccupancy);
+
+        for (int i = 0; i < networks; i++) {
+            byte[] from = distribution.networkFrom();
+            set.set(index.index(from), index.index(distribution.networkTo(from)));
+        }
+
+        for (int i = 0; i < hosts; i++) {
+            set.set(index.index(distribution.host()));
+        }
+
+        this.entries = 256L * networks + hosts;
+
+        // the same seed replays the set addresses, so a half of the points hit the set
+        AddressDistribution replay = new AddressDistribution(index.levels(), SEED);
+
+        this.points = new SparseBitIndex[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            byte[] address = i % 2 == 0 && i / 2 < networks + hosts ? replay.host() : distribution.host();
+            points[i] = index.index(address);
+        }
+
+        this.rangeFrom = new SparseBitIndex[QUERIES];
+        this.rangeTo = new SparseBitIndex[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            byte[] from = distribution.networkFrom();
+            rangeFrom[i] = index.index(from);
+            rangeTo[i] = index.index(distribution.networkTo(from));
+        }
+    }
+
+    public SparseBitSet<SparseBitIndex> set() {
+        return set;
+    }
+
+    /**
+     * Get the count of set bits the set was populated with
+     *
+     * @return Count of bits
+     */
+    public long entries() {
+        return entries;
+    }
+
+    /**
+     * Advance to the next query
+     *
+     * @return Position of the query
+     */
+    public int next() {
+        cursor = (cursor + 1) & (QUERIES - 1);
+        return cursor;
+    }
+
+    public SparseBitIndex point(int query) {
+        return points[query];
+    }
+
+    public SparseBitIndex rangeFrom(int query) {
+        return rangeFrom[query];
+    }
+
+    public SparseBitIndex rangeTo(int query) {
+        return rangeTo[query];
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.level.SparseBitLevelConcurrent;
+import org.sparsebitset.level.SparseBitLevels;
+
+/**
+ * <p>Sparse hierarchical bit set which may be read and updated by many threads without locks. Unlike
+ * {@link ConcurrentSparseBitSetProxy} readers never wait for writers and writers of different bits don't wait
+ * for each other: underlying levels are installed with CAS and final levels are updated word by word with
+ * CAS.</p>
+ *
+ * <p>Every single bit operation is atomic. Range operations, algebra and iteration are atomic for every
+ * single bit but not as a whole. The set is always precise, and its levels which become empty are kept until
+ * they are cleared by a covering range or by {@link #clearAll()}, or until the set is compacted with
+ * {@link #compact()}.</p>
+ *
+ * @param <I> Index type
+ */
+public class ConcurrentSparseBitSet<I extends SparseBitIndex> extends DeepSparseBitSet<I> {
+
+    /**
+     * Constructs a set
+     *
+     * @param levels How many levels are in the index (bits = levels * 8)
+     */
+    public ConcurrentSparseBitSet(int levels) {
+        super(checkLevels(levels), null, SparseBitLevels.createConcurrentLevel(levels));
+    }
+
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     */
+    public ConcurrentSparseBitSet(SparseBitIndexFactory<I> factory) {
+        super(checkLevels(checkFactory(factory).levels()), factory,
+                SparseBitLevels.createConcurrentLevel(factory.levels()));
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param levels Number of level
+     * @param factory Factory of indexes (optional)
+     * @param base Base level
+     */
+    private ConcurrentSparseBitSet(int levels, SparseBitIndexFactory<I> factory, SparseBitLevel base) {
+        super(levels, factory, base);
+    }
+
+    /**
+     * Dismiss levels which became empty and squash levels which became full, so the memory of a set with
+     * churning bits stays bounded by its content. The caller must have exclusive access to the set during
+     * the call (for example, while writers are paused): an update made by another thread may be lost.
+     */
+    public void compact() {
+        ((SparseBitLevelConcurrent) base).compact();
+    }
+
+    @Override
+    public ConcurrentSparseBitSet<I> copy() {
+        return new ConcurrentSparseBitSet<>(levels, factory, base.copy());
+    }
+
+}
@@ -2,6 +2,7 @@ package org.sparsebitset;
 
 import org.sparsebitset.index.SparseBitIndex;
 
+import java.math.BigInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -56,6 +57,22 @@ public class ConcurrentSparseBitSetProxy<I extends SparseBitIndex> implements Sp
         return new ConcurrentSparseBitSetProxy<>(delegate);
     }
 
+    /**
+     * Constructs a thread-safe proxy which reports its operations and waits for its lock to a listener
+     *
+     * @param delegate Delegate instance
+     * @param listener Listener, e.g. {@link SparseBitSetMetrics}
+     * @param <I> Type of index
+     *
+     * @return Instrumented thread-safe proxy instance
+     */
+    public static <I extends SparseBitIndex> SparseBitSet<I> proxy(SparseBitSet<I> delegate,
+                                                                    SparseBitSetListener listener) {
+        ReadWriteLock lock = new InstrumentedReadWriteLock(new ReentrantReadWriteLock(), listener);
+
+        return new InstrumentedSparseBitSetProxy<>(new ConcurrentSparseBitSetProxy<>(delegate, lock), listener);
+    }
+
     @Override
     public SparseBitSet<I> copy() {
         return ConcurrentSparseBitSetProxy.proxy(delegate.copy());
@@ -81,6 +98,16 @@ public class ConcurrentSparseBitSetProxy<I extends SparseBitIndex> implements Sp
         }
     }
 
+    @Override
+    public BigInteger cardinality() {
+        lock.readLock().lock();
+        try {
+            return delegate.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public void clearAll() {
         lock.writeLock().lock();
@@ -161,6 +188,37 @@ public class ConcurrentSparseBitSetProxy<I extends SparseBitIndex> implements Sp
         }
     }
 
+    /**
+     * Get bits of a batch of indexes under a single lock
+     *
+     * @param indexes Indexes of the bits
+     * @param result Values of the bits in the same order
+     */
+    @Override
+    public void getAll(I[] indexes, boolean[] result) {
+        lock.readLock().lock();
+        try {
+            delegate.getAll(indexes, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set bits of a batch of indexes under a single lock
+     *
+     * @param indexes Indexes of the bits
+     */
+    @Override
+    public void setAll(I[] indexes) {
+        lock.writeLock().lock();
+        try {
+            delegate.setAll(indexes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public void set(I fromIndexInclusive, I toIndexInclusive) {
         lock.writeLock().lock();
@@ -190,4 +248,111 @@ public class ConcurrentSparseBitSetProxy<I extends SparseBitIndex> implements Sp
             lock.writeLock().unlock();
         }
     }
+
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        lock.readLock().lock();
+        try {
+            return delegate.nextSetBit(fromIndexInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        lock.readLock().lock();
+        try {
+            return delegate.nextClearBit(fromIndexInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        lock.readLock().lock();
+        try {
+            return delegate.intersectsRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        lock.readLock().lock();
+        try {
+            return delegate.coversRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        lock.readLock().lock();
+        try {
+            return delegate.countInRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        lock.readLock().lock();
+        try {
+            return new ConcurrentRangeCursor<>(delegate.rangeCursor(), lock);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        lock.readLock().lock();
+        try {
+            delegate.forEachRange(consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cursor makes each step under the read lock, the current range is kept by the cursor itself
+     *
+     * @param <I> Type of index
+     */
+    private static final class ConcurrentRangeCursor<I extends SparseBitIndex> implements SparseBitRangeCursor<I> {
+
+        private final SparseBitRangeCursor<I> delegate;
+
+        private final ReadWriteLock lock;
+
+        private ConcurrentRangeCursor(SparseBitRangeCursor<I> delegate, ReadWriteLock lock) {
+            this.delegate = delegate;
+            this.lock = lock;
+        }
+
+        @Override
+        public boolean next() {
+            lock.readLock().lock();
+            try {
+                return delegate.next();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public I from() {
+            return delegate.from();
+        }
+
+        @Override
+        public I to() {
+            return delegate.to();
+        }
+    }
 }
@@ -1,10 +1,28 @@
 package org.sparsebitset;
 
+import org.sparsebitset.index.SparseBitArrayIndex;
 import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
 import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.level.SparseBitLevelListener;
+import org.sparsebitset.level.SparseBitLevelStats;
 import org.sparsebitset.level.SparseBitLevels;
 import org.sparsebitset.util.SparseBitUtil;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * <p>Default implementation of sparse hierarchical bit set</p>
  *
@@ -14,13 +32,33 @@ import org.sparsebitset.util.SparseBitUtil;
  * 256−132=124 false positives. If {@code maximumOccupancy=256} (by default) the instance will be precise and
  * no any false positive will be generated.</p>
  *
+ * <p>Methods which return indexes to the caller (like {@link #nextSetBit(SparseBitIndex)}) need
+ * an {@link SparseBitIndexFactory} so the set must be constructed with one.</p>
+ *
  * @param <I> Index type
  */
 public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<I>, Cloneable {
 
-    private final int levels;
+    /**
+     * Levels have 128-bit cardinality counters so the exact cardinality is available up to this depth
+     */
+    private static final int MAXIMUM_CARDINALITY_LEVELS = 16;
+
+    /**
+     * Magic number of the binary format
+     */
+    private static final int FORMAT_MAGIC = 0x53425354;
+
+    /**
+     * Version of the binary format
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    final int levels;
+
+    final SparseBitIndexFactory<I> factory;
 
-    private final SparseBitLevel base;
+    final SparseBitLevel base;
 
     /**
      * Constructs a default set
@@ -30,16 +68,58 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
      */
     @SuppressWarnings("WeakerAccess")
     public DeepSparseBitSet(int levels, int maximumOccupancy) {
-        if (levels <= 0) {
-            throw new IllegalArgumentException("Need positive level count: " + levels);
-        }
+        this(levels, maximumOccupancy, null, null);
+    }
 
-        if (maximumOccupancy < 2 || maximumOccupancy > SparseBitUtil.LEVEL_SIZE) {
-            throw new IllegalArgumentException("Maximum occupancy level is invalid: " + maximumOccupancy);
-        }
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public DeepSparseBitSet(SparseBitIndexFactory<I> factory, int maximumOccupancy) {
+        this(checkFactory(factory).levels(), maximumOccupancy, factory, null);
+    }
+
+    /**
+     * Constructs a precise set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     */
+    @SuppressWarnings("WeakerAccess")
+    public DeepSparseBitSet(SparseBitIndexFactory<I> factory) {
+        this(factory, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Constructs a set which reports structural changes of its levels (and of the levels of its copies)
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     * @param listener Listener of structural changes, e.g. {@link SparseBitSetMetrics}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public DeepSparseBitSet(SparseBitIndexFactory<I> factory, int maximumOccupancy, SparseBitLevelListener listener) {
+        this(checkFactory(factory).levels(), maximumOccupancy, factory, checkListener(listener));
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param levels How many levels are in the index (bits = levels * 8)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     * @param factory Factory of indexes (optional)
+     * @param listener Listener of structural changes (optional)
+     */
+    private DeepSparseBitSet(int levels, int maximumOccupancy, SparseBitIndexFactory<I> factory,
+                             SparseBitLevelListener listener) {
+        checkLevels(levels);
+        checkOccupancy(maximumOccupancy);
 
         this.levels = levels;
-        this.base = SparseBitLevels.createLevel(maximumOccupancy, levels);
+        this.factory = factory;
+        this.base = SparseBitLevels.createLevel(maximumOccupancy, levels, listener);
     }
 
     /**
@@ -53,13 +133,15 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
     }
 
     /**
-     * Private internal constructor
+     * Internal constructor
      *
      * @param levels Number of level
+     * @param factory Factory of indexes (optional)
      * @param base Base level
      */
-    private DeepSparseBitSet(int levels, SparseBitLevel base) {
+    DeepSparseBitSet(int levels, SparseBitIndexFactory<I> factory, SparseBitLevel base) {
         this.levels = levels;
+        this.factory = factory;
         this.base = base;
     }
 
@@ -99,14 +181,127 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
         return new DeepSparseBitSet<>(bits / 8);
     }
 
+    /**
+     * Constructs a default set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     *
+     * @return Sparse set
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <I extends SparseBitIndex> SparseBitSet<I> createWithFactory(SparseBitIndexFactory<I> factory) {
+        return new DeepSparseBitSet<>(factory);
+    }
+
+    /**
+     * Make a union of two sets
+     *
+     * @param set1 The first set
+     * @param set2 The second set
+     *
+     * @return New set (a copy of the first set with the result)
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> or(DeepSparseBitSet<I> set1, DeepSparseBitSet<I> set2) {
+        DeepSparseBitSet<I> result = set1.copy();
+        result.or(set2);
+        return result;
+    }
+
+    /**
+     * Make an intersection of two sets
+     *
+     * @param set1 The first set
+     * @param set2 The second set
+     *
+     * @return New set (a copy of the first set with the result)
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> and(DeepSparseBitSet<I> set1, DeepSparseBitSet<I> set2) {
+        DeepSparseBitSet<I> result = set1.copy();
+        result.and(set2);
+        return result;
+    }
+
+    /**
+     * Make a difference of two sets
+     *
+     * @param set1 The first set
+     * @param set2 The second set
+     *
+     * @return New set (a copy of the first set with the result)
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> andNot(DeepSparseBitSet<I> set1, DeepSparseBitSet<I> set2) {
+        DeepSparseBitSet<I> result = set1.copy();
+        result.andNot(set2);
+        return result;
+    }
+
+    /**
+     * Make a symmetric difference of two sets
+     *
+     * @param set1 The first set
+     * @param set2 The second set
+     *
+     * @return New set (a copy of the first set with the result)
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> xor(DeepSparseBitSet<I> set1, DeepSparseBitSet<I> set2) {
+        DeepSparseBitSet<I> result = set1.copy();
+        result.xor(set2);
+        return result;
+    }
+
+    /**
+     * Copy the set, heap levels are shared by both sets and every set copies only the levels on the path of
+     * its own modification
+     *
+     * @return Independent copy of the set
+     */
     @Override
-    public SparseBitSet<I> copy() {
-        return new DeepSparseBitSet<>(levels, base.copy());
+    public DeepSparseBitSet<I> copy() {
+        return new DeepSparseBitSet<>(levels, factory, base.copy());
+    }
+
+    /**
+     * Take a read-only point-in-time view of the set. Heap levels are shared with the view and are copied by
+     * later modifications of the set, so a snapshot is published in constant time.
+     *
+     * @return Read-only set
+     */
+    public SparseBitSet<I> snapshot() {
+        return ImmutableSparseBitSetProxy.proxy(copy());
+    }
+
+    /**
+     * Collect structural statistics of the set: counts of REAL, FULL and NULL levels at every level number,
+     * the fill histogram of final levels and the estimated heap footprint
+     *
+     * @return Statistics
+     */
+    public SparseBitLevelStats stats() {
+        return stats(true);
+    }
+
+    /**
+     * Collect structural statistics of the set
+     *
+     * <p>Both modes walk the levels, so neither is constant time. The shallow walk ({@code detailed} is
+     * {@code false}) still visits every intermediate level but counts final levels by the counters of their
+     * parents instead of visiting them. A level has up to 256 final levels below it, so the shallow walk
+     * touches a small fraction of the objects of a large set.</p>
+     *
+     * @param detailed Visit every final level to build the fill histogram, otherwise make a shallow walk
+     *                 which skips final levels
+     *
+     * @return Statistics
+     */
+    public SparseBitLevelStats stats(boolean detailed) {
+        SparseBitLevelStats stats = new SparseBitLevelStats(levels, detailed);
+        base.collectStats(stats);
+        return stats;
     }
 
     @Override
     @SuppressWarnings("MethodDoesntCallSuperMethod")
-    public SparseBitSet<I> clone() {
+    public DeepSparseBitSet<I> clone() {
         return copy();
     }
 
@@ -120,6 +315,23 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
         return base.isFull();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Cardinality is maintained incrementally by levels, so the call doesn't walk the tree</p>
+     *
+     * @throws UnsupportedOperationException if the set has more than {@code 16} levels (128 bits)
+     */
+    @Override
+    public BigInteger cardinality() {
+        if (levels > MAXIMUM_CARDINALITY_LEVELS) {
+            throw new UnsupportedOperationException("Cardinality is supported up to "
+                    + MAXIMUM_CARDINALITY_LEVELS + " levels");
+        }
+
+        return base.cardinality();
+    }
+
     @Override
     public void clearAll() {
         base.clearAll();
@@ -140,6 +352,18 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
         base.validate();
     }
 
+    /**
+     * Validate the internal structure of the set, underlying levels of the top levels are validated in parallel
+     * tasks
+     *
+     * @param pool Pool which runs the tasks
+     */
+    public void validate(ForkJoinPool pool) {
+        checkPool(pool);
+
+        base.validate(pool);
+    }
+
     @Override
     public boolean get(I index) {
         checkIndex(index);
@@ -168,6 +392,141 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
         base.flip(index);
     }
 
+    /**
+     * Get bits of a batch of indexes. Indexes of up to 8 levels are sorted, so the levels shared by neighbouring
+     * indexes are walked once for all of them.
+     *
+     * @param indexes Indexes of the bits
+     * @param result Values of the bits in the same order, the array must be at least as long as the indexes
+     */
+    @Override
+    public void getAll(I[] indexes, boolean[] result) {
+        if (levels > Long.BYTES) {
+            SparseBitSet.super.getAll(indexes, result);
+            return;
+        }
+
+        if (result == null) {
+            throw new IllegalArgumentException("Result can't be null");
+        }
+
+        long[] keys = toKeys(indexes);
+
+        if (result.length < keys.length) {
+            throw new IllegalArgumentException("Result is shorter than indexes: " + result.length);
+        }
+
+        long[] bitmap = new long[bitmapSize(keys.length)];
+        getKeys(keys, bitmap);
+
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = (bitmap[i >>> 6] & (1L << i)) != 0;
+        }
+    }
+
+    /**
+     * Set bits of a batch of indexes. Indexes of up to 8 levels are sorted, so the levels shared by neighbouring
+     * indexes are walked once for all of them.
+     *
+     * @param indexes Indexes of the bits
+     */
+    @Override
+    public void setAll(I[] indexes) {
+        if (levels > Long.BYTES) {
+            SparseBitSet.super.setAll(indexes);
+            return;
+        }
+
+        setKeys(toKeys(indexes));
+    }
+
+    /**
+     * Get bits of a batch of primitive indexes
+     *
+     * @param keys Primitive indexes (unsigned)
+     * @param bitmap Bitmap where the bit {@code i} is the value of the bit {@code keys[i]}
+     */
+    final void getKeys(long[] keys, long[] bitmap) {
+        if (bitmap.length < bitmapSize(keys.length)) {
+            throw new IllegalArgumentException("Bitmap is shorter than indexes: " + bitmap.length);
+        }
+
+        // the sign bit is flipped so the signed sort gives the unsigned order
+        long[] flipped = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            flipped[i] = keys[i] ^ Long.MIN_VALUE;
+        }
+
+        Arrays.sort(flipped);
+
+        long[] sorted = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = flipped[i] ^ Long.MIN_VALUE;
+        }
+
+        long[] found = new long[bitmapSize(keys.length)];
+        base.get(sorted, 0, sorted.length, found);
+
+        Arrays.fill(bitmap, 0, found.length, 0L);
+
+        for (int i = 0; i < keys.length; i++) {
+            int position = Arrays.binarySearch(flipped, keys[i] ^ Long.MIN_VALUE);
+
+            if ((found[position >>> 6] & (1L << position)) != 0) {
+                bitmap[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Set bits of a batch of primitive indexes
+     *
+     * @param keys Primitive indexes (unsigned)
+     */
+    final void setKeys(long[] keys) {
+        long[] sorted = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = keys[i] ^ Long.MIN_VALUE;
+        }
+
+        Arrays.sort(sorted);
+
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] ^= Long.MIN_VALUE;
+        }
+
+        base.set(sorted, 0, sorted.length);
+    }
+
+    static int bitmapSize(int count) {
+        return (count + Long.SIZE - 1) >>> 6;
+    }
+
+    private long[] toKeys(I[] indexes) {
+        if (indexes == null) {
+            throw new IllegalArgumentException("Indexes can't be null");
+        }
+
+        long[] keys = new long[indexes.length];
+
+        for (int i = 0; i < indexes.length; i++) {
+            I index = indexes[i];
+            checkIndex(index);
+
+            long key = 0;
+            for (int level = 0; level < levels; level++) {
+                int segment = index.segment(level);
+                SparseBitUtil.checkSegment(segment);
+
+                key |= (long) segment << (level << 3);
+            }
+
+            keys[i] = key;
+        }
+
+        return keys;
+    }
+
     @Override
     public void set(I fromIndexInclusive, I toIndexInclusive) {
         checkIndex(fromIndexInclusive);
@@ -192,13 +551,837 @@ public class DeepSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<
         base.flip(fromIndexInclusive, toIndexInclusive);
     }
 
-    private void checkIndex(I index) {
-        if (index == null) {
-            throw new IllegalArgumentException("Index can't be null");
+    /**
+     * Set all bits of a prefix (a CIDR block): the bits which have the same upper {@code prefixLength} bits as the
+     * given index. A prefix of whole segments becomes a single FULL level and any other prefix becomes a run of
+     * up to 128 FULL levels, so the levels below the prefix are never walked.
+     *
+     * @param prefix Any index of the prefix (the lower bits are ignored)
+     * @param prefixLength Count of the upper bits of the prefix, from {@code 0} to {@code levels * 8}
+     */
+    public void setPrefix(I prefix, int prefixLength) {
+        checkIndex(prefix);
+        checkPrefixLength(prefixLength);
+
+        base.set(new PrefixEdge(prefix, levels, prefixLength, false),
+                new PrefixEdge(prefix, levels, prefixLength, true));
+    }
+
+    /**
+     * Clear all bits of a prefix (a CIDR block)
+     *
+     * @param prefix Any index of the prefix (the lower bits are ignored)
+     * @param prefixLength Count of the upper bits of the prefix, from {@code 0} to {@code levels * 8}
+     *
+     * @see #setPrefix(SparseBitIndex, int)
+     */
+    public void clearPrefix(I prefix, int prefixLength) {
+        checkIndex(prefix);
+        checkPrefixLength(prefixLength);
+
+        base.clear(new PrefixEdge(prefix, levels, prefixLength, false),
+                new PrefixEdge(prefix, levels, prefixLength, true));
+    }
+
+    /**
+     * Check whether all bits of a prefix (a CIDR block) are set. The search of the first clear bit stops at the
+     * first level which is not FULL.
+     *
+     * @param prefix Any index of the prefix (the lower bits are ignored)
+     * @param prefixLength Count of the upper bits of the prefix, from {@code 0} to {@code levels * 8}
+     *
+     * @return {@code true} if every bit of the prefix is set
+     */
+    public boolean containsPrefix(I prefix, int prefixLength) {
+        checkIndex(prefix);
+        checkPrefixLength(prefixLength);
+
+        SparseBitIndex last = new PrefixEdge(prefix, levels, prefixLength, true);
+
+        int[] position = SparseBitArrayIndex.of(new PrefixEdge(prefix, levels, prefixLength, false), levels)
+                .segments();
+
+        if (!base.nextClearBit(position)) {
+            return true;
         }
 
-        if (index.levels() < this.levels) {
-            throw new IllegalArgumentException("Index has less levels than the set " + index.levels());
+        // the first clear bit must be beyond the last bit of the prefix
+        return compare(last, position) < 0;
+    }
+
+    /**
+     * Union with another set in place. Levels are walked in lockstep and {@code FULL} levels of the other set
+     * are taken without descending into them. Levels of another kind (off-heap, concurrent, striped) are walked
+     * range by range instead.
+     *
+     * @param that Another set with the same levels
+     */
+    public void or(DeepSparseBitSet<I> that) {
+        checkCompatible(that);
+
+        base.or(that.base);
+    }
+
+    /**
+     * Union with another set in place, underlying levels of the top levels are combined in parallel tasks.
+     * The result is exactly the same as the one of the sequential operation.
+     *
+     * @param that Another set with the same levels
+     * @param pool Pool which runs the tasks
+     */
+    public void or(DeepSparseBitSet<I> that, ForkJoinPool pool) {
+        checkCompatible(that);
+        checkPool(pool);
+
+        base.or(that.base, pool);
+    }
+
+    /**
+     * Intersection with another set in place. Levels are walked in lockstep and {@code NULL} levels of the
+     * other set are taken without descending into them. Levels of another kind (off-heap, concurrent, striped)
+     * are walked range by range instead.
+     *
+     * @param that Another set with the same levels
+     */
+    public void and(DeepSparseBitSet<I> that) {
+        checkCompatible(that);
+
+        base.and(that.base);
+    }
+
+    /**
+     * Intersection with another set in place, underlying levels of the top levels are combined in parallel tasks.
+     * The result is exactly the same as the one of the sequential operation.
+     *
+     * @param that Another set with the same levels
+     * @param pool Pool which runs the tasks
+     */
+    public void and(DeepSparseBitSet<I> that, ForkJoinPool pool) {
+        checkCompatible(that);
+        checkPool(pool);
+
+        base.and(that.base, pool);
+    }
+
+    /**
+     * Difference with another set in place (clears all bits which are set in another set). Levels of another
+     * kind (off-heap, concurrent, striped) are walked range by range.
+     *
+     * @param that Another set with the same levels
+     */
+    public void andNot(DeepSparseBitSet<I> that) {
+        checkCompatible(that);
+
+        base.andNot(that.base);
+    }
+
+    /**
+     * Difference with another set in place, underlying levels of the top levels are combined in parallel tasks.
+     * The result is exactly the same as the one of the sequential operation.
+     *
+     * @param that Another set with the same levels
+     * @param pool Pool which runs the tasks
+     */
+    public void andNot(DeepSparseBitSet<I> that, ForkJoinPool pool) {
+        checkCompatible(that);
+        checkPool(pool);
+
+        base.andNot(that.base, pool);
+    }
+
+    /**
+     * Symmetric difference with another set in place (flips all bits which are set in another set). Levels of
+     * another kind (off-heap, concurrent, striped) are walked range by range.
+     *
+     * @param that Another set with the same levels
+     */
+    public void xor(DeepSparseBitSet<I> that) {
+        checkCompatible(that);
+
+        base.xor(that.base);
+    }
+
+    /**
+     * Symmetric difference with another set in place, underlying levels of the top levels are combined in parallel tasks.
+     * The result is exactly the same as the one of the sequential operation.
+     *
+     * @param that Another set with the same levels
+     * @param pool Pool which runs the tasks
+     */
+    public void xor(DeepSparseBitSet<I> that, ForkJoinPool pool) {
+        checkCompatible(that);
+        checkPool(pool);
+
+        base.xor(that.base, pool);
+    }
+
+    /**
+     * Union with a memory-mapped set in place, the mapped levels are walked range by range
+     *
+     * @param that Mapped set with the same levels
+     */
+    public void or(MappedSparseBitSet<I> that) {
+        or(checkMapped(that).delegate());
+    }
+
+    /**
+     * Intersection with a memory-mapped set in place, the mapped levels are walked range by range
+     *
+     * @param that Mapped set with the same levels
+     */
+    public void and(MappedSparseBitSet<I> that) {
+        and(checkMapped(that).delegate());
+    }
+
+    /**
+     * Difference with a memory-mapped set in place, the mapped levels are walked range by range
+     *
+     * @param that Mapped set with the same levels
+     */
+    public void andNot(MappedSparseBitSet<I> that) {
+        andNot(checkMapped(that).delegate());
+    }
+
+    /**
+     * Symmetric difference with a memory-mapped set in place, the mapped levels are walked range by range
+     *
+     * @param that Mapped set with the same levels
+     */
+    public void xor(MappedSparseBitSet<I> that) {
+        xor(checkMapped(that).delegate());
+    }
+
+    /**
+     * Write the set in the binary format. The format starts with a header (magic number, version, levels and
+     * maximum occupancy) which is followed by the levels in pre-order. Every intermediate level is a map of
+     * 256 types of underlying levels (2 bits each: {@code NULL}, {@code FULL} or {@code REAL}) followed by
+     * {@code REAL} underlying levels, and every final level is four 64-bit words.
+     *
+     * <p>The stream is not closed</p>
+     *
+     * @param output Output stream
+     *
+     * @throws IOException on I/O error
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+
+        data.writeInt(FORMAT_MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeInt(levels);
+        data.writeInt(base.getMaximumOccupancy());
+
+        base.write(data);
+
+        data.flush();
+    }
+
+    /**
+     * Write the set in the binary format (see {@link #writeTo(OutputStream)})
+     *
+     * <p>The channel is not closed</p>
+     *
+     * @param channel Output channel
+     *
+     * @throws IOException on I/O error
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Read a set written by {@link #writeTo(OutputStream)}. The input is buffered internally, so the bytes which
+     * follow the set in the stream may be consumed.
+     *
+     * <p>The stream is not closed</p>
+     *
+     * @param input Input stream
+     *
+     * @return Sparse set
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> readFrom(InputStream input) throws IOException {
+        return readFrom(input, null);
+    }
+
+    /**
+     * Read a set written by {@link #writeTo(OutputStream)} which is able to return indexes
+     *
+     * <p>The stream is not closed</p>
+     *
+     * @param input Input stream
+     * @param factory Factory of indexes (optional), must have the same number of levels as the written set
+     *
+     * @return Sparse set
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> readFrom(InputStream input,
+                                                                          SparseBitIndexFactory<I> factory) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+
+        if (data.readInt() != FORMAT_MAGIC) {
+            throw new IOException("Unknown binary format");
+        }
+
+        int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+
+        int levels = data.readInt();
+        if (levels <= 0) {
+            throw new IOException("Invalid level count: " + levels);
+        }
+
+        if (factory != null && factory.levels() != levels) {
+            throw new IOException("Set has " + levels + " levels but the factory has " + factory.levels());
+        }
+
+        int maximumOccupancy = data.readInt();
+        if (maximumOccupancy < 2 || maximumOccupancy > SparseBitUtil.LEVEL_SIZE) {
+            throw new IOException("Invalid maximum occupancy: " + maximumOccupancy);
+        }
+
+        SparseBitLevel base = SparseBitLevels.readLevel(data, maximumOccupancy, levels);
+
+        return new DeepSparseBitSet<>(levels, factory, base);
+    }
+
+    /**
+     * Read a set written by {@link #writeTo(WritableByteChannel)}
+     *
+     * <p>The channel is not closed</p>
+     *
+     * @param channel Input channel
+     *
+     * @return Sparse set
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> readFrom(ReadableByteChannel channel) throws IOException {
+        return readFrom(Channels.newInputStream(channel), null);
+    }
+
+    /**
+     * Read a set written by {@link #writeTo(WritableByteChannel)} which is able to return indexes
+     *
+     * <p>The channel is not closed</p>
+     *
+     * @param channel Input channel
+     * @param factory Factory of indexes (optional), must have the same number of levels as the written set
+     *
+     * @return Sparse set
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> readFrom(ReadableByteChannel channel,
+                                                                          SparseBitIndexFactory<I> factory) throws IOException {
+        return readFrom(Channels.newInputStream(channel), factory);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if the set has no factory of indexes, see
+     *                                       {@link #nextSetBit(int[])} for such a set
+     */
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        checkIndex(fromIndexInclusive);
+        checkFactory();
+
+        SparseBitArrayIndex position = SparseBitArrayIndex.of(fromIndexInclusive, levels);
+
+        if (base.nextSetBit(position.segments())) {
+            return factory.create(position);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if the set has no factory of indexes, see
+     *                                       {@link #nextClearBit(int[])} for such a set
+     */
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        checkIndex(fromIndexInclusive);
+        checkFactory();
+
+        SparseBitArrayIndex position = SparseBitArrayIndex.of(fromIndexInclusive, levels);
+
+        if (base.nextClearBit(position.segments())) {
+            return factory.create(position);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The search of the first set bit stops at the first level which is not NULL</p>
+     */
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        int[] from = rangePosition(fromIndexInclusive);
+        int[] to = rangePosition(toIndexInclusive);
+
+        checkRange(from, to);
+
+        return base.nextSetBit(from) && SparseBitUtil.comparePositions(from, to) <= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The search of the first clear bit stops at the first level which is not FULL</p>
+     */
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        int[] from = rangePosition(fromIndexInclusive);
+        int[] to = rangePosition(toIndexInclusive);
+
+        checkRange(from, to);
+
+        return !base.nextClearBit(from) || SparseBitUtil.comparePositions(from, to) > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Levels are descended only along the edges of the range, the levels between the edges are counted
+     * by their counters</p>
+     *
+     * @throws UnsupportedOperationException if the set has more than {@code 16} levels (128 bits)
+     */
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        if (levels > MAXIMUM_CARDINALITY_LEVELS) {
+            throw new UnsupportedOperationException("Cardinality is supported up to "
+                    + MAXIMUM_CARDINALITY_LEVELS + " levels");
+        }
+
+        int[] from = rangePosition(fromIndexInclusive);
+        int[] to = rangePosition(toIndexInclusive);
+
+        checkRange(from, to);
+
+        return base.cardinality(from, to);
+    }
+
+    /**
+     * Find the maximal range of set bits which contains the bit (for example the blocked network which matched an
+     * address). The search goes both ways from the bit and stops at the first level on each side which is not
+     * FULL, so a bit of a FULL level is answered by the boundaries of that level and its FULL neighbours.
+     *
+     * @param index Index of the bit
+     * @param consumer Receives the first and the last bit of the range if the bit is set
+     *
+     * @return {@code true} if the bit is set
+     */
+    public boolean findEnclosingRange(I index, SparseBitRangeConsumer<I> consumer) {
+        checkIndex(index);
+        checkFactory();
+
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer can't be null");
+        }
+
+        SparseBitArrayIndex from = SparseBitArrayIndex.of(index, levels);
+        SparseBitArrayIndex to = SparseBitArrayIndex.of(index, levels);
+
+        if (!findRun(from.segments(), to.segments())) {
+            return false;
+        }
+
+        consumer.accept(factory.create(from), factory.create(to));
+
+        return true;
+    }
+
+    /**
+     * Find the shortest prefix (the largest CIDR block) which contains the bit and has all bits set
+     *
+     * @param index Index of the bit
+     * @param maxLength The longest prefix which is acceptable, from {@code 0} to {@code levels * 8}
+     *
+     * @return Length of the prefix or {@code -1} if the prefix of {@code maxLength} bits has clear bits
+     */
+    public int findCoveringPrefix(I index, int maxLength) {
+        checkIndex(index);
+        checkPrefixLength(maxLength);
+
+        int[] from = SparseBitArrayIndex.of(index, levels).segments();
+        int[] to = from.clone();
+
+        if (!findRun(from, to)) {
+            return -1;
+        }
+
+        // blocks of longer prefixes are nested, so the first one inside the range is the largest one
+        for (int length = 0; length <= maxLength; length++) {
+            if (compare(new PrefixEdge(index, levels, length, false), from) >= 0
+                    && compare(new PrefixEdge(index, levels, length, true), to) <= 0) {
+                return length;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Extend a position of a bit to the maximal range of set bits
+     *
+     * @param from Position of the bit, replaced with the first bit of the range
+     * @param to Position of the bit, replaced with the last bit of the range
+     *
+     * @return {@code false} if the bit is clear (positions are left in undefined state)
+     */
+    private boolean findRun(int[] from, int[] to) {
+        if (base.nextClearBit(to)) {
+            if (Arrays.equals(from, to)) {
+                return false;
+            }
+
+            SparseBitUtil.decrementPosition(to);
+        } else {
+            SparseBitUtil.fillPosition(to, levels, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        if (base.previousClearBit(from)) {
+            SparseBitUtil.incrementPosition(from);
+        } else {
+            SparseBitUtil.fillPosition(from, levels, 0);
+        }
+
+        return true;
+    }
+
+    private int compare(SparseBitIndex index, int[] position) {
+        for (int level = levels - 1; level >= 0; level--) {
+            int segment = index.segment(level);
+
+            if (segment != position[level]) {
+                return (segment < position[level]) ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Find the nearest set bit, the set doesn't need a factory of indexes
+     *
+     * @param position Position of {@code levels} segments where the element {@code 0} is the segment of the
+     *                 level {@code 0}. It is replaced with the found position.
+     *
+     * @return {@code false} if there is no set bit (then the position is left in undefined state)
+     */
+    public boolean nextSetBit(int[] position) {
+        checkPosition(position);
+
+        return base.nextSetBit(position);
+    }
+
+    /**
+     * Find the nearest clear bit, the set doesn't need a factory of indexes
+     *
+     * @param position Position of {@code levels} segments where the element {@code 0} is the segment of the
+     *                 level {@code 0}. It is replaced with the found position.
+     *
+     * @return {@code false} if there is no clear bit (then the position is left in undefined state)
+     */
+    public boolean nextClearBit(int[] position) {
+        checkPosition(position);
+
+        return base.nextClearBit(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if the set has no factory of indexes, see
+     *                                       {@link #forEachPositionRange(SparseBitPositionConsumer)} for such a set
+     */
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        checkFactory();
+
+        return new RangeCursor<>(levels, factory, base);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if the set has no factory of indexes, see
+     *                                       {@link #forEachPositionRange(SparseBitPositionConsumer)} for such a set
+     */
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer can't be null");
+        }
+
+        SparseBitRangeCursor<I> cursor = rangeCursor();
+        while (cursor.next()) {
+            consumer.accept(cursor.from(), cursor.to());
+        }
+    }
+
+    /**
+     * Process all maximal ranges of set bits in ascending order, the set doesn't need a factory of indexes
+     *
+     * @param consumer Callback for ranges
+     */
+    public void forEachPositionRange(SparseBitPositionConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer can't be null");
+        }
+
+        RangeCursor<I> cursor = new RangeCursor<>(levels, null, base);
+        while (cursor.next()) {
+            consumer.accept(cursor.from.segments(), cursor.to.segments());
+        }
+    }
+
+    private void checkPosition(int[] position) {
+        if (position == null) {
+            throw new IllegalArgumentException("Position can't be null");
+        }
+
+        if (position.length != levels) {
+            throw new IllegalArgumentException("Position must have " + levels + " segments: " + position.length);
+        }
+
+        for (int segment : position) {
+            SparseBitUtil.checkSegment(segment);
+        }
+    }
+
+    private void checkCompatible(DeepSparseBitSet<I> that) {
+        if (that == null) {
+            throw new IllegalArgumentException("Set can't be null");
+        }
+
+        if (that.levels != this.levels) {
+            throw new IllegalArgumentException("Set has different levels " + that.levels);
+        }
+    }
+
+    private static <I extends SparseBitIndex> MappedSparseBitSet<I> checkMapped(MappedSparseBitSet<I> that) {
+        if (that == null) {
+            throw new IllegalArgumentException("Set can't be null");
+        }
+
+        return that;
+    }
+
+    private static SparseBitLevelListener checkListener(SparseBitLevelListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null");
+        }
+
+        return listener;
+    }
+
+    static void checkPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool can't be null");
+        }
+    }
+
+    private void checkFactory() {
+        if (factory == null) {
+            throw new UnsupportedOperationException("Index factory is not defined for the set");
+        }
+    }
+
+    static <I extends SparseBitIndex> SparseBitIndexFactory<I> checkFactory(SparseBitIndexFactory<I> factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory can't be null");
+        }
+
+        return factory;
+    }
+
+    static int checkLevels(int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Need positive level count: " + levels);
+        }
+
+        return levels;
+    }
+
+    static int checkOccupancy(int maximumOccupancy) {
+        if (maximumOccupancy < 2 || maximumOccupancy > SparseBitUtil.LEVEL_SIZE) {
+            throw new IllegalArgumentException("Maximum occupancy level is invalid: " + maximumOccupancy);
+        }
+
+        return maximumOccupancy;
+    }
+
+    private void checkIndex(I index) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index can't be null");
+        }
+
+        if (index.levels() < this.levels) {
+            throw new IllegalArgumentException("Index has less levels than the set " + index.levels());
+        }
+    }
+
+    private int[] rangePosition(I index) {
+        checkIndex(index);
+
+        return SparseBitArrayIndex.of(index, levels).segments();
+    }
+
+    private static void checkRange(int[] from, int[] to) {
+        if (SparseBitUtil.comparePositions(from, to) > 0) {
+            throw new IllegalArgumentException("Range is reversed");
+        }
+    }
+
+    private void checkPrefixLength(int prefixLength) {
+        if (prefixLength < 0 || prefixLength > levels * Byte.SIZE) {
+            throw new IllegalArgumentException("Prefix length must be from 0 to " + levels * Byte.SIZE + ": "
+                    + prefixLength);
+        }
+    }
+
+    /**
+     * The first or the last index of a prefix: the segments above the prefix end are taken from the index of
+     * the prefix, the segments below it are the lowest or the highest ones
+     */
+    private static final class PrefixEdge implements SparseBitIndex {
+
+        private final SparseBitIndex prefix;
+
+        private final int levels;
+
+        /**
+         * The level where the prefix ends
+         */
+        private final int level;
+
+        /**
+         * Bits of the segment at the level which are below the prefix end
+         */
+        private final int mask;
+
+        private final boolean last;
+
+        PrefixEdge(SparseBitIndex prefix, int levels, int prefixLength, boolean last) {
+            int hostBits = levels * Byte.SIZE - prefixLength;
+
+            this.prefix = prefix;
+            this.levels = levels;
+            this.level = hostBits / Byte.SIZE;
+            this.mask = (1 << (hostBits % Byte.SIZE)) - 1;
+            this.last = last;
+        }
+
+        @Override
+        public int levels() {
+            return levels;
+        }
+
+        @Override
+        public int segment(int level) {
+            if (level > this.level) {
+                return prefix.segment(level);
+            } else if (level == this.level) {
+                return last ? prefix.segment(level) | mask : prefix.segment(level) & ~mask;
+            } else {
+                return last ? SparseBitUtil.BYTE_MASK : 0;
+            }
+        }
+
+    }
+
+    /**
+     * Cursor keeps only the position of the next search, so it tolerates modifications of the set between
+     * the steps. Each step skips {@code NULL} levels and reports {@code FULL} levels as a whole.
+     *
+     * @param <I> Index type
+     */
+    private static final class RangeCursor<I extends SparseBitIndex> implements SparseBitRangeCursor<I> {
+
+        private final SparseBitIndexFactory<I> factory;
+
+        private final SparseBitLevel base;
+
+        private final SparseBitArrayIndex position;
+
+        private final SparseBitArrayIndex from;
+
+        private final SparseBitArrayIndex to;
+
+        private boolean exhausted;
+
+        private boolean positioned;
+
+        private RangeCursor(int levels, SparseBitIndexFactory<I> factory, SparseBitLevel base) {
+            this.factory = factory;
+            this.base = base;
+
+            this.position = new SparseBitArrayIndex(new int[levels]);
+            this.from = new SparseBitArrayIndex(new int[levels]);
+            this.to = new SparseBitArrayIndex(new int[levels]);
+        }
+
+        @Override
+        public boolean next() {
+            positioned = false;
+
+            if (exhausted) {
+                return false;
+            }
+
+            int[] segments = position.segments();
+
+            if (!base.nextSetBit(segments)) {
+                exhausted = true;
+                return false;
+            }
+
+            System.arraycopy(segments, 0, from.segments(), 0, segments.length);
+
+            if (base.nextClearBit(segments)) {
+                System.arraycopy(segments, 0, to.segments(), 0, segments.length);
+                SparseBitUtil.decrementPosition(to.segments());
+            } else {
+                SparseBitUtil.fillPosition(to.segments(), segments.length, SparseBitUtil.LEVEL_SIZE - 1);
+                exhausted = true;
+            }
+
+            positioned = true;
+            return true;
+        }
+
+        @Override
+        public I from() {
+            checkPositioned();
+
+            return factory.create(from);
+        }
+
+        @Override
+        public I to() {
+            checkPositioned();
+
+            return factory.create(to);
+        }
+
+        private void checkPositioned() {
+            if (!positioned) {
+                throw new IllegalStateException("Cursor is not positioned on a range");
+            }
         }
     }
 
@@ -2,6 +2,8 @@ package org.sparsebitset;
 
 import org.sparsebitset.index.SparseBitIndex;
 
+import java.math.BigInteger;
+
 /**
  * Proxy provides read-only access for an underlying delegate
  *
@@ -51,6 +53,11 @@ public class ImmutableSparseBitSetProxy<I extends SparseBitIndex> implements Spa
         return delegate.isFull();
     }
 
+    @Override
+    public BigInteger cardinality() {
+        return delegate.cardinality();
+    }
+
     @Override
     public void clearAll() {
         throw new UnsupportedOperationException("Set is immutable");
@@ -91,6 +98,16 @@ public class ImmutableSparseBitSetProxy<I extends SparseBitIndex> implements Spa
         throw new UnsupportedOperationException("Set is immutable");
     }
 
+    @Override
+    public void getAll(I[] indexes, boolean[] result) {
+        delegate.getAll(indexes, result);
+    }
+
+    @Override
+    public void setAll(I[] indexes) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
     @Override
     public void set(I fromIndexInclusive, I toIndexInclusive) {
         throw new UnsupportedOperationException("Set is immutable");
@@ -105,5 +122,40 @@ public class ImmutableSparseBitSetProxy<I extends SparseBitIndex> implements Spa
     public void flip(I fromIndexInclusive, I toIndexInclusive) {
         throw new UnsupportedOperationException("Set is immutable");
     }
-    
+
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        return delegate.nextSetBit(fromIndexInclusive);
+    }
+
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        return delegate.nextClearBit(fromIndexInclusive);
+    }
+
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate.intersectsRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate.coversRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate.countInRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        return delegate.rangeCursor();
+    }
+
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        delegate.forEachRange(consumer);
+    }
+
 }
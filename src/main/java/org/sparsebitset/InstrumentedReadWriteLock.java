@@ -0,0 +1,123 @@
+package org.sparsebitset;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * <p>Read-write lock which reports how long the threads wait for it. The lock is tried first with a zero timeout,
+ * so an uncontended acquisition doesn't read the clock. Unlike {@link Lock#tryLock()} the timed try honors the
+ * fairness of the delegate lock and doesn't let readers barge in ahead of a queued writer, so the order of
+ * acquisitions is the same as without instrumentation. The cost is one extra acquisition attempt (and a check of
+ * the interrupted status) before a contended thread is queued.</p>
+ *
+ * <pre>
+ *     new ConcurrentSparseBitSetProxy&lt;&gt;(set, new InstrumentedReadWriteLock(new ReentrantReadWriteLock(), metrics));
+ * </pre>
+ */
+public class InstrumentedReadWriteLock implements ReadWriteLock {
+
+    private final Lock readLock;
+
+    private final Lock writeLock;
+
+    /**
+     * Constructs an instrumented lock
+     *
+     * @param delegate Lock to instrument
+     * @param listener Listener of the waits
+     */
+    public InstrumentedReadWriteLock(ReadWriteLock delegate, SparseBitSetListener listener) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Read-write lock can't be null");
+        }
+
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null");
+        }
+
+        this.readLock = new InstrumentedLock(delegate.readLock(), listener, false);
+        this.writeLock = new InstrumentedLock(delegate.writeLock(), listener, true);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    private static final class InstrumentedLock implements Lock {
+
+        private final Lock delegate;
+
+        private final SparseBitSetListener listener;
+
+        private final boolean write;
+
+        private InstrumentedLock(Lock delegate, SparseBitSetListener listener, boolean write) {
+            this.delegate = delegate;
+            this.listener = listener;
+            this.write = write;
+        }
+
+        @Override
+        public void lock() {
+            boolean interrupted = false;
+
+            try {
+                if (delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+                    listener.onLockWait(write, 0);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // lock() is not interruptible, the status is restored and the thread waits as usual
+                interrupted = true;
+            }
+
+            long start = System.nanoTime();
+            delegate.lock();
+            listener.onLockWait(write, Math.max(1, System.nanoTime() - start));
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+                listener.onLockWait(write, 0);
+            } else {
+                long start = System.nanoTime();
+                delegate.lockInterruptibly();
+                listener.onLockWait(write, Math.max(1, System.nanoTime() - start));
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            return delegate.tryLock();
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return delegate.tryLock(time, unit);
+        }
+
+        @Override
+        public void unlock() {
+            delegate.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+    }
+
+}
@@ -0,0 +1,329 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Proxy reports every operation of an underlying delegate to a listener and measures the duration of sampled
+ * operations. It is usually put over {@link ConcurrentSparseBitSetProxy} with an {@link InstrumentedReadWriteLock},
+ * see {@link ConcurrentSparseBitSetProxy#proxy(SparseBitSet, SparseBitSetListener)}. A set which is not wrapped
+ * doesn't pay anything for the instrumentation.</p>
+ *
+ * @param <I> Type of index
+ */
+public class InstrumentedSparseBitSetProxy<I extends SparseBitIndex> implements SparseBitSet<I> {
+
+    /**
+     * Default sampling interval of durations: one operation of 64 is measured
+     */
+    public static final int DEFAULT_SAMPLING_INTERVAL = 64;
+
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final SparseBitSet<I> delegate;
+
+    private final SparseBitSetListener listener;
+
+    private final int samplingMask;
+
+    /**
+     * Constructs an instrumented proxy for an underlying delegate
+     *
+     * @param delegate Delegate instance
+     * @param listener Listener of the operations
+     * @param samplingInterval Every operation is measured with the probability of {@code 1 / samplingInterval}
+     *                         (a power of two, {@code 1} measures all operations)
+     */
+    public InstrumentedSparseBitSetProxy(SparseBitSet<I> delegate, SparseBitSetListener listener,
+                                         int samplingInterval) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate can't be null");
+        }
+
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null");
+        }
+
+        if (samplingInterval <= 0 || Integer.bitCount(samplingInterval) != 1) {
+            throw new IllegalArgumentException("Sampling interval must be a power of two: " + samplingInterval);
+        }
+
+        this.delegate = delegate;
+        this.listener = listener;
+        this.samplingMask = samplingInterval - 1;
+    }
+
+    /**
+     * Constructs an instrumented proxy with the default sampling interval
+     *
+     * @param delegate Delegate instance
+     * @param listener Listener of the operations
+     */
+    public InstrumentedSparseBitSetProxy(SparseBitSet<I> delegate, SparseBitSetListener listener) {
+        this(delegate, listener, DEFAULT_SAMPLING_INTERVAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The copy is instrumented with the same listener</p>
+     */
+    @Override
+    public SparseBitSet<I> copy() {
+        long start = start(SparseBitSetOperation.COPY);
+        try {
+            return new InstrumentedSparseBitSetProxy<>(delegate.copy(), listener, samplingMask + 1);
+        } finally {
+            finish(SparseBitSetOperation.COPY, start);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        long start = start(SparseBitSetOperation.QUERY);
+        try {
+            return delegate.isEmpty();
+        } finally {
+            finish(SparseBitSetOperation.QUERY, start);
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        long start = start(SparseBitSetOperation.QUERY);
+        try {
+            return delegate.isFull();
+        } finally {
+            finish(SparseBitSetOperation.QUERY, start);
+        }
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        long start = start(SparseBitSetOperation.QUERY);
+        try {
+            return delegate.cardinality();
+        } finally {
+            finish(SparseBitSetOperation.QUERY, start);
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        long start = start(SparseBitSetOperation.WHOLE);
+        try {
+            delegate.clearAll();
+        } finally {
+            finish(SparseBitSetOperation.WHOLE, start);
+        }
+    }
+
+    @Override
+    public void setAll() {
+        long start = start(SparseBitSetOperation.WHOLE);
+        try {
+            delegate.setAll();
+        } finally {
+            finish(SparseBitSetOperation.WHOLE, start);
+        }
+    }
+
+    @Override
+    public void flipAll() {
+        long start = start(SparseBitSetOperation.WHOLE);
+        try {
+            delegate.flipAll();
+        } finally {
+            finish(SparseBitSetOperation.WHOLE, start);
+        }
+    }
+
+    @Override
+    public void validate() {
+        long start = start(SparseBitSetOperation.QUERY);
+        try {
+            delegate.validate();
+        } finally {
+            finish(SparseBitSetOperation.QUERY, start);
+        }
+    }
+
+    @Override
+    public boolean get(I index) {
+        long start = start(SparseBitSetOperation.GET);
+        try {
+            return delegate.get(index);
+        } finally {
+            finish(SparseBitSetOperation.GET, start);
+        }
+    }
+
+    @Override
+    public boolean set(I index) {
+        long start = start(SparseBitSetOperation.SET);
+        try {
+            return delegate.set(index);
+        } finally {
+            finish(SparseBitSetOperation.SET, start);
+        }
+    }
+
+    @Override
+    public boolean clear(I index) {
+        long start = start(SparseBitSetOperation.CLEAR);
+        try {
+            return delegate.clear(index);
+        } finally {
+            finish(SparseBitSetOperation.CLEAR, start);
+        }
+    }
+
+    @Override
+    public void flip(I index) {
+        long start = start(SparseBitSetOperation.FLIP);
+        try {
+            delegate.flip(index);
+        } finally {
+            finish(SparseBitSetOperation.FLIP, start);
+        }
+    }
+
+    @Override
+    public void getAll(I[] indexes, boolean[] result) {
+        long start = start(SparseBitSetOperation.GET_BATCH);
+        try {
+            delegate.getAll(indexes, result);
+        } finally {
+            finish(SparseBitSetOperation.GET_BATCH, start);
+        }
+    }
+
+    @Override
+    public void setAll(I[] indexes) {
+        long start = start(SparseBitSetOperation.SET_BATCH);
+        try {
+            delegate.setAll(indexes);
+        } finally {
+            finish(SparseBitSetOperation.SET_BATCH, start);
+        }
+    }
+
+    @Override
+    public void set(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.SET_RANGE);
+        try {
+            delegate.set(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.SET_RANGE, start);
+        }
+    }
+
+    @Override
+    public void clear(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.CLEAR_RANGE);
+        try {
+            delegate.clear(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.CLEAR_RANGE, start);
+        }
+    }
+
+    @Override
+    public void flip(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.FLIP_RANGE);
+        try {
+            delegate.flip(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.FLIP_RANGE, start);
+        }
+    }
+
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        long start = start(SparseBitSetOperation.SEARCH);
+        try {
+            return delegate.nextSetBit(fromIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.SEARCH, start);
+        }
+    }
+
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        long start = start(SparseBitSetOperation.SEARCH);
+        try {
+            return delegate.nextClearBit(fromIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.SEARCH, start);
+        }
+    }
+
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.RANGE_QUERY);
+        try {
+            return delegate.intersectsRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.RANGE_QUERY, start);
+        }
+    }
+
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.RANGE_QUERY);
+        try {
+            return delegate.coversRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.RANGE_QUERY, start);
+        }
+    }
+
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        long start = start(SparseBitSetOperation.RANGE_QUERY);
+        try {
+            return delegate.countInRange(fromIndexInclusive, toIndexInclusive);
+        } finally {
+            finish(SparseBitSetOperation.RANGE_QUERY, start);
+        }
+    }
+
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        long start = start(SparseBitSetOperation.ITERATION);
+        try {
+            return delegate.rangeCursor();
+        } finally {
+            finish(SparseBitSetOperation.ITERATION, start);
+        }
+    }
+
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        long start = start(SparseBitSetOperation.ITERATION);
+        try {
+            delegate.forEachRange(consumer);
+        } finally {
+            finish(SparseBitSetOperation.ITERATION, start);
+        }
+    }
+
+    private long start(SparseBitSetOperation operation) {
+        listener.onOperation(operation);
+
+        if ((ThreadLocalRandom.current().nextInt() & samplingMask) != 0) {
+            return NOT_SAMPLED;
+        }
+
+        return System.nanoTime();
+    }
+
+    private void finish(SparseBitSetOperation operation, long start) {
+        if (start != NOT_SAMPLED) {
+            listener.onLatency(operation, System.nanoTime() - start);
+        }
+    }
+
+}
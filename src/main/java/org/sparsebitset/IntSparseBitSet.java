@@ -0,0 +1,137 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Sparse bit set for {@code int} indexes (treated as unsigned)</p>
+ *
+ * <p>Besides the generic methods it provides primitive entry points which walk the levels straight from
+ * the {@code int} value. They share the same level tree with the generic methods but don't allocate
+ * a {@link SparseBitIntIndex} object per call.</p>
+ */
+public class IntSparseBitSet extends DeepSparseBitSet<SparseBitIntIndex> {
+
+    /**
+     * Constructs a set
+     *
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public IntSparseBitSet(int maximumOccupancy) {
+        super(SparseBitIntIndex.FACTORY, maximumOccupancy);
+    }
+
+    /**
+     * Constructs a precise set with no false positives
+     */
+    public IntSparseBitSet() {
+        this(SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param base Base level
+     */
+    private IntSparseBitSet(SparseBitLevel base) {
+        super(SparseBitIntIndex.LEVELS, SparseBitIntIndex.FACTORY, base);
+    }
+
+    @Override
+    public IntSparseBitSet copy() {
+        return new IntSparseBitSet(base.copy());
+    }
+
+    /**
+     * Get a bit from the set
+     *
+     * @param index Index of the bit
+     *
+     * @return Bit's value
+     */
+    public boolean get(int index) {
+        return base.get(Integer.toUnsignedLong(index));
+    }
+
+    /**
+     * Set a single bit in the set
+     *
+     * @param index Index of the bit
+     *
+     * @return {@code true} if bit is switched
+     */
+    public boolean set(int index) {
+        return base.set(Integer.toUnsignedLong(index));
+    }
+
+    /**
+     * Clear a single bit in the set
+     *
+     * @param index Index of the bit
+     *
+     * @return {@code true} if bit is switched
+     */
+    public boolean clear(int index) {
+        return base.clear(Integer.toUnsignedLong(index));
+    }
+
+    /**
+     * Toggle a single bit in the set
+     *
+     * @param index Index of the bit
+     */
+    public void flip(int index) {
+        base.flip(Integer.toUnsignedLong(index));
+    }
+
+    /**
+     * Get bits of a batch of indexes, the indexes are sorted so the levels shared by neighbouring indexes are
+     * walked once for all of them
+     *
+     * @param indexes Indexes of the bits
+     * @param bitmap Bitmap where the bit {@code i} is the value of the bit {@code indexes[i]} (at least
+     *               {@code (indexes.length + 63) / 64} words)
+     */
+    public void getAll(int[] indexes, long[] bitmap) {
+        long[] keys = new long[checkIndexes(indexes).length];
+        for (int i = 0; i < indexes.length; i++) {
+            keys[i] = Integer.toUnsignedLong(indexes[i]);
+        }
+
+        getKeys(keys, checkBitmap(bitmap));
+    }
+
+    /**
+     * Set bits of a batch of indexes, the indexes are sorted so the levels shared by neighbouring indexes are
+     * walked once for all of them
+     *
+     * @param indexes Indexes of the bits
+     */
+    public void setAll(int[] indexes) {
+        long[] keys = new long[checkIndexes(indexes).length];
+        for (int i = 0; i < indexes.length; i++) {
+            keys[i] = Integer.toUnsignedLong(indexes[i]);
+        }
+
+        setKeys(keys);
+    }
+
+    private static int[] checkIndexes(int[] indexes) {
+        if (indexes == null) {
+            throw new IllegalArgumentException("Indexes can't be null");
+        }
+
+        return indexes;
+    }
+
+    private static long[] checkBitmap(long[] bitmap) {
+        if (bitmap == null) {
+            throw new IllegalArgumentException("Bitmap can't be null");
+        }
+
+        return bitmap;
+    }
+
+}
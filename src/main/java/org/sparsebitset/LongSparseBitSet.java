@@ -0,0 +1,127 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitLongIndex;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Sparse bit set for {@code long} indexes (treated as unsigned)</p>
+ *
+ * <p>Besides the generic methods it provides primitive entry points which walk the levels straight from
+ * the {@code long} value. They share the same level tree with the generic methods but don't allocate
+ * a {@link SparseBitLongIndex} object per call.</p>
+ */
+public class LongSparseBitSet extends DeepSparseBitSet<SparseBitLongIndex> {
+
+    /**
+     * Constructs a set
+     *
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public LongSparseBitSet(int maximumOccupancy) {
+        super(SparseBitLongIndex.FACTORY, maximumOccupancy);
+    }
+
+    /**
+     * Constructs a precise set with no false positives
+     */
+    public LongSparseBitSet() {
+        this(SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param base Base level
+     */
+    private LongSparseBitSet(SparseBitLevel base) {
+        super(SparseBitLongIndex.LEVELS, SparseBitLongIndex.FACTORY, base);
+    }
+
+    @Override
+    public LongSparseBitSet copy() {
+        return new LongSparseBitSet(base.copy());
+    }
+
+    /**
+     * Get a bit from the set
+     *
+     * @param index Index of the bit
+     *
+     * @return Bit's value
+     */
+    public boolean get(long index) {
+        return base.get(index);
+    }
+
+    /**
+     * Set a single bit in the set
+     *
+     * @param index Index of the bit
+     *
+     * @return {@code true} if bit is switched
+     */
+    public boolean set(long index) {
+        return base.set(index);
+    }
+
+    /**
+     * Clear a single bit in the set
+     *
+     * @param index Index of the bit
+     *
+     * @return {@code true} if bit is switched
+     */
+    public boolean clear(long index) {
+        return base.clear(index);
+    }
+
+    /**
+     * Toggle a single bit in the set
+     *
+     * @param index Index of the bit
+     */
+    public void flip(long index) {
+        base.flip(index);
+    }
+
+    /**
+     * Get bits of a batch of indexes, the indexes are sorted so the levels shared by neighbouring indexes are
+     * walked once for all of them
+     *
+     * @param indexes Indexes of the bits
+     * @param bitmap Bitmap where the bit {@code i} is the value of the bit {@code indexes[i]} (at least
+     *               {@code (indexes.length + 63) / 64} words)
+     */
+    public void getAll(long[] indexes, long[] bitmap) {
+        getKeys(checkIndexes(indexes), checkBitmap(bitmap));
+    }
+
+    /**
+     * Set bits of a batch of indexes, the indexes are sorted so the levels shared by neighbouring indexes are
+     * walked once for all of them
+     *
+     * @param indexes Indexes of the bits
+     */
+    public void setAll(long[] indexes) {
+        setKeys(checkIndexes(indexes));
+    }
+
+    private static long[] checkIndexes(long[] indexes) {
+        if (indexes == null) {
+            throw new IllegalArgumentException("Indexes can't be null");
+        }
+
+        return indexes;
+    }
+
+    private static long[] checkBitmap(long[] bitmap) {
+        if (bitmap == null) {
+            throw new IllegalArgumentException("Bitmap can't be null");
+        }
+
+        return bitmap;
+    }
+
+}
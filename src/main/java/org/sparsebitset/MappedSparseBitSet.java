@@ -0,0 +1,465 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.level.SparseBitLevels;
+import org.sparsebitset.util.SparseBitBufferCleaner;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Read-only set which navigates levels directly inside a buffer, usually a file mapped into memory. Mapped
+ * files are shared by the page cache between processes and opening a set doesn't deserialize it.</p>
+ *
+ * <p>The file consists of a header (magic number, version, levels, maximum occupancy and cardinality),
+ * the levels where underlying levels precede their parents and the offset of the base level at the end.
+ * A single buffer is limited to 2 GB.</p>
+ *
+ * <p>The set is safe for concurrent readers. A mapped file is unmapped by {@link #close()} right away,
+ * otherwise it is unmapped by the garbage collector once the set is unreachable.
+ * {@link SparseBitSetHolder} closes replaced generations by default.</p>
+ *
+ * @param <I> Type of index
+ */
+public class MappedSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<I>, AutoCloseable {
+
+    /**
+     * Magic number of the mapped layout
+     */
+    private static final int FORMAT_MAGIC = 0x5342534D;
+
+    /**
+     * Version of the mapped layout
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the header in bytes
+     */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * Levels have 128-bit cardinality counters so the exact cardinality is available up to this depth
+     */
+    private static final int MAXIMUM_CARDINALITY_LEVELS = 16;
+
+    private final DeepSparseBitSet<I> delegate;
+
+    private final BigInteger cardinality;
+
+    /**
+     * Mapping which is owned by the set (it is unmapped on close) or {@code null} for a wrapped buffer
+     */
+    private final ByteBuffer mapping;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private MappedSparseBitSet(DeepSparseBitSet<I> delegate, BigInteger cardinality, ByteBuffer mapping) {
+        this.delegate = delegate;
+        this.cardinality = cardinality;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Heap set over the mapped levels, the set is read-only
+     *
+     * @return Set object
+     *
+     * @throws IllegalStateException if the set is closed
+     */
+    DeepSparseBitSet<I> delegate() {
+        if (closed.get()) {
+            throw new IllegalStateException("Mapped set is closed");
+        }
+
+        return delegate;
+    }
+
+    /**
+     * Write a set in the mapped layout, sets with levels of other kinds than heap ones are copied into heap
+     * levels first
+     *
+     * <p>The stream is not closed</p>
+     *
+     * @param set Set to write
+     * @param output Output stream
+     *
+     * @throws IOException on I/O error or if the set is too big
+     */
+    public static void write(DeepSparseBitSet<?> set, OutputStream output) throws IOException {
+        // off-heap, concurrent and striped sets are copied into heap levels first
+        SparseBitLevel base = SparseBitLevels.toHeapLevel(set.base, set.levels);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+
+        data.writeInt(FORMAT_MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(set.levels);
+        data.writeInt(base.getMaximumOccupancy());
+
+        if (set.levels <= MAXIMUM_CARDINALITY_LEVELS) {
+            data.writeLong(base.cardinalityHigh());
+            data.writeLong(base.cardinalityLow());
+        } else {
+            data.writeLong(0L);
+            data.writeLong(0L);
+        }
+
+        int offset = SparseBitLevels.writeMappedLevel(base, data);
+
+        data.writeInt(offset);
+        data.flush();
+    }
+
+    /**
+     * Write a set in the mapped layout into a file
+     *
+     * @param set Set to write
+     * @param path Path of the file (it is replaced if it exists)
+     *
+     * @throws IOException on I/O error or if the set is too big
+     */
+    public static void write(DeepSparseBitSet<?> set, Path path) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            write(set, output);
+        }
+    }
+
+    /**
+     * Map a file with the mapped layout into memory
+     *
+     * @param path Path of the file
+     *
+     * @return Read-only set
+     *
+     * @throws IOException on I/O error or if the file is corrupted
+     */
+    public static <I extends SparseBitIndex> MappedSparseBitSet<I> open(Path path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * Map a file with the mapped layout into memory, the set is able to return indexes
+     *
+     * @param path Path of the file
+     * @param factory Factory of indexes (optional), must have the same number of levels as the written set
+     *
+     * @return Read-only set
+     *
+     * @throws IOException on I/O error or if the file is corrupted
+     */
+    public static <I extends SparseBitIndex> MappedSparseBitSet<I> open(Path path,
+                                                                       SparseBitIndexFactory<I> factory) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too big to be mapped: " + size);
+            }
+
+            // the mapping stays valid after the channel is closed
+            ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            return wrap(mapping, factory, mapping);
+        }
+    }
+
+    /**
+     * Create a set over a buffer with the mapped layout (the buffer is not copied)
+     *
+     * @param buffer Buffer which starts with the header, the content from the start to the limit is used
+     * @param factory Factory of indexes (optional), must have the same number of levels as the written set
+     *
+     * @return Read-only set
+     *
+     * @throws IOException if the buffer is corrupted
+     */
+    public static <I extends SparseBitIndex> MappedSparseBitSet<I> wrap(ByteBuffer buffer,
+                                                                       SparseBitIndexFactory<I> factory) throws IOException {
+        return wrap(buffer, factory, null);
+    }
+
+    private static <I extends SparseBitIndex> MappedSparseBitSet<I> wrap(ByteBuffer buffer,
+                                                                        SparseBitIndexFactory<I> factory,
+                                                                        ByteBuffer mapping) throws IOException {
+        ByteBuffer data = buffer.slice();
+
+        if (data.limit() < HEADER_SIZE + Integer.BYTES) {
+            throw new IOException("Buffer is too small");
+        }
+
+        if (data.getInt(0) != FORMAT_MAGIC) {
+            throw new IOException("Unknown mapped layout");
+        }
+
+        int version = data.getInt(Integer.BYTES);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported layout version: " + version);
+        }
+
+        int levels = data.getInt(2 * Integer.BYTES);
+        if (levels <= 0) {
+            throw new IOException("Invalid level count: " + levels);
+        }
+
+        if (factory != null && factory.levels() != levels) {
+            throw new IOException("Set has " + levels + " levels but the factory has " + factory.levels());
+        }
+
+        int maximumOccupancy = data.getInt(3 * Integer.BYTES);
+        if (maximumOccupancy < 2 || maximumOccupancy > SparseBitUtil.LEVEL_SIZE) {
+            throw new IOException("Invalid maximum occupancy: " + maximumOccupancy);
+        }
+
+        long cardinalityHigh = data.getLong(4 * Integer.BYTES);
+        long cardinalityLow = data.getLong(4 * Integer.BYTES + Long.BYTES);
+
+        int offset = data.getInt(data.limit() - Integer.BYTES);
+        if (offset < HEADER_SIZE || offset >= data.limit() - Integer.BYTES) {
+            throw new IOException("Invalid offset of the base level: " + offset);
+        }
+
+        SparseBitLevel base = SparseBitLevels.mapLevel(data, offset, maximumOccupancy, levels);
+
+        BigInteger cardinality = SparseBitUtil.toBigInteger(cardinalityHigh, cardinalityLow);
+
+        // a full set of 16 levels has 2^128 bits which wrap the header counters to zero, the layout still
+        // keeps all underlying levels FULL so the cardinality is restored from it
+        if (levels == MAXIMUM_CARDINALITY_LEVELS && cardinality.signum() == 0 && base.isFull()) {
+            cardinality = BigInteger.ONE.shiftLeft(levels << 3);
+        }
+
+        return new MappedSparseBitSet<>(new DeepSparseBitSet<>(levels, factory, base), cardinality, mapping);
+    }
+
+    /**
+     * Close the set, a file mapped by {@link #open(Path)} is unmapped right away and a wrapped buffer is left
+     * as it is. The set can't be used afterwards (operations throw {@link IllegalStateException}). No other
+     * thread may use the set during and after the call. Repeated calls don't have any effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true) && mapping != null) {
+            SparseBitBufferCleaner.clean(mapping);
+        }
+    }
+
+    /**
+     * Load the set into heap
+     *
+     * @return Mutable copy of the set
+     */
+    @Override
+    public DeepSparseBitSet<I> copy() {
+        return delegate().copy();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate().isEmpty();
+    }
+
+    @Override
+    public boolean isFull() {
+        return delegate().isFull();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Cardinality is kept in the header, so the call doesn't walk the levels</p>
+     *
+     * @throws UnsupportedOperationException if the set has more than {@code 16} levels (128 bits)
+     */
+    @Override
+    public BigInteger cardinality() {
+        if (delegate().levels > MAXIMUM_CARDINALITY_LEVELS) {
+            throw new UnsupportedOperationException("Cardinality is supported up to "
+                    + MAXIMUM_CARDINALITY_LEVELS + " levels");
+        }
+
+        return cardinality;
+    }
+
+    @Override
+    public void clearAll() {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void setAll() {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void flipAll() {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    /**
+     * Validate the structure of the levels in the buffer. Walks all levels, so it may be used to check
+     * a file from an untrusted source once after opening.
+     */
+    @Override
+    public void validate() {
+        delegate().validate();
+    }
+
+    @Override
+    public boolean get(I index) {
+        return delegate().get(index);
+    }
+
+    @Override
+    public boolean set(I index) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public boolean clear(I index) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void flip(I index) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void getAll(I[] indexes, boolean[] result) {
+        delegate().getAll(indexes, result);
+    }
+
+    @Override
+    public void setAll(I[] indexes) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void set(I fromIndexInclusive, I toIndexInclusive) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void clear(I fromIndexInclusive, I toIndexInclusive) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public void flip(I fromIndexInclusive, I toIndexInclusive) {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        return delegate().nextSetBit(fromIndexInclusive);
+    }
+
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        return delegate().nextClearBit(fromIndexInclusive);
+    }
+
+    /**
+     * Find the nearest set bit, the set doesn't need a factory of indexes
+     *
+     * @param position Position of segments, it is replaced with the found position
+     *
+     * @return {@code false} if there is no set bit
+     *
+     * @see DeepSparseBitSet#nextSetBit(int[])
+     */
+    public boolean nextSetBit(int[] position) {
+        return delegate().nextSetBit(position);
+    }
+
+    /**
+     * Find the nearest clear bit, the set doesn't need a factory of indexes
+     *
+     * @param position Position of segments, it is replaced with the found position
+     *
+     * @return {@code false} if there is no clear bit
+     *
+     * @see DeepSparseBitSet#nextClearBit(int[])
+     */
+    public boolean nextClearBit(int[] position) {
+        return delegate().nextClearBit(position);
+    }
+
+    /**
+     * Process all maximal ranges of set bits in ascending order, the set doesn't need a factory of indexes
+     *
+     * @param consumer Callback for ranges
+     *
+     * @see DeepSparseBitSet#forEachPositionRange(SparseBitPositionConsumer)
+     */
+    public void forEachPositionRange(SparseBitPositionConsumer consumer) {
+        delegate().forEachPositionRange(consumer);
+    }
+
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate().intersectsRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate().coversRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        return delegate().countInRange(fromIndexInclusive, toIndexInclusive);
+    }
+
+    /**
+     * Find the maximal range of set bits which contains the bit
+     *
+     * @param index Index of the bit
+     * @param consumer Receives the first and the last bit of the range if the bit is set
+     *
+     * @return {@code true} if the bit is set
+     *
+     * @see DeepSparseBitSet#findEnclosingRange(SparseBitIndex, SparseBitRangeConsumer)
+     */
+    public boolean findEnclosingRange(I index, SparseBitRangeConsumer<I> consumer) {
+        return delegate().findEnclosingRange(index, consumer);
+    }
+
+    /**
+     * Find the shortest prefix which contains the bit and has all bits set
+     *
+     * @param index Index of the bit
+     * @param maxLength The longest prefix which is acceptable
+     *
+     * @return Length of the prefix or {@code -1} if the prefix of {@code maxLength} bits has clear bits
+     *
+     * @see DeepSparseBitSet#findCoveringPrefix(SparseBitIndex, int)
+     */
+    public int findCoveringPrefix(I index, int maxLength) {
+        return delegate().findCoveringPrefix(index, maxLength);
+    }
+
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        return delegate().rangeCursor();
+    }
+
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        delegate().forEachRange(consumer);
+    }
+
+}
@@ -1,63 +1,221 @@
 package org.sparsebitset;
 
+import org.sparsebitset.index.SparseBitArrayIndex;
 import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.index.SparseBitLong2Index;
+import org.sparsebitset.index.SparseBitLongIndex;
+import org.sparsebitset.util.SparseBitUtil;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.math.BigInteger;
 
 /**
- * <p>Combines hashtable for individual indices and sparse bit set for ranges. Doesn't support {@code clear()}
- * and {@code flip()} methods. Which means you can use only {@code get()} and {@code set()} methods
- * for the sake of memory footprint if you have a lot of individual indices.</p>
+ * <p>Combines hashtable for individual indices and sparse bit set for ranges. Single bits are set in the hashtable
+ * which is much more compact than a final level per bit, ranges are set in the sparse bit set. A bit may be kept
+ * in both places, it is set if it is set in any of them.</p>
+ *
+ * <p>Clearing and flipping ranges and the whole set take a pass over the individual indices (unless the range is
+ * shorter than their count), {@link #nextSetBit(SparseBitIndex)} takes a pass over them as well and the range
+ * cursor sorts them once. Methods which return indexes need an {@link SparseBitIndexFactory}.</p>
+ *
+ * <p>Individual indices of up to 16 levels are kept as primitive keys in an open addressing table, which takes
+ * 11 to 22 bytes per 64-bit key and twice as much per 128-bit key. Indices of more levels are kept in the
+ * sparse bit set along with the ranges.</p>
+ *
+ * <p>An adaptive set keeps the smaller representation by itself: every time the count of individual indices
+ * doubles, clusters of them which share a final level and would take less memory as that level are moved to the
+ * sparse bit set (as well as the ones whose final level is there already), and a bit which is left alone on its
+ * final level after clearing is moved back to the hashtable.</p>
  *
  * @param <I> type of index
  */
 public class MixedSparseBitSet<I extends SparseBitIndex> implements SparseBitSet<I> {
 
-    private final Set<I> individuals;
+    /**
+     * Individual indices of more levels don't fit into a key of the table
+     */
+    private static final int MAXIMUM_KEY_LEVELS = 2 * Long.BYTES;
+
+    /**
+     * A final level of the sparse bit set takes about this many bytes along with its slot in the parent level
+     */
+    private static final int LEAF_BYTES = 64;
+
+    /**
+     * An individual index takes about this many bytes per 64 bits of its key
+     */
+    private static final int KEY_BYTES = 16;
+
+    /**
+     * An adaptive set looks for clusters of individual indices when their count reaches this size for the first
+     * time
+     */
+    private static final int MINIMUM_PROMOTION_SIZE = 1024;
+
+    private final int levels;
 
-    private final SparseBitSet<I> ranges;
+    private final SparseBitIndexFactory<I> factory;
 
+    private final boolean adaptive;
+
+    /**
+     * Individual indices, {@code null} if they are kept in the ranges
+     */
+    private final SparseBitKeyTable individuals;
+
+    private final DeepSparseBitSet<I> ranges;
+
+    /**
+     * Count of individual indices which triggers the next search for clusters
+     */
+    private int promotionSize;
+
+    /**
+     * Constructs a set which is not able to return indexes
+     *
+     * @param levels How many levels are in the index
+     */
     public MixedSparseBitSet(int levels) {
-        this.individuals = new HashSet<>();
-        this.ranges = DeepSparseBitSet.createWithLevels(levels);
+        this(levels, false);
+    }
+
+    /**
+     * Constructs a set which is not able to return indexes
+     *
+     * @param levels How many levels are in the index
+     * @param adaptive Move bits between the hashtable and the sparse bit set to keep the smaller representation
+     */
+    public MixedSparseBitSet(int levels, boolean adaptive) {
+        this(DeepSparseBitSet.checkLevels(levels), null, adaptive);
+    }
+
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     */
+    public MixedSparseBitSet(SparseBitIndexFactory<I> factory) {
+        this(factory, false);
+    }
+
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     * @param adaptive Move bits between the hashtable and the sparse bit set to keep the smaller representation
+     */
+    public MixedSparseBitSet(SparseBitIndexFactory<I> factory, boolean adaptive) {
+        this(DeepSparseBitSet.checkLevels(DeepSparseBitSet.checkFactory(factory).levels()), factory, adaptive);
+    }
+
+    private MixedSparseBitSet(int levels, SparseBitIndexFactory<I> factory, boolean adaptive) {
+        this.levels = levels;
+        this.factory = factory;
+        this.adaptive = adaptive;
+
+        this.individuals = (levels <= MAXIMUM_KEY_LEVELS) ? new SparseBitKeyTable(levels > Long.BYTES) : null;
+        this.ranges = (factory != null) ? new DeepSparseBitSet<>(factory) : new DeepSparseBitSet<>(levels);
+
+        this.promotionSize = MINIMUM_PROMOTION_SIZE;
     }
 
-    private MixedSparseBitSet(Set<I> individuals, SparseBitSet<I> ranges) {
-        this.individuals = individuals;
-        this.ranges = ranges;
+    private MixedSparseBitSet(MixedSparseBitSet<I> source) {
+        this.levels = source.levels;
+        this.factory = source.factory;
+        this.adaptive = source.adaptive;
+
+        this.individuals = (source.individuals != null) ? source.individuals.copy() : null;
+        this.ranges = source.ranges.copy();
+
+        this.promotionSize = source.promotionSize;
     }
 
     @Override
     public SparseBitSet<I> copy() {
-        return new MixedSparseBitSet<>(new HashSet<>(individuals), ranges.copy());
+        return new MixedSparseBitSet<>(this);
     }
 
     @Override
     public boolean isEmpty() {
-        return individuals.isEmpty() && ranges.isEmpty();
+        return (individuals == null || individuals.isEmpty()) && ranges.isEmpty();
     }
 
     @Override
     public boolean isFull() {
-        return ranges.isFull();
+        if (ranges.isFull()) {
+            return true;
+        }
+
+        if (individuals == null || individuals.isEmpty()) {
+            return false;
+        }
+
+        return cardinality().equals(BigInteger.ONE.shiftLeft(levels * Byte.SIZE));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Individual bits are not counted incrementally, so the call takes a pass over them</p>
+     */
+    @Override
+    public BigInteger cardinality() {
+        if (individuals == null) {
+            return ranges.cardinality();
+        }
+
+        long[] count = new long[1];
+
+        individuals.forEach((high, low) -> {
+            if (!getRange(high, low)) {
+                count[0]++;
+            }
+        });
+
+        return ranges.cardinality().add(BigInteger.valueOf(count[0]));
     }
 
     @Override
     public void clearAll() {
-        individuals.clear();
+        if (individuals != null) {
+            individuals.clear();
+        }
+
         ranges.clearAll();
+
+        promotionSize = MINIMUM_PROMOTION_SIZE;
     }
 
     @Override
     public void setAll() {
-        individuals.clear();
+        if (individuals != null) {
+            individuals.clear();
+        }
+
         ranges.setAll();
+
+        promotionSize = MINIMUM_PROMOTION_SIZE;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Individual bits are moved to the sparse bit set which is flipped afterwards</p>
+     */
     @Override
     public void flipAll() {
-        throw new UnsupportedOperationException("Not supported for a mixed set");
+        if (individuals != null) {
+            long[] keys = individuals.toArray();
+
+            for (int i = 0; i < keys.length; i += width()) {
+                setRange(high(keys, i), low(keys, i));
+            }
+
+            individuals.clear();
+            promotionSize = MINIMUM_PROMOTION_SIZE;
+        }
+
+        ranges.flipAll();
     }
 
     @Override
@@ -67,25 +225,63 @@ public class MixedSparseBitSet<I extends SparseBitIndex> implements SparseBitSet
 
     @Override
     public boolean get(I index) {
-        return individuals.contains(index) || ranges.get(index);
+        if (individuals == null) {
+            return ranges.get(index);
+        }
+
+        return individuals.contains(high(index), low(index)) || ranges.get(index);
     }
 
     @Override
     public boolean set(I index) {
-        return individuals.add(index);
+        if (individuals == null) {
+            return ranges.set(index);
+        }
+
+        long high = high(index);
+        long low = low(index);
+
+        if (individuals.contains(high, low) || ranges.get(index)) {
+            return false;
+        }
+
+        individuals.add(high, low);
+
+        if (adaptive && individuals.size() >= promotionSize) {
+            promote();
+        }
+
+        return true;
     }
 
     @Override
     public boolean clear(I index) {
-        boolean r1 = individuals.remove(index);
+        if (individuals == null) {
+            return ranges.clear(index);
+        }
+
+        long high = high(index);
+        long low = low(index);
+
+        boolean r1 = individuals.remove(high, low);
         boolean r2 = ranges.clear(index);
 
+        if (r2 && adaptive) {
+            demote(high, low);
+        }
+
         return r1 || r2;
     }
 
     @Override
     public void flip(I index) {
-        throw new UnsupportedOperationException("Not supported for a mixed set");
+        if (individuals == null) {
+            ranges.flip(index);
+        } else if (get(index)) {
+            clear(index);
+        } else {
+            set(index);
+        }
     }
 
     @Override
@@ -93,13 +289,648 @@ public class MixedSparseBitSet<I extends SparseBitIndex> implements SparseBitSet
         ranges.set(fromIndexInclusive, toIndexInclusive);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Takes a pass over individual bits unless the range is shorter than their count</p>
+     */
     @Override
     public void clear(I fromIndexInclusive, I toIndexInclusive) {
-        throw new UnsupportedOperationException("Not supported for a mixed set");
+        ranges.clear(fromIndexInclusive, toIndexInclusive);
+
+        if (individuals != null) {
+            removeIndividuals(fromIndexInclusive, toIndexInclusive, false);
+
+            if (adaptive) {
+                demote(high(fromIndexInclusive), low(fromIndexInclusive));
+                demote(high(toIndexInclusive), low(toIndexInclusive));
+            }
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Individual bits of the range are moved to the sparse bit set which is flipped afterwards</p>
+     */
     @Override
     public void flip(I fromIndexInclusive, I toIndexInclusive) {
-        throw new UnsupportedOperationException("Not supported for a mixed set");
+        if (individuals != null) {
+            removeIndividuals(fromIndexInclusive, toIndexInclusive, true);
+        }
+
+        ranges.flip(fromIndexInclusive, toIndexInclusive);
+
+        if (individuals != null && adaptive) {
+            demote(high(fromIndexInclusive), low(fromIndexInclusive));
+            demote(high(toIndexInclusive), low(toIndexInclusive));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Takes a pass over individual bits</p>
+     */
+    @Override
+    public I nextSetBit(I fromIndexInclusive) {
+        checkFactory();
+
+        I found = ranges.nextSetBit(fromIndexInclusive);
+
+        if (individuals == null || individuals.isEmpty()) {
+            return found;
+        }
+
+        long fromHigh = high(fromIndexInclusive);
+        long fromLow = low(fromIndexInclusive);
+
+        // the nearest individual bit which is before the found one
+        long[] nearest = (found != null) ? new long[] {high(found), low(found)} : new long[2];
+        boolean[] exists = {found != null};
+
+        individuals.forEach((high, low) -> {
+            if (compare(high, low, fromHigh, fromLow) >= 0
+                    && (!exists[0] || compare(high, low, nearest[0], nearest[1]) < 0)) {
+                nearest[0] = high;
+                nearest[1] = low;
+                exists[0] = true;
+            }
+        });
+
+        return exists[0] ? create(nearest[0], nearest[1]) : null;
+    }
+
+    @Override
+    public I nextClearBit(I fromIndexInclusive) {
+        checkFactory();
+
+        if (individuals == null) {
+            return ranges.nextClearBit(fromIndexInclusive);
+        }
+
+        I candidate = fromIndexInclusive;
+
+        while (true) {
+            I found = ranges.nextClearBit(candidate);
+
+            if (found == null) {
+                return null;
+            }
+
+            long high = high(found);
+            long low = low(found);
+
+            if (!individuals.contains(high, low)) {
+                return found;
+            }
+
+            if (isLast(high, low)) {
+                return null;
+            }
+
+            candidate = create(high + ((low == -1L) ? 1 : 0), low + 1);
+        }
+    }
+
+    @Override
+    public boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        if (ranges.intersectsRange(fromIndexInclusive, toIndexInclusive)) {
+            return true;
+        }
+
+        return individuals != null && countIndividuals(fromIndexInclusive, toIndexInclusive, true) > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>A range with clear bits in the sparse bit set is covered when all of them are individual bits</p>
+     */
+    @Override
+    public boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        if (ranges.coversRange(fromIndexInclusive, toIndexInclusive)) {
+            return true;
+        }
+
+        if (individuals == null) {
+            return false;
+        }
+
+        BigInteger size = SparseBitUtil.toBigInteger(high(toIndexInclusive), low(toIndexInclusive))
+                .subtract(SparseBitUtil.toBigInteger(high(fromIndexInclusive), low(fromIndexInclusive)))
+                .add(BigInteger.ONE);
+
+        BigInteger clear = size.subtract(ranges.countInRange(fromIndexInclusive, toIndexInclusive));
+
+        if (clear.compareTo(BigInteger.valueOf(individuals.size())) > 0) {
+            return false;
+        }
+
+        return clear.longValue() == countIndividuals(fromIndexInclusive, toIndexInclusive, false);
+    }
+
+    @Override
+    public BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        BigInteger count = ranges.countInRange(fromIndexInclusive, toIndexInclusive);
+
+        if (individuals == null) {
+            return count;
+        }
+
+        return count.add(BigInteger.valueOf(countIndividuals(fromIndexInclusive, toIndexInclusive, false)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Individual bits are sorted when the cursor is created</p>
+     */
+    @Override
+    public SparseBitRangeCursor<I> rangeCursor() {
+        checkFactory();
+
+        if (individuals == null) {
+            return ranges.rangeCursor();
+        }
+
+        return new MergingCursor(individuals.toSortedArray(), ranges.rangeCursor());
+    }
+
+    @Override
+    public void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer can't be null");
+        }
+
+        SparseBitRangeCursor<I> cursor = rangeCursor();
+        while (cursor.next()) {
+            consumer.accept(cursor.from(), cursor.to());
+        }
+    }
+
+    /**
+     * Get the count of bits which are kept in the hashtable
+     *
+     * @return Count of individual bits
+     */
+    int getIndividualCount() {
+        return (individuals != null) ? individuals.size() : 0;
+    }
+
+    /**
+     * Move clusters of individual bits which take less memory as a final level to the sparse bit set
+     */
+    private void promote() {
+        long[] keys = individuals.toSortedArray();
+
+        int width = width();
+        int threshold = LEAF_BYTES / (KEY_BYTES * width);
+
+        int from = 0;
+        while (from < keys.length) {
+            long high = high(keys, from);
+            long leaf = low(keys, from) >>> Byte.SIZE;
+
+            int to = from + width;
+            while (to < keys.length && high(keys, to) == high && (low(keys, to) >>> Byte.SIZE) == leaf) {
+                to += width;
+            }
+
+            // the final level is allocated already, so the bits take no memory there
+            if ((to - from) / width >= threshold || countLeaf(high, low(keys, from), null) > 0) {
+                for (int i = from; i < to; i += width) {
+                    individuals.remove(high(keys, i), low(keys, i));
+                    setRange(high(keys, i), low(keys, i));
+                }
+            }
+
+            from = to;
+        }
+
+        promotionSize = Math.max(MINIMUM_PROMOTION_SIZE, individuals.size() << 1);
+    }
+
+    /**
+     * Move a bit which is left alone on the final level of the key to the hashtable
+     *
+     * @param high Upper part of any key of the final level
+     * @param low Lower part of any key of the final level
+     */
+    private void demote(long high, long low) {
+        long[] lone = new long[2];
+
+        if (countLeaf(high, low, lone) == 1) {
+            clearRange(lone[0], lone[1]);
+            individuals.add(lone[0], lone[1]);
+        }
     }
+
+    /**
+     * Count bits of the final level of the key in the sparse bit set
+     *
+     * @param high Upper part of any key of the final level
+     * @param low Lower part of any key of the final level
+     * @param lone Receives the key of the only bit, may be {@code null}
+     *
+     * @return {@code 0}, {@code 1} or {@code 2} if there are two bits or more
+     */
+    private int countLeaf(long high, long low, long[] lone) {
+        int[] start = position(high, low & ~SparseBitUtil.BYTE_MASK);
+        int[] position = start.clone();
+
+        if (!ranges.base.nextSetBit(position) || !isSameLeaf(start, position)) {
+            return 0;
+        }
+
+        int first = position[0];
+
+        if (lone != null) {
+            lone[0] = high;
+            lone[1] = (low & ~SparseBitUtil.BYTE_MASK) | first;
+        }
+
+        if (first == SparseBitUtil.LEVEL_SIZE - 1) {
+            return 1;
+        }
+
+        position[0] = first + 1;
+
+        return (ranges.base.nextSetBit(position) && isSameLeaf(start, position)) ? 2 : 1;
+    }
+
+    private static boolean isSameLeaf(int[] position1, int[] position2) {
+        for (int level = 1; level < position1.length; level++) {
+            if (position1[level] != position2[level]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove individual bits of a range
+     *
+     * @param fromIndexInclusive The first bit of the range
+     * @param toIndexInclusive The last bit of the range
+     * @param keep Set the removed bits in the sparse bit set
+     */
+    private void removeIndividuals(I fromIndexInclusive, I toIndexInclusive, boolean keep) {
+        long fromHigh = high(fromIndexInclusive);
+        long fromLow = low(fromIndexInclusive);
+        long toHigh = high(toIndexInclusive);
+        long toLow = low(toIndexInclusive);
+
+        if (compare(fromHigh, fromLow, toHigh, toLow) > 0) {
+            throw new IllegalArgumentException("Range is reversed");
+        }
+
+        if (individuals.isEmpty()) {
+            return;
+        }
+
+        if (fromHigh == toHigh && Long.compareUnsigned(toLow - fromLow, individuals.size()) < 0) {
+            // a short range is probed key by key
+            for (long low = fromLow; ; low++) {
+                if (individuals.remove(fromHigh, low) && keep) {
+                    setRange(fromHigh, low);
+                }
+
+                if (low == toLow) {
+                    break;
+                }
+            }
+        } else {
+            long[] keys = individuals.toArray();
+
+            for (int i = 0; i < keys.length; i += width()) {
+                long high = high(keys, i);
+                long low = low(keys, i);
+
+                if (compare(high, low, fromHigh, fromLow) >= 0 && compare(high, low, toHigh, toLow) <= 0) {
+                    individuals.remove(high, low);
+
+                    if (keep) {
+                        setRange(high, low);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Count individual bits of a range which are not set in the sparse bit set
+     *
+     * @param fromIndexInclusive The first bit of the range
+     * @param toIndexInclusive The last bit of the range
+     * @param any Stop at the first found bit
+     *
+     * @return Count of bits
+     */
+    private long countIndividuals(I fromIndexInclusive, I toIndexInclusive, boolean any) {
+        long fromHigh = high(fromIndexInclusive);
+        long fromLow = low(fromIndexInclusive);
+        long toHigh = high(toIndexInclusive);
+        long toLow = low(toIndexInclusive);
+
+        long count = 0;
+
+        if (individuals.isEmpty()) {
+            return count;
+        }
+
+        if (fromHigh == toHigh && Long.compareUnsigned(toLow - fromLow, individuals.size()) < 0) {
+            // a short range is probed key by key
+            for (long low = fromLow; ; low++) {
+                if (individuals.contains(fromHigh, low) && !getRange(fromHigh, low)) {
+                    count++;
+
+                    if (any) {
+                        break;
+                    }
+                }
+
+                if (low == toLow) {
+                    break;
+                }
+            }
+        } else {
+            long[] keys = individuals.toArray();
+
+            for (int i = 0; i < keys.length; i += width()) {
+                long high = high(keys, i);
+                long low = low(keys, i);
+
+                if (compare(high, low, fromHigh, fromLow) >= 0 && compare(high, low, toHigh, toLow) <= 0
+                        && !getRange(high, low)) {
+                    count++;
+
+                    if (any) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private int width() {
+        return (levels > Long.BYTES) ? 2 : 1;
+    }
+
+    private long high(long[] keys, int i) {
+        return (levels > Long.BYTES) ? keys[i] : 0;
+    }
+
+    private long low(long[] keys, int i) {
+        return (levels > Long.BYTES) ? keys[i + 1] : keys[i];
+    }
+
+    private boolean getRange(long high, long low) {
+        return (levels <= Long.BYTES) ? ranges.base.get(low) : ranges.base.get(new SparseBitLong2Index(high, low));
+    }
+
+    private void setRange(long high, long low) {
+        if (levels <= Long.BYTES) {
+            ranges.base.set(low);
+        } else {
+            ranges.base.set(new SparseBitLong2Index(high, low));
+        }
+    }
+
+    private void clearRange(long high, long low) {
+        if (levels <= Long.BYTES) {
+            ranges.base.clear(low);
+        } else {
+            ranges.base.clear(new SparseBitLong2Index(high, low));
+        }
+    }
+
+    /**
+     * Check whether the key is the last one of the index
+     */
+    private boolean isLast(long high, long low) {
+        if (levels <= Long.BYTES) {
+            return low == (-1L >>> (Long.SIZE - levels * Byte.SIZE));
+        } else {
+            return low == -1L && high == (-1L >>> (2 * Long.SIZE - levels * Byte.SIZE));
+        }
+    }
+
+    private SparseBitIndex keyIndex(long high, long low) {
+        return (levels <= Long.BYTES) ? SparseBitLongIndex.of(low) : new SparseBitLong2Index(high, low);
+    }
+
+    private int[] position(long high, long low) {
+        return SparseBitArrayIndex.of(keyIndex(high, low), levels).segments();
+    }
+
+    private I create(long high, long low) {
+        return factory.create(keyIndex(high, low));
+    }
+
+    /**
+     * Get the lower 64 bits of the key of an index (the segments of the levels from {@code 0} to {@code 7})
+     *
+     * @param index Index object
+     *
+     * @return Lower part of the key
+     */
+    private long low(SparseBitIndex index) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index can't be null");
+        }
+
+        return key(index, 0, Math.min(levels, Long.BYTES));
+    }
+
+    /**
+     * Get the upper 64 bits of the key of an index (the segments of the levels from {@code 8} to {@code 15})
+     *
+     * @param index Index object
+     *
+     * @return Upper part of the key, {@code 0} for indices of up to 8 levels
+     */
+    private long high(SparseBitIndex index) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index can't be null");
+        }
+
+        return key(index, Long.BYTES, levels);
+    }
+
+    private static long key(SparseBitIndex index, int fromLevel, int toLevel) {
+        long key = 0;
+
+        for (int level = fromLevel; level < toLevel; level++) {
+            int segment = index.segment(level);
+            SparseBitUtil.checkSegment(segment);
+
+            key |= (long) segment << ((level - fromLevel) << 3);
+        }
+
+        return key;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int r = Long.compareUnsigned(high1, high2);
+
+        return (r != 0) ? r : Long.compareUnsigned(low1, low2);
+    }
+
+    /**
+     * Check whether the second key is next to the first one
+     */
+    private static boolean isNext(long high1, long low1, long high2, long low2) {
+        return (low1 == -1L) ? (low2 == 0 && high2 == high1 + 1) : (low2 == low1 + 1 && high2 == high1);
+    }
+
+    private void checkFactory() {
+        if (factory == null) {
+            throw new UnsupportedOperationException("Index factory is not defined for the set");
+        }
+    }
+
+    /**
+     * Cursor which merges sorted individual bits with the ranges of the sparse bit set
+     */
+    private final class MergingCursor implements SparseBitRangeCursor<I> {
+
+        private final long[] keys;
+
+        private final SparseBitRangeCursor<I> cursor;
+
+        private int next;
+
+        private boolean rangeReady;
+
+        private boolean rangesExhausted;
+
+        private long rangeFromHigh;
+
+        private long rangeFromLow;
+
+        private long rangeToHigh;
+
+        private long rangeToLow;
+
+        private long fromHigh;
+
+        private long fromLow;
+
+        private long toHigh;
+
+        private long toLow;
+
+        private boolean positioned;
+
+        private MergingCursor(long[] keys, SparseBitRangeCursor<I> cursor) {
+            this.keys = keys;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean next() {
+            positioned = false;
+
+            pullRange();
+
+            boolean individual = next < keys.length;
+
+            if (!individual && !rangeReady) {
+                return false;
+            }
+
+            if (individual && (!rangeReady
+                    || compare(high(keys, next), low(keys, next), rangeFromHigh, rangeFromLow) < 0)) {
+                fromHigh = toHigh = high(keys, next);
+                fromLow = toLow = low(keys, next);
+                next += width();
+            } else {
+                takeRange();
+            }
+
+            // neighbouring and overlapping bits of both kinds are joined
+            while (true) {
+                pullRange();
+
+                if (rangeReady && touches(rangeFromHigh, rangeFromLow)) {
+                    if (compare(rangeToHigh, rangeToLow, toHigh, toLow) > 0) {
+                        toHigh = rangeToHigh;
+                        toLow = rangeToLow;
+                    }
+
+                    rangeReady = false;
+                } else if (next < keys.length && touches(high(keys, next), low(keys, next))) {
+                    if (compare(high(keys, next), low(keys, next), toHigh, toLow) > 0) {
+                        toHigh = high(keys, next);
+                        toLow = low(keys, next);
+                    }
+
+                    next += width();
+                } else {
+                    break;
+                }
+            }
+
+            positioned = true;
+            return true;
+        }
+
+        @Override
+        public I from() {
+            checkPositioned();
+
+            return create(fromHigh, fromLow);
+        }
+
+        @Override
+        public I to() {
+            checkPositioned();
+
+            return create(toHigh, toLow);
+        }
+
+        private boolean touches(long high, long low) {
+            return compare(high, low, toHigh, toLow) <= 0 || isNext(toHigh, toLow, high, low);
+        }
+
+        private void pullRange() {
+            if (rangeReady || rangesExhausted) {
+                return;
+            }
+
+            if (cursor.next()) {
+                I from = cursor.from();
+                I to = cursor.to();
+
+                rangeFromHigh = high(from);
+                rangeFromLow = low(from);
+                rangeToHigh = high(to);
+                rangeToLow = low(to);
+
+                rangeReady = true;
+            } else {
+                rangesExhausted = true;
+            }
+        }
+
+        private void takeRange() {
+            fromHigh = rangeFromHigh;
+            fromLow = rangeFromLow;
+            toHigh = rangeToHigh;
+            toLow = rangeToLow;
+
+            rangeReady = false;
+        }
+
+        private void checkPositioned() {
+            if (!positioned) {
+                throw new IllegalStateException("Cursor is not positioned on a range");
+            }
+        }
+    }
+
 }
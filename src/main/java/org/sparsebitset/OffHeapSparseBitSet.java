@@ -0,0 +1,93 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.level.SparseBitLevelOffHeap;
+import org.sparsebitset.level.SparseBitLevels;
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Sparse hierarchical bit set which keeps its levels off heap. Levels are records in slabs of direct
+ * buffers addressed by int handles, so the heap footprint and the work of the garbage collector don't grow
+ * with the set.</p>
+ *
+ * <p>Semantics are the same as of {@link DeepSparseBitSet}. Algebra with another set is applied range by
+ * range of the other set.</p>
+ *
+ * <p>The off-heap memory is freed by {@link #close()} right away, otherwise it is freed by the garbage
+ * collector once the set is unreachable. {@link SparseBitSetHolder} closes replaced generations by default.</p>
+ *
+ * @param <I> Index type
+ */
+public class OffHeapSparseBitSet<I extends SparseBitIndex> extends DeepSparseBitSet<I> implements AutoCloseable {
+
+    /**
+     * Constructs a set
+     *
+     * @param levels How many levels are in the index (bits = levels * 8)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public OffHeapSparseBitSet(int levels, int maximumOccupancy) {
+        super(checkLevels(levels), null,
+                SparseBitLevels.createOffHeapLevel(checkOccupancy(maximumOccupancy), levels));
+    }
+
+    /**
+     * Constructs a precise set with no false positives
+     *
+     * @param levels How many levels are in the index (bits = levels * 8)
+     */
+    public OffHeapSparseBitSet(int levels) {
+        this(levels, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public OffHeapSparseBitSet(SparseBitIndexFactory<I> factory, int maximumOccupancy) {
+        super(checkLevels(checkFactory(factory).levels()), factory,
+                SparseBitLevels.createOffHeapLevel(checkOccupancy(maximumOccupancy), factory.levels()));
+    }
+
+    /**
+     * Constructs a precise set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index
+     */
+    public OffHeapSparseBitSet(SparseBitIndexFactory<I> factory) {
+        this(factory, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param levels Number of level
+     * @param factory Factory of indexes (optional)
+     * @param base Base level
+     */
+    private OffHeapSparseBitSet(int levels, SparseBitIndexFactory<I> factory, SparseBitLevel base) {
+        super(levels, factory, base);
+    }
+
+    /**
+     * Free the off-heap memory of the set, the set can't be used afterwards (operations throw
+     * {@link IllegalStateException}). No other thread may use the set during and after the call.
+     * Repeated calls don't have any effect.
+     */
+    @Override
+    public void close() {
+        ((SparseBitLevelOffHeap) base).close();
+    }
+
+    @Override
+    public OffHeapSparseBitSet<I> copy() {
+        return new OffHeapSparseBitSet<>(levels, factory, base.copy());
+    }
+
+}
@@ -0,0 +1,357 @@
+package org.sparsebitset;
+
+import java.util.Arrays;
+
+/**
+ * <p>Hash set of primitive keys of up to 128 bits. Keys are kept in plain {@code long} arrays of an open
+ * addressing table with linear probing: one array for keys of up to 64 bits and a pair of arrays for longer
+ * keys. Occupied slots are marked in a bitmap, so any key value can be stored.</p>
+ *
+ * <p>Removal shifts the following keys of the probe sequence back instead of leaving tombstones, so lookups never
+ * walk over deleted slots and the table doesn't degrade with updates.</p>
+ */
+final class SparseBitKeyTable {
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /**
+     * The table grows when it is filled by more than 3/4
+     */
+    private static final int LOAD_SHIFT = 2;
+
+    /**
+     * The table shrinks when it is filled by less than 1/8
+     */
+    private static final int SHRINK_SHIFT = 3;
+
+    private final boolean wide;
+
+    /**
+     * Upper 64 bits of the keys, {@code null} for keys of up to 64 bits
+     */
+    private long[] highs;
+
+    /**
+     * Lower 64 bits of the keys
+     */
+    private long[] lows;
+
+    /**
+     * Bitmap of occupied slots
+     */
+    private long[] used;
+
+    private int size;
+
+    /**
+     * Constructs an empty table
+     *
+     * @param wide {@code true} for keys of more than 64 bits
+     */
+    SparseBitKeyTable(boolean wide) {
+        this.wide = wide;
+
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    private SparseBitKeyTable(SparseBitKeyTable source) {
+        this.wide = source.wide;
+
+        this.highs = (source.highs != null) ? source.highs.clone() : null;
+        this.lows = source.lows.clone();
+        this.used = source.used.clone();
+
+        this.size = source.size;
+    }
+
+    SparseBitKeyTable copy() {
+        return new SparseBitKeyTable(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Check whether the key is in the table
+     *
+     * @param high Upper 64 bits of the key (ignored for keys of up to 64 bits)
+     * @param low Lower 64 bits of the key
+     *
+     * @return {@code true} if the key is found
+     */
+    boolean contains(long high, long low) {
+        return find(high, low) >= 0;
+    }
+
+    /**
+     * Add the key to the table
+     *
+     * @param high Upper 64 bits of the key (ignored for keys of up to 64 bits)
+     * @param low Lower 64 bits of the key
+     *
+     * @return {@code true} if the key was not in the table
+     */
+    boolean add(long high, long low) {
+        int slot = find(high, low);
+
+        if (slot >= 0) {
+            return false;
+        }
+
+        if (size + 1 > lows.length - (lows.length >>> LOAD_SHIFT)) {
+            rehash(lows.length << 1);
+            slot = find(high, low);
+        }
+
+        put(-slot - 1, high, low);
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Remove the key from the table
+     *
+     * @param high Upper 64 bits of the key (ignored for keys of up to 64 bits)
+     * @param low Lower 64 bits of the key
+     *
+     * @return {@code true} if the key was in the table
+     */
+    boolean remove(long high, long low) {
+        int slot = find(high, low);
+
+        if (slot < 0) {
+            return false;
+        }
+
+        int mask = lows.length - 1;
+        int hole = slot;
+
+        // the keys which would be found through the hole are moved into it
+        for (int i = (hole + 1) & mask; isUsed(i); i = (i + 1) & mask) {
+            int home = home(wide ? highs[i] : 0, lows[i]);
+
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                put(hole, wide ? highs[i] : 0, lows[i]);
+                hole = i;
+            }
+        }
+
+        used[hole >>> 6] &= ~(1L << hole);
+        size--;
+
+        if (lows.length > MINIMUM_CAPACITY && size < (lows.length >>> SHRINK_SHIFT)) {
+            rehash(lows.length >>> 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * Pass all keys of the table to the consumer, the table must not be modified meanwhile
+     *
+     * @param consumer Consumer of the keys
+     */
+    void forEach(KeyConsumer consumer) {
+        for (int i = 0; i < lows.length; i++) {
+            if (isUsed(i)) {
+                consumer.accept(wide ? highs[i] : 0, lows[i]);
+            }
+        }
+    }
+
+    /**
+     * Copy the keys in no particular order
+     *
+     * @return Keys of up to 64 bits, or the upper and the lower parts of longer keys one after another
+     */
+    long[] toArray() {
+        long[] keys = new long[wide ? size << 1 : size];
+
+        int position = 0;
+        for (int i = 0; i < lows.length; i++) {
+            if (isUsed(i)) {
+                if (wide) {
+                    keys[position++] = highs[i];
+                }
+
+                keys[position++] = lows[i];
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Copy the keys sorted in the unsigned order
+     *
+     * @return Keys of up to 64 bits, or the upper and the lower parts of longer keys one after another
+     */
+    long[] toSortedArray() {
+        long[] keys = toArray();
+
+        if (wide) {
+            sortPairs(keys, 0, size - 1);
+        } else {
+            // the signed order of keys with the flipped sign bit is the unsigned order of the keys
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] ^= Long.MIN_VALUE;
+            }
+
+            Arrays.sort(keys);
+
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] ^= Long.MIN_VALUE;
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Sort pairs of the upper and the lower parts of keys (quicksort with the middle pivot)
+     *
+     * @param keys Pairs of parts one after another
+     * @param from The first pair (inclusive)
+     * @param to The last pair (inclusive)
+     */
+    private static void sortPairs(long[] keys, int from, int to) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+
+            long pivotHigh = keys[middle << 1];
+            long pivotLow = keys[(middle << 1) + 1];
+
+            int i = from;
+            int j = to;
+
+            while (i <= j) {
+                while (compare(keys, i, pivotHigh, pivotLow) < 0) {
+                    i++;
+                }
+
+                while (compare(keys, j, pivotHigh, pivotLow) > 0) {
+                    j--;
+                }
+
+                if (i <= j) {
+                    swapPairs(keys, i++, j--);
+                }
+            }
+
+            // the smaller part is sorted recursively, so the stack depth is logarithmic
+            if (j - from < to - i) {
+                sortPairs(keys, from, j);
+                from = i;
+            } else {
+                sortPairs(keys, i, to);
+                to = j;
+            }
+        }
+    }
+
+    private static int compare(long[] keys, int pair, long high, long low) {
+        int r = Long.compareUnsigned(keys[pair << 1], high);
+
+        return (r != 0) ? r : Long.compareUnsigned(keys[(pair << 1) + 1], low);
+    }
+
+    private static void swapPairs(long[] keys, int pair1, int pair2) {
+        for (int i = 0; i < 2; i++) {
+            long temp = keys[(pair1 << 1) + i];
+            keys[(pair1 << 1) + i] = keys[(pair2 << 1) + i];
+            keys[(pair2 << 1) + i] = temp;
+        }
+    }
+
+    /**
+     * Find the slot of the key
+     *
+     * @return Slot of the key or {@code -(free slot) - 1} if the key is missing
+     */
+    private int find(long high, long low) {
+        int mask = lows.length - 1;
+
+        for (int i = home(high, low); ; i = (i + 1) & mask) {
+            if (!isUsed(i)) {
+                return -i - 1;
+            }
+
+            if (lows[i] == low && (!wide || highs[i] == high)) {
+                return i;
+            }
+        }
+    }
+
+    private int home(long high, long low) {
+        long hash = wide ? (high * 0x9E37_79B9_7F4A_7C15L) ^ low : low;
+
+        // the finalizer of MurmurHash3 spreads neighbouring keys over the table
+        hash ^= hash >>> 33;
+        hash *= 0xFF51_AFD7_ED55_8CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CE_B9FE_1A85_EC53L;
+        hash ^= hash >>> 33;
+
+        return (int) hash & (lows.length - 1);
+    }
+
+    private boolean isUsed(int slot) {
+        return (used[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void put(int slot, long high, long low) {
+        if (wide) {
+            highs[slot] = high;
+        }
+
+        lows[slot] = low;
+        used[slot >>> 6] |= 1L << slot;
+    }
+
+    private void allocate(int capacity) {
+        highs = wide ? new long[capacity] : null;
+        lows = new long[capacity];
+        used = new long[(capacity + Long.SIZE - 1) >>> 6];
+
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        long[] oldUsed = used;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldLows.length; i++) {
+            if ((oldUsed[i >>> 6] & (1L << i)) != 0) {
+                long high = wide ? oldHighs[i] : 0;
+                long low = oldLows[i];
+
+                put(-find(high, low) - 1, high, low);
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Consumer of keys
+     */
+    @FunctionalInterface
+    interface KeyConsumer {
+
+        void accept(long high, long low);
+
+    }
+
+}
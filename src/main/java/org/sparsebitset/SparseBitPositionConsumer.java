@@ -0,0 +1,18 @@
+package org.sparsebitset;
+
+/**
+ * Callback for ranges of set bits given as positions, it doesn't need a factory of indexes
+ */
+@FunctionalInterface
+public interface SparseBitPositionConsumer {
+
+    /**
+     * Process the range of set bits. Positions are reused between calls, so they must be copied to be kept.
+     *
+     * @param fromInclusive Start of the range (inclusive), the element {@code 0} is the segment of the level
+     *                      {@code 0}
+     * @param toInclusive End of the range (inclusive)
+     */
+    void accept(int[] fromInclusive, int[] toInclusive);
+
+}
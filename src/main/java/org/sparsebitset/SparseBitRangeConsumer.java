@@ -0,0 +1,21 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+
+/**
+ * Callback for ranges of set bits
+ *
+ * @param <I> Type of the index
+ */
+@FunctionalInterface
+public interface SparseBitRangeConsumer<I extends SparseBitIndex> {
+
+    /**
+     * Process the range of set bits
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     */
+    void accept(I fromIndexInclusive, I toIndexInclusive);
+
+}
@@ -0,0 +1,42 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+
+/**
+ * <p>Cursor over maximal ranges of set bits in ascending order</p>
+ *
+ * <p>Typical usage:</p>
+ *
+ * <pre>
+ *     SparseBitRangeCursor&lt;I&gt; cursor = set.rangeCursor();
+ *     while (cursor.next()) {
+ *         process(cursor.from(), cursor.to());
+ *     }
+ * </pre>
+ *
+ * @param <I> Type of the index
+ */
+public interface SparseBitRangeCursor<I extends SparseBitIndex> {
+
+    /**
+     * Move the cursor to the next range
+     *
+     * @return {@code true} if there is one more range
+     */
+    boolean next();
+
+    /**
+     * Get the start of the current range
+     *
+     * @return Start of the range (inclusive)
+     */
+    I from();
+
+    /**
+     * Get the end of the current range
+     *
+     * @return End of the range (inclusive)
+     */
+    I to();
+
+}
@@ -0,0 +1,64 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.math.BigInteger;
+
+/**
+ * Range arithmetic of the default methods of {@link SparseBitSet}, the indexes are compared by their segments
+ * over the levels of the start of the range
+ */
+final class SparseBitRanges {
+
+    private SparseBitRanges() {
+    }
+
+    /**
+     * Check a range
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     */
+    static void checkRange(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        if (fromIndexInclusive == null || toIndexInclusive == null) {
+            throw new IllegalArgumentException("Index can't be null");
+        }
+
+        if (compare(fromIndexInclusive, toIndexInclusive, fromIndexInclusive.levels()) > 0) {
+            throw new IllegalArgumentException("Range is reversed");
+        }
+    }
+
+    /**
+     * Compare indexes
+     *
+     * @param index1 First index
+     * @param index2 Second index
+     * @param levels How many lowest segments to compare
+     *
+     * @return Negative, zero or positive value if the first index is less, equal or greater
+     */
+    static int compare(SparseBitIndex index1, SparseBitIndex index2, int levels) {
+        return SparseBitUtil.comparePositions(segments(index1, levels), segments(index2, levels));
+    }
+
+    /**
+     * Count bits of a range
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     * @param levels How many lowest segments the indexes have
+     *
+     * @return Count of bits
+     */
+    static BigInteger distance(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive, int levels) {
+        return SparseBitUtil.distance(segments(fromIndexInclusive, levels), segments(toIndexInclusive, levels));
+    }
+
+    private static int[] segments(SparseBitIndex index, int levels) {
+        return SparseBitArrayIndex.of(index, levels).segments();
+    }
+
+}
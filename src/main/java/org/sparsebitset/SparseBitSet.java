@@ -2,6 +2,8 @@ package org.sparsebitset;
 
 import org.sparsebitset.index.SparseBitIndex;
 
+import java.math.BigInteger;
+
 /**
  * <p>Sparse bit set abstraction. Unlike standard {@link java.util.BitSet} it can be addressed by very
  * long indexes including IPv6 (which is 128-bit value)</p>
@@ -31,6 +33,13 @@ public interface SparseBitSet<I extends SparseBitIndex> {
      */
     boolean isFull();
 
+    /**
+     * Count set bits in the set
+     *
+     * @return Number of set bits
+     */
+    BigInteger cardinality();
+
     /**
      * Set all bits to 0
      */
@@ -85,6 +94,41 @@ public interface SparseBitSet<I extends SparseBitIndex> {
      */
     void flip(I index);
 
+    /**
+     * Get bits of a batch of indexes
+     *
+     * @param indexes Indexes of the bits
+     * @param result Values of the bits in the same order, the array must be at least as long as the indexes
+     */
+    default void getAll(I[] indexes, boolean[] result) {
+        if (indexes == null || result == null) {
+            throw new IllegalArgumentException("Indexes and result can't be null");
+        }
+
+        if (result.length < indexes.length) {
+            throw new IllegalArgumentException("Result is shorter than indexes: " + result.length);
+        }
+
+        for (int i = 0; i < indexes.length; i++) {
+            result[i] = get(indexes[i]);
+        }
+    }
+
+    /**
+     * Set bits of a batch of indexes
+     *
+     * @param indexes Indexes of the bits
+     */
+    default void setAll(I[] indexes) {
+        if (indexes == null) {
+            throw new IllegalArgumentException("Indexes can't be null");
+        }
+
+        for (I index : indexes) {
+            set(index);
+        }
+    }
+
     /**
      * Set a range of bits
      *
@@ -109,4 +153,121 @@ public interface SparseBitSet<I extends SparseBitIndex> {
      */
     void flip(I fromIndexInclusive, I toIndexInclusive);
 
+    /**
+     * Find the nearest set bit
+     *
+     * @param fromIndexInclusive Where to start the search (inclusive)
+     *
+     * @return Index of the found bit or {@code null} if there is no set bit
+     *
+     * @throws UnsupportedOperationException if the set can't create indexes (the default implementation)
+     */
+    default I nextSetBit(I fromIndexInclusive) {
+        throw new UnsupportedOperationException("Iteration is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Find the nearest clear bit
+     *
+     * @param fromIndexInclusive Where to start the search (inclusive)
+     *
+     * @return Index of the found bit or {@code null} if there is no clear bit
+     *
+     * @throws UnsupportedOperationException if the set can't create indexes (the default implementation)
+     */
+    default I nextClearBit(I fromIndexInclusive) {
+        throw new UnsupportedOperationException("Iteration is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Check whether any bit of a range is set
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     *
+     * @return {@code true} if at least one bit of the range is set
+     */
+    default boolean intersectsRange(I fromIndexInclusive, I toIndexInclusive) {
+        SparseBitRanges.checkRange(fromIndexInclusive, toIndexInclusive);
+
+        I found = nextSetBit(fromIndexInclusive);
+
+        return found != null && SparseBitRanges.compare(found, toIndexInclusive, fromIndexInclusive.levels()) <= 0;
+    }
+
+    /**
+     * Check whether all bits of a range are set
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     *
+     * @return {@code true} if every bit of the range is set
+     */
+    default boolean coversRange(I fromIndexInclusive, I toIndexInclusive) {
+        SparseBitRanges.checkRange(fromIndexInclusive, toIndexInclusive);
+
+        I found = nextClearBit(fromIndexInclusive);
+
+        return found == null || SparseBitRanges.compare(found, toIndexInclusive, fromIndexInclusive.levels()) > 0;
+    }
+
+    /**
+     * Count set bits of a range
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     *
+     * @return Count of set bits
+     */
+    default BigInteger countInRange(I fromIndexInclusive, I toIndexInclusive) {
+        SparseBitRanges.checkRange(fromIndexInclusive, toIndexInclusive);
+
+        int levels = fromIndexInclusive.levels();
+        BigInteger count = BigInteger.ZERO;
+
+        I start = nextSetBit(fromIndexInclusive);
+
+        while (start != null && SparseBitRanges.compare(start, toIndexInclusive, levels) <= 0) {
+            I end = nextClearBit(start);
+
+            if (end == null || SparseBitRanges.compare(end, toIndexInclusive, levels) > 0) {
+                return count.add(SparseBitRanges.distance(start, toIndexInclusive, levels));
+            }
+
+            // the range of set bits ends right before the clear bit
+            count = count.add(SparseBitRanges.distance(start, end, levels)).subtract(BigInteger.ONE);
+            start = nextSetBit(end);
+        }
+
+        return count;
+    }
+
+    /**
+     * Create a cursor over maximal ranges of set bits in ascending order
+     *
+     * @return Cursor instance
+     *
+     * @throws UnsupportedOperationException if the set can't create indexes (the default implementation)
+     */
+    default SparseBitRangeCursor<I> rangeCursor() {
+        throw new UnsupportedOperationException("Iteration is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Process all maximal ranges of set bits in ascending order
+     *
+     * @param consumer Callback for ranges
+     */
+    default void forEachRange(SparseBitRangeConsumer<I> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer can't be null");
+        }
+
+        SparseBitRangeCursor<I> cursor = rangeCursor();
+
+        while (cursor.next()) {
+            consumer.accept(cursor.from(), cursor.to());
+        }
+    }
+
 }
@@ -0,0 +1,137 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.level.SparseBitLevelBuilder;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Builder of a heap set from keys and ranges sorted in the unsigned order. Levels are built bottom-up in one
+ * pass, so every level is allocated once in its final form and there are no walks from the top for every key.
+ * Ranges which cover whole underlying levels are kept as FULL levels right away. The indexes must have up to
+ * 8 levels, so every key fits into {@code long}.</p>
+ *
+ * <pre>
+ *     SparseBitSetBuilder&lt;SparseBitIntIndex&gt; builder = new SparseBitSetBuilder&lt;&gt;(SparseBitIntIndex.FACTORY);
+ *
+ *     builder.add(0x0A000000L, 0x0AFFFFFFL);
+ *     builder.add(0xC0A80001L);
+ *
+ *     DeepSparseBitSet&lt;SparseBitIntIndex&gt; set = builder.build();
+ * </pre>
+ *
+ * @param <I> Type of index
+ */
+public class SparseBitSetBuilder<I extends SparseBitIndex> {
+
+    private final int levels;
+
+    private final SparseBitIndexFactory<I> factory;
+
+    private final SparseBitLevelBuilder builder;
+
+    /**
+     * Constructs a builder of a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index (up to 8)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    public SparseBitSetBuilder(SparseBitIndexFactory<I> factory, int maximumOccupancy) {
+        this(DeepSparseBitSet.checkFactory(factory).levels(), maximumOccupancy, factory);
+    }
+
+    /**
+     * Constructs a builder of a precise set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index (up to 8)
+     */
+    public SparseBitSetBuilder(SparseBitIndexFactory<I> factory) {
+        this(factory, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Constructs a builder
+     *
+     * @param levels How many levels are in the index (up to 8)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    public SparseBitSetBuilder(int levels, int maximumOccupancy) {
+        this(levels, maximumOccupancy, null);
+    }
+
+    private SparseBitSetBuilder(int levels, int maximumOccupancy, SparseBitIndexFactory<I> factory) {
+        DeepSparseBitSet.checkLevels(levels);
+        DeepSparseBitSet.checkOccupancy(maximumOccupancy);
+
+        this.levels = levels;
+        this.factory = factory;
+        this.builder = new SparseBitLevelBuilder(maximumOccupancy, levels);
+    }
+
+    /**
+     * Build a set from sorted keys, the subtrees of the top level segments are built in parallel tasks and then
+     * attached to the top level. The set is exactly the same as the one built by a single builder.
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index (up to 8)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     * @param keys Indexes of the bits sorted in the unsigned order (duplicates are allowed)
+     * @param pool Pool which runs the tasks
+     *
+     * @return Set instance
+     */
+    public static <I extends SparseBitIndex> DeepSparseBitSet<I> build(SparseBitIndexFactory<I> factory,
+                                                                       int maximumOccupancy,
+                                                                       long[] keys,
+                                                                       ForkJoinPool pool) {
+        int levels = DeepSparseBitSet.checkFactory(factory).levels();
+
+        DeepSparseBitSet.checkLevels(levels);
+        DeepSparseBitSet.checkOccupancy(maximumOccupancy);
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Keys can't be null");
+        }
+
+        DeepSparseBitSet.checkPool(pool);
+
+        return new DeepSparseBitSet<>(levels, factory,
+                SparseBitLevelBuilder.build(maximumOccupancy, levels, keys, pool));
+    }
+
+    /**
+     * Set a bit
+     *
+     * @param key Index of the bit (unsigned), not lower than the first bit of the previous key or range
+     *
+     * @return The builder
+     */
+    public SparseBitSetBuilder<I> add(long key) {
+        builder.add(key);
+        return this;
+    }
+
+    /**
+     * Set a range of bits, ranges may overlap
+     *
+     * @param fromInclusive The first bit (unsigned), not lower than the first bit of the previous key or range
+     * @param toInclusive The last bit (unsigned)
+     *
+     * @return The builder
+     */
+    public SparseBitSetBuilder<I> add(long fromInclusive, long toInclusive) {
+        builder.add(fromInclusive, toInclusive);
+        return this;
+    }
+
+    /**
+     * Build the set, the builder can't be used afterwards
+     *
+     * @return Set instance
+     */
+    public DeepSparseBitSet<I> build() {
+        return new DeepSparseBitSet<>(levels, factory, builder.build());
+    }
+
+}
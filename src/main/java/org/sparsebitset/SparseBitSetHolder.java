@@ -0,0 +1,259 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * <p>Holder of a published set which is replaced by new generations as a whole. Readers take a lease on the
+ * current generation and the holder counts the leases of every generation, so a replaced generation is released
+ * exactly once as soon as the last reader returns its lease (e.g. an off-heap or a memory-mapped set is closed
+ * without waiting for the garbage collector to find out that nobody uses it).</p>
+ *
+ * <pre>
+ *     try (SparseBitSetHolder.Lease&lt;SparseBitIntIndex&gt; lease = holder.acquire()) {
+ *         lease.set().get(index);
+ *     }
+ * </pre>
+ *
+ * <p>The holder is safe for concurrent readers and publishers. Sets are not copied, so a published set must
+ * not be modified afterwards (publish a {@link DeepSparseBitSet#snapshot()} of a set which is still being
+ * updated, or a {@link DeepSparseBitSet#copy()} of an off-heap set so that the copy is closed on release).</p>
+ *
+ * @param <I> Type of index
+ */
+public class SparseBitSetHolder<I extends SparseBitIndex> implements AutoCloseable {
+
+    private final AtomicReference<Generation<I>> current;
+
+    private final Consumer<? super SparseBitSet<I>> releaser;
+
+    /**
+     * Constructs a holder which closes replaced generations which hold resources ({@link OffHeapSparseBitSet}
+     * and {@link MappedSparseBitSet} free their memory right away) and just forgets the others
+     *
+     * @param initial Initial generation of the set
+     */
+    public SparseBitSetHolder(SparseBitSet<I> initial) {
+        this(initial, SparseBitSetHolder::closeSet);
+    }
+
+    /**
+     * Constructs a holder
+     *
+     * @param initial Initial generation of the set
+     * @param releaser Callback which is called for every replaced generation once it has no readers
+     */
+    public SparseBitSetHolder(SparseBitSet<I> initial, Consumer<? super SparseBitSet<I>> releaser) {
+        if (releaser == null) {
+            throw new IllegalArgumentException("Releaser can't be null");
+        }
+
+        this.releaser = releaser;
+        this.current = new AtomicReference<>(new Generation<>(checkSet(initial), 0, releaser));
+    }
+
+    /**
+     * Take a lease on the current generation, the generation is not released until the lease is closed
+     *
+     * @return Lease object
+     *
+     * @throws IllegalStateException if the holder is closed
+     */
+    public Lease<I> acquire() {
+        while (true) {
+            Generation<I> generation = current.get();
+
+            if (generation == null) {
+                throw new IllegalStateException("Holder is closed");
+            }
+
+            // a generation which is being released can't be retained, the next one is already published
+            if (generation.retain()) {
+                return new Lease<>(generation);
+            }
+        }
+    }
+
+    /**
+     * Replace the current generation, the replaced one is released when its last lease is closed
+     *
+     * @param set New generation of the set
+     *
+     * @return Number of the new generation
+     *
+     * @throws IllegalStateException if the holder is closed
+     */
+    public long publish(SparseBitSet<I> set) {
+        checkSet(set);
+
+        while (true) {
+            Generation<I> previous = current.get();
+
+            if (previous == null) {
+                throw new IllegalStateException("Holder is closed");
+            }
+
+            Generation<I> next = new Generation<>(set, previous.number + 1, releaser);
+
+            if (current.compareAndSet(previous, next)) {
+                previous.release();
+
+                return next.number;
+            }
+        }
+    }
+
+    /**
+     * Get the number of the current generation
+     *
+     * @return Generation number, the initial set has number {@code 0}
+     *
+     * @throws IllegalStateException if the holder is closed
+     */
+    public long generation() {
+        Generation<I> generation = current.get();
+
+        if (generation == null) {
+            throw new IllegalStateException("Holder is closed");
+        }
+
+        return generation.number;
+    }
+
+    /**
+     * Close the holder, the current generation is released when its last lease is closed
+     */
+    @Override
+    public void close() {
+        Generation<I> generation = current.getAndSet(null);
+
+        if (generation != null) {
+            generation.release();
+        }
+    }
+
+    /**
+     * Default releaser, it closes a set which is {@link AutoCloseable}
+     *
+     * @param set Released set
+     */
+    private static void closeSet(SparseBitSet<?> set) {
+        if (set instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) set).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Set can't be closed", e);
+            }
+        }
+    }
+
+    private static <I extends SparseBitIndex> SparseBitSet<I> checkSet(SparseBitSet<I> set) {
+        if (set == null) {
+            throw new IllegalArgumentException("Set can't be null");
+        }
+
+        return set;
+    }
+
+    /**
+     * Lease on a generation of the set, it must be closed by the reader which acquired it
+     *
+     * @param <I> Type of index
+     */
+    public static final class Lease<I extends SparseBitIndex> implements AutoCloseable {
+
+        private final Generation<I> generation;
+
+        private boolean closed;
+
+        private Lease(Generation<I> generation) {
+            this.generation = generation;
+        }
+
+        /**
+         * Get the set of the generation
+         *
+         * @return Set instance
+         *
+         * @throws IllegalStateException if the lease is closed
+         */
+        public SparseBitSet<I> set() {
+            if (closed) {
+                throw new IllegalStateException("Lease is closed");
+            }
+
+            return generation.set;
+        }
+
+        /**
+         * Get the number of the generation
+         *
+         * @return Generation number
+         */
+        public long generation() {
+            return generation.number;
+        }
+
+        /**
+         * Return the lease, repeated calls don't have any effect
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+
+                generation.release();
+            }
+        }
+    }
+
+    /**
+     * Published set along with the number of its holders (the holder itself and the leases)
+     *
+     * @param <I> Type of index
+     */
+    private static final class Generation<I extends SparseBitIndex> {
+
+        private final SparseBitSet<I> set;
+
+        private final long number;
+
+        private final Consumer<? super SparseBitSet<I>> releaser;
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Generation(SparseBitSet<I> set, long number, Consumer<? super SparseBitSet<I>> releaser) {
+            this.set = set;
+            this.number = number;
+            this.releaser = releaser;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int count = references.get();
+
+                if (count == 0) {
+                    return false;
+                }
+
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            int count = references.decrementAndGet();
+
+            if (count == 0) {
+                releaser.accept(set);
+            } else if (count < 0) {
+                throw new IllegalStateException("Generation " + number + " is released twice");
+            }
+        }
+    }
+
+}
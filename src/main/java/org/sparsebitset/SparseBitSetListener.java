@@ -0,0 +1,39 @@
+package org.sparsebitset;
+
+/**
+ * <p>Listener of operations of an instrumented set. It is called by the threads which use the set, so it must be
+ * fast and thread-safe. All methods do nothing by default.</p>
+ *
+ * @see InstrumentedSparseBitSetProxy
+ * @see InstrumentedReadWriteLock
+ * @see SparseBitSetMetrics
+ */
+public interface SparseBitSetListener {
+
+    /**
+     * Called before every operation
+     *
+     * @param operation Kind of operation
+     */
+    default void onOperation(SparseBitSetOperation operation) {
+    }
+
+    /**
+     * Called after a sampled operation
+     *
+     * @param operation Kind of operation
+     * @param nanos Duration of the operation in nanoseconds
+     */
+    default void onLatency(SparseBitSetOperation operation, long nanos) {
+    }
+
+    /**
+     * Called after every lock acquisition
+     *
+     * @param write {@code true} for the write lock
+     * @param nanos How long the thread waited for the lock in nanoseconds, {@code 0} if the lock was free
+     */
+    default void onLockWait(boolean write, long nanos) {
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.sparsebitset;
+
+import org.sparsebitset.level.SparseBitLevelEvent;
+import org.sparsebitset.level.SparseBitLevelListener;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Collector of operation counts, sampled latencies, lock waits and structural changes of levels. Counters are
+ * striped, so concurrent threads don't contend on them. Latencies and waits are kept in histograms with
+ * power-of-two buckets: the bucket {@code i} counts durations from {@code 2^(i-1)} inclusive to {@code 2^i}
+ * exclusive nanoseconds, the bucket {@code 0} counts zero durations.</p>
+ *
+ * <pre>
+ *     SparseBitSetMetrics metrics = new SparseBitSetMetrics();
+ *     SparseBitSet&lt;SparseBitIntIndex&gt; set = ConcurrentSparseBitSetProxy.proxy(delegate, metrics);
+ *
+ *     // structural changes are reported by the sets which are created with the listener
+ *     DeepSparseBitSet&lt;SparseBitIntIndex&gt; delegate = new DeepSparseBitSet&lt;&gt;(SparseBitIntIndex.FACTORY, 256, metrics);
+ * </pre>
+ */
+public class SparseBitSetMetrics implements SparseBitSetListener, SparseBitLevelListener {
+
+    /**
+     * Count of histogram buckets
+     */
+    public static final int BUCKETS = Long.SIZE;
+
+    private static final SparseBitSetOperation[] OPERATIONS = SparseBitSetOperation.values();
+
+    private static final SparseBitLevelEvent[] EVENTS = SparseBitLevelEvent.values();
+
+    private final LongAdder[] operations = adders(OPERATIONS.length);
+
+    private final LongAdder[] latencyTotals = adders(OPERATIONS.length);
+
+    private final LongAdder[][] latencies = new LongAdder[OPERATIONS.length][];
+
+    private final LongAdder[] lockAcquisitions = adders(2);
+
+    private final LongAdder[] lockContentions = adders(2);
+
+    private final LongAdder[] lockWaitTotals = adders(2);
+
+    private final LongAdder[][] lockWaits = {adders(BUCKETS), adders(BUCKETS)};
+
+    private final LongAdder[] events = adders(EVENTS.length);
+
+    public SparseBitSetMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = adders(BUCKETS);
+        }
+    }
+
+    @Override
+    public void onOperation(SparseBitSetOperation operation) {
+        operations[operation.ordinal()].increment();
+    }
+
+    @Override
+    public void onLatency(SparseBitSetOperation operation, long nanos) {
+        latencyTotals[operation.ordinal()].add(nanos);
+        latencies[operation.ordinal()][bucket(nanos)].increment();
+    }
+
+    @Override
+    public void onLockWait(boolean write, long nanos) {
+        int kind = write ? 1 : 0;
+
+        lockAcquisitions[kind].increment();
+
+        if (nanos > 0) {
+            lockContentions[kind].increment();
+            lockWaitTotals[kind].add(nanos);
+        }
+
+        lockWaits[kind][bucket(nanos)].increment();
+    }
+
+    @Override
+    public void onLevelEvent(SparseBitLevelEvent event, int level) {
+        events[event.ordinal()].increment();
+    }
+
+    /**
+     * Get the count of operations
+     *
+     * @param operation Kind of operation
+     *
+     * @return Count of operations
+     */
+    public long getCount(SparseBitSetOperation operation) {
+        return operations[operation.ordinal()].sum();
+    }
+
+    /**
+     * Get the count of measured operations
+     *
+     * @param operation Kind of operation
+     *
+     * @return Count of sampled operations
+     */
+    public long getSampleCount(SparseBitSetOperation operation) {
+        return sum(latencies[operation.ordinal()]);
+    }
+
+    /**
+     * Get the total duration of measured operations
+     *
+     * @param operation Kind of operation
+     *
+     * @return Duration in nanoseconds
+     */
+    public long getLatencyTotal(SparseBitSetOperation operation) {
+        return latencyTotals[operation.ordinal()].sum();
+    }
+
+    /**
+     * Get the histogram of durations of measured operations
+     *
+     * @param operation Kind of operation
+     *
+     * @return Array of {@link #BUCKETS} counts
+     */
+    public long[] getLatencyHistogram(SparseBitSetOperation operation) {
+        return histogram(latencies[operation.ordinal()]);
+    }
+
+    /**
+     * Get the count of lock acquisitions
+     *
+     * @param write {@code true} for the write lock
+     *
+     * @return Count of acquisitions
+     */
+    public long getLockAcquisitions(boolean write) {
+        return lockAcquisitions[write ? 1 : 0].sum();
+    }
+
+    /**
+     * Get the count of lock acquisitions which had to wait
+     *
+     * @param write {@code true} for the write lock
+     *
+     * @return Count of contended acquisitions
+     */
+    public long getLockContentions(boolean write) {
+        return lockContentions[write ? 1 : 0].sum();
+    }
+
+    /**
+     * Get the total time the threads waited for the lock
+     *
+     * @param write {@code true} for the write lock
+     *
+     * @return Duration in nanoseconds
+     */
+    public long getLockWaitTotal(boolean write) {
+        return lockWaitTotals[write ? 1 : 0].sum();
+    }
+
+    /**
+     * Get the histogram of waits for the lock (uncontended acquisitions are in the bucket {@code 0})
+     *
+     * @param write {@code true} for the write lock
+     *
+     * @return Array of {@link #BUCKETS} counts
+     */
+    public long[] getLockWaitHistogram(boolean write) {
+        return histogram(lockWaits[write ? 1 : 0]);
+    }
+
+    /**
+     * Get the count of structural changes
+     *
+     * @param event Kind of change
+     *
+     * @return Count of changes
+     */
+    public long getEventCount(SparseBitLevelEvent event) {
+        return events[event.ordinal()].sum();
+    }
+
+    /**
+     * Get the histogram bucket of a duration
+     *
+     * @param nanos Duration in nanoseconds
+     *
+     * @return Bucket number
+     */
+    static int bucket(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos));
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+
+    private static long[] histogram(LongAdder[] buckets) {
+        long[] histogram = new long[buckets.length];
+
+        for (int i = 0; i < buckets.length; i++) {
+            histogram[i] = buckets[i].sum();
+        }
+
+        return histogram;
+    }
+
+    private static long sum(LongAdder[] buckets) {
+        long total = 0;
+
+        for (LongAdder bucket : buckets) {
+            total += bucket.sum();
+        }
+
+        return total;
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.sparsebitset;
+
+/**
+ * Kinds of operations reported by {@link InstrumentedSparseBitSetProxy}
+ */
+public enum SparseBitSetOperation {
+
+    /**
+     * {@link SparseBitSet#get(org.sparsebitset.index.SparseBitIndex)}
+     */
+    GET,
+
+    /**
+     * {@link SparseBitSet#set(org.sparsebitset.index.SparseBitIndex)}
+     */
+    SET,
+
+    /**
+     * {@link SparseBitSet#clear(org.sparsebitset.index.SparseBitIndex)}
+     */
+    CLEAR,
+
+    /**
+     * {@link SparseBitSet#flip(org.sparsebitset.index.SparseBitIndex)}
+     */
+    FLIP,
+
+    /**
+     * Batch get of many indexes
+     */
+    GET_BATCH,
+
+    /**
+     * Batch set of many indexes
+     */
+    SET_BATCH,
+
+    /**
+     * Set of a range
+     */
+    SET_RANGE,
+
+    /**
+     * Clear of a range
+     */
+    CLEAR_RANGE,
+
+    /**
+     * Flip of a range
+     */
+    FLIP_RANGE,
+
+    /**
+     * Search of the next set or clear bit
+     */
+    SEARCH,
+
+    /**
+     * Iteration over ranges (the cursor is counted when it is created)
+     */
+    ITERATION,
+
+    /**
+     * Operations on the whole set: clear, set and flip of all bits
+     */
+    WHOLE,
+
+    /**
+     * Queries of the whole set: emptiness, fullness, cardinality and validation
+     */
+    QUERY,
+
+    /**
+     * Queries of a range: intersection, coverage and count of set bits
+     */
+    RANGE_QUERY,
+
+    /**
+     * Copy of the set
+     */
+    COPY
+
+}
@@ -0,0 +1,88 @@
+package org.sparsebitset;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.index.SparseBitIndexFactory;
+import org.sparsebitset.level.SparseBitLevel;
+import org.sparsebitset.level.SparseBitLevels;
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Sparse hierarchical bit set for concurrent writers. Unlike {@link ConcurrentSparseBitSetProxy} with its
+ * single lock every segment of the top level (e.g. every /8 prefix of IPv4 or IPv6 addresses) has its own
+ * read-write lock, so writes into different segments run in parallel.</p>
+ *
+ * <p>Single bit and range operations are atomic, range operations take the locks of their segments in the
+ * ascending order. Iteration and algebra are atomic for every segment of the top level but not as a whole.
+ * Algebra is supported with another striped set only.</p>
+ *
+ * @param <I> Index type
+ */
+public class StripedSparseBitSet<I extends SparseBitIndex> extends DeepSparseBitSet<I> {
+
+    /**
+     * Constructs a set
+     *
+     * @param levels How many levels are in the index (bits = levels * 8), at least 2
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public StripedSparseBitSet(int levels, int maximumOccupancy) {
+        super(checkStripedLevels(levels), null,
+                SparseBitLevels.createStripedLevel(checkOccupancy(maximumOccupancy), levels));
+    }
+
+    /**
+     * Constructs a precise set with no false positives
+     *
+     * @param levels How many levels are in the index (bits = levels * 8), at least 2
+     */
+    public StripedSparseBitSet(int levels) {
+        this(levels, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Constructs a set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index (at least 2)
+     * @param maximumOccupancy How many items (bits) must be in underlying layer in order to collapse it (2..256)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public StripedSparseBitSet(SparseBitIndexFactory<I> factory, int maximumOccupancy) {
+        super(checkStripedLevels(checkFactory(factory).levels()), factory,
+                SparseBitLevels.createStripedLevel(checkOccupancy(maximumOccupancy), factory.levels()));
+    }
+
+    /**
+     * Constructs a precise set which is able to return indexes
+     *
+     * @param factory Factory of indexes, defines how many levels are in the index (at least 2)
+     */
+    public StripedSparseBitSet(SparseBitIndexFactory<I> factory) {
+        this(factory, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    /**
+     * Private internal constructor
+     *
+     * @param levels Number of level
+     * @param factory Factory of indexes (optional)
+     * @param base Base level
+     */
+    private StripedSparseBitSet(int levels, SparseBitIndexFactory<I> factory, SparseBitLevel base) {
+        super(levels, factory, base);
+    }
+
+    @Override
+    public StripedSparseBitSet<I> copy() {
+        return new StripedSparseBitSet<>(levels, factory, base.copy());
+    }
+
+    private static int checkStripedLevels(int levels) {
+        if (checkLevels(levels) < 2) {
+            throw new IllegalArgumentException("Striped set needs at least 2 levels: " + levels);
+        }
+
+        return levels;
+    }
+
+}
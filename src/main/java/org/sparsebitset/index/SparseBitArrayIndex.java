@@ -0,0 +1,120 @@
+package org.sparsebitset.index;
+
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.util.Arrays;
+
+/**
+ * <p>Index backed by an array of segments where the element {@code 0} is the segment of the level {@code 0}</p>
+ *
+ * <p>The array is not copied so the index is mutable through it. Sets use it internally as a reusable
+ * position for iteration.</p>
+ */
+public final class SparseBitArrayIndex implements SparseBitIndex, Comparable<SparseBitArrayIndex> {
+
+    private final int[] segments;
+
+    /**
+     * Constructs an index over an array of segments
+     *
+     * @param segments Segments, the element {@code 0} is the segment of the level {@code 0}
+     */
+    public SparseBitArrayIndex(int[] segments) {
+        if (segments == null) {
+            throw new IllegalArgumentException("Segments can't be null");
+        }
+
+        this.segments = segments;
+    }
+
+    /**
+     * Constructs an index with the same lowest segments as the source has
+     *
+     * @param source Source of segments
+     * @param levels Number of levels to copy
+     *
+     * @return Index instance
+     */
+    public static SparseBitArrayIndex of(SparseBitIndex source, int levels) {
+        int[] segments = new int[levels];
+
+        for (int level = 0; level < levels; level++) {
+            int segment = source.segment(level);
+            SparseBitUtil.checkSegment(segment);
+
+            segments[level] = segment;
+        }
+
+        return new SparseBitArrayIndex(segments);
+    }
+
+    /**
+     * Get the underlying array of segments
+     *
+     * @return Segments, the element {@code 0} is the segment of the level {@code 0}
+     */
+    public int[] segments() {
+        return segments;
+    }
+
+    @Override
+    public int segment(int level) {
+        if (0 <= level && level < segments.length) {
+            return segments[level];
+        } else {
+            throw new IndexOutOfBoundsException("Level is out of bound for int[" + segments.length + "]: " + level);
+        }
+    }
+
+    @Override
+    public int levels() {
+        return segments.length;
+    }
+
+    @Override
+    public int compareTo(SparseBitArrayIndex that) {
+        int levels1 = this.segments.length;
+        int levels2 = that.segments.length;
+        if (levels1 != levels2) {
+            throw new IllegalArgumentException("Can not compare indices with different levels");
+        }
+
+        for (int level = levels1 - 1; level >= 0; level--) {
+            int r = Integer.compare(this.segments[level], that.segments[level]);
+
+            if (r != 0) {
+                return r;
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SparseBitArrayIndex that = (SparseBitArrayIndex) o;
+
+        return Arrays.equals(this.segments, that.segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(segments.length * 2);
+
+        for (int level = segments.length - 1; level >= 0; level--) {
+            sb.append(String.format("%02X", segments[level]));
+        }
+
+        return sb.toString();
+    }
+
+}
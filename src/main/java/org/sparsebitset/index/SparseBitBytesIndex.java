@@ -25,6 +25,49 @@ public class SparseBitBytesIndex implements SparseBitIndex, Comparable<SparseBit
         return new SparseBitBytesIndex(index);
     }
 
+    /**
+     * Factory of indexes for {@code byte} arrays of the fixed length
+     *
+     * @param levels Length of the arrays
+     *
+     * @return Factory instance
+     */
+    public static SparseBitIndexFactory<SparseBitBytesIndex> factory(int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Need positive level count: " + levels);
+        }
+
+        return new SparseBitIndexFactory<SparseBitBytesIndex>() {
+            @Override
+            public int levels() {
+                return levels;
+            }
+
+            @Override
+            public SparseBitBytesIndex create(SparseBitIndex source) {
+                return new SparseBitBytesIndex(toBytes(source, levels));
+            }
+        };
+    }
+
+    /**
+     * Convert segments of an index to a {@code byte} array (the first byte is the highest)
+     *
+     * @param source Source of segments
+     * @param levels Length of the array
+     *
+     * @return Array of segments
+     */
+    static byte[] toBytes(SparseBitIndex source, int levels) {
+        byte[] bytes = new byte[levels];
+
+        for (int level = 0; level < levels; level++) {
+            bytes[levels - 1 - level] = (byte) source.segment(level);
+        }
+
+        return bytes;
+    }
+
     @Override
     public int segment(int level) {
         if (0 <= level && level < index.length) {
@@ -0,0 +1,31 @@
+package org.sparsebitset.index;
+
+/**
+ * <p>Factory creates indexes of a particular type. It is used by the sets when they have to return an index
+ * to the caller, for example on iteration.</p>
+ *
+ * @param <I> Type of the index
+ */
+public interface SparseBitIndexFactory<I extends SparseBitIndex> {
+
+    /**
+     * Request the number of levels in the indexes created by this factory
+     *
+     * @return How many levels (bytes) the created index is consist of
+     *
+     * @see SparseBitIndex#levels()
+     */
+    int levels();
+
+    /**
+     * Create an index with the same segments as the source has. Only {@link #levels()} lowest segments of
+     * the source are used. The source must not be retained by the created index since it is usually
+     * a reusable object.
+     *
+     * @param source Source of segments
+     *
+     * @return New index
+     */
+    I create(SparseBitIndex source);
+
+}
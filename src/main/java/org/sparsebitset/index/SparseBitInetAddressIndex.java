@@ -1,12 +1,23 @@
 package org.sparsebitset.index;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 /**
  * Index for {@link InetAddress}
  */
 public class SparseBitInetAddressIndex extends SparseBitBytesIndex {
 
+    /**
+     * Factory of IPv4 address indexes
+     */
+    public static final SparseBitIndexFactory<SparseBitInetAddressIndex> IPV4_FACTORY = new Factory(4);
+
+    /**
+     * Factory of IPv6 address indexes
+     */
+    public static final SparseBitIndexFactory<SparseBitInetAddressIndex> IPV6_FACTORY = new Factory(16);
+
     protected SparseBitInetAddressIndex(InetAddress address) {
         super(address.getAddress());
     }
@@ -15,4 +26,30 @@ public class SparseBitInetAddressIndex extends SparseBitBytesIndex {
         return new SparseBitInetAddressIndex(index);
     }
 
+    private static final class Factory implements SparseBitIndexFactory<SparseBitInetAddressIndex> {
+
+        private final int levels;
+
+        private Factory(int levels) {
+            this.levels = levels;
+        }
+
+        @Override
+        public int levels() {
+            return levels;
+        }
+
+        @Override
+        public SparseBitInetAddressIndex create(SparseBitIndex source) {
+            InetAddress address;
+            try {
+                address = InetAddress.getByAddress(toBytes(source, levels));
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Completely unexpected exception", e);
+            }
+
+            return new SparseBitInetAddressIndex(address);
+        }
+    }
+
 }
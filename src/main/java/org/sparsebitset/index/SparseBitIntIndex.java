@@ -9,6 +9,11 @@ public class SparseBitIntIndex implements SparseBitIndex, Comparable<SparseBitIn
 
     public static final int LEVELS = Integer.BYTES;
 
+    /**
+     * Factory of {@code int} indexes
+     */
+    public static final SparseBitIndexFactory<SparseBitIntIndex> FACTORY = new Factory();
+
     private final int index;
 
     protected SparseBitIntIndex(int index) {
@@ -66,4 +71,23 @@ public class SparseBitIntIndex implements SparseBitIndex, Comparable<SparseBitIn
         return String.format("%08X", index);
     }
 
+    private static final class Factory implements SparseBitIndexFactory<SparseBitIntIndex> {
+
+        @Override
+        public int levels() {
+            return LEVELS;
+        }
+
+        @Override
+        public SparseBitIntIndex create(SparseBitIndex source) {
+            int index = 0;
+
+            for (int level = LEVELS - 1; level >= 0; level--) {
+                index = (index << 8) | source.segment(level);
+            }
+
+            return new SparseBitIntIndex(index);
+        }
+    }
+
 }
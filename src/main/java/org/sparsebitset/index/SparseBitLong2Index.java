@@ -9,6 +9,11 @@ public class SparseBitLong2Index implements SparseBitIndex, Comparable<SparseBit
 
     public static final int LEVELS = 2 * Long.BYTES;
 
+    /**
+     * Factory of 128-bit indexes
+     */
+    public static final SparseBitIndexFactory<SparseBitLong2Index> FACTORY = new Factory();
+
     private final long index1;
 
     private final long index2;
@@ -151,4 +156,28 @@ public class SparseBitLong2Index implements SparseBitIndex, Comparable<SparseBit
         return String.format("%016X%016X", index1, index2);
     }
 
+    private static final class Factory implements SparseBitIndexFactory<SparseBitLong2Index> {
+
+        @Override
+        public int levels() {
+            return LEVELS;
+        }
+
+        @Override
+        public SparseBitLong2Index create(SparseBitIndex source) {
+            long index1 = 0;
+            long index2 = 0;
+
+            for (int level = LEVELS - 1; level >= Long.BYTES; level--) {
+                index1 = (index1 << 8) | source.segment(level);
+            }
+
+            for (int level = Long.BYTES - 1; level >= 0; level--) {
+                index2 = (index2 << 8) | source.segment(level);
+            }
+
+            return new SparseBitLong2Index(index1, index2);
+        }
+    }
+
 }
@@ -9,6 +9,11 @@ public class SparseBitLongIndex implements SparseBitIndex, Comparable<SparseBitL
 
     public static final int LEVELS = Long.BYTES;
 
+    /**
+     * Factory of {@code long} indexes
+     */
+    public static final SparseBitIndexFactory<SparseBitLongIndex> FACTORY = new Factory();
+
     private final long index;
 
     protected SparseBitLongIndex(long index) {
@@ -74,4 +79,23 @@ public class SparseBitLongIndex implements SparseBitIndex, Comparable<SparseBitL
         return String.format("%016X", index);
     }
 
+    private static final class Factory implements SparseBitIndexFactory<SparseBitLongIndex> {
+
+        @Override
+        public int levels() {
+            return LEVELS;
+        }
+
+        @Override
+        public SparseBitLongIndex create(SparseBitIndex source) {
+            long index = 0;
+
+            for (int level = LEVELS - 1; level >= 0; level--) {
+                index = (index << 8) | source.segment(level);
+            }
+
+            return new SparseBitLongIndex(index);
+        }
+    }
+
 }
@@ -1,6 +1,12 @@
 package org.sparsebitset.level;
 
 import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>Internal level interface</p>
@@ -11,6 +17,8 @@ public interface SparseBitLevel {
 
     SparseBitLevel copy();
 
+    int getMaximumOccupancy();
+
     boolean isEmpty();
 
     boolean isFull();
@@ -23,6 +31,36 @@ public interface SparseBitLevel {
 
     void validate();
 
+    /**
+     * Validate the level, underlying levels may be validated in parallel tasks
+     *
+     * @param pool Pool which runs the tasks
+     */
+    default void validate(ForkJoinPool pool) {
+        validate();
+    }
+
+    /**
+     * Upper 64 bits of the unsigned 128-bit number of set bits
+     *
+     * @return Upper part of the cardinality
+     */
+    long cardinalityHigh();
+
+    /**
+     * Lower 64 bits of the unsigned 128-bit number of set bits
+     *
+     * @return Lower part of the cardinality
+     */
+    long cardinalityLow();
+
+    /**
+     * Exact number of set bits
+     *
+     * @return Cardinality of the level
+     */
+    BigInteger cardinality();
+
     boolean get(SparseBitIndex index);
 
     boolean set(SparseBitIndex index);
@@ -37,4 +75,175 @@ public interface SparseBitLevel {
 
     void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive);
 
+    boolean get(long index);
+
+    boolean set(long index);
+
+    boolean clear(long index);
+
+    void flip(long index);
+
+    /**
+     * Get bits of a group of primitive indexes
+     *
+     * @param keys Primitive indexes sorted in unsigned order
+     * @param from Position of the first index of the group (inclusive)
+     * @param to Position of the last index of the group (exclusive)
+     * @param bitmap Bitmap where the bit of a position is set if the bit of the index on this position is set
+     */
+    default void get(long[] keys, int from, int to, long[] bitmap) {
+        for (int i = from; i < to; i++) {
+            if (get(keys[i])) {
+                bitmap[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Set bits of a group of primitive indexes
+     *
+     * @param keys Primitive indexes sorted in unsigned order
+     * @param from Position of the first index of the group (inclusive)
+     * @param to Position of the last index of the group (exclusive)
+     */
+    default void set(long[] keys, int from, int to) {
+        for (int i = from; i < to; i++) {
+            set(keys[i]);
+        }
+    }
+
+    /**
+     * Find the nearest set bit starting from the position (inclusive)
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}. On success
+     *                 it is replaced with the found position, otherwise it is left in undefined state.
+     *
+     * @return {@code true} if a bit is found
+     */
+    boolean nextSetBit(int[] position);
+
+    /**
+     * Find the nearest clear bit starting from the position (inclusive)
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}. On success
+     *                 it is replaced with the found position, otherwise it is left in undefined state.
+     *
+     * @return {@code true} if a bit is found
+     */
+    boolean nextClearBit(int[] position);
+
+    /**
+     * Find the nearest set bit going down from the position (inclusive)
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}. On success
+     *                 it is replaced with the found position, otherwise it is left in undefined state.
+     *
+     * @return {@code true} if a bit is found
+     */
+    boolean previousSetBit(int[] position);
+
+    /**
+     * Find the nearest clear bit going down from the position (inclusive)
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}. On success
+     *                 it is replaced with the found position, otherwise it is left in undefined state.
+     *
+     * @return {@code true} if a bit is found
+     */
+    boolean previousClearBit(int[] position);
+
+    /**
+     * Count set bits of a range, the generic implementation walks the ranges of set bits inside of it
+     *
+     * @param fromInclusive Position of the first bit (see {@link #nextSetBit(int[])}), it is not modified
+     * @param toInclusive Position of the last bit, not lower than the first one, it is not modified
+     *
+     * @return Count of set bits
+     */
+    default BigInteger cardinality(int[] fromInclusive, int[] toInclusive) {
+        BigInteger result = BigInteger.ZERO;
+        int[] position = fromInclusive.clone();
+
+        while (nextSetBit(position) && SparseBitUtil.comparePositions(position, toInclusive) <= 0) {
+            int[] end = position.clone();
+
+            if (!nextClearBit(end) || SparseBitUtil.comparePositions(end, toInclusive) > 0) {
+                return result.add(SparseBitUtil.distance(position, toInclusive));
+            }
+
+            // the range of set bits ends right before the clear bit
+            result = result.add(SparseBitUtil.distance(position, end)).subtract(BigInteger.ONE);
+            position = end;
+        }
+
+        return result;
+    }
+
+    void or(SparseBitLevel other);
+
+    void and(SparseBitLevel other);
+
+    void andNot(SparseBitLevel other);
+
+    void xor(SparseBitLevel other);
+
+    /**
+     * Union with another level, underlying levels may be combined in parallel tasks
+     *
+     * @param other Another level of the same height
+     * @param pool Pool which runs the tasks
+     */
+    default void or(SparseBitLevel other, ForkJoinPool pool) {
+        or(other);
+    }
+
+    /**
+     * Intersection with another level, underlying levels may be combined in parallel tasks
+     *
+     * @param other Another level of the same height
+     * @param pool Pool which runs the tasks
+     */
+    default void and(SparseBitLevel other, ForkJoinPool pool) {
+        and(other);
+    }
+
+    /**
+     * Difference with another level, underlying levels may be combined in parallel tasks
+     *
+     * @param other Another level of the same height
+     * @param pool Pool which runs the tasks
+     */
+    default void andNot(SparseBitLevel other, ForkJoinPool pool) {
+        andNot(other);
+    }
+
+    /**
+     * Symmetric difference with another level, underlying levels may be combined in parallel tasks
+     *
+     * @param other Another level of the same height
+     * @param pool Pool which runs the tasks
+     */
+    default void xor(SparseBitLevel other, ForkJoinPool pool) {
+        xor(other);
+    }
+
+    /**
+     * Add the level and all its underlying levels to the statistics, NULL and FULL levels are counted by their
+     * parents
+     *
+     * @param stats Statistics to update
+     */
+    default void collectStats(SparseBitLevelStats stats) {
+        stats.addOpaque();
+    }
+
+    /**
+     * Write the level and all its underlying levels in the binary format
+     *
+     * @param output Output
+     *
+     * @throws IOException on I/O error
+     */
+    void write(DataOutput output) throws IOException;
+
 }
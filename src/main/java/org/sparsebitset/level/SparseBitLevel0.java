@@ -3,34 +3,88 @@ package org.sparsebitset.level;
 import org.sparsebitset.index.SparseBitIndex;
 import org.sparsebitset.util.SparseBitUtil;
 
-import java.util.BitSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * <p>Subset represents a final level of hierarchical sparse bit set</p>
+ *
+ * <p>256 bits are kept in a fixed array of four 64-bit words, bit {@code 0} is the lowest bit of the first word.
+ * A word is selected by a bounds-checked array access instead of a branch on its index.</p>
  */
 public final class SparseBitLevel0 implements SparseBitLevel {
 
+    /**
+     * How many 64-bit words are in the level
+     */
+    static final int WORDS = SparseBitUtil.LEVEL_SIZE / Long.SIZE;
+
+    /**
+     * Estimated heap size of the level: two {@code int} fields, the reference to the words and the words
+     */
+    static final long BYTES = SparseBitLevelStats.objectBytes(2 * Integer.BYTES + SparseBitLevelStats.REFERENCE_BYTES)
+            + SparseBitLevelStats.arrayBytes(Long.BYTES, WORDS);
+
     private final int maximumOccupancy;
 
-    private final BitSet bits;
+    private final long[] words;
 
     private int currentOccupancy;
 
     SparseBitLevel0(int maximumOccupancy) {
-        this.bits = new BitSet(SparseBitUtil.LEVEL_SIZE);
         this.maximumOccupancy = maximumOccupancy;
+        this.words = new long[WORDS];
         this.currentOccupancy = 0;
     }
 
-    private SparseBitLevel0(int maximumOccupancy, BitSet bits) {
-        this.bits = bits;
+    private SparseBitLevel0(int maximumOccupancy, long[] words) {
         this.maximumOccupancy = maximumOccupancy;
-        this.currentOccupancy = bits.cardinality();
+        this.words = words;
+        this.currentOccupancy = countOccupancy();
     }
 
     @Override
     public SparseBitLevel copy() {
-        return new SparseBitLevel0(maximumOccupancy, (BitSet) bits.clone());
+        return new SparseBitLevel0(maximumOccupancy, words.clone());
+    }
+
+    /**
+     * Read a level written by {@link #write(DataOutput)}
+     *
+     * @param input Input
+     * @param maximumOccupancy How many bits must be set in the level in order to collapse it
+     *
+     * @return Level object
+     *
+     * @throws IOException on I/O error
+     */
+    static SparseBitLevel0 read(DataInput input, int maximumOccupancy) throws IOException {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = input.readLong();
+        }
+
+        return new SparseBitLevel0(maximumOccupancy, words);
+    }
+
+    /**
+     * Create a level from 64-bit words
+     *
+     * @param maximumOccupancy How many bits must be set in the level in order to collapse it
+     * @param words Four words, bit {@code 0} is the lowest bit of the first word (the array is copied)
+     *
+     * @return Level object
+     */
+    static SparseBitLevel0 create(int maximumOccupancy, long[] words) {
+        return new SparseBitLevel0(maximumOccupancy, Arrays.copyOf(words, WORDS));
+    }
+
+    @Override
+    public int getMaximumOccupancy() {
+        return maximumOccupancy;
     }
 
     @Override
@@ -50,38 +104,55 @@ public final class SparseBitLevel0 implements SparseBitLevel {
 
     @Override
     public void clearAll() {
-        bits.clear();
+        Arrays.fill(words, 0L);
 
         currentOccupancy = 0;
     }
 
     @Override
     public void setAll() {
-        bits.set(0, SparseBitUtil.LEVEL_SIZE);
+        Arrays.fill(words, -1L);
 
         currentOccupancy = SparseBitUtil.LEVEL_SIZE;
     }
 
     @Override
     public void flipAll() {
-        bits.flip(0, SparseBitUtil.LEVEL_SIZE);
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = ~words[i];
+        }
 
         currentOccupancy = SparseBitUtil.LEVEL_SIZE - currentOccupancy;
     }
 
     @Override
     public void validate() {
-        if (currentOccupancy != bits.cardinality()) {
+        if (currentOccupancy != countOccupancy()) {
             throw new IllegalStateException("Effective occupancy and real occupancy don't match on level 0");
         }
     }
 
+    @Override
+    public long cardinalityHigh() {
+        return 0;
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return currentOccupancy;
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        return BigInteger.valueOf(currentOccupancy);
+    }
+
     @Override
     public boolean get(SparseBitIndex index) {
         int segment = index.segment(0);
         SparseBitUtil.checkSegment(segment);
 
-        return bits.get(segment);
+        return getBit(segment);
     }
 
     @Override
@@ -89,15 +160,7 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segment = index.segment(0);
         SparseBitUtil.checkSegment(segment);
 
-        if (bits.get(segment)) {
-            return false;
-        } else {
-            bits.set(segment);
-
-            currentOccupancy++;
-
-            return true;
-        }
+        return setBit(segment);
     }
 
     @Override
@@ -105,15 +168,7 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segment = index.segment(0);
         SparseBitUtil.checkSegment(segment);
 
-        if (bits.get(segment)) {
-            bits.clear(segment);
-
-            currentOccupancy--;
-
-            return true;
-        } else {
-            return false;
-        }
+        return clearBit(segment);
     }
 
     @Override
@@ -121,13 +176,7 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segment = index.segment(0);
         SparseBitUtil.checkSegment(segment);
 
-        if (bits.get(segment)) {
-            currentOccupancy--;
-        } else {
-            currentOccupancy++;
-        }
-
-        bits.flip(segment);
+        flipBit(segment);
     }
 
     @Override
@@ -136,10 +185,12 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segmentTo = toIndexInclusive.segment(0);
         SparseBitUtil.checkSegments(segmentFrom, segmentTo);
 
-        bits.set(segmentFrom, segmentTo + 1);
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= rangeMask(segmentFrom, segmentTo, i);
+        }
 
         // recalculate occupancy after the last bulk operation
-        currentOccupancy = bits.cardinality();
+        currentOccupancy = countOccupancy();
     }
 
     @Override
@@ -148,10 +199,12 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segmentTo = toIndexInclusive.segment(0);
         SparseBitUtil.checkSegments(segmentFrom, segmentTo);
 
-        bits.clear(segmentFrom, segmentTo + 1);
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= ~rangeMask(segmentFrom, segmentTo, i);
+        }
 
         // recalculate occupancy after the last bulk operation
-        currentOccupancy = bits.cardinality();
+        currentOccupancy = countOccupancy();
     }
 
     @Override
@@ -160,12 +213,294 @@ public final class SparseBitLevel0 implements SparseBitLevel {
         int segmentTo = toIndexInclusive.segment(0);
         SparseBitUtil.checkSegments(segmentFrom, segmentTo);
 
-        bits.flip(segmentFrom, segmentTo + 1);
+        for (int i = 0; i < WORDS; i++) {
+            words[i] ^= rangeMask(segmentFrom, segmentTo, i);
+        }
 
         // recalculate occupancy after the last bulk operation
-        currentOccupancy = bits.cardinality();
+        currentOccupancy = countOccupancy();
+    }
+
+    @Override
+    public boolean get(long index) {
+        return getBit(SparseBitUtil.segment(index, 0));
+    }
+
+    @Override
+    public boolean set(long index) {
+        return setBit(SparseBitUtil.segment(index, 0));
+    }
+
+    @Override
+    public boolean clear(long index) {
+        return clearBit(SparseBitUtil.segment(index, 0));
+    }
+
+    @Override
+    public void flip(long index) {
+        flipBit(SparseBitUtil.segment(index, 0));
     }
 
+    @Override
+    public void get(long[] keys, int from, int to, long[] bitmap) {
+        for (int i = from; i < to; i++) {
+            if (getBit(SparseBitUtil.segment(keys[i], 0))) {
+                bitmap[i >>> 6] |= 1L << i;
+            }
+        }
+    }
 
+    @Override
+    public void set(long[] keys, int from, int to) {
+        for (int i = from; i < to; i++) {
+            setBit(SparseBitUtil.segment(keys[i], 0));
+        }
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return nextBit(position, 0L);
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return nextBit(position, -1L);
+    }
+
+    @Override
+    public BigInteger cardinality(int[] fromInclusive, int[] toInclusive) {
+        int from = fromInclusive[0];
+        int to = toInclusive[0];
+
+        int count = 0;
+        for (int index = from >>> 6; index <= to >>> 6; index++) {
+            count += Long.bitCount(words[index] & rangeMask(from, to, index));
+        }
+
+        return BigInteger.valueOf(count);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return previousBit(position, 0L);
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return previousBit(position, -1L);
+    }
+
+    @Override
+    public void or(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevel0)) {
+            SparseBitLevels.forEachRange(checkHeight(other), 1, true, this::set);
+            return;
+        }
+
+        SparseBitLevel0 that = (SparseBitLevel0) other;
+
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= that.words[i];
+        }
+
+        // recalculate occupancy after the last bulk operation
+        currentOccupancy = countOccupancy();
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevel0)) {
+            SparseBitLevels.forEachRange(checkHeight(other), 1, false, this::clear);
+            return;
+        }
+
+        SparseBitLevel0 that = (SparseBitLevel0) other;
+
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= that.words[i];
+        }
+
+        // recalculate occupancy after the last bulk operation
+        currentOccupancy = countOccupancy();
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevel0)) {
+            SparseBitLevels.forEachRange(checkHeight(other), 1, true, this::clear);
+            return;
+        }
+
+        SparseBitLevel0 that = (SparseBitLevel0) other;
+
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= ~that.words[i];
+        }
+
+        // recalculate occupancy after the last bulk operation
+        currentOccupancy = countOccupancy();
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevel0)) {
+            SparseBitLevels.forEachRange(checkHeight(other), 1, true, this::flip);
+            return;
+        }
+
+        SparseBitLevel0 that = (SparseBitLevel0) other;
+
+        for (int i = 0; i < WORDS; i++) {
+            words[i] ^= that.words[i];
+        }
+
+        // recalculate occupancy after the last bulk operation
+        currentOccupancy = countOccupancy();
+    }
+
+    @Override
+    public void collectStats(SparseBitLevelStats stats) {
+        stats.addLeaf(currentOccupancy, BYTES);
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        for (long word : words) {
+            output.writeLong(word);
+        }
+    }
+
+    private boolean getBit(int segment) {
+        return ((words[segment >>> 6] >>> segment) & 1L) != 0;
+    }
+
+    private boolean setBit(int segment) {
+        int index = segment >>> 6;
+        long word = words[index];
+        long updated = word | (1L << segment);
+
+        words[index] = updated;
+
+        // the difference is either zero or the single bit
+        int changed = (int) ((updated ^ word) >>> segment);
+        currentOccupancy += changed;
+
+        return changed != 0;
+    }
+
+    private boolean clearBit(int segment) {
+        int index = segment >>> 6;
+        long word = words[index];
+        long updated = word & ~(1L << segment);
+
+        words[index] = updated;
+
+        // the difference is either zero or the single bit
+        int changed = (int) ((updated ^ word) >>> segment);
+        currentOccupancy -= changed;
+
+        return changed != 0;
+    }
+
+    private void flipBit(int segment) {
+        int index = segment >>> 6;
+        long word = words[index];
+
+        words[index] = word ^ (1L << segment);
+
+        // +1 for a clear bit and -1 for a set bit
+        currentOccupancy += 1 - (int) (((word >>> segment) & 1L) << 1);
+    }
+
+    /**
+     * Find the nearest bit
+     *
+     * @param position Position (see {@link SparseBitLevel#nextSetBit(int[])})
+     * @param inversion Mask which turns the searched bits of a word into ones
+     *
+     * @return {@code true} if a bit is found
+     */
+    private boolean nextBit(int[] position, long inversion) {
+        int from = position[0];
+
+        for (int index = from >>> 6; index < WORDS; index++) {
+            long word = words[index] ^ inversion;
+
+            if (index == from >>> 6) {
+                word &= -1L << from;
+            }
+
+            if (word != 0) {
+                position[0] = (index << 6) + Long.numberOfTrailingZeros(word);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the nearest bit going down
+     *
+     * @param position Position (see {@link SparseBitLevel#previousSetBit(int[])})
+     * @param inversion Mask which turns the searched bits of a word into ones
+     *
+     * @return {@code true} if a bit is found
+     */
+    private boolean previousBit(int[] position, long inversion) {
+        int from = position[0];
+
+        for (int index = from >>> 6; index >= 0; index--) {
+            long word = words[index] ^ inversion;
+
+            if (index == from >>> 6) {
+                word &= -1L >>> ~from;
+            }
+
+            if (word != 0) {
+                position[0] = (index << 6) + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int countOccupancy() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+
+    /**
+     * Mask of the bits of a word which are in the range
+     *
+     * @param from Start of the range (inclusive)
+     * @param to End of the range (inclusive)
+     * @param index Index of the word
+     *
+     * @return Mask, it is zero if the range doesn't intersect the word
+     */
+    private static long rangeMask(int from, int to, int index) {
+        int first = from - (index << 6);
+        int last = to - (index << 6);
+
+        if (last < 0 || first >= Long.SIZE) {
+            return 0L;
+        }
+
+        return (-1L << Math.max(first, 0)) & (-1L >>> (Long.SIZE - 1 - Math.min(last, Long.SIZE - 1)));
+    }
+
+    private static SparseBitLevel checkHeight(SparseBitLevel other) {
+        if (other instanceof SparseBitLevelN) {
+            throw new IllegalArgumentException("Level is not compatible with level 0");
+        }
+
+        return other;
+    }
 
 }
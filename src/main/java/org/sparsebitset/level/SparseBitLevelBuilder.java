@@ -0,0 +1,441 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Builds levels bottom-up from keys and ranges sorted in the unsigned order. Only the path of the current key
+ * is kept open: a level is completed and attached to its parent as soon as a key of another level arrives, so
+ * every level is created once in its final form. Underlying levels which are completely covered by a range
+ * are emitted as FULL without being created.</p>
+ *
+ * <p>Levels collapse as they would do if the bits were set one by one: a final level with at least
+ * {@code maximumOccupancy} bits set and an upper level with at least {@code maximumOccupancy} FULL underlying
+ * levels become FULL. The base level is never collapsed.</p>
+ */
+public final class SparseBitLevelBuilder {
+
+    private final int maximumOccupancy;
+
+    private final int levels;
+
+    /**
+     * Bits of the open final level
+     */
+    private final long[] words = new long[SparseBitLevel0.WORDS];
+
+    /**
+     * Underlying levels of the open upper levels, {@code null} stands for a NULL level
+     */
+    private final SparseBitLevel[][] underlyings;
+
+    /**
+     * The highest bit set so far
+     */
+    private long last;
+
+    /**
+     * The lowest bit of the last added key or range, the following ones must not be lower
+     */
+    private long lastFrom;
+
+    private boolean started;
+
+    private boolean built;
+
+    /**
+     * Constructs a builder
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the base level (up to 8)
+     */
+    public SparseBitLevelBuilder(int maximumOccupancy, int levels) {
+        checkLevels(levels);
+
+        this.maximumOccupancy = maximumOccupancy;
+        this.levels = levels;
+
+        this.underlyings = new SparseBitLevel[levels][];
+        for (int level = 1; level < levels; level++) {
+            this.underlyings[level] = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        }
+    }
+
+    /**
+     * Set a bit
+     *
+     * @param key Index of the bit (unsigned), not lower than the lowest bit of the previous key or range
+     */
+    public void add(long key) {
+        // the most common case of sorted keys: the next bit of the open final level
+        boolean next = started && !built && Long.compareUnsigned(key, last) > 0;
+
+        if (next && (key >>> Byte.SIZE) == (last >>> Byte.SIZE)) {
+            words[(int) (key >>> 6) & (SparseBitLevel0.WORDS - 1)] |= 1L << key;
+
+            last = key;
+            lastFrom = key;
+        } else {
+            add(key, key);
+        }
+    }
+
+    /**
+     * Set a range of bits
+     *
+     * @param fromInclusive The first bit (unsigned), not lower than the lowest bit of the previous key or range
+     * @param toInclusive The last bit (unsigned)
+     */
+    public void add(long fromInclusive, long toInclusive) {
+        if (built) {
+            throw new IllegalStateException("Levels are already built");
+        }
+
+        checkKey(fromInclusive);
+        checkKey(toInclusive);
+
+        if (Long.compareUnsigned(fromInclusive, toInclusive) > 0) {
+            throw new IllegalArgumentException("Range is reversed: " + Long.toUnsignedString(fromInclusive)
+                    + " > " + Long.toUnsignedString(toInclusive));
+        }
+
+        if (started && Long.compareUnsigned(fromInclusive, lastFrom) < 0) {
+            throw new IllegalArgumentException("Keys are not sorted: " + Long.toUnsignedString(fromInclusive)
+                    + " follows " + Long.toUnsignedString(lastFrom));
+        }
+
+        long from = fromInclusive;
+
+        if (started) {
+            // an overlapping part is already set
+            if (Long.compareUnsigned(toInclusive, last) <= 0) {
+                lastFrom = fromInclusive;
+                return;
+            }
+
+            if (Long.compareUnsigned(from, last) <= 0) {
+                from = last + 1;
+            }
+        }
+
+        lastFrom = fromInclusive;
+
+        while (true) {
+            int level = coveredLevel(from, toInclusive);
+
+            if (level > 0) {
+                // the whole underlying level is covered by the range
+                long end = from + (1L << (level * Byte.SIZE)) - 1;
+
+                advance(from);
+                underlyings[level][SparseBitUtil.segment(from, level)] = SparseBitLevels.FULL;
+                last = end;
+                started = true;
+
+                if (end == toInclusive) {
+                    return;
+                }
+
+                from = end + 1;
+            } else {
+                long end = from | SparseBitUtil.BYTE_MASK;
+                if (Long.compareUnsigned(end, toInclusive) > 0) {
+                    end = toInclusive;
+                }
+
+                advance(from);
+                setWords(SparseBitUtil.segment(from, 0), SparseBitUtil.segment(end, 0));
+                last = end;
+                started = true;
+
+                if (end == toInclusive) {
+                    return;
+                }
+
+                from = end + 1;
+            }
+        }
+    }
+
+    /**
+     * Complete all open levels, the builder can't be used afterwards
+     *
+     * @return The base level
+     */
+    public SparseBitLevel build() {
+        if (built) {
+            throw new IllegalStateException("Levels are already built");
+        }
+
+        built = true;
+
+        if (levels == 1) {
+            return SparseBitLevel0.create(maximumOccupancy, words);
+        }
+
+        for (int level = 0; level < levels - 1; level++) {
+            complete(level, last);
+        }
+
+        SparseBitLevel[] top = underlyings[levels - 1];
+        fillNulls(top);
+
+        return SparseBitLevelN.create(maximumOccupancy, levels - 1, top);
+    }
+
+    /**
+     * Build levels from sorted keys, the underlying levels of the base level are built in parallel tasks
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the base level (up to 8)
+     * @param keys Indexes of the bits sorted in the unsigned order (duplicates are allowed)
+     * @param pool Pool which runs the tasks
+     *
+     * @return The base level, exactly the same as the one built by a single builder
+     */
+    public static SparseBitLevel build(int maximumOccupancy, int levels, long[] keys, ForkJoinPool pool) {
+        if (levels == 1) {
+            SparseBitLevelBuilder builder = new SparseBitLevelBuilder(maximumOccupancy, levels);
+            for (long key : keys) {
+                builder.add(key);
+            }
+
+            return builder.build();
+        }
+
+        checkLevels(levels);
+
+        int topLevel = levels - 1;
+        long lowerMask = -1L >>> (Long.SIZE - topLevel * Byte.SIZE);
+
+        SparseBitLevel[] underlyings = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        List<ForkJoinTask<SparseBitLevel>> forked = new ArrayList<>();
+        int[] forkedSegments = new int[SparseBitUtil.LEVEL_SIZE];
+
+        int from = 0;
+        while (from < keys.length) {
+            checkKey(keys[from], levels);
+
+            int segment = SparseBitUtil.segment(keys[from], topLevel);
+
+            int to = from + 1;
+            while (to < keys.length && SparseBitUtil.segment(keys[to], topLevel) == segment) {
+                checkKey(keys[to], levels);
+                to++;
+            }
+
+            if (to < keys.length && Long.compareUnsigned(keys[to], keys[to - 1]) < 0) {
+                throw new IllegalArgumentException("Keys are not sorted: " + Long.toUnsignedString(keys[to])
+                        + " follows " + Long.toUnsignedString(keys[to - 1]));
+            }
+
+            int start = from;
+            int end = to;
+
+            forkedSegments[forked.size()] = segment;
+            forked.add(ForkJoinTask.adapt(() -> {
+                SparseBitLevelBuilder builder = new SparseBitLevelBuilder(maximumOccupancy, topLevel);
+                for (int i = start; i < end; i++) {
+                    builder.add(keys[i] & lowerMask);
+                }
+
+                // the base level of the builder is never collapsed, but an underlying level must be
+                SparseBitLevel underlying = builder.build();
+                return underlying.isFull() ? SparseBitLevels.FULL : underlying;
+            }));
+
+            from = to;
+        }
+
+        for (ForkJoinTask<SparseBitLevel> task : forked) {
+            pool.execute(task);
+        }
+
+        for (int i = 0; i < forked.size(); i++) {
+            underlyings[forkedSegments[i]] = forked.get(i).join();
+        }
+
+        fillNulls(underlyings);
+
+        return SparseBitLevelN.create(maximumOccupancy, topLevel, underlyings);
+    }
+
+    /**
+     * Complete open levels which don't contain the key
+     *
+     * @param key Next key
+     */
+    private void advance(long key) {
+        if (!started) {
+            return;
+        }
+
+        for (int level = 0; level < levels - 1; level++) {
+            if (id(key, level) == id(last, level)) {
+                return;
+            }
+
+            complete(level, last);
+        }
+    }
+
+    /**
+     * Complete the open level and attach it to its parent (nothing is attached for a NULL level)
+     *
+     * @param level Level number
+     * @param key Any key of the level
+     */
+    private void complete(int level, long key) {
+        SparseBitLevel completed;
+
+        if (level == 0) {
+            completed = completeWords();
+        } else {
+            completed = completeUnderlyings(level);
+        }
+
+        if (completed != null) {
+            underlyings[level + 1][SparseBitUtil.segment(key, level + 1)] = completed;
+        }
+    }
+
+    private SparseBitLevel completeWords() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+
+        SparseBitLevel completed;
+
+        if (count == 0) {
+            completed = null;
+        } else if (count >= maximumOccupancy) {
+            completed = SparseBitLevels.FULL;
+        } else {
+            completed = SparseBitLevel0.create(maximumOccupancy, words);
+        }
+
+        Arrays.fill(words, 0L);
+
+        return completed;
+    }
+
+    private SparseBitLevel completeUnderlyings(int level) {
+        SparseBitLevel[] current = underlyings[level];
+
+        int fullCount = 0;
+        int realCount = 0;
+
+        for (SparseBitLevel underlying : current) {
+            if (underlying == SparseBitLevels.FULL) {
+                fullCount++;
+            } else if (underlying != null) {
+                realCount++;
+            }
+        }
+
+        SparseBitLevel completed;
+
+        if (fullCount + realCount == 0) {
+            completed = null;
+        } else if (fullCount >= maximumOccupancy) {
+            completed = SparseBitLevels.FULL;
+        } else {
+            fillNulls(current);
+            completed = SparseBitLevelN.create(maximumOccupancy, level, current);
+        }
+
+        Arrays.fill(current, null);
+
+        return completed;
+    }
+
+    private void setWords(int segmentFrom, int segmentTo) {
+        int wordFrom = segmentFrom >>> 6;
+        int wordTo = segmentTo >>> 6;
+
+        for (int word = wordFrom; word <= wordTo; word++) {
+            long mask = -1L;
+
+            if (word == wordFrom) {
+                mask &= -1L << segmentFrom;
+            }
+
+            if (word == wordTo) {
+                mask &= -1L >>> (Long.SIZE - 1 - (segmentTo & (Long.SIZE - 1)));
+            }
+
+            words[word] |= mask;
+        }
+    }
+
+    /**
+     * Find the highest underlying level which starts at the key and is covered by the range
+     *
+     * @param from The first bit of the range
+     * @param to The last bit of the range
+     *
+     * @return Number of the parent of the covered level, {@code 0} if no underlying level is covered
+     */
+    private int coveredLevel(long from, long to) {
+        int covered = 0;
+
+        for (int level = 1; level < levels; level++) {
+            long size = 1L << (level * Byte.SIZE);
+
+            if ((from & (size - 1)) != 0 || Long.compareUnsigned(to - from, size - 1) < 0) {
+                break;
+            }
+
+            covered = level;
+        }
+
+        return covered;
+    }
+
+    /**
+     * Get the identity of the level of a given number which contains the key
+     *
+     * @param key Key
+     * @param level Level number
+     *
+     * @return Upper bits of the key
+     */
+    private static long id(long key, int level) {
+        int shift = (level + 1) * Byte.SIZE;
+        return (shift < Long.SIZE) ? key >>> shift : 0;
+    }
+
+    private static void checkLevels(int levels) {
+        if (levels <= 0 || levels > Long.BYTES) {
+            throw new IllegalArgumentException("Builder supports from 1 to 8 levels: " + levels);
+        }
+    }
+
+    private static void fillNulls(SparseBitLevel[] current) {
+        for (int segment = 0; segment < current.length; segment++) {
+            if (current[segment] == null) {
+                current[segment] = SparseBitLevels.NULL;
+            }
+        }
+    }
+
+    private void checkKey(long key) {
+        checkKey(key, levels);
+    }
+
+    private static void checkKey(long key, int levels) {
+        int bits = levels * Byte.SIZE;
+
+        if (bits < Long.SIZE && (key >>> bits) != 0) {
+            throw new IllegalArgumentException("Key doesn't fit into " + levels + " levels: "
+                    + Long.toUnsignedString(key));
+        }
+    }
+
+}
@@ -0,0 +1,965 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitConstIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Base level of a set which may be read and updated by many threads without locks. Intermediate levels are
+ * arrays of atomic references to underlying levels where {@code null} is {@code NULL} level and a marker object
+ * is {@code FULL} level, final levels are four atomic 64-bit words.</p>
+ *
+ * <p>Readers walk the levels with volatile reads only. Writers install underlying levels with CAS and update
+ * the words of final levels with CAS loops, so every single bit operation is linearizable. A REAL level is
+ * never replaced because of its content (it is replaced only when a range operation or {@link #clearAll()}
+ * covers it completely): squashing or dismissing it could lose a concurrent update. Therefore there is no
+ * premature squashing and levels which become empty are kept until they are covered by such operation or
+ * until {@link #compact()} is called while no other thread accesses the level.</p>
+ *
+ * <p>Range and bulk operations are atomic for every single bit but not for the whole range. Counters are not
+ * kept, so the cardinality and the emptiness are computed by walking the levels.</p>
+ */
+public final class SparseBitLevelConcurrent implements SparseBitLevel {
+
+    private static final Object FULL = new Object();
+
+    /**
+     * Operations on bits
+     */
+    private static final int SET = 0;
+
+    private static final int CLEAR = 1;
+
+    private static final int FLIP = 2;
+
+    /**
+     * Estimated heap size of an intermediate level: the atomic array object and its reference array
+     */
+    private static final long NODE_BYTES = SparseBitLevelStats.objectBytes(SparseBitLevelStats.REFERENCE_BYTES)
+            + SparseBitLevelStats.referenceArrayBytes(SparseBitUtil.LEVEL_SIZE);
+
+    /**
+     * Estimated heap size of a final level: the atomic array object and its words
+     */
+    private static final long LEAF_BYTES = SparseBitLevelStats.objectBytes(SparseBitLevelStats.REFERENCE_BYTES)
+            + SparseBitLevelStats.arrayBytes(Long.BYTES, SparseBitLevel0.WORDS);
+
+    private final int level;
+
+    /**
+     * Atomic reference array for an intermediate level or atomic long array for a final level
+     */
+    private final Object root;
+
+    SparseBitLevelConcurrent(int level) {
+        this.level = level;
+        this.root = create(level, false);
+    }
+
+    private SparseBitLevelConcurrent(int level, Object root) {
+        this.level = level;
+        this.root = root;
+    }
+
+    @Override
+    public SparseBitLevelType getType() {
+        return SparseBitLevelType.REAL;
+    }
+
+    /**
+     * Copy the levels, the copy is consistent for every single bit but not for the whole set when it is being
+     * updated concurrently
+     *
+     * @return Concurrent copy of the level
+     */
+    @Override
+    public SparseBitLevel copy() {
+        return new SparseBitLevelConcurrent(level, copy(root, level));
+    }
+
+    private static Object copy(Object underlying, int level) {
+        if (underlying == null || underlying == FULL) {
+            return underlying;
+        }
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+            AtomicLongArray copy = new AtomicLongArray(SparseBitLevel0.WORDS);
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                copy.set(i, words.get(i));
+            }
+
+            return copy;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+        AtomicReferenceArray<Object> copy = new AtomicReferenceArray<>(SparseBitUtil.LEVEL_SIZE);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            copy.set(segment, copy(node.get(segment), level - 1));
+        }
+
+        return copy;
+    }
+
+    /**
+     * Levels are never squashed prematurely
+     *
+     * @return Always {@code 256}
+     */
+    @Override
+    public int getMaximumOccupancy() {
+        return SparseBitUtil.LEVEL_SIZE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isEmpty(root, level);
+    }
+
+    private static boolean isEmpty(Object underlying, int level) {
+        if (underlying == null) {
+            return true;
+        }
+
+        if (underlying == FULL) {
+            return false;
+        }
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                if (words.get(i) != 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if (!isEmpty(node.get(segment), level - 1)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        return isFull(root, level);
+    }
+
+    private static boolean isFull(Object underlying, int level) {
+        if (underlying == null) {
+            return false;
+        }
+
+        if (underlying == FULL) {
+            return true;
+        }
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                if (words.get(i) != -1L) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if (!isFull(node.get(segment), level - 1)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void clearAll() {
+        fillRoot(false);
+    }
+
+    @Override
+    public void setAll() {
+        fillRoot(true);
+    }
+
+    private void fillRoot(boolean full) {
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) root;
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                words.set(i, full ? -1L : 0L);
+            }
+        } else {
+            AtomicReferenceArray<Object> node = node(root);
+
+            // a thread which is updating a detached level is linearized before this operation
+            for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+                node.set(segment, full ? FULL : null);
+            }
+        }
+    }
+
+    @Override
+    public void flipAll() {
+        flip(SparseBitConstIndex.MIN, SparseBitConstIndex.MAX);
+    }
+
+    @Override
+    public void validate() {
+        validate(root, level);
+    }
+
+    private static void validate(Object underlying, int level) {
+        if (level == 0) {
+            if (!(underlying instanceof AtomicLongArray) || ((AtomicLongArray) underlying).length() != SparseBitLevel0.WORDS) {
+                throw new IllegalStateException("Invalid final level");
+            }
+
+            return;
+        }
+
+        if (!(underlying instanceof AtomicReferenceArray)) {
+            throw new IllegalStateException("Invalid intermediate level on level " + level);
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        if (node.length() != SparseBitUtil.LEVEL_SIZE) {
+            throw new IllegalStateException("Invalid number of underlying levels on level " + level);
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Object child = node.get(segment);
+
+            if (child != null && child != FULL) {
+                validate(child, level - 1);
+            }
+        }
+    }
+
+    @Override
+    public long cardinalityHigh() {
+        return cardinality().shiftRight(Long.SIZE).longValue();
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return cardinality().longValue();
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        return cardinality(root, level);
+    }
+
+    private static BigInteger cardinality(Object underlying, int level) {
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            int count = 0;
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                count += Long.bitCount(words.get(i));
+            }
+
+            return BigInteger.valueOf(count);
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        int fullCount = 0;
+        BigInteger real = BigInteger.ZERO;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Object child = node.get(segment);
+
+            if (child == FULL) {
+                fullCount++;
+            } else if (child != null) {
+                real = real.add(cardinality(child, level - 1));
+            }
+        }
+
+        return BigInteger.valueOf(fullCount).shiftLeft(level << 3).add(real);
+    }
+
+    @Override
+    public boolean get(SparseBitIndex index) {
+        return get(index, 0L);
+    }
+
+    @Override
+    public boolean set(SparseBitIndex index) {
+        return update(index, 0L, SET);
+    }
+
+    @Override
+    public boolean clear(SparseBitIndex index) {
+        return update(index, 0L, CLEAR);
+    }
+
+    @Override
+    public void flip(SparseBitIndex index) {
+        update(index, 0L, FLIP);
+    }
+
+    @Override
+    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, SET);
+    }
+
+    @Override
+    public void clear(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, CLEAR);
+    }
+
+    @Override
+    public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, FLIP);
+    }
+
+    @Override
+    public boolean get(long index) {
+        return get(null, index);
+    }
+
+    @Override
+    public boolean set(long index) {
+        return update(null, index, SET);
+    }
+
+    @Override
+    public boolean clear(long index) {
+        return update(null, index, CLEAR);
+    }
+
+    @Override
+    public void flip(long index) {
+        update(null, index, FLIP);
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return nextBit(root, level, position, true);
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return nextBit(root, level, position, false);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return previousBit(root, level, position, true);
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return previousBit(root, level, position, false);
+    }
+
+    /**
+     * Union with a level of any kind, applied as a range operation for every range of set bits of the other
+     * level
+     *
+     * @param other Level with the same number of levels
+     */
+    @Override
+    public void or(SparseBitLevel other) {
+        updateRanges(other, true, SET);
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        updateRanges(other, false, CLEAR);
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        updateRanges(other, true, CLEAR);
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        updateRanges(other, true, FLIP);
+    }
+
+    /**
+     * Dismiss underlying levels which became empty and squash underlying levels which became full. The caller
+     * must have exclusive access to the level during the call: an update of a replaced level by another thread
+     * would be lost.
+     */
+    public void compact() {
+        if (level == 0) {
+            return;
+        }
+
+        AtomicReferenceArray<Object> node = node(root);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            node.set(segment, compact(node.get(segment), level - 1));
+        }
+    }
+
+    /**
+     * Compact an underlying level
+     *
+     * @return {@code null} for an empty level, {@code FULL} marker for a full level or the level itself
+     */
+    private static Object compact(Object underlying, int level) {
+        if (underlying == null || underlying == FULL) {
+            return underlying;
+        }
+
+        boolean empty = true;
+        boolean full = true;
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                long word = words.get(i);
+
+                empty &= word == 0L;
+                full &= word == -1L;
+            }
+        } else {
+            AtomicReferenceArray<Object> node = node(underlying);
+
+            for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+                Object child = compact(node.get(segment), level - 1);
+                node.set(segment, child);
+
+                empty &= child == null;
+                full &= child == FULL;
+            }
+        }
+
+        return empty ? null : full ? FULL : underlying;
+    }
+
+    @Override
+    public void collectStats(SparseBitLevelStats stats) {
+        collectStats(root, level, stats);
+    }
+
+    private static void collectStats(Object underlying, int level, SparseBitLevelStats stats) {
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            int bits = 0;
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                bits += Long.bitCount(words.get(i));
+            }
+
+            stats.addLeaf(bits, LEAF_BYTES);
+            return;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        int reals = 0;
+        int fulls = 0;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Object child = node.get(segment);
+
+            if (child == FULL) {
+                fulls++;
+            } else if (child != null) {
+                reals++;
+            }
+        }
+
+        stats.addNode(level, reals, fulls, 0, NODE_BYTES);
+
+        if (level == 1 && !stats.isDetailed()) {
+            // there are no counters, so final levels are only counted
+            stats.addLeaves(reals, LEAF_BYTES);
+            return;
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Object child = node.get(segment);
+
+            if (child != null && child != FULL) {
+                collectStats(child, level - 1, stats);
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of the levels in the format of heap levels (levels which became empty or full are written
+     * as {@code NULL} or {@code FULL} ones)
+     *
+     * @param output Output
+     *
+     * @throws IOException on I/O error
+     */
+    @Override
+    public void write(DataOutput output) throws IOException {
+        SparseBitLevel snapshot = load(root, level);
+
+        if (snapshot.getType() != SparseBitLevelType.REAL) {
+            // the base level is written even if it is empty or full
+            SparseBitLevel base = SparseBitLevels.createLevel(SparseBitUtil.LEVEL_SIZE, level + 1);
+
+            if (snapshot.getType() == SparseBitLevelType.FULL) {
+                base.setAll();
+            }
+
+            snapshot = base;
+        }
+
+        snapshot.write(output);
+    }
+
+    /**
+     * Load the levels into heap
+     *
+     * @return Heap level object, {@code NULL} level for an empty level or {@code FULL} level for a full one
+     */
+    private static SparseBitLevel load(Object underlying, int level) {
+        if (underlying == null) {
+            return SparseBitLevels.NULL;
+        }
+
+        if (underlying == FULL) {
+            return SparseBitLevels.FULL;
+        }
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+
+            long[] snapshot = new long[SparseBitLevel0.WORDS];
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                snapshot[i] = words.get(i);
+            }
+
+            SparseBitLevel0 loaded = SparseBitLevel0.create(SparseBitUtil.LEVEL_SIZE, snapshot);
+
+            return loaded.isEmpty() ? SparseBitLevels.NULL : loaded.isFull() ? SparseBitLevels.FULL : loaded;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+
+        SparseBitLevel[] underlyings = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        boolean empty = true;
+        boolean full = true;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            underlyings[segment] = load(node.get(segment), level - 1);
+            empty &= underlyings[segment].getType() == SparseBitLevelType.NULL;
+            full &= underlyings[segment].getType() == SparseBitLevelType.FULL;
+        }
+
+        if (empty) {
+            return SparseBitLevels.NULL;
+        } else if (full) {
+            return SparseBitLevels.FULL;
+        } else {
+            return SparseBitLevelN.create(SparseBitUtil.LEVEL_SIZE, level, underlyings);
+        }
+    }
+
+    private boolean get(SparseBitIndex index, long key) {
+        Object underlying = root;
+
+        for (int level = this.level; level > 0; level--) {
+            underlying = node(underlying).get(segment(index, key, level));
+
+            if (underlying == null) {
+                return false;
+            } else if (underlying == FULL) {
+                return true;
+            }
+        }
+
+        int segment = segment(index, key, 0);
+
+        return (((AtomicLongArray) underlying).get(segment >>> 6) & (1L << segment)) != 0;
+    }
+
+    /**
+     * Update a single bit, the index is taken either from the index object or from the primitive key
+     *
+     * @return {@code true} if the bit is switched
+     */
+    private boolean update(SparseBitIndex index, long key, int operation) {
+        Object underlying = root;
+
+        for (int level = this.level; level > 0; level--) {
+            AtomicReferenceArray<Object> node = node(underlying);
+            int segment = segment(index, key, level);
+
+            while (true) {
+                underlying = node.get(segment);
+
+                if (underlying == null) {
+                    if (operation == CLEAR) {
+                        return false;
+                    }
+
+                    // the new level already has the bit, so the CAS is the linearization point
+                    if (node.compareAndSet(segment, null, createPath(index, key, level - 1, false))) {
+                        return true;
+                    }
+                } else if (underlying == FULL) {
+                    if (operation == SET) {
+                        return false;
+                    }
+
+                    if (node.compareAndSet(segment, FULL, createPath(index, key, level - 1, true))) {
+                        return true;
+                    }
+                } else {
+                    // a REAL level is never replaced by a single bit operation
+                    break;
+                }
+            }
+        }
+
+        return updateWord((AtomicLongArray) underlying, segment(index, key, 0), operation);
+    }
+
+    private static boolean updateWord(AtomicLongArray words, int segment, int operation) {
+        int i = segment >>> 6;
+        long mask = 1L << segment;
+
+        while (true) {
+            long word = words.get(i);
+            long updated;
+
+            switch (operation) {
+                case SET: {
+                    updated = word | mask;
+                    break;
+                }
+                case CLEAR: {
+                    updated = word & ~mask;
+                    break;
+                }
+                default: {
+                    updated = word ^ mask;
+                    break;
+                }
+            }
+
+            if (updated == word) {
+                return false;
+            }
+
+            if (words.compareAndSet(i, word, updated)) {
+                return true;
+            }
+        }
+    }
+
+    private void update(Object underlying, int level, SparseBitIndex fromIndexInclusive,
+                        SparseBitIndex toIndexInclusive, int operation) {
+        int segmentFrom = fromIndexInclusive.segment(level);
+        int segmentTo = toIndexInclusive.segment(level);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        if (level == 0) {
+            updateWords((AtomicLongArray) underlying, segmentFrom, segmentTo, operation);
+        } else if (segmentFrom != segmentTo) {
+            AtomicReferenceArray<Object> node = node(underlying);
+
+            updateSegment(node, level, fromIndexInclusive, SparseBitConstIndex.MAX, segmentFrom, operation);
+
+            for (int segment = segmentFrom + 1, limit = segmentTo - 1; segment <= limit; segment++) {
+                updateSegment(node, level, SparseBitConstIndex.MIN, SparseBitConstIndex.MAX, segment, operation);
+            }
+
+            updateSegment(node, level, SparseBitConstIndex.MIN, toIndexInclusive, segmentTo, operation);
+        } else {
+            updateSegment(node(underlying), level, fromIndexInclusive, toIndexInclusive, segmentFrom, operation);
+        }
+    }
+
+    private void updateSegment(AtomicReferenceArray<Object> node, int level, SparseBitIndex fromIndexInclusive,
+                               SparseBitIndex toIndexInclusive, int segment, int operation) {
+        boolean covered = SparseBitLevelN.countAffected(fromIndexInclusive, toIndexInclusive, level)
+                >= SparseBitUtil.LEVEL_SIZE;
+
+        while (true) {
+            Object underlying = node.get(segment);
+
+            if (underlying != null && underlying != FULL) {
+                if (covered && operation != FLIP) {
+                    // the whole level is replaced, a thread which is updating it is linearized before this one
+                    if (node.compareAndSet(segment, underlying, (operation == SET) ? FULL : null)) {
+                        return;
+                    }
+                } else {
+                    update(underlying, level - 1, fromIndexInclusive, toIndexInclusive, operation);
+                    return;
+                }
+            } else {
+                boolean full = (underlying == FULL);
+
+                if ((full && operation == SET) || (!full && operation == CLEAR)) {
+                    return;
+                }
+
+                // a new level is installed before its bits are updated
+                Object replacement = covered ? (full ? null : FULL) : create(level - 1, full);
+
+                if (node.compareAndSet(segment, underlying, replacement)) {
+                    if (!covered) {
+                        update(replacement, level - 1, fromIndexInclusive, toIndexInclusive, operation);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void updateWords(AtomicLongArray words, int from, int to, int operation) {
+        for (int i = from >>> 6, last = to >>> 6; i <= last; i++) {
+            long mask = -1L;
+
+            if (i == from >>> 6) {
+                mask &= -1L << from;
+            }
+
+            if (i == last) {
+                mask &= -1L >>> (Long.SIZE - 1 - (to & 0x3F));
+            }
+
+            while (true) {
+                long word = words.get(i);
+                long updated;
+
+                switch (operation) {
+                    case SET: {
+                        updated = word | mask;
+                        break;
+                    }
+                    case CLEAR: {
+                        updated = word & ~mask;
+                        break;
+                    }
+                    default: {
+                        updated = word ^ mask;
+                        break;
+                    }
+                }
+
+                if (updated == word || words.compareAndSet(i, word, updated)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void updateRanges(SparseBitLevel other, boolean setRanges, int operation) {
+        int[] position = new int[level + 1];
+
+        SparseBitArrayIndex from = new SparseBitArrayIndex(new int[level + 1]);
+        SparseBitArrayIndex to = new SparseBitArrayIndex(new int[level + 1]);
+
+        while (setRanges ? other.nextSetBit(position) : other.nextClearBit(position)) {
+            System.arraycopy(position, 0, from.segments(), 0, position.length);
+
+            // the end of the range is found before the range is updated, so the other level may be this one
+            boolean bounded = setRanges ? other.nextClearBit(position) : other.nextSetBit(position);
+
+            if (bounded) {
+                System.arraycopy(position, 0, to.segments(), 0, position.length);
+                SparseBitUtil.decrementPosition(to.segments());
+            } else {
+                SparseBitUtil.fillPosition(to.segments(), position.length, SparseBitUtil.LEVEL_SIZE - 1);
+            }
+
+            update(root, level, from, to, operation);
+
+            if (!bounded) {
+                break;
+            }
+        }
+    }
+
+    private static boolean nextBit(Object underlying, int level, int[] position, boolean set) {
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+            long inversion = set ? 0L : -1L;
+            int from = position[0];
+
+            for (int i = from >>> 6; i < SparseBitLevel0.WORDS; i++) {
+                long word = words.get(i) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L << from;
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.numberOfTrailingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+        Object matching = set ? FULL : null;
+
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Object child = node.get(segment);
+
+            if (child == matching) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (child != null && child != FULL) {
+                position[level] = segment;
+
+                if (nextBit(child, level - 1, position, set)) {
+                    return true;
+                }
+            }
+
+            // the next segment is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        return false;
+    }
+
+    private static boolean previousBit(Object underlying, int level, int[] position, boolean set) {
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) underlying;
+            long inversion = set ? 0L : -1L;
+            int from = position[0];
+
+            for (int i = from >>> 6; i >= 0; i--) {
+                long word = words.get(i) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L >>> ~from;
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        AtomicReferenceArray<Object> node = node(underlying);
+        Object matching = set ? FULL : null;
+
+        for (int segment = position[level]; segment >= 0; segment--) {
+            Object child = node.get(segment);
+
+            if (child == matching) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (child != null && child != FULL) {
+                position[level] = segment;
+
+                if (previousBit(child, level - 1, position, set)) {
+                    return true;
+                }
+            }
+
+            // the previous segment is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        return false;
+    }
+
+    /**
+     * Create a level where all bits are either clear or set
+     */
+    private static Object create(int level, boolean full) {
+        if (level == 0) {
+            AtomicLongArray words = new AtomicLongArray(SparseBitLevel0.WORDS);
+
+            if (full) {
+                for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                    words.set(i, -1L);
+                }
+            }
+
+            return words;
+        }
+
+        AtomicReferenceArray<Object> node = new AtomicReferenceArray<>(SparseBitUtil.LEVEL_SIZE);
+
+        if (full) {
+            for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+                node.set(segment, FULL);
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Create a level where all bits but one are either clear or set
+     */
+    private static Object createPath(SparseBitIndex index, long key, int level, boolean full) {
+        int segment = segment(index, key, level);
+
+        if (level == 0) {
+            AtomicLongArray words = (AtomicLongArray) create(0, full);
+            words.set(segment >>> 6, words.get(segment >>> 6) ^ (1L << segment));
+
+            return words;
+        }
+
+        AtomicReferenceArray<Object> node = node(create(level, full));
+        node.set(segment, createPath(index, key, level - 1, full));
+
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<Object> node(Object underlying) {
+        return (AtomicReferenceArray<Object>) underlying;
+    }
+
+    private static int segment(SparseBitIndex index, long key, int level) {
+        if (index != null) {
+            int segment = index.segment(level);
+            SparseBitUtil.checkSegment(segment);
+
+            return segment;
+        } else {
+            return SparseBitUtil.segment(key, level);
+        }
+    }
+
+}
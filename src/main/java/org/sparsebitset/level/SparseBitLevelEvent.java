@@ -0,0 +1,33 @@
+package org.sparsebitset.level;
+
+/**
+ * Structural changes of heap levels
+ */
+public enum SparseBitLevelEvent {
+
+    /**
+     * NULL underlying level is replaced with a new REAL one
+     */
+    ALLOCATE,
+
+    /**
+     * REAL underlying level shared with a copy of the set is copied before it is modified
+     */
+    COPY,
+
+    /**
+     * REAL underlying level is collapsed to FULL
+     */
+    SQUASH,
+
+    /**
+     * FULL underlying level is expanded to a REAL one
+     */
+    UNFOLD,
+
+    /**
+     * REAL underlying level is dropped as it has no bits set
+     */
+    DISMISS
+
+}
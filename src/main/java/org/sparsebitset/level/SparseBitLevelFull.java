@@ -1,6 +1,10 @@
 package org.sparsebitset.level;
 
 import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.math.BigInteger;
 
 /**
  * Squashed layer (no any bits are set)
@@ -22,6 +26,11 @@ public final class SparseBitLevelFull implements SparseBitLevel {
         return SparseBitLevelType.FULL;
     }
 
+    @Override
+    public int getMaximumOccupancy() {
+        throw new UnsupportedOperationException("Special level");
+    }
+
     @Override
     public boolean isEmpty() {
         return false;
@@ -52,6 +61,21 @@ public final class SparseBitLevelFull implements SparseBitLevel {
         // nothing to do
     }
 
+    @Override
+    public long cardinalityHigh() {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public long cardinalityLow() {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        throw new UnsupportedOperationException("Special level");
+    }
+
     @Override
     public boolean get(SparseBitIndex index) {
         return true;
@@ -86,4 +110,75 @@ public final class SparseBitLevelFull implements SparseBitLevel {
     public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
         throw new UnsupportedOperationException("Special level");
     }
+
+    @Override
+    public boolean get(long index) {
+        return true;
+    }
+
+    @Override
+    public boolean set(long index) {
+        return false;
+    }
+
+    @Override
+    public boolean clear(long index) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void flip(long index) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return true;
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return false;
+    }
+
+    @Override
+    public BigInteger cardinality(int[] fromInclusive, int[] toInclusive) {
+        return SparseBitUtil.distance(fromInclusive, toInclusive);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return true;
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return false;
+    }
+
+    @Override
+    public void or(SparseBitLevel other) {
+        // nothing to do - all bits are 1
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void write(DataOutput output) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
 }
@@ -0,0 +1,19 @@
+package org.sparsebitset.level;
+
+/**
+ * <p>Listener of structural changes of heap levels, see
+ * {@link SparseBitLevels#createLevel(int, int, SparseBitLevelListener)}. It is called by the thread which modifies the set, often under the lock of the set, so it must be fast and
+ * thread-safe.</p>
+ */
+@FunctionalInterface
+public interface SparseBitLevelListener {
+
+    /**
+     * Called when the structure of a level changes
+     *
+     * @param event Kind of change
+     * @param level Number of the changed underlying level, {@code 0} is the final level
+     */
+    void onLevelEvent(SparseBitLevelEvent event, int level);
+
+}
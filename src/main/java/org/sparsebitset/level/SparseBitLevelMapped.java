@@ -0,0 +1,600 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Read-only level which is navigated directly inside a buffer (usually a file mapped into memory)</p>
+ *
+ * <p>An intermediate level is a type map of 256 underlying levels (2 bits each, packed in 16 ints) followed
+ * by offsets of {@code REAL} underlying levels in order of segments. A final level is four 64-bit words.
+ * Underlying levels are placed before their parents, so the layout is written in a single pass.</p>
+ *
+ * <p>The buffer is accessed with absolute methods only, so the level is safe for concurrent readers</p>
+ */
+public final class SparseBitLevelMapped implements SparseBitLevel {
+
+    /**
+     * Size of the type map in bytes
+     */
+    private static final int TYPES_SIZE = SparseBitUtil.LEVEL_SIZE / SparseBitLevelN.CODES_PER_INT * Integer.BYTES;
+
+    /**
+     * Size of the final level in bytes
+     */
+    private static final int WORDS_SIZE = SparseBitLevel0.WORDS * Long.BYTES;
+
+    /**
+     * Selects the upper bit of every type code, it is set only for {@code REAL} code
+     */
+    private static final int REAL_MASK = 0xAAAAAAAA;
+
+    /**
+     * Selects the lower bit of every type code, it is set only for {@code FULL} code
+     */
+    private static final int FULL_MASK = 0x55555555;
+
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final int level;
+
+    private final int maximumOccupancy;
+
+    SparseBitLevelMapped(ByteBuffer buffer, int offset, int maximumOccupancy, int level) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.maximumOccupancy = maximumOccupancy;
+        this.level = level;
+    }
+
+    /**
+     * Write a level and all its underlying levels in the mapped layout
+     *
+     * @param source Level to write
+     * @param output Output, its size is used as the current offset
+     *
+     * @return Offset of the written level
+     *
+     * @throws IOException on I/O error or if the offsets overflow
+     */
+    static int write(SparseBitLevel source, DataOutputStream output) throws IOException {
+        if (source instanceof SparseBitLevel0) {
+            int offset = output.size();
+
+            source.write(output);
+
+            return offset;
+        }
+
+        if (!(source instanceof SparseBitLevelN)) {
+            throw new IllegalArgumentException("Level can't be written in the mapped layout");
+        }
+
+        SparseBitLevelN node = (SparseBitLevelN) source;
+
+        if (node.getPrefixLength() > 0) {
+            // compressed levels are written as they would be without the compression
+            int offset = write(node.getContent(), output);
+
+            for (int i = 0; i < node.getPrefixLength(); i++) {
+                int child = offset;
+                offset = output.size();
+
+                SparseBitLevelN.writeChainTypes(output, node.getPrefixSegment(i));
+                output.writeInt(child);
+            }
+
+            return offset;
+        }
+
+        int[] offsets = new int[SparseBitUtil.LEVEL_SIZE];
+        int count = 0;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = node.getUnderlying(segment);
+
+            if (underlying.getType() == SparseBitLevelType.REAL) {
+                offsets[count++] = write(underlying, output);
+            }
+        }
+
+        int offset = output.size();
+
+        node.writeTypes(output);
+
+        for (int i = 0; i < count; i++) {
+            output.writeInt(offsets[i]);
+        }
+
+        // the size counter of the output saturates at the maximum integer
+        if (output.size() == Integer.MAX_VALUE) {
+            throw new IOException("Set is too big for the mapped layout");
+        }
+
+        return offset;
+    }
+
+    @Override
+    public SparseBitLevelType getType() {
+        return SparseBitLevelType.REAL;
+    }
+
+    /**
+     * Load the level into heap
+     *
+     * @return Mutable level object
+     */
+    @Override
+    public SparseBitLevel copy() {
+        return load(offset, level);
+    }
+
+    private SparseBitLevel load(int offset, int level) {
+        if (level == 0) {
+            long[] words = new long[SparseBitLevel0.WORDS];
+
+            for (int i = 0; i < SparseBitLevel0.WORDS; i++) {
+                words[i] = buffer.getLong(offset + i * Long.BYTES);
+            }
+
+            return SparseBitLevel0.create(maximumOccupancy, words);
+        }
+
+        SparseBitLevel[] underlyings = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            switch (typeCode(offset, segment)) {
+                case SparseBitLevelN.NULL_CODE: {
+                    underlyings[segment] = SparseBitLevels.NULL;
+                    break;
+                }
+                case SparseBitLevelN.FULL_CODE: {
+                    underlyings[segment] = SparseBitLevels.FULL;
+                    break;
+                }
+                default: {
+                    underlyings[segment] = load(childOffset(offset, segment), level - 1);
+                    break;
+                }
+            }
+        }
+
+        return SparseBitLevelN.create(maximumOccupancy, level, underlyings);
+    }
+
+    @Override
+    public int getMaximumOccupancy() {
+        return maximumOccupancy;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isEmpty(offset, level);
+    }
+
+    private boolean isEmpty(int offset, int level) {
+        int size = (level == 0) ? WORDS_SIZE : TYPES_SIZE;
+
+        // NULL code is zero
+        for (int i = 0; i < size; i += Integer.BYTES) {
+            if (buffer.getInt(offset + i) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        return isFull(offset, level);
+    }
+
+    private boolean isFull(int offset, int level) {
+        int count = 0;
+
+        if (level == 0) {
+            for (int i = 0; i < WORDS_SIZE; i += Long.BYTES) {
+                count += Long.bitCount(buffer.getLong(offset + i));
+            }
+        } else {
+            for (int i = 0; i < TYPES_SIZE; i += Integer.BYTES) {
+                count += Integer.bitCount(buffer.getInt(offset + i) & FULL_MASK);
+            }
+        }
+
+        return count >= maximumOccupancy;
+    }
+
+    @Override
+    public void clearAll() {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void setAll() {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void flipAll() {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void validate() {
+        validate(offset, level);
+    }
+
+    private void validate(int offset, int level) {
+        int size = (level == 0) ? WORDS_SIZE : TYPES_SIZE;
+
+        if (offset < 0 || offset > buffer.limit() - size) {
+            throw new IllegalStateException("Offset is out of the buffer on level " + level);
+        }
+
+        if (level == 0) {
+            return;
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int code = typeCode(offset, segment);
+
+            if (code == SparseBitLevelN.REAL_CODE) {
+                int underlying = childOffset(offset, segment);
+
+                // underlying levels are placed before their parents
+                if (underlying >= offset) {
+                    throw new IllegalStateException("Underlying level doesn't precede its parent on level " + level);
+                }
+
+                validate(underlying, level - 1);
+
+                // empty real level must have been dismissed (a full one may be kept when it was unfolded)
+                if (isEmpty(underlying, level - 1)) {
+                    throw new IllegalStateException("Real level is not normalized on level " + level);
+                }
+            } else if (code != SparseBitLevelN.NULL_CODE && code != SparseBitLevelN.FULL_CODE) {
+                throw new IllegalStateException("Invalid level type code " + code + " on level " + level);
+            }
+        }
+    }
+
+    @Override
+    public long cardinalityHigh() {
+        return cardinality().shiftRight(Long.SIZE).longValue();
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return cardinality().longValue();
+    }
+
+    /**
+     * Count set bits. Counters are not kept in the layout, so the call walks all levels.
+     *
+     * @return Cardinality of the level
+     */
+    @Override
+    public BigInteger cardinality() {
+        return cardinality(offset, level);
+    }
+
+    private BigInteger cardinality(int offset, int level) {
+        if (level == 0) {
+            int count = 0;
+
+            for (int i = 0; i < WORDS_SIZE; i += Long.BYTES) {
+                count += Long.bitCount(buffer.getLong(offset + i));
+            }
+
+            return BigInteger.valueOf(count);
+        }
+
+        BigInteger result = BigInteger.ZERO;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            switch (typeCode(offset, segment)) {
+                case SparseBitLevelN.FULL_CODE: {
+                    result = result.add(BigInteger.ONE.shiftLeft(level << 3));
+                    break;
+                }
+                case SparseBitLevelN.REAL_CODE: {
+                    result = result.add(cardinality(childOffset(offset, segment), level - 1));
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean get(SparseBitIndex index) {
+        int offset = this.offset;
+
+        for (int level = this.level; level > 0; level--) {
+            int segment = index.segment(level);
+            SparseBitUtil.checkSegment(segment);
+
+            switch (typeCode(offset, segment)) {
+                case SparseBitLevelN.NULL_CODE:
+                    return false;
+                case SparseBitLevelN.FULL_CODE:
+                    return true;
+            }
+
+            offset = childOffset(offset, segment);
+        }
+
+        int segment = index.segment(0);
+        SparseBitUtil.checkSegment(segment);
+
+        return getBit(offset, segment);
+    }
+
+    @Override
+    public boolean set(SparseBitIndex index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public boolean clear(SparseBitIndex index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void flip(SparseBitIndex index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void clear(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public boolean get(long index) {
+        int offset = this.offset;
+
+        for (int level = this.level; level > 0; level--) {
+            int segment = SparseBitUtil.segment(index, level);
+
+            switch (typeCode(offset, segment)) {
+                case SparseBitLevelN.NULL_CODE:
+                    return false;
+                case SparseBitLevelN.FULL_CODE:
+                    return true;
+            }
+
+            offset = childOffset(offset, segment);
+        }
+
+        return getBit(offset, SparseBitUtil.segment(index, 0));
+    }
+
+    @Override
+    public boolean set(long index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public boolean clear(long index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void flip(long index) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return nextBit(offset, level, position, SparseBitLevelN.FULL_CODE, 0L);
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return nextBit(offset, level, position, SparseBitLevelN.NULL_CODE, -1L);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return previousBit(offset, level, position, SparseBitLevelN.FULL_CODE, 0L);
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return previousBit(offset, level, position, SparseBitLevelN.NULL_CODE, -1L);
+    }
+
+    /**
+     * Find the nearest set or clear bit
+     *
+     * @param offset Offset of the level
+     * @param level Level number
+     * @param position Position (see {@link SparseBitLevel#nextSetBit(int[])})
+     * @param matchingCode Type code of underlying levels which consist of the searched bits only
+     * @param inversion Mask which turns the searched bits of a word into ones
+     *
+     * @return {@code true} if a bit is found
+     */
+    private boolean nextBit(int offset, int level, int[] position, int matchingCode, long inversion) {
+        if (level == 0) {
+            int from = position[0];
+
+            for (int i = from >>> 6; i < SparseBitLevel0.WORDS; i++) {
+                long word = buffer.getLong(offset + i * Long.BYTES) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L << (from & 0x3F);
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.numberOfTrailingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int code = typeCode(offset, segment);
+
+            if (code == matchingCode) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (code == SparseBitLevelN.REAL_CODE) {
+                position[level] = segment;
+
+                if (nextBit(childOffset(offset, segment), level - 1, position, matchingCode, inversion)) {
+                    return true;
+                }
+            }
+
+            // the next segment is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the nearest set or clear bit going down
+     *
+     * @param offset Offset of the level
+     * @param level Level number
+     * @param position Position (see {@link SparseBitLevel#previousSetBit(int[])})
+     * @param matchingCode Type code of underlying levels which consist of the searched bits only
+     * @param inversion Mask which turns the searched bits of a word into ones
+     *
+     * @return {@code true} if a bit is found
+     */
+    private boolean previousBit(int offset, int level, int[] position, int matchingCode, long inversion) {
+        if (level == 0) {
+            int from = position[0];
+
+            for (int i = from >>> 6; i >= 0; i--) {
+                long word = buffer.getLong(offset + i * Long.BYTES) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L >>> ~from;
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        for (int segment = position[level]; segment >= 0; segment--) {
+            int code = typeCode(offset, segment);
+
+            if (code == matchingCode) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (code == SparseBitLevelN.REAL_CODE) {
+                position[level] = segment;
+
+                if (previousBit(childOffset(offset, segment), level - 1, position, matchingCode, inversion)) {
+                    return true;
+                }
+            }
+
+            // the previous segment is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        return false;
+    }
+
+    @Override
+    public void or(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Level is read-only");
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        copy().write(output);
+    }
+
+    private boolean getBit(int offset, int segment) {
+        long word = buffer.getLong(offset + (segment >>> 6) * Long.BYTES);
+
+        return (word & (1L << segment)) != 0;
+    }
+
+    private int typeCode(int offset, int segment) {
+        int codes = buffer.getInt(offset + (segment / SparseBitLevelN.CODES_PER_INT) * Integer.BYTES);
+
+        return (codes >>> ((segment % SparseBitLevelN.CODES_PER_INT) << 1)) & 0x03;
+    }
+
+    /**
+     * Find the offset of a {@code REAL} underlying level by its rank among {@code REAL} underlying levels
+     *
+     * @param offset Offset of the level
+     * @param segment Segment index
+     *
+     * @return Offset of the underlying level
+     */
+    private int childOffset(int offset, int segment) {
+        int block = segment / SparseBitLevelN.CODES_PER_INT;
+        int rank = 0;
+
+        for (int i = 0; i < block; i++) {
+            rank += Integer.bitCount(buffer.getInt(offset + i * Integer.BYTES) & REAL_MASK);
+        }
+
+        int codes = buffer.getInt(offset + block * Integer.BYTES);
+        int preceding = (1 << ((segment % SparseBitLevelN.CODES_PER_INT) << 1)) - 1;
+
+        rank += Integer.bitCount(codes & REAL_MASK & preceding);
+
+        return buffer.getInt(offset + TYPES_SIZE + rank * Integer.BYTES);
+    }
+
+}
@@ -4,57 +4,320 @@ import org.sparsebitset.index.SparseBitConstIndex;
 import org.sparsebitset.index.SparseBitIndex;
 import org.sparsebitset.util.SparseBitUtil;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 /**
  * <p>Subset represents an intermediate level of hierarchical sparse bit set</p>
+ *
+ * <p>FULL underlying levels are kept as a 256-bit mask and NULL ones are implicit, so only REAL underlying levels
+ * take slots. The slots are organized like the nodes of an adaptive radix tree and grow or shrink with the number
+ * of REAL underlying levels:</p>
+ *
+ * <ul>
+ *     <li>up to 4 or 16 levels - segments are kept sorted in a byte array along with the levels</li>
+ *     <li>up to 48 levels - a 256-byte index refers to the slots of the levels</li>
+ *     <li>up to 256 levels - levels are kept in a plain array indexed by segment</li>
+ * </ul>
+ *
+ * <p>A chain of levels which have a single REAL underlying level each is compressed into a prefix of segments:
+ * such level stands where the parent expects the top level of the chain and branches only on the level where
+ * the indexes diverge. The level is split in place when an index outside the prefix is added, and the
+ * occupancy rules of the whole chain are applied to it, so the bits are exactly the same as without the
+ * compression.</p>
+ *
+ * <p>A copy shares REAL underlying levels with the source level, both levels mark them as shared and copy such
+ * level before it is modified, so copying takes constant time and a modification copies only the levels on its
+ * path.</p>
  */
 public final class SparseBitLevelN implements SparseBitLevel {
 
-    private final int level;
+    /**
+     * Type codes in the binary format (2 bits per underlying level)
+     */
+    static final int NULL_CODE = 0;
+
+    static final int FULL_CODE = 1;
+
+    static final int REAL_CODE = 2;
+
+    /**
+     * How many type codes are packed in a single integer of the type map
+     */
+    static final int CODES_PER_INT = Integer.SIZE / 2;
+
+    /**
+     * Capacities of the node kinds
+     */
+    private static final int NODE4 = 4;
+
+    private static final int NODE16 = 16;
+
+    private static final int NODE48 = 48;
+
+    private static final int NODE256 = SparseBitUtil.LEVEL_SIZE;
+
+    /**
+     * A node shrinks when the number of REAL underlying levels drops to these limits (kept below the capacity of
+     * the smaller kind so a single level doesn't make the node grow and shrink back and forth)
+     */
+    private static final int NODE16_SHRINK = 3;
+
+    private static final int NODE48_SHRINK = 12;
+
+    private static final int NODE256_SHRINK = 37;
+
+    private static final byte[] NO_PREFIX = new byte[0];
+
+    /**
+     * Parallel operations fork tasks for underlying levels of the branching level and of its REAL underlying
+     * levels, deeper levels are processed by these tasks sequentially
+     */
+    private static final int FORK_LEVELS = 2;
+
+    /**
+     * Bulk operations which walk two levels in lockstep
+     */
+    private enum Combination {
+        OR, AND, AND_NOT, XOR
+    }
+
+    /**
+     * Level where the underlying levels branch
+     */
+    private int level;
+
+    /**
+     * Segments of the compressed levels above the branching one, the element {@code i} is the segment of the
+     * level {@code level + 1 + i}
+     */
+    private byte[] prefix;
+
+    /**
+     * Mask of FULL underlying levels
+     */
+    private final long[] fullMask;
+
+    /**
+     * REAL underlying levels, the length of the array defines the node kind
+     */
+    private SparseBitLevel[] reals;
+
+    /**
+     * Mask of REAL underlying levels which are shared with copies of the level and must be copied before they
+     * are modified
+     */
+    private long[] sharedMask;
+
+    /**
+     * Segments of REAL underlying levels for nodes up to 48 slots (sorted for nodes up to 16 slots)
+     */
+    private byte[] keys;
 
-    private final SparseBitLevel[] underlyings;
+    /**
+     * Slot number plus one for every segment (zero for missing level) for nodes of 48 slots
+     */
+    private byte[] slots;
 
     private final int maximumOccupancy;
 
+    /**
+     * Listener of structural changes or {@code null}, underlying levels and copies get the same listener
+     */
+    private final SparseBitLevelListener listener;
+
     private int currentFullCount;
 
     private int currentRealCount;
 
-    SparseBitLevelN(int maximumOccupancy, int level) {
-        this.maximumOccupancy = maximumOccupancy;
-        this.level = level;
+    /**
+     * Upper 64 bits of the total cardinality of REAL underlying levels
+     */
+    private long realCardinalityHigh;
 
-        this.underlyings = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+    /**
+     * Lower 64 bits of the total cardinality of REAL underlying levels
+     */
+    private long realCardinalityLow;
 
-        clearAll();
+    SparseBitLevelN(int maximumOccupancy, int level, SparseBitLevelListener listener) {
+        this(maximumOccupancy, level, NO_PREFIX, listener);
     }
 
-    private SparseBitLevelN(int maximumOccupancy, int level, SparseBitLevel[] underlyings) {
+    private SparseBitLevelN(int maximumOccupancy, int level, byte[] prefix, SparseBitLevelListener listener) {
         this.maximumOccupancy = maximumOccupancy;
+        this.listener = listener;
         this.level = level;
+        this.prefix = prefix;
 
-        this.underlyings = underlyings;
+        this.fullMask = new long[SparseBitUtil.LEVEL_SIZE / Long.SIZE];
 
-        for (SparseBitLevel underlying : this.underlyings) {
-            switch (underlying.getType()) {
-                case REAL:
-                    currentRealCount++;
-                    break;
-                case FULL:
-                    currentFullCount++;
-                    break;
+        reset(0L, 0);
+    }
+
+    SparseBitLevelN(int maximumOccupancy, int level, SparseBitLevel[] underlyings) {
+        this(maximumOccupancy, level, NO_PREFIX, null);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = underlyings[segment];
+
+            setUnderlying(segment, underlying);
+
+            if (underlying.getType() == SparseBitLevelType.REAL) {
+                addCardinality(underlying);
             }
         }
     }
 
-    @Override
-    public SparseBitLevel copy() {
+    private SparseBitLevelN(SparseBitLevelN source) {
+        this.maximumOccupancy = source.maximumOccupancy;
+        this.listener = source.listener;
+        this.level = source.level;
+        this.prefix = source.prefix;
+
+        this.fullMask = source.fullMask.clone();
+        this.reals = source.reals.clone();
+        this.keys = (source.keys != null) ? source.keys.clone() : null;
+        this.slots = (source.slots != null) ? source.slots.clone() : null;
+
+        // from now on both levels refer to the same REAL underlying levels
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if (source.findReal(segment) != null) {
+                source.sharedMask[segment >>> 6] |= 1L << segment;
+            }
+        }
+
+        this.sharedMask = source.sharedMask.clone();
+
+        this.currentFullCount = source.currentFullCount;
+        this.currentRealCount = source.currentRealCount;
+
+        this.realCardinalityHigh = source.realCardinalityHigh;
+        this.realCardinalityLow = source.realCardinalityLow;
+    }
+
+    /**
+     * Create a level which shares underlying levels of the source one but has another prefix
+     *
+     * @param source Source level
+     * @param prefix New prefix
+     */
+    private SparseBitLevelN(SparseBitLevelN source, byte[] prefix) {
+        this.maximumOccupancy = source.maximumOccupancy;
+        this.listener = source.listener;
+        this.level = source.level;
+        this.prefix = prefix;
+
+        this.fullMask = source.fullMask.clone();
+        this.reals = source.reals;
+        this.sharedMask = source.sharedMask;
+        this.keys = source.keys;
+        this.slots = source.slots;
+
+        this.currentFullCount = source.currentFullCount;
+        this.currentRealCount = source.currentRealCount;
+
+        this.realCardinalityHigh = source.realCardinalityHigh;
+        this.realCardinalityLow = source.realCardinalityLow;
+    }
+
+    /**
+     * Create a level from underlying levels, a level with the only REAL underlying level is compressed
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param level Level number
+     * @param underlyings Underlying levels for every segment
+     *
+     * @return Level object
+     */
+    static SparseBitLevelN create(int maximumOccupancy, int level, SparseBitLevel[] underlyings) {
+        SparseBitLevelN created = new SparseBitLevelN(maximumOccupancy, level, underlyings);
+
+        if (created.currentFullCount == 0 && created.currentRealCount == 1) {
+            int segment = created.keys[0] & SparseBitUtil.BYTE_MASK;
+            SparseBitLevel underlying = created.reals[0];
+
+            if (underlying instanceof SparseBitLevelN) {
+                SparseBitLevelN compressed = (SparseBitLevelN) underlying;
+
+                byte[] prefix = Arrays.copyOf(compressed.prefix, compressed.prefix.length + 1);
+                prefix[compressed.prefix.length] = (byte) segment;
+                compressed.prefix = prefix;
+
+                return compressed;
+            }
+        }
+
+        return created;
+    }
+
+    /**
+     * Read a level written by {@link #write(DataOutput)}
+     *
+     * @param input Input
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param level Level number
+     *
+     * @return Level object
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    static SparseBitLevelN read(DataInput input, int maximumOccupancy, int level) throws IOException {
         SparseBitLevel[] underlyings = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
 
-        for (int i = 0; i < SparseBitUtil.LEVEL_SIZE; i++) {
-            underlyings[i] = this.underlyings[i].copy();
+        // REAL underlying levels follow the whole type map so they are left empty on the first pass
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment += CODES_PER_INT) {
+            int codes = input.readInt();
+
+            for (int i = 0; i < CODES_PER_INT; i++, codes >>>= 2) {
+                int code = codes & 0x03;
+
+                switch (code) {
+                    case NULL_CODE:
+                        underlyings[segment + i] = SparseBitLevels.NULL;
+                        break;
+                    case FULL_CODE:
+                        underlyings[segment + i] = SparseBitLevels.FULL;
+                        break;
+                    case REAL_CODE:
+                        break;
+                    default:
+                        throw new IOException("Invalid level type code " + code + " on level " + level);
+                }
+            }
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if (underlyings[segment] == null) {
+                SparseBitLevel underlying = SparseBitLevels.readLevel(input, maximumOccupancy, level);
+
+                // empty real level must have been dismissed (a full one may be kept when it was unfolded)
+                if (underlying.isEmpty()) {
+                    throw new IOException("Real level is not normalized on level " + level);
+                }
+
+                underlyings[segment] = underlying;
+            }
         }
 
-        return new SparseBitLevelN(maximumOccupancy, level, underlyings);
+        return create(maximumOccupancy, level, underlyings);
+    }
+
+    @Override
+    public SparseBitLevel copy() {
+        return new SparseBitLevelN(this);
+    }
+
+    @Override
+    public int getMaximumOccupancy() {
+        return maximumOccupancy;
     }
 
     @Override
@@ -69,27 +332,39 @@ public final class SparseBitLevelN implements SparseBitLevel {
 
     @Override
     public boolean isFull() {
-        return (currentFullCount >= maximumOccupancy);
+        // a compressed chain always has the only underlying level on its top
+        return (prefix.length == 0) && (currentFullCount >= maximumOccupancy);
     }
 
     @Override
     public void clearAll() {
-        for (int i = 0; i < SparseBitUtil.LEVEL_SIZE; i++) {
-            underlyings[i] = SparseBitLevels.NULL;
-        }
+        level += prefix.length;
+        prefix = NO_PREFIX;
 
-        currentFullCount = 0;
-        currentRealCount = 0;
+        reset(0L, 0);
     }
 
     @Override
     public void setAll() {
-        for (int i = 0; i < SparseBitUtil.LEVEL_SIZE; i++) {
-            underlyings[i] = SparseBitLevels.FULL;
-        }
+        level += prefix.length;
+        prefix = NO_PREFIX;
 
-        currentFullCount = SparseBitUtil.LEVEL_SIZE;
+        reset(-1L, SparseBitUtil.LEVEL_SIZE);
+    }
+
+    private void reset(long mask, int fullCount) {
+        Arrays.fill(fullMask, mask);
+
+        // the mask may be taken by a level which was split off
+        sharedMask = new long[SparseBitUtil.LEVEL_SIZE / Long.SIZE];
+
+        resetReals();
+
+        currentFullCount = fullCount;
         currentRealCount = 0;
+
+        realCardinalityHigh = 0;
+        realCardinalityLow = 0;
     }
 
     @Override
@@ -99,12 +374,53 @@ public final class SparseBitLevelN implements SparseBitLevel {
 
     @Override
     public void validate() {
+        validate(0);
+    }
+
+    @Override
+    public void validate(ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> validate(FORK_LEVELS)));
+    }
+
+    /**
+     * Validate underlying levels and then the counters of this level
+     *
+     * @param forkLevels How many levels from this one down validate their underlying levels in parallel tasks
+     *                   (the caller must run in a fork/join pool then)
+     */
+    private void validate(int forkLevels) {
+        List<ForkJoinTask<?>> forked = (forkLevels > 0) ? new ArrayList<>() : null;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = findReal(segment);
+
+            if (underlying == null) {
+                continue;
+            }
+
+            if (forkLevels == 0) {
+                underlying.validate();
+            } else if (underlying instanceof SparseBitLevelN) {
+                forked.add(ForkJoinTask.adapt(() -> ((SparseBitLevelN) underlying).validate(forkLevels - 1)));
+            } else {
+                forked.add(ForkJoinTask.adapt(() -> underlying.validate()));
+            }
+        }
+
+        if (forked != null) {
+            ForkJoinTask.invokeAll(forked);
+        }
+
+        validateCounters();
+    }
+
+    private void validateCounters() {
         int calculatedFullCount = 0;
         int calculatedRealCount = 0;
+        BigInteger calculatedRealCardinality = BigInteger.ZERO;
 
         for (int i = 0; i < SparseBitUtil.LEVEL_SIZE; i++) {
-            SparseBitLevel underlying = underlyings[i];
-            underlying.validate();
+            SparseBitLevel underlying = getUnderlying(i);
 
             switch (underlying.getType()) {
                 case FULL: {
@@ -113,6 +429,7 @@ public final class SparseBitLevelN implements SparseBitLevel {
                 }
                 case REAL: {
                     calculatedRealCount++;
+                    calculatedRealCardinality = calculatedRealCardinality.add(underlying.cardinality());
                     break;
                 }
             }
@@ -125,135 +442,483 @@ public final class SparseBitLevelN implements SparseBitLevel {
         if (currentRealCount != calculatedRealCount) {
             throw new IllegalStateException("Effective usage and real usage don't match on level " + level);
         }
-    }
 
-    @Override
-    public boolean get(SparseBitIndex index) {
-        int segment = index.segment(level);
-        SparseBitUtil.checkSegment(segment);
+        // the counter wraps around in sets deeper than 16 levels
+        BigInteger realCardinality = SparseBitUtil.toBigInteger(realCardinalityHigh, realCardinalityLow);
 
-        SparseBitLevel underlying = underlyings[segment];
-        return underlying.get(index);
-    }
+        if (!realCardinality.equals(SparseBitUtil.truncate128(calculatedRealCardinality))) {
+            throw new IllegalStateException("Effective cardinality and real cardinality don't match on level " + level);
+        }
 
-    @Override
-    public boolean set(SparseBitIndex index) {
-        int segment = index.segment(level);
-        SparseBitUtil.checkSegment(segment);
+        validateReals();
 
-        SparseBitLevel underlying = underlyings[segment];
-        switch (underlying.getType()) {
-            case REAL: {
-                boolean result = underlying.set(index);
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if ((sharedMask[segment >>> 6] & (1L << segment)) != 0 && findReal(segment) == null) {
+                throw new IllegalStateException("Shared level is not a real one on level " + level);
+            }
+        }
+    }
 
-                if (underlying.isFull()) {
-                    squashUnderlying(segment);
-                }
+    private void validateReals() {
+        int capacity = reals.length;
 
-                return result;
+        int stored = 0;
+        for (SparseBitLevel real : reals) {
+            if (real != null) {
+                stored++;
             }
-            case NULL: {
-                underlying = requireUnderlying(segment);
+        }
+
+        if (stored != currentRealCount) {
+            throw new IllegalStateException("Stored real levels and real usage don't match on level " + level);
+        }
+
+        int shrink = (capacity == NODE256) ? NODE256_SHRINK : (capacity == NODE48) ? NODE48_SHRINK
+                : (capacity == NODE16) ? NODE16_SHRINK : 0;
 
-                return underlying.set(index);
+        if (capacity != NODE4 && currentRealCount <= shrink) {
+            throw new IllegalStateException("Node of " + capacity + " slots is underused on level " + level);
+        }
+
+        if (capacity == NODE4 || capacity == NODE16) {
+            for (int i = 1; i < currentRealCount; i++) {
+                if ((keys[i - 1] & SparseBitUtil.BYTE_MASK) >= (keys[i] & SparseBitUtil.BYTE_MASK)) {
+                    throw new IllegalStateException("Keys are not sorted on level " + level);
+                }
+            }
+        } else if (capacity == NODE48) {
+            for (int i = 0; i < currentRealCount; i++) {
+                if (slots[keys[i] & SparseBitUtil.BYTE_MASK] != i + 1) {
+                    throw new IllegalStateException("Keys and slots don't match on level " + level);
+                }
             }
-            case FULL:
-                return false;
         }
+    }
 
-        throw new IllegalStateException("Illegal execution branch");
+    @Override
+    public long cardinalityHigh() {
+        long fullLow = fullCardinalityLow();
+        long low = realCardinalityLow + fullLow;
+        long carry = Long.compareUnsigned(low, fullLow) < 0 ? 1 : 0;
+
+        return realCardinalityHigh + fullCardinalityHigh() + carry;
     }
 
     @Override
-    public boolean clear(SparseBitIndex index) {
-        int segment = index.segment(level);
-        SparseBitUtil.checkSegment(segment);
+    public long cardinalityLow() {
+        return realCardinalityLow + fullCardinalityLow();
+    }
 
-        SparseBitLevel underlying = underlyings[segment];
-        switch (underlying.getType()) {
-            case REAL: {
-                boolean result = underlying.clear(index);
+    @Override
+    public BigInteger cardinality() {
+        // computed apart from the 128-bit parts as a completely full root level may not fit in them
+        BigInteger full = BigInteger.valueOf(currentFullCount).shiftLeft(level << 3);
+        BigInteger real = SparseBitUtil.toBigInteger(realCardinalityHigh, realCardinalityLow);
 
-                if (underlying.isEmpty()) {
-                    dismissUnderlying(segment);
-                }
+        return full.add(real);
+    }
 
-                return result;
-            }
-            case NULL:
-                return false;
-            case FULL: {
-                underlying = unfoldUnderlying(segment);
+    private long fullCardinalityHigh() {
+        int shift = level << 3;
 
-                return underlying.clear(index);
-            }
+        if (shift < Long.SIZE) {
+            return (long) currentFullCount >>> (Long.SIZE - shift);
+        } else if (shift < 2 * Long.SIZE) {
+            return (long) currentFullCount << (shift - Long.SIZE);
+        } else {
+            return 0;
         }
+    }
 
-        throw new IllegalStateException("Illegal execution branch");
+    private long fullCardinalityLow() {
+        int shift = level << 3;
+
+        if (shift < Long.SIZE) {
+            return (long) currentFullCount << shift;
+        } else {
+            return 0;
+        }
     }
 
     @Override
-    public void flip(SparseBitIndex index) {
+    public boolean get(SparseBitIndex index) {
+        if (findMismatch(index, index) >= 0) {
+            return false;
+        }
+
         int segment = index.segment(level);
         SparseBitUtil.checkSegment(segment);
 
-        SparseBitLevel underlying = underlyings[segment];
-        switch (underlying.getType()) {
-            case REAL: {
-                underlying.flip(index);
+        SparseBitLevel underlying = getUnderlying(segment);
+        return underlying.get(index);
+    }
 
-                if (underlying.isFull()) {
-                    squashUnderlying(segment);
-                } else if (underlying.isEmpty()) {
-                    dismissUnderlying(segment);
-                }
+    @Override
+    public boolean set(SparseBitIndex index) {
+        int mismatch = findMismatch(index, index);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
 
-                break;
-            }
-            case NULL: {
-                underlying = requireUnderlying(segment);
+        int segment = index.segment(level);
+        SparseBitUtil.checkSegment(segment);
 
-                underlying.flip(index);
+        boolean result = setBit(segment, index, 0L);
 
-                break;
-            }
-            case FULL: {
-                underlying = unfoldUnderlying(segment);
+        normalizeContent();
 
-                underlying.flip(index);
+        return result;
+    }
 
-                break;
-            }
+    @Override
+    public boolean clear(SparseBitIndex index) {
+        if (findMismatch(index, index) >= 0) {
+            return false;
         }
+
+        int segment = index.segment(level);
+        SparseBitUtil.checkSegment(segment);
+
+        return clearBit(segment, index, 0L);
     }
 
     @Override
-    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
-        int segmentFrom = fromIndexInclusive.segment(level);
-        int segmentTo = toIndexInclusive.segment(level);
-        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+    public void flip(SparseBitIndex index) {
+        int mismatch = findMismatch(index, index);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
 
-        if (segmentFrom != segmentTo) {
-            setSegment(fromIndexInclusive, SparseBitConstIndex.MAX, segmentFrom);
+        int segment = index.segment(level);
+        SparseBitUtil.checkSegment(segment);
 
-            for (int segment = segmentFrom + 1, limit = segmentTo - 1; segment <= limit; segment++) {
-                setSegment(SparseBitConstIndex.MIN, SparseBitConstIndex.MAX, segment);
-            }
+        flipBit(segment, index, 0L);
 
-            setSegment(SparseBitConstIndex.MIN, toIndexInclusive, segmentTo);
+        normalizeContent();
+    }
+
+    @Override
+    public boolean get(long index) {
+        if (findMismatch(index) >= 0) {
+            return false;
+        }
+
+        int segment = SparseBitUtil.segment(index, level);
+
+        SparseBitLevel underlying = getUnderlying(segment);
+        return underlying.get(index);
+    }
+
+    @Override
+    public boolean set(long index) {
+        int mismatch = findMismatch(index);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
+
+        boolean result = setBit(SparseBitUtil.segment(index, level), null, index);
+
+        normalizeContent();
+
+        return result;
+    }
+
+    @Override
+    public boolean clear(long index) {
+        if (findMismatch(index) >= 0) {
+            return false;
+        }
+
+        return clearBit(SparseBitUtil.segment(index, level), null, index);
+    }
+
+    @Override
+    public void flip(long index) {
+        int mismatch = findMismatch(index);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
+
+        flipBit(SparseBitUtil.segment(index, level), null, index);
+
+        normalizeContent();
+    }
+
+    /**
+     * Get bits of a group of primitive indexes, every run of indexes with the same segment is passed to the
+     * underlying level at once
+     *
+     * @param keys Primitive indexes sorted in unsigned order
+     * @param from Position of the first index of the group (inclusive)
+     * @param to Position of the last index of the group (exclusive)
+     * @param bitmap Bitmap where the bit of a position is set if the bit of the index on this position is set
+     */
+    @Override
+    public void get(long[] keys, int from, int to, long[] bitmap) {
+        for (int i = from, end; i < to; i = end) {
+            end = i + 1;
+
+            // indexes outside of the compressed chain are clear
+            if (findMismatch(keys[i]) >= 0) {
+                continue;
+            }
+
+            int segment = SparseBitUtil.segment(keys[i], level);
+
+            while (end < to && SparseBitUtil.segment(keys[end], level) == segment && findMismatch(keys[end]) < 0) {
+                end++;
+            }
+
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case FULL: {
+                    for (int j = i; j < end; j++) {
+                        bitmap[j >>> 6] |= 1L << j;
+                    }
+
+                    break;
+                }
+                case REAL: {
+                    underlying.get(keys, i, end, bitmap);
+
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set bits of a group of primitive indexes, every run of indexes with the same segment is passed to the
+     * underlying level at once. Levels are squashed as if the bits were set one by one.
+     *
+     * @param keys Primitive indexes sorted in unsigned order
+     * @param from Position of the first index of the group (inclusive)
+     * @param to Position of the last index of the group (exclusive)
+     */
+    @Override
+    public void set(long[] keys, int from, int to) {
+        // the chain is split once on the highest level where any of the indexes leaves it
+        int mismatch = -1;
+        for (int i = from; i < to; i++) {
+            mismatch = Math.max(mismatch, findMismatch(keys[i]));
+        }
+
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
+
+        for (int i = from, end; i < to; i = end) {
+            int segment = SparseBitUtil.segment(keys[i], level);
+
+            end = i + 1;
+            while (end < to && SparseBitUtil.segment(keys[end], level) == segment) {
+                end++;
+            }
+
+            setBits(segment, keys, i, end);
+        }
+
+        normalizeContent();
+    }
+
+    private void setBits(int segment, long[] keys, int from, int to) {
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+        switch (underlying.getType()) {
+            case REAL: {
+                subtractCardinality(underlying);
+
+                underlying.set(keys, from, to);
+
+                addCardinality(underlying);
+
+                if (underlying.isFull()) {
+                    squashUnderlying(segment);
+                }
+
+                break;
+            }
+            case NULL: {
+                underlying = requirePath(segment, null, keys[from]);
+
+                underlying.set(keys, from, to);
+
+                addCardinality(underlying);
+
+                // a new level is checked only after the second bit, the same way as for single bits
+                if (to - from > 1 && underlying.isFull()) {
+                    squashUnderlying(segment);
+                }
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Set a single bit, the bit is given either by the index object or by the primitive index
+     *
+     * @param segment Segment index
+     * @param index Index object or {@code null}
+     * @param key Primitive index which is used when there is no index object
+     *
+     * @return {@code true} if the bit was clear
+     */
+    private boolean setBit(int segment, SparseBitIndex index, long key) {
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+        switch (underlying.getType()) {
+            case REAL: {
+                subtractCardinality(underlying);
+
+                boolean result = (index != null) ? underlying.set(index) : underlying.set(key);
+
+                addCardinality(underlying);
+
+                if (underlying.isFull()) {
+                    squashUnderlying(segment);
+                }
+
+                return result;
+            }
+            case NULL: {
+                underlying = requirePath(segment, index, key);
+
+                boolean result = (index != null) ? underlying.set(index) : underlying.set(key);
+
+                addCardinality(underlying);
+
+                return result;
+            }
+            case FULL:
+                return false;
+        }
+
+        throw new IllegalStateException("Illegal execution branch");
+    }
+
+    private boolean clearBit(int segment, SparseBitIndex index, long key) {
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+        switch (underlying.getType()) {
+            case REAL: {
+                subtractCardinality(underlying);
+
+                boolean result = (index != null) ? underlying.clear(index) : underlying.clear(key);
+
+                addCardinality(underlying);
+
+                if (underlying.isEmpty()) {
+                    dismissUnderlying(segment);
+                }
+
+                return result;
+            }
+            case NULL:
+                return false;
+            case FULL: {
+                underlying = unfoldUnderlying(segment);
+
+                subtractCardinality(underlying);
+
+                boolean result = (index != null) ? underlying.clear(index) : underlying.clear(key);
+
+                addCardinality(underlying);
+
+                return result;
+            }
+        }
+
+        throw new IllegalStateException("Illegal execution branch");
+    }
+
+    private void flipBit(int segment, SparseBitIndex index, long key) {
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+        switch (underlying.getType()) {
+            case REAL: {
+                subtractCardinality(underlying);
+
+                flipBit(underlying, index, key);
+
+                addCardinality(underlying);
+
+                if (underlying.isFull()) {
+                    squashUnderlying(segment);
+                } else if (underlying.isEmpty()) {
+                    dismissUnderlying(segment);
+                }
+
+                break;
+            }
+            case NULL: {
+                underlying = requirePath(segment, index, key);
+
+                flipBit(underlying, index, key);
+
+                addCardinality(underlying);
+
+                break;
+            }
+            case FULL: {
+                underlying = unfoldUnderlying(segment);
+
+                subtractCardinality(underlying);
+
+                flipBit(underlying, index, key);
+
+                addCardinality(underlying);
+
+                break;
+            }
+        }
+    }
+
+    private static void flipBit(SparseBitLevel underlying, SparseBitIndex index, long key) {
+        if (index != null) {
+            underlying.flip(index);
+        } else {
+            underlying.flip(key);
+        }
+    }
+
+    @Override
+    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        int mismatch = findMismatch(fromIndexInclusive, toIndexInclusive);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
+
+        // the lowest level of the chain squashes the branching level as if the range was set in it
+        if (prefix.length > 0 && countAffected(fromIndexInclusive, toIndexInclusive, level + 1) >= maximumOccupancy) {
+            squashContent();
+            return;
+        }
+
+        int segmentFrom = fromIndexInclusive.segment(level);
+        int segmentTo = toIndexInclusive.segment(level);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        if (segmentFrom != segmentTo) {
+            setSegment(fromIndexInclusive, SparseBitConstIndex.MAX, segmentFrom);
+
+            for (int segment = segmentFrom + 1, limit = segmentTo - 1; segment <= limit; segment++) {
+                setSegment(SparseBitConstIndex.MIN, SparseBitConstIndex.MAX, segment);
+            }
+
+            setSegment(SparseBitConstIndex.MIN, toIndexInclusive, segmentTo);
         } else {
             setSegment(fromIndexInclusive, toIndexInclusive, segmentFrom);
         }
+
+        normalizeContent();
     }
 
     private void setSegment(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive, int segment) {
-        SparseBitLevel underlying = underlyings[segment];
+        SparseBitLevel underlying = getWritableUnderlying(segment);
 
         if (underlying.getType() == SparseBitLevelType.FULL) {
             return;
         }
 
-        int affected = 1 + toIndexInclusive.segment(level - 1) - fromIndexInclusive.segment(level - 1);
+        int affected = countAffected(fromIndexInclusive, toIndexInclusive, level);
 
         if (affected >= maximumOccupancy) {
             switch (underlying.getType()) {
@@ -263,9 +928,7 @@ public final class SparseBitLevelN implements SparseBitLevel {
                     break;
                 }
                 case NULL: {
-                    underlyings[segment] = SparseBitLevels.FULL;
-
-                    currentFullCount++;
+                    setUnderlying(segment, SparseBitLevels.FULL);
 
                     break;
                 }
@@ -273,8 +936,12 @@ public final class SparseBitLevelN implements SparseBitLevel {
         } else {
             switch (underlying.getType()) {
                 case REAL: {
+                    subtractCardinality(underlying);
+
                     underlying.set(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     if (underlying.isFull()) {
                         squashUnderlying(segment);
                     }
@@ -284,8 +951,12 @@ public final class SparseBitLevelN implements SparseBitLevel {
                 case NULL: {
                     underlying = requireUnderlying(segment);
 
+                    subtractCardinality(underlying);
+
                     underlying.set(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     break;
                 }
             }
@@ -295,6 +966,25 @@ public final class SparseBitLevelN implements SparseBitLevel {
 
     @Override
     public void clear(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        // the range is clipped to the compressed chain (bits outside of it are clear anyway)
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+            int segmentFrom = fromIndexInclusive.segment(level + 1 + i);
+            int segmentTo = toIndexInclusive.segment(level + 1 + i);
+
+            if (segmentFrom > segment || segmentTo < segment) {
+                return;
+            }
+
+            if (segmentFrom < segment) {
+                fromIndexInclusive = SparseBitConstIndex.MIN;
+            }
+
+            if (segmentTo > segment) {
+                toIndexInclusive = SparseBitConstIndex.MAX;
+            }
+        }
+
         int segmentFrom = fromIndexInclusive.segment(level);
         int segmentTo = toIndexInclusive.segment(level);
         SparseBitUtil.checkSegments(segmentFrom, segmentTo);
@@ -313,13 +1003,13 @@ public final class SparseBitLevelN implements SparseBitLevel {
     }
 
     private void clearSegment(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive, int segment) {
-        SparseBitLevel underlying = underlyings[segment];
+        SparseBitLevel underlying = getWritableUnderlying(segment);
 
         if (underlying.getType() == SparseBitLevelType.NULL) {
             return;
         }
 
-        int affected = 1 + toIndexInclusive.segment(level - 1) - fromIndexInclusive.segment(level - 1);
+        int affected = countAffected(fromIndexInclusive, toIndexInclusive, level);
 
         if (affected >= SparseBitUtil.LEVEL_SIZE) {
             switch (underlying.getType()) {
@@ -329,9 +1019,7 @@ public final class SparseBitLevelN implements SparseBitLevel {
                     break;
                 }
                 case FULL: {
-                    underlyings[segment] = SparseBitLevels.NULL;
-
-                    currentFullCount--;
+                    setUnderlying(segment, SparseBitLevels.NULL);
 
                     break;
                 }
@@ -339,8 +1027,12 @@ public final class SparseBitLevelN implements SparseBitLevel {
         } else {
             switch (underlying.getType()) {
                 case REAL: {
+                    subtractCardinality(underlying);
+
                     underlying.clear(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     if (underlying.isEmpty()) {
                         dismissUnderlying(segment);
                     }
@@ -350,8 +1042,12 @@ public final class SparseBitLevelN implements SparseBitLevel {
                 case FULL: {
                     underlying = unfoldUnderlying(segment);
 
+                    subtractCardinality(underlying);
+
                     underlying.clear(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     break;
                 }
             }
@@ -360,6 +1056,11 @@ public final class SparseBitLevelN implements SparseBitLevel {
 
     @Override
     public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        int mismatch = findMismatch(fromIndexInclusive, toIndexInclusive);
+        if (mismatch >= 0) {
+            splitPrefix(mismatch);
+        }
+
         int segmentFrom = fromIndexInclusive.segment(level);
         int segmentTo = toIndexInclusive.segment(level);
         SparseBitUtil.checkSegments(segmentFrom, segmentTo);
@@ -375,14 +1076,20 @@ public final class SparseBitLevelN implements SparseBitLevel {
         } else {
             flipSegment(fromIndexInclusive, toIndexInclusive, segmentFrom);
         }
+
+        normalizeContent();
     }
 
     private void flipSegment(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive, int segment) {
-        SparseBitLevel underlying = underlyings[segment];
+        SparseBitLevel underlying = getWritableUnderlying(segment);
 
         if (underlying.getType() == SparseBitLevelType.REAL) {
+            subtractCardinality(underlying);
+
             underlying.flip(fromIndexInclusive, toIndexInclusive);
 
+            addCardinality(underlying);
+
             if (underlying.isFull()) {
                 squashUnderlying(segment);
             } else if (underlying.isEmpty()) {
@@ -392,21 +1099,17 @@ public final class SparseBitLevelN implements SparseBitLevel {
             return;
         }
 
-        int affected = 1 + toIndexInclusive.segment(level - 1) - fromIndexInclusive.segment(level - 1);
+        int affected = countAffected(fromIndexInclusive, toIndexInclusive, level);
 
         if (affected >= SparseBitUtil.LEVEL_SIZE) {
             switch (underlying.getType()) {
                 case NULL: {
-                    underlyings[segment] = SparseBitLevels.FULL;
-
-                    currentFullCount++;
+                    setUnderlying(segment, SparseBitLevels.FULL);
 
                     break;
                 }
                 case FULL: {
-                    underlyings[segment] = SparseBitLevels.NULL;
-
-                    currentFullCount--;
+                    setUnderlying(segment, SparseBitLevels.NULL);
 
                     break;
                 }
@@ -416,54 +1119,1242 @@ public final class SparseBitLevelN implements SparseBitLevel {
                 case NULL: {
                     underlying = requireUnderlying(segment);
 
+                    subtractCardinality(underlying);
+
                     underlying.flip(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     break;
                 }
                 case FULL: {
                     underlying = unfoldUnderlying(segment);
 
+                    subtractCardinality(underlying);
+
                     underlying.flip(fromIndexInclusive, toIndexInclusive);
 
+                    addCardinality(underlying);
+
                     break;
                 }
             }
         }
     }
 
-    /**
-     * Collapse underlying level to a single bit (which means all bits on underlying level are set)
-     *
-     * @param segment Segment index
-     */
-    private void squashUnderlying(int segment) {
-        if (underlyings[segment].getType() != SparseBitLevelType.REAL) {
-            throw new IllegalStateException("Only REAL level can be squashed");
-        }
+    @Override
+    public boolean nextSetBit(int[] position) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (position[level + 1 + i] > segment) {
+                return false;
+            }
 
-        underlyings[segment] = SparseBitLevels.FULL;
+            if (position[level + 1 + i] < segment) {
+                // the compressed chain starts after the position
+                for (int j = i; j >= 0; j--) {
+                    position[level + 1 + j] = prefix[j] & SparseBitUtil.BYTE_MASK;
+                }
 
-        currentRealCount--;
-        currentFullCount++;
-    }
+                SparseBitUtil.fillPosition(position, level + 1, 0);
 
-    /**
-     * Unfold underlying level from a single bit (create a layer and set all individual bits in it)
-     *
-     * @param segment Segment index
-     */
-    private SparseBitLevel unfoldUnderlying(int segment) {
-        if (underlyings[segment].getType() != SparseBitLevelType.FULL) {
-            throw new IllegalStateException("Only SQUASHED level can be unfold");
+                break;
+            }
         }
 
-        SparseBitLevel underlying = SparseBitLevels.createLevel(maximumOccupancy, level);
-        underlying.setAll();
-
-        underlyings[segment] = underlying;
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case FULL: {
+                    position[level] = segment;
+
+                    return true;
+                }
+                case REAL: {
+                    position[level] = segment;
+
+                    if (underlying.nextSetBit(position)) {
+                        return true;
+                    }
+
+                    break;
+                }
+            }
+
+            // the next segment is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            // all bits outside of the compressed chain are clear
+            if (position[level + 1 + i] != (prefix[i] & SparseBitUtil.BYTE_MASK)) {
+                return true;
+            }
+        }
+
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case NULL: {
+                    position[level] = segment;
+
+                    return true;
+                }
+                case REAL: {
+                    position[level] = segment;
+
+                    if (underlying.nextClearBit(position)) {
+                        return true;
+                    }
+
+                    break;
+                }
+            }
+
+            // the next segment is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        // the nearest clear bit follows the compressed chain
+        for (int i = 0; i < prefix.length; i++) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (segment < SparseBitUtil.LEVEL_SIZE - 1) {
+                position[level + 1 + i] = segment + 1;
+
+                SparseBitUtil.fillPosition(position, level + 1 + i, 0);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Count set bits of a range. Only the underlying levels at the edges of the range are descended into, the
+     * levels between them are counted by their type and their counters.
+     */
+    @Override
+    public BigInteger cardinality(int[] fromInclusive, int[] toInclusive) {
+        int fromChain = compareChain(fromInclusive);
+        int toChain = compareChain(toInclusive);
+
+        if (fromChain > 0 || toChain < 0) {
+            return BigInteger.ZERO;
+        }
+
+        // the range is clipped to the span of the level
+        int[] from = (fromChain < 0) ? clipPosition(fromInclusive, 0) : fromInclusive;
+        int[] to = (toChain > 0) ? clipPosition(toInclusive, SparseBitUtil.LEVEL_SIZE - 1) : toInclusive;
+
+        if (isFilled(from, 0) && isFilled(to, SparseBitUtil.LEVEL_SIZE - 1)) {
+            return cardinality();
+        }
+
+        int segmentFrom = from[level];
+        int segmentTo = to[level];
+
+        if (segmentFrom == segmentTo) {
+            return underlyingCardinality(segmentFrom, from, to);
+        }
+
+        int[] fromEnd = from.clone();
+        SparseBitUtil.fillPosition(fromEnd, level, SparseBitUtil.LEVEL_SIZE - 1);
+
+        int[] toStart = to.clone();
+        SparseBitUtil.fillPosition(toStart, level, 0);
+
+        int fullCount = 0;
+        long high = 0;
+        long low = 0;
+
+        for (int segment = segmentFrom + 1; segment < segmentTo; segment++) {
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case FULL: {
+                    fullCount++;
+                    break;
+                }
+                case REAL: {
+                    long underlyingLow = underlying.cardinalityLow();
+
+                    low += underlyingLow;
+                    high += underlying.cardinalityHigh() + (Long.compareUnsigned(low, underlyingLow) < 0 ? 1 : 0);
+                    break;
+                }
+            }
+        }
+
+        return underlyingCardinality(segmentFrom, from, fromEnd)
+                .add(underlyingCardinality(segmentTo, toStart, to))
+                .add(BigInteger.valueOf(fullCount).shiftLeft(level << 3))
+                .add(SparseBitUtil.toBigInteger(high, low));
+    }
+
+    private BigInteger underlyingCardinality(int segment, int[] fromInclusive, int[] toInclusive) {
+        SparseBitLevel underlying = getUnderlying(segment);
+
+        switch (underlying.getType()) {
+            case NULL:
+                return BigInteger.ZERO;
+            case FULL:
+                return SparseBitUtil.distance(fromInclusive, toInclusive);
+            default:
+                return underlying.cardinality(fromInclusive, toInclusive);
+        }
+    }
+
+    /**
+     * Move a position outside of the compressed chain to the first or the last bit of the level. The segments of
+     * the chain are copied too, otherwise a distance between the clipped position and a position inside the level
+     * would count the segments above the level.
+     *
+     * @param position Position outside of the level
+     * @param segment Segment to fill the levels up to this one with
+     *
+     * @return Clipped copy of the position
+     */
+    private int[] clipPosition(int[] position, int segment) {
+        int[] clipped = position.clone();
+
+        SparseBitUtil.fillPosition(clipped, level + 1, segment);
+
+        for (int i = 0; i < prefix.length; i++) {
+            clipped[level + 1 + i] = prefix[i] & SparseBitUtil.BYTE_MASK;
+        }
+
+        return clipped;
+    }
+
+    /**
+     * Compare a position with the compressed chain of the level
+     *
+     * @return Negative, zero or positive value if the position is before, inside or after the level
+     */
+    private int compareChain(int[] position) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (position[level + 1 + i] != segment) {
+                return (position[level + 1 + i] < segment) ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Check whether the position has the same segment on this level and all levels below
+     */
+    private boolean isFilled(int[] position, int segment) {
+        for (int i = 0; i <= level; i++) {
+            if (position[i] != segment) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (position[level + 1 + i] < segment) {
+                return false;
+            }
+
+            if (position[level + 1 + i] > segment) {
+                // the compressed chain ends before the position
+                for (int j = i; j >= 0; j--) {
+                    position[level + 1 + j] = prefix[j] & SparseBitUtil.BYTE_MASK;
+                }
+
+                SparseBitUtil.fillPosition(position, level + 1, SparseBitUtil.LEVEL_SIZE - 1);
+
+                break;
+            }
+        }
+
+        for (int segment = position[level]; segment >= 0; segment--) {
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case FULL: {
+                    position[level] = segment;
+
+                    return true;
+                }
+                case REAL: {
+                    position[level] = segment;
+
+                    if (underlying.previousSetBit(position)) {
+                        return true;
+                    }
+
+                    break;
+                }
+            }
+
+            // the previous segment is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            // all bits outside of the compressed chain are clear
+            if (position[level + 1 + i] != (prefix[i] & SparseBitUtil.BYTE_MASK)) {
+                return true;
+            }
+        }
+
+        for (int segment = position[level]; segment >= 0; segment--) {
+            SparseBitLevel underlying = getUnderlying(segment);
+
+            switch (underlying.getType()) {
+                case NULL: {
+                    position[level] = segment;
+
+                    return true;
+                }
+                case REAL: {
+                    position[level] = segment;
+
+                    if (underlying.previousClearBit(position)) {
+                        return true;
+                    }
+
+                    break;
+                }
+            }
+
+            // the previous segment is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        // the nearest clear bit precedes the compressed chain
+        for (int i = 0; i < prefix.length; i++) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (segment > 0) {
+                position[level + 1 + i] = segment - 1;
+
+                SparseBitUtil.fillPosition(position, level + 1 + i, SparseBitUtil.LEVEL_SIZE - 1);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void or(SparseBitLevel other) {
+        combine(other, Combination.OR, 0);
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        combine(other, Combination.AND, 0);
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        combine(other, Combination.AND_NOT, 0);
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        combine(other, Combination.XOR, 0);
+    }
+
+    @Override
+    public void or(SparseBitLevel other, ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> combine(other, Combination.OR, FORK_LEVELS)));
+    }
+
+    @Override
+    public void and(SparseBitLevel other, ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> combine(other, Combination.AND, FORK_LEVELS)));
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other, ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> combine(other, Combination.AND_NOT, FORK_LEVELS)));
+    }
+
+    @Override
+    public void xor(SparseBitLevel other, ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> combine(other, Combination.XOR, FORK_LEVELS)));
+    }
+
+    /**
+     * Combine the level with another one segment by segment. Underlying levels which are affected as a whole are
+     * handled right away, the others are combined recursively.
+     *
+     * @param other Another level of the same height
+     * @param combination Operation
+     * @param forkLevels How many levels from this one down combine their underlying levels in parallel tasks
+     *                   (the caller must run in a fork/join pool then)
+     */
+    private void combine(SparseBitLevel other, Combination combination, int forkLevels) {
+        if (!(other instanceof SparseBitLevelN) && !(other instanceof SparseBitLevel0)) {
+            combineRanges(other, combination);
+            return;
+        }
+
+        SparseBitLevelN that = alignWith(checkCompatible(other));
+
+        int[] forkedSegments = null;
+        List<ForkJoinTask<?>> forked = null;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel theirs = that.getUnderlying(segment);
+            SparseBitLevel underlying = prepareUnderlying(segment, theirs, combination);
+
+            if (underlying == null) {
+                continue;
+            }
+
+            if (forkLevels == 0) {
+                combineUnderlying(underlying, theirs, combination, 0);
+                completeUnderlying(segment, underlying);
+            } else {
+                if (forked == null) {
+                    forkedSegments = new int[SparseBitUtil.LEVEL_SIZE];
+                    forked = new ArrayList<>();
+                }
+
+                // the task touches only the underlying level, this level is updated after all tasks are done
+                forkedSegments[forked.size()] = segment;
+                forked.add(ForkJoinTask.adapt(() ->
+                        combineUnderlying(underlying, theirs, combination, forkLevels - 1)));
+            }
+        }
+
+        if (forked != null) {
+            ForkJoinTask.invokeAll(forked);
+
+            for (int i = 0; i < forked.size(); i++) {
+                int segment = forkedSegments[i];
+                completeUnderlying(segment, getUnderlying(segment));
+            }
+        }
+
+        normalizeContent();
+    }
+
+    /**
+     * Apply the operation to an underlying level if the other underlying level affects it as a whole, otherwise
+     * make the underlying level ready to be combined
+     *
+     * @param segment Segment index
+     * @param theirs Underlying level of another level
+     * @param combination Operation
+     *
+     * @return Writable underlying level with its cardinality subtracted from the total, {@code null} if nothing
+     *         is left to combine
+     */
+    private SparseBitLevel prepareUnderlying(int segment, SparseBitLevel theirs, Combination combination) {
+        switch (theirs.getType()) {
+            case NULL: {
+                if (combination == Combination.AND) {
+                    resetUnderlying(segment);
+                }
+
+                return null;
+            }
+            case FULL: {
+                switch (combination) {
+                    case OR: {
+                        fillUnderlying(segment);
+
+                        break;
+                    }
+                    case AND_NOT: {
+                        resetUnderlying(segment);
+
+                        break;
+                    }
+                    case XOR: {
+                        flipUnderlying(segment);
+
+                        break;
+                    }
+                }
+
+                return null;
+            }
+        }
+
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+
+        switch (underlying.getType()) {
+            case NULL: {
+                // nothing to intersect with or to subtract from
+                if (combination == Combination.AND || combination == Combination.AND_NOT) {
+                    return null;
+                }
+
+                underlying = requireUnderlying(segment);
+
+                break;
+            }
+            case FULL: {
+                // nothing to add to
+                if (combination == Combination.OR) {
+                    return null;
+                }
+
+                underlying = unfoldUnderlying(segment);
+
+                break;
+            }
+        }
+
+        subtractCardinality(underlying);
+
+        return underlying;
+    }
+
+    /**
+     * Combine the level with a level of another kind range by range
+     *
+     * @param other Another level of the same height
+     * @param combination Operation
+     */
+    private void combineRanges(SparseBitLevel other, Combination combination) {
+        int levels = level + prefix.length + 1;
+
+        switch (combination) {
+            case OR:
+                SparseBitLevels.forEachRange(other, levels, true, this::set);
+                break;
+            case AND:
+                SparseBitLevels.forEachRange(other, levels, false, this::clear);
+                break;
+            case AND_NOT:
+                SparseBitLevels.forEachRange(other, levels, true, this::clear);
+                break;
+            case XOR:
+                SparseBitLevels.forEachRange(other, levels, true, this::flip);
+                break;
+            default:
+                throw new IllegalStateException("Illegal execution branch");
+        }
+    }
+
+    private static void combineUnderlying(SparseBitLevel underlying, SparseBitLevel theirs,
+                                          Combination combination, int forkLevels) {
+        if (forkLevels > 0 && underlying instanceof SparseBitLevelN) {
+            ((SparseBitLevelN) underlying).combine(theirs, combination, forkLevels);
+            return;
+        }
+
+        switch (combination) {
+            case OR: {
+                underlying.or(theirs);
+                break;
+            }
+            case AND: {
+                underlying.and(theirs);
+                break;
+            }
+            case AND_NOT: {
+                underlying.andNot(theirs);
+                break;
+            }
+            case XOR: {
+                underlying.xor(theirs);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return the cardinality of a combined underlying level to the total and normalize the level
+     *
+     * @param segment Segment index
+     * @param underlying Combined underlying level
+     */
+    private void completeUnderlying(int segment, SparseBitLevel underlying) {
+        addCardinality(underlying);
+
+        normalizeUnderlying(segment);
+    }
+
+    @Override
+    public void collectStats(SparseBitLevelStats stats) {
+        stats.addNode(level, currentRealCount, currentFullCount, prefix.length, estimateBytes());
+
+        if (level == 1 && !stats.isDetailed()) {
+            // final levels are only counted, so they are not even touched
+            stats.addLeaves(currentRealCount, SparseBitLevel0.BYTES);
+            return;
+        }
+
+        for (SparseBitLevel real : reals) {
+            if (real != null) {
+                real.collectStats(stats);
+            }
+        }
+    }
+
+    /**
+     * Estimate the heap size of the level itself: the object with its arrays
+     *
+     * @return Estimated bytes
+     */
+    private long estimateBytes() {
+        // four int fields, two long fields and seven references
+        long size = SparseBitLevelStats.objectBytes(
+                4 * Integer.BYTES + 2 * Long.BYTES + 7 * SparseBitLevelStats.REFERENCE_BYTES);
+
+        size += 2 * SparseBitLevelStats.arrayBytes(Long.BYTES, fullMask.length);
+        size += SparseBitLevelStats.referenceArrayBytes(reals.length);
+
+        if (prefix.length > 0) {
+            size += SparseBitLevelStats.arrayBytes(Byte.BYTES, prefix.length);
+        }
+
+        if (keys != null) {
+            size += SparseBitLevelStats.arrayBytes(Byte.BYTES, keys.length);
+        }
+
+        if (slots != null) {
+            size += SparseBitLevelStats.arrayBytes(Byte.BYTES, slots.length);
+        }
+
+        return size;
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        // compressed levels are written as they would be without the compression
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            writeChainTypes(output, prefix[i] & SparseBitUtil.BYTE_MASK);
+        }
+
+        writeTypes(output);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel underlying = findReal(segment);
+
+            if (underlying != null) {
+                underlying.write(output);
+            }
+        }
+    }
+
+    /**
+     * Write the type map of underlying levels
+     *
+     * @param output Output
+     *
+     * @throws IOException on I/O error
+     */
+    void writeTypes(DataOutput output) throws IOException {
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment += CODES_PER_INT) {
+            int codes = 0;
+
+            for (int i = 0; i < CODES_PER_INT; i++) {
+                codes |= typeCode(getUnderlying(segment + i).getType()) << (i << 1);
+            }
+
+            output.writeInt(codes);
+        }
+    }
+
+    /**
+     * Write the type map of a level which has the only REAL underlying level
+     *
+     * @param output Output
+     * @param segment Segment of the REAL underlying level
+     *
+     * @throws IOException on I/O error
+     */
+    static void writeChainTypes(DataOutput output, int segment) throws IOException {
+        for (int first = 0; first < SparseBitUtil.LEVEL_SIZE; first += CODES_PER_INT) {
+            int offset = segment - first;
+
+            output.writeInt((offset >= 0 && offset < CODES_PER_INT) ? REAL_CODE << (offset << 1) : 0);
+        }
+    }
+
+    /**
+     * Get the number of compressed levels above the branching one
+     *
+     * @return Length of the prefix
+     */
+    int getPrefixLength() {
+        return prefix.length;
+    }
+
+    /**
+     * Get the segment of a compressed level
+     *
+     * @param i Compressed level, {@code 0} is the one just above the branching level
+     *
+     * @return Segment index
+     */
+    int getPrefixSegment(int i) {
+        return prefix[i] & SparseBitUtil.BYTE_MASK;
+    }
+
+    /**
+     * Get the branching level without the compressed levels above it (the underlying levels are shared)
+     *
+     * @return Level object
+     */
+    SparseBitLevelN getContent() {
+        return new SparseBitLevelN(this, NO_PREFIX);
+    }
+
+    /**
+     * Get an underlying level (of the branching level)
+     *
+     * @param segment Segment index
+     *
+     * @return Level object
+     */
+    SparseBitLevel getUnderlying(int segment) {
+        if ((fullMask[segment >>> 6] & (1L << segment)) != 0) {
+            return SparseBitLevels.FULL;
+        }
+
+        SparseBitLevel underlying = findReal(segment);
+
+        return (underlying != null) ? underlying : SparseBitLevels.NULL;
+    }
+
+    /**
+     * Get an underlying level which may be modified, a shared REAL level is replaced with its copy
+     *
+     * @param segment Segment index
+     *
+     * @return Level object
+     */
+    private SparseBitLevel getWritableUnderlying(int segment) {
+        int word = segment >>> 6;
+        long bit = 1L << segment;
+
+        if ((sharedMask[word] & bit) == 0) {
+            return getUnderlying(segment);
+        }
+
+        sharedMask[word] &= ~bit;
+
+        SparseBitLevel underlying = findReal(segment).copy();
+
+        fire(SparseBitLevelEvent.COPY, level - 1);
+
+        // the copy has the same cardinality, so the counters stay the same
+        switch (reals.length) {
+            case NODE256: {
+                reals[segment] = underlying;
+                break;
+            }
+            case NODE48: {
+                reals[slots[segment] - 1] = underlying;
+                break;
+            }
+            default: {
+                reals[searchKey(segment)] = underlying;
+                break;
+            }
+        }
+
+        return underlying;
+    }
+
+    /**
+     * Replace an underlying level
+     *
+     * @param segment Segment index
+     * @param underlying New level of any type
+     */
+    private void setUnderlying(int segment, SparseBitLevel underlying) {
+        int word = segment >>> 6;
+        long bit = 1L << segment;
+
+        // a new level is never shared
+        sharedMask[word] &= ~bit;
+
+        if ((fullMask[word] & bit) != 0) {
+            fullMask[word] &= ~bit;
+            currentFullCount--;
+        } else {
+            removeReal(segment);
+        }
+
+        switch (underlying.getType()) {
+            case FULL: {
+                fullMask[word] |= bit;
+                currentFullCount++;
+
+                break;
+            }
+            case REAL: {
+                insertReal(segment, underlying);
+
+                break;
+            }
+        }
+    }
+
+    private SparseBitLevel findReal(int segment) {
+        switch (reals.length) {
+            case NODE256: {
+                return reals[segment];
+            }
+            case NODE48: {
+                int slot = slots[segment];
+
+                return (slot != 0) ? reals[slot - 1] : null;
+            }
+            default: {
+                int position = searchKey(segment);
+
+                return (position >= 0) ? reals[position] : null;
+            }
+        }
+    }
+
+    /**
+     * Find a segment among the sorted keys
+     *
+     * @param segment Segment index
+     *
+     * @return Position of the key or {@code -(insertion point) - 1} if the key is missing
+     */
+    private int searchKey(int segment) {
+        for (int i = 0; i < currentRealCount; i++) {
+            int key = keys[i] & SparseBitUtil.BYTE_MASK;
+
+            if (key == segment) {
+                return i;
+            } else if (key > segment) {
+                return -i - 1;
+            }
+        }
+
+        return -currentRealCount - 1;
+    }
+
+    private void insertReal(int segment, SparseBitLevel underlying) {
+        if (currentRealCount == reals.length) {
+            growReals();
+        }
+
+        switch (reals.length) {
+            case NODE256: {
+                reals[segment] = underlying;
+
+                break;
+            }
+            case NODE48: {
+                reals[currentRealCount] = underlying;
+                keys[currentRealCount] = (byte) segment;
+                slots[segment] = (byte) (currentRealCount + 1);
+
+                break;
+            }
+            default: {
+                int position = -searchKey(segment) - 1;
+
+                System.arraycopy(reals, position, reals, position + 1, currentRealCount - position);
+                System.arraycopy(keys, position, keys, position + 1, currentRealCount - position);
+
+                reals[position] = underlying;
+                keys[position] = (byte) segment;
+
+                break;
+            }
+        }
 
-        currentFullCount--;
         currentRealCount++;
+    }
+
+    private void removeReal(int segment) {
+        switch (reals.length) {
+            case NODE256: {
+                if (reals[segment] == null) {
+                    return;
+                }
+
+                reals[segment] = null;
+
+                break;
+            }
+            case NODE48: {
+                int slot = slots[segment];
+                if (slot == 0) {
+                    return;
+                }
+
+                // the last slot is moved into the released one to keep slots compact
+                int last = currentRealCount - 1;
+
+                reals[slot - 1] = reals[last];
+                keys[slot - 1] = keys[last];
+                slots[keys[last] & SparseBitUtil.BYTE_MASK] = (byte) slot;
+
+                reals[last] = null;
+                slots[segment] = 0;
+
+                break;
+            }
+            default: {
+                int position = searchKey(segment);
+                if (position < 0) {
+                    return;
+                }
+
+                System.arraycopy(reals, position + 1, reals, position, currentRealCount - position - 1);
+                System.arraycopy(keys, position + 1, keys, position, currentRealCount - position - 1);
+
+                reals[currentRealCount - 1] = null;
+
+                break;
+            }
+        }
+
+        currentRealCount--;
+
+        shrinkReals();
+    }
+
+    private void growReals() {
+        switch (reals.length) {
+            case NODE4: {
+                rebuildReals(NODE16);
+                break;
+            }
+            case NODE16: {
+                rebuildReals(NODE48);
+                break;
+            }
+            case NODE48: {
+                rebuildReals(NODE256);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Node can't grow on level " + level);
+        }
+    }
+
+    private void shrinkReals() {
+        switch (reals.length) {
+            case NODE256: {
+                if (currentRealCount <= NODE256_SHRINK) {
+                    rebuildReals(NODE48);
+                }
+                break;
+            }
+            case NODE48: {
+                if (currentRealCount <= NODE48_SHRINK) {
+                    rebuildReals(NODE16);
+                }
+                break;
+            }
+            case NODE16: {
+                if (currentRealCount <= NODE16_SHRINK) {
+                    rebuildReals(NODE4);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Move REAL underlying levels to a node of another kind
+     *
+     * @param capacity Capacity of the new node
+     */
+    private void rebuildReals(int capacity) {
+        SparseBitLevel[] previous = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            previous[segment] = findReal(segment);
+        }
+
+        reals = new SparseBitLevel[capacity];
+        keys = (capacity == NODE256) ? null : new byte[capacity];
+        slots = (capacity == NODE48) ? new byte[SparseBitUtil.LEVEL_SIZE] : null;
+
+        // segments are visited in order so the keys come out sorted
+        int count = 0;
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            if (previous[segment] != null) {
+                if (capacity == NODE256) {
+                    reals[segment] = previous[segment];
+                } else {
+                    reals[count] = previous[segment];
+                    keys[count] = (byte) segment;
+
+                    if (slots != null) {
+                        slots[segment] = (byte) (count + 1);
+                    }
+                }
+
+                count++;
+            }
+        }
+    }
+
+    private void resetReals() {
+        reals = new SparseBitLevel[NODE4];
+        keys = new byte[NODE4];
+        slots = null;
+    }
+
+    private static int typeCode(SparseBitLevelType type) {
+        switch (type) {
+            case NULL:
+                return NULL_CODE;
+            case FULL:
+                return FULL_CODE;
+            case REAL:
+                return REAL_CODE;
+        }
+
+        throw new IllegalStateException("Illegal execution branch");
+    }
+
+    private SparseBitLevelN checkCompatible(SparseBitLevel other) {
+        if (other instanceof SparseBitLevelN) {
+            SparseBitLevelN that = (SparseBitLevelN) other;
+
+            if (that.level + that.prefix.length == this.level + this.prefix.length) {
+                return that;
+            }
+        }
+
+        throw new IllegalArgumentException("Level is not compatible with level " + level);
+    }
+
+    /**
+     * Count underlying levels which are completely covered by the range
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     * @param level Level of the parent
+     *
+     * @return Number of covered underlying levels
+     */
+    static int countAffected(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive, int level) {
+        int affected = 1 + toIndexInclusive.segment(level - 1) - fromIndexInclusive.segment(level - 1);
+
+        // the edge levels are covered partially unless the range reaches their bounds
+        for (int i = level - 2; i >= 0; i--) {
+            if (fromIndexInclusive.segment(i) != 0) {
+                affected--;
+                break;
+            }
+        }
+
+        for (int i = level - 2; i >= 0; i--) {
+            if (toIndexInclusive.segment(i) != SparseBitUtil.LEVEL_SIZE - 1) {
+                affected--;
+                break;
+            }
+        }
+
+        return affected;
+    }
+
+    /**
+     * Find the highest compressed level where the range leaves the prefix
+     *
+     * @param fromIndexInclusive Start of the range (inclusive)
+     * @param toIndexInclusive End of the range (inclusive)
+     *
+     * @return Level number or {@code -1} if the range is inside of the prefix
+     */
+    private int findMismatch(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            int segment = prefix[i] & SparseBitUtil.BYTE_MASK;
+
+            if (fromIndexInclusive.segment(level + 1 + i) != segment
+                    || toIndexInclusive.segment(level + 1 + i) != segment) {
+                return level + 1 + i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int findMismatch(long index) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (SparseBitUtil.segment(index, level + 1 + i) != (prefix[i] & SparseBitUtil.BYTE_MASK)) {
+                return level + 1 + i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Split the compressed chain so the level branches on the given level and the former branching level with
+     * the rest of the prefix becomes its only underlying level
+     *
+     * @param branching Compressed level which becomes the branching one
+     */
+    private void splitPrefix(int branching) {
+        int split = branching - level - 1;
+        int segment = prefix[split] & SparseBitUtil.BYTE_MASK;
+
+        SparseBitLevelN moved = new SparseBitLevelN(this, Arrays.copyOf(prefix, split));
+
+        prefix = Arrays.copyOfRange(prefix, split + 1, prefix.length);
+        level = branching;
+
+        reset(0L, 0);
+
+        setUnderlying(segment, moved);
+
+        addCardinality(moved);
+    }
+
+    /**
+     * Collapse the branching level to a single bit of the lowest compressed level
+     */
+    private void squashContent() {
+        int segment = prefix[0] & SparseBitUtil.BYTE_MASK;
+
+        prefix = Arrays.copyOfRange(prefix, 1, prefix.length);
+        level++;
+
+        reset(0L, 0);
+
+        setUnderlying(segment, SparseBitLevels.FULL);
+    }
+
+    /**
+     * Collapse the branching level after an operation if it is full (as the lowest compressed level would do)
+     */
+    private void normalizeContent() {
+        if (prefix.length > 0 && currentFullCount >= maximumOccupancy) {
+            squashContent();
+        }
+    }
+
+    /**
+     * Make the levels comparable segment by segment for a bulk operation
+     *
+     * @param that Another level of the same height
+     *
+     * @return Level which branches on the same level as this one
+     */
+    private SparseBitLevelN alignWith(SparseBitLevelN that) {
+        if (that.level == this.level && Arrays.equals(that.prefix, this.prefix)) {
+            return that;
+        }
+
+        // otherwise both levels are walked from the top of their chains
+        if (prefix.length > 0) {
+            splitPrefix(level + prefix.length);
+        }
+
+        return (that.prefix.length > 0) ? that.expandPrefix() : that;
+    }
+
+    /**
+     * Create a level branching on the top of the compressed chain (the underlying levels are shared)
+     *
+     * @return Level object
+     */
+    private SparseBitLevelN expandPrefix() {
+        SparseBitLevelN expanded = new SparseBitLevelN(maximumOccupancy, level + prefix.length, listener);
+        SparseBitLevelN shortened = new SparseBitLevelN(this, Arrays.copyOf(prefix, prefix.length - 1));
+
+        expanded.setUnderlying(prefix[prefix.length - 1] & SparseBitUtil.BYTE_MASK, shortened);
+        expanded.addCardinality(shortened);
+
+        return expanded;
+    }
+
+    /**
+     * Create a new underlying level for a single bit, the levels down to the level {@code 1} are compressed
+     *
+     * @param segment Segment index
+     * @param index Index object or {@code null}
+     * @param key Primitive index which is used when there is no index object
+     *
+     * @return Level object
+     */
+    private SparseBitLevel requirePath(int segment, SparseBitIndex index, long key) {
+        if (level < 3) {
+            return requireUnderlying(segment);
+        }
+
+        if (getUnderlying(segment).getType() != SparseBitLevelType.NULL) {
+            throw new IllegalStateException("Only NULL level can be replaced with real level");
+        }
+
+        byte[] path = new byte[level - 2];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = (byte) ((index != null) ? index.segment(i + 2) : SparseBitUtil.segment(key, i + 2));
+        }
+
+        SparseBitLevel underlying = new SparseBitLevelN(maximumOccupancy, 1, path, listener);
+
+        setUnderlying(segment, underlying);
+
+        fire(SparseBitLevelEvent.ALLOCATE, level - 1);
+
+        return underlying;
+    }
+
+    /**
+     * Collapse underlying level to a single bit (which means all bits on underlying level are set)
+     *
+     * @param segment Segment index
+     */
+    private void squashUnderlying(int segment) {
+        if (getUnderlying(segment).getType() != SparseBitLevelType.REAL) {
+            throw new IllegalStateException("Only REAL level can be squashed");
+        }
+
+        subtractCardinality(getUnderlying(segment));
+
+        setUnderlying(segment, SparseBitLevels.FULL);
+
+        fire(SparseBitLevelEvent.SQUASH, level - 1);
+    }
+
+    /**
+     * Unfold underlying level from a single bit (create a layer and set all individual bits in it)
+     *
+     * @param segment Segment index
+     */
+    private SparseBitLevel unfoldUnderlying(int segment) {
+        if (getUnderlying(segment).getType() != SparseBitLevelType.FULL) {
+            throw new IllegalStateException("Only SQUASHED level can be unfold");
+        }
+
+        SparseBitLevel underlying = SparseBitLevels.createLevel(maximumOccupancy, level, listener);
+        underlying.setAll();
+
+        setUnderlying(segment, underlying);
+
+        addCardinality(underlying);
+
+        fire(SparseBitLevelEvent.UNFOLD, level - 1);
 
         return underlying;
     }
@@ -476,32 +2367,169 @@ public final class SparseBitLevelN implements SparseBitLevel {
      * @return Level object
      */
     private SparseBitLevel requireUnderlying(int segment) {
-        if (underlyings[segment].getType() != SparseBitLevelType.NULL) {
+        if (getUnderlying(segment).getType() != SparseBitLevelType.NULL) {
             throw new IllegalStateException("Only NULL level can be replaced with real level");
         }
 
-        SparseBitLevel underlying = SparseBitLevels.createLevel(maximumOccupancy, level);
+        SparseBitLevel underlying = SparseBitLevels.createLevel(maximumOccupancy, level, listener);
 
-        underlyings[segment] = underlying;
+        setUnderlying(segment, underlying);
 
-        currentRealCount++;
+        fire(SparseBitLevelEvent.ALLOCATE, level - 1);
 
         return underlying;
     }
 
+    /**
+     * Set all bits of an underlying level whatever type it has
+     *
+     * @param segment Segment index
+     */
+    private void fillUnderlying(int segment) {
+        switch (getUnderlying(segment).getType()) {
+            case REAL: {
+                squashUnderlying(segment);
+
+                break;
+            }
+            case NULL: {
+                setUnderlying(segment, SparseBitLevels.FULL);
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Flip all bits of an underlying level whatever type it has
+     *
+     * @param segment Segment index
+     */
+    private void flipUnderlying(int segment) {
+        SparseBitLevel underlying = getWritableUnderlying(segment);
+
+        switch (underlying.getType()) {
+            case NULL: {
+                setUnderlying(segment, SparseBitLevels.FULL);
+
+                break;
+            }
+            case FULL: {
+                setUnderlying(segment, SparseBitLevels.NULL);
+
+                break;
+            }
+            case REAL: {
+                subtractCardinality(underlying);
+
+                underlying.flipAll();
+
+                addCardinality(underlying);
+
+                normalizeUnderlying(segment);
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Clear all bits of an underlying level whatever type it has
+     *
+     * @param segment Segment index
+     */
+    private void resetUnderlying(int segment) {
+        switch (getUnderlying(segment).getType()) {
+            case REAL: {
+                dismissUnderlying(segment);
+
+                break;
+            }
+            case FULL: {
+                setUnderlying(segment, SparseBitLevels.NULL);
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Collapse or dismiss a real underlying level after a bulk operation if it is needed
+     *
+     * @param segment Segment index
+     */
+    private void normalizeUnderlying(int segment) {
+        SparseBitLevel underlying = getUnderlying(segment);
+
+        if (underlying.getType() == SparseBitLevelType.REAL) {
+            if (underlying.isFull()) {
+                squashUnderlying(segment);
+            } else if (underlying.isEmpty()) {
+                dismissUnderlying(segment);
+            }
+        }
+    }
+
     /**
      * Dismiss an underlying level
      *
      * @param segment Segment index
      */
     private void dismissUnderlying(int segment) {
-        if (underlyings[segment].getType() != SparseBitLevelType.REAL) {
+        if (getUnderlying(segment).getType() != SparseBitLevelType.REAL) {
             throw new IllegalStateException("Only REAL level can be dismissed");
         }
 
-        underlyings[segment] = SparseBitLevels.NULL;
+        subtractCardinality(getUnderlying(segment));
 
-        currentRealCount--;
+        setUnderlying(segment, SparseBitLevels.NULL);
+
+        fire(SparseBitLevelEvent.DISMISS, level - 1);
+    }
+
+    /**
+     * Notify the listener about a structural change
+     *
+     * @param event Kind of change
+     * @param level Number of the changed underlying level
+     */
+    private void fire(SparseBitLevelEvent event, int level) {
+        if (listener != null) {
+            listener.onLevelEvent(event, level);
+        }
+    }
+
+    /**
+     * Add cardinality of a real underlying level to the total
+     *
+     * @param underlying Underlying level
+     */
+    private void addCardinality(SparseBitLevel underlying) {
+        addCardinality(underlying.cardinalityHigh(), underlying.cardinalityLow());
+    }
+
+    /**
+     * Subtract cardinality of a real underlying level from the total
+     *
+     * @param underlying Underlying level
+     */
+    private void subtractCardinality(SparseBitLevel underlying) {
+        subtractCardinality(underlying.cardinalityHigh(), underlying.cardinalityLow());
+    }
+
+    private void addCardinality(long high, long low) {
+        long sum = realCardinalityLow + low;
+        long carry = Long.compareUnsigned(sum, low) < 0 ? 1 : 0;
+
+        realCardinalityHigh += high + carry;
+        realCardinalityLow = sum;
+    }
+
+    private void subtractCardinality(long high, long low) {
+        long borrow = Long.compareUnsigned(realCardinalityLow, low) < 0 ? 1 : 0;
+
+        realCardinalityHigh -= high + borrow;
+        realCardinalityLow -= low;
     }
 
 }
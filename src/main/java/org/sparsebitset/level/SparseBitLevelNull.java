@@ -2,6 +2,9 @@ package org.sparsebitset.level;
 
 import org.sparsebitset.index.SparseBitIndex;
 
+import java.io.DataOutput;
+import java.math.BigInteger;
+
 /**
  * Null layer (all bits are set)
  */
@@ -22,6 +25,11 @@ public final class SparseBitLevelNull implements SparseBitLevel {
         return SparseBitLevelType.NULL;
     }
 
+    @Override
+    public int getMaximumOccupancy() {
+        throw new UnsupportedOperationException("Special level");
+    }
+
     @Override
     public boolean isEmpty() {
         return true;
@@ -52,6 +60,21 @@ public final class SparseBitLevelNull implements SparseBitLevel {
         // nothing to do
     }
 
+    @Override
+    public long cardinalityHigh() {
+        return 0;
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return 0;
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        return BigInteger.ZERO;
+    }
+
     @Override
     public boolean get(SparseBitIndex index) {
         return false;
@@ -86,4 +109,75 @@ public final class SparseBitLevelNull implements SparseBitLevel {
     public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
         throw new UnsupportedOperationException("Special level");
     }
+
+    @Override
+    public boolean get(long index) {
+        return false;
+    }
+
+    @Override
+    public boolean set(long index) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public boolean clear(long index) {
+        return false;
+    }
+
+    @Override
+    public void flip(long index) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return false;
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return true;
+    }
+
+    @Override
+    public BigInteger cardinality(int[] fromInclusive, int[] toInclusive) {
+        return BigInteger.ZERO;
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return false;
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return true;
+    }
+
+    @Override
+    public void or(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        // nothing to do - all bits are 0
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        // nothing to do - all bits are 0
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
+    @Override
+    public void write(DataOutput output) {
+        throw new UnsupportedOperationException("Special level");
+    }
+
 }
@@ -0,0 +1,1073 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitConstIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitBufferCleaner;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Base level of a set which keeps all its levels off heap. Intermediate and final levels are records in
+ * slabs of direct buffers addressed by int handles, so the heap holds just a few slab objects instead of
+ * an object graph.</p>
+ *
+ * <p>An intermediate level record keeps counters and 256 handles of underlying levels where {@code 0} is
+ * {@code NULL} level and {@code 1} is {@code FULL} level. A final level record is four 64-bit words.
+ * Released records are reused through a free list.</p>
+ *
+ * <p>The slabs are freed by {@link #close()} right away, otherwise they are freed by the garbage collector
+ * once the level is unreachable.</p>
+ */
+public final class SparseBitLevelOffHeap implements SparseBitLevel {
+
+    private static final int NULL_HANDLE = 0;
+
+    private static final int FULL_HANDLE = 1;
+
+    private static final int FIRST_HANDLE = 2;
+
+    /**
+     * Layout of an intermediate level record
+     */
+    private static final int FULL_COUNT = 0;
+
+    private static final int REAL_COUNT = FULL_COUNT + Integer.BYTES;
+
+    private static final int CARDINALITY_HIGH = REAL_COUNT + Integer.BYTES;
+
+    private static final int CARDINALITY_LOW = CARDINALITY_HIGH + Long.BYTES;
+
+    private static final int UNDERLYINGS = CARDINALITY_LOW + Long.BYTES;
+
+    private static final int NODE_SIZE = UNDERLYINGS + SparseBitUtil.LEVEL_SIZE * Integer.BYTES;
+
+    /**
+     * Layout of a final level record
+     */
+    private static final int LEAF_SIZE = SparseBitLevel0.WORDS * Long.BYTES;
+
+    /**
+     * Operations on bits
+     */
+    private static final int SET = 0;
+
+    private static final int CLEAR = 1;
+
+    private static final int FLIP = 2;
+
+    private final int maximumOccupancy;
+
+    private final int level;
+
+    private final Pool nodes;
+
+    private final Pool leaves;
+
+    private int root;
+
+    SparseBitLevelOffHeap(int maximumOccupancy, int level) {
+        this.maximumOccupancy = maximumOccupancy;
+        this.level = level;
+
+        this.nodes = new Pool(NODE_SIZE, 8);
+        this.leaves = new Pool(LEAF_SIZE, 12);
+
+        this.root = allocate(level);
+    }
+
+    private SparseBitLevelOffHeap(SparseBitLevelOffHeap source) {
+        this.maximumOccupancy = source.maximumOccupancy;
+        this.level = source.level;
+
+        this.nodes = new Pool(source.nodes);
+        this.leaves = new Pool(source.leaves);
+
+        this.root = source.root;
+    }
+
+    @Override
+    public SparseBitLevelType getType() {
+        return SparseBitLevelType.REAL;
+    }
+
+    /**
+     * Copy the slabs as a whole, handles stay the same
+     *
+     * @return Off-heap copy of the level
+     */
+    @Override
+    public SparseBitLevel copy() {
+        return new SparseBitLevelOffHeap(this);
+    }
+
+    @Override
+    public int getMaximumOccupancy() {
+        return maximumOccupancy;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isEmpty(root, level);
+    }
+
+    @Override
+    public boolean isFull() {
+        return isFull(root, level);
+    }
+
+    @Override
+    public void clearAll() {
+        // the slabs are dropped at once instead of releasing every record
+        nodes.reset();
+        leaves.reset();
+
+        root = allocate(level);
+    }
+
+    /**
+     * Free the slabs of the level, the level can't be used afterwards (operations throw
+     * {@link IllegalStateException}). The caller must make sure that no other thread accesses the level during
+     * and after the call. Repeated calls don't have any effect.
+     */
+    public void close() {
+        nodes.close();
+        leaves.close();
+
+        root = NULL_HANDLE;
+    }
+
+    @Override
+    public void setAll() {
+        clearAll();
+
+        fill(root, level);
+    }
+
+    @Override
+    public void flipAll() {
+        flip(SparseBitConstIndex.MIN, SparseBitConstIndex.MAX);
+    }
+
+    @Override
+    public void validate() {
+        validate(root, level);
+    }
+
+    private BigInteger validate(int handle, int level) {
+        if (level == 0) {
+            return BigInteger.valueOf(occupancy(handle));
+        }
+
+        int calculatedFullCount = 0;
+        int calculatedRealCount = 0;
+        BigInteger calculatedRealCardinality = BigInteger.ZERO;
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int underlying = underlying(handle, segment);
+
+            switch (underlying) {
+                case NULL_HANDLE:
+                    break;
+                case FULL_HANDLE: {
+                    calculatedFullCount++;
+                    break;
+                }
+                default: {
+                    Pool pool = (level == 1) ? leaves : nodes;
+
+                    if (!pool.isAllocated(underlying)) {
+                        throw new IllegalStateException("Invalid handle " + underlying + " on level " + level);
+                    }
+
+                    calculatedRealCount++;
+                    calculatedRealCardinality = calculatedRealCardinality.add(validate(underlying, level - 1));
+                    break;
+                }
+            }
+        }
+
+        if (nodes.getInt(handle, FULL_COUNT) != calculatedFullCount) {
+            throw new IllegalStateException("Effective occupancy and real occupancy don't match on level " + level);
+        }
+
+        if (nodes.getInt(handle, REAL_COUNT) != calculatedRealCount) {
+            throw new IllegalStateException("Effective usage and real usage don't match on level " + level);
+        }
+
+        // the counter wraps around in sets deeper than 16 levels
+        BigInteger realCardinality = SparseBitUtil.toBigInteger(
+                nodes.getLong(handle, CARDINALITY_HIGH), nodes.getLong(handle, CARDINALITY_LOW));
+
+        if (!realCardinality.equals(SparseBitUtil.truncate128(calculatedRealCardinality))) {
+            throw new IllegalStateException("Effective cardinality and real cardinality don't match on level " + level);
+        }
+
+        return cardinality(handle, level);
+    }
+
+    @Override
+    public long cardinalityHigh() {
+        return cardinalityHigh(root, level);
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return cardinalityLow(root, level);
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        return cardinality(root, level);
+    }
+
+    private BigInteger cardinality(int handle, int level) {
+        if (level == 0) {
+            return BigInteger.valueOf(occupancy(handle));
+        }
+
+        // computed apart from the 128-bit parts as a completely full base level may not fit in them
+        BigInteger full = BigInteger.valueOf(nodes.getInt(handle, FULL_COUNT)).shiftLeft(level << 3);
+        BigInteger real = SparseBitUtil.toBigInteger(
+                nodes.getLong(handle, CARDINALITY_HIGH), nodes.getLong(handle, CARDINALITY_LOW));
+
+        return full.add(real);
+    }
+
+    @Override
+    public boolean get(SparseBitIndex index) {
+        return get(index, 0L);
+    }
+
+    @Override
+    public boolean set(SparseBitIndex index) {
+        return update(root, level, index, 0L, SET);
+    }
+
+    @Override
+    public boolean clear(SparseBitIndex index) {
+        return update(root, level, index, 0L, CLEAR);
+    }
+
+    @Override
+    public void flip(SparseBitIndex index) {
+        update(root, level, index, 0L, FLIP);
+    }
+
+    @Override
+    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, SET);
+    }
+
+    @Override
+    public void clear(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, CLEAR);
+    }
+
+    @Override
+    public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        update(root, level, fromIndexInclusive, toIndexInclusive, FLIP);
+    }
+
+    @Override
+    public boolean get(long index) {
+        return get(null, index);
+    }
+
+    @Override
+    public boolean set(long index) {
+        return update(root, level, null, index, SET);
+    }
+
+    @Override
+    public boolean clear(long index) {
+        return update(root, level, null, index, CLEAR);
+    }
+
+    @Override
+    public void flip(long index) {
+        update(root, level, null, index, FLIP);
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return nextBit(root, level, position, FULL_HANDLE, 0L);
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return nextBit(root, level, position, NULL_HANDLE, -1L);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return previousBit(root, level, position, FULL_HANDLE, 0L);
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return previousBit(root, level, position, NULL_HANDLE, -1L);
+    }
+
+    /**
+     * Union with a level of any kind, applied as a range operation for every range of set bits of the other
+     * level
+     *
+     * @param other Level with the same number of levels
+     */
+    @Override
+    public void or(SparseBitLevel other) {
+        updateRanges(other, true, SET);
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        updateRanges(other, false, CLEAR);
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        updateRanges(other, true, CLEAR);
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        updateRanges(other, true, FLIP);
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        write(root, level, output);
+    }
+
+    private void write(int handle, int level, DataOutput output) throws IOException {
+        if (level == 0) {
+            for (int i = 0; i < LEAF_SIZE; i += Long.BYTES) {
+                output.writeLong(leaves.getLong(handle, i));
+            }
+
+            return;
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment += SparseBitLevelN.CODES_PER_INT) {
+            int codes = 0;
+
+            for (int i = 0; i < SparseBitLevelN.CODES_PER_INT; i++) {
+                int underlying = underlying(handle, segment + i);
+                int code = (underlying == NULL_HANDLE) ? SparseBitLevelN.NULL_CODE
+                        : (underlying == FULL_HANDLE) ? SparseBitLevelN.FULL_CODE : SparseBitLevelN.REAL_CODE;
+
+                codes |= code << (i << 1);
+            }
+
+            output.writeInt(codes);
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int underlying = underlying(handle, segment);
+
+            if (underlying >= FIRST_HANDLE) {
+                write(underlying, level - 1, output);
+            }
+        }
+    }
+
+    private boolean get(SparseBitIndex index, long key) {
+        int handle = root;
+
+        for (int level = this.level; level > 0; level--) {
+            int underlying = underlying(handle, segment(index, key, level));
+
+            switch (underlying) {
+                case NULL_HANDLE:
+                    return false;
+                case FULL_HANDLE:
+                    return true;
+            }
+
+            handle = underlying;
+        }
+
+        int segment = segment(index, key, 0);
+
+        return (leaves.getLong(handle, (segment >>> 6) * Long.BYTES) & (1L << segment)) != 0;
+    }
+
+    /**
+     * Update a single bit, the index is taken either from the index object or from the primitive key
+     *
+     * @return {@code true} if the bit is switched
+     */
+    private boolean update(int handle, int level, SparseBitIndex index, long key, int operation) {
+        int segment = segment(index, key, level);
+
+        if (level == 0) {
+            int offset = (segment >>> 6) * Long.BYTES;
+            long mask = 1L << segment;
+            long word = leaves.getLong(handle, offset);
+
+            switch (operation) {
+                case SET: {
+                    leaves.putLong(handle, offset, word | mask);
+                    return (word & mask) == 0;
+                }
+                case CLEAR: {
+                    leaves.putLong(handle, offset, word & ~mask);
+                    return (word & mask) != 0;
+                }
+                default: {
+                    leaves.putLong(handle, offset, word ^ mask);
+                    return true;
+                }
+            }
+        }
+
+        int underlying = underlying(handle, segment);
+        boolean real = underlying >= FIRST_HANDLE;
+
+        switch (underlying) {
+            case NULL_HANDLE: {
+                if (operation == CLEAR) {
+                    return false;
+                }
+
+                underlying = requireUnderlying(handle, level, segment);
+
+                break;
+            }
+            case FULL_HANDLE: {
+                if (operation == SET) {
+                    return false;
+                }
+
+                underlying = unfoldUnderlying(handle, level, segment);
+
+                break;
+            }
+        }
+
+        subtractCardinality(handle, underlying, level - 1);
+
+        boolean result = update(underlying, level - 1, index, key, operation);
+
+        addCardinality(handle, underlying, level - 1);
+
+        if (real) {
+            normalizeUnderlying(handle, level, segment, underlying, operation);
+        }
+
+        return result;
+    }
+
+    private void update(int handle, int level, SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive,
+                        int operation) {
+        int segmentFrom = fromIndexInclusive.segment(level);
+        int segmentTo = toIndexInclusive.segment(level);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        if (level == 0) {
+            updateWords(handle, segmentFrom, segmentTo, operation);
+        } else if (segmentFrom != segmentTo) {
+            updateSegment(handle, level, fromIndexInclusive, SparseBitConstIndex.MAX, segmentFrom, operation);
+
+            for (int segment = segmentFrom + 1, limit = segmentTo - 1; segment <= limit; segment++) {
+                updateSegment(handle, level, SparseBitConstIndex.MIN, SparseBitConstIndex.MAX, segment, operation);
+            }
+
+            updateSegment(handle, level, SparseBitConstIndex.MIN, toIndexInclusive, segmentTo, operation);
+        } else {
+            updateSegment(handle, level, fromIndexInclusive, toIndexInclusive, segmentFrom, operation);
+        }
+    }
+
+    private void updateSegment(int handle, int level, SparseBitIndex fromIndexInclusive,
+                               SparseBitIndex toIndexInclusive, int segment, int operation) {
+        int underlying = underlying(handle, segment);
+
+        if ((underlying == FULL_HANDLE && operation == SET) || (underlying == NULL_HANDLE && operation == CLEAR)) {
+            return;
+        }
+
+        if (operation != FLIP || underlying < FIRST_HANDLE) {
+            int affected = SparseBitLevelN.countAffected(fromIndexInclusive, toIndexInclusive, level);
+
+            switch (operation) {
+                case SET: {
+                    if (affected >= maximumOccupancy) {
+                        fillUnderlying(handle, segment, underlying, level);
+                        return;
+                    }
+
+                    break;
+                }
+                case CLEAR: {
+                    if (affected >= SparseBitUtil.LEVEL_SIZE) {
+                        resetUnderlying(handle, segment, underlying, level);
+                        return;
+                    }
+
+                    break;
+                }
+                default: {
+                    if (affected >= SparseBitUtil.LEVEL_SIZE) {
+                        if (underlying == NULL_HANDLE) {
+                            fillUnderlying(handle, segment, underlying, level);
+                        } else {
+                            resetUnderlying(handle, segment, underlying, level);
+                        }
+                        return;
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        boolean real = underlying >= FIRST_HANDLE;
+
+        switch (underlying) {
+            case NULL_HANDLE: {
+                underlying = requireUnderlying(handle, level, segment);
+                break;
+            }
+            case FULL_HANDLE: {
+                underlying = unfoldUnderlying(handle, level, segment);
+                break;
+            }
+        }
+
+        subtractCardinality(handle, underlying, level - 1);
+
+        update(underlying, level - 1, fromIndexInclusive, toIndexInclusive, operation);
+
+        addCardinality(handle, underlying, level - 1);
+
+        if (real) {
+            normalizeUnderlying(handle, level, segment, underlying, operation);
+        }
+    }
+
+    private void updateWords(int handle, int from, int to, int operation) {
+        for (int i = from >>> 6, last = to >>> 6; i <= last; i++) {
+            long mask = -1L;
+
+            if (i == from >>> 6) {
+                mask &= -1L << from;
+            }
+
+            if (i == last) {
+                mask &= -1L >>> (Long.SIZE - 1 - (to & 0x3F));
+            }
+
+            int offset = i * Long.BYTES;
+            long word = leaves.getLong(handle, offset);
+
+            switch (operation) {
+                case SET: {
+                    word |= mask;
+                    break;
+                }
+                case CLEAR: {
+                    word &= ~mask;
+                    break;
+                }
+                default: {
+                    word ^= mask;
+                    break;
+                }
+            }
+
+            leaves.putLong(handle, offset, word);
+        }
+    }
+
+    private void updateRanges(SparseBitLevel other, boolean setRanges, int operation) {
+        int[] position = new int[level + 1];
+
+        SparseBitArrayIndex from = new SparseBitArrayIndex(new int[level + 1]);
+        SparseBitArrayIndex to = new SparseBitArrayIndex(new int[level + 1]);
+
+        while (setRanges ? other.nextSetBit(position) : other.nextClearBit(position)) {
+            System.arraycopy(position, 0, from.segments(), 0, position.length);
+
+            // the end of the range is found before the range is updated, so the other level may be this one
+            boolean bounded = setRanges ? other.nextClearBit(position) : other.nextSetBit(position);
+
+            if (bounded) {
+                System.arraycopy(position, 0, to.segments(), 0, position.length);
+                SparseBitUtil.decrementPosition(to.segments());
+            } else {
+                SparseBitUtil.fillPosition(to.segments(), position.length, SparseBitUtil.LEVEL_SIZE - 1);
+            }
+
+            update(root, level, from, to, operation);
+
+            if (!bounded) {
+                break;
+            }
+        }
+    }
+
+    private boolean nextBit(int handle, int level, int[] position, int matchingHandle, long inversion) {
+        if (level == 0) {
+            int from = position[0];
+
+            for (int i = from >>> 6; i < SparseBitLevel0.WORDS; i++) {
+                long word = leaves.getLong(handle, i * Long.BYTES) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L << from;
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.numberOfTrailingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int underlying = underlying(handle, segment);
+
+            if (underlying == matchingHandle) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (underlying >= FIRST_HANDLE) {
+                position[level] = segment;
+
+                if (nextBit(underlying, level - 1, position, matchingHandle, inversion)) {
+                    return true;
+                }
+            }
+
+            // the next segment is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        return false;
+    }
+
+    private boolean previousBit(int handle, int level, int[] position, int matchingHandle, long inversion) {
+        if (level == 0) {
+            int from = position[0];
+
+            for (int i = from >>> 6; i >= 0; i--) {
+                long word = leaves.getLong(handle, i * Long.BYTES) ^ inversion;
+
+                if (i == from >>> 6) {
+                    word &= -1L >>> ~from;
+                }
+
+                if (word != 0) {
+                    position[0] = (i << 6) + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        for (int segment = position[level]; segment >= 0; segment--) {
+            int underlying = underlying(handle, segment);
+
+            if (underlying == matchingHandle) {
+                position[level] = segment;
+
+                return true;
+            }
+
+            if (underlying >= FIRST_HANDLE) {
+                position[level] = segment;
+
+                if (previousBit(underlying, level - 1, position, matchingHandle, inversion)) {
+                    return true;
+                }
+            }
+
+            // the previous segment is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        return false;
+    }
+
+    private static int segment(SparseBitIndex index, long key, int level) {
+        if (index != null) {
+            int segment = index.segment(level);
+            SparseBitUtil.checkSegment(segment);
+
+            return segment;
+        } else {
+            return SparseBitUtil.segment(key, level);
+        }
+    }
+
+    private int underlying(int handle, int segment) {
+        return nodes.getInt(handle, UNDERLYINGS + segment * Integer.BYTES);
+    }
+
+    private void setUnderlying(int handle, int segment, int underlying) {
+        nodes.putInt(handle, UNDERLYINGS + segment * Integer.BYTES, underlying);
+    }
+
+    private void addCount(int handle, int offset, int delta) {
+        nodes.putInt(handle, offset, nodes.getInt(handle, offset) + delta);
+    }
+
+    private int occupancy(int handle) {
+        int count = 0;
+
+        for (int i = 0; i < LEAF_SIZE; i += Long.BYTES) {
+            count += Long.bitCount(leaves.getLong(handle, i));
+        }
+
+        return count;
+    }
+
+    private boolean isEmpty(int handle, int level) {
+        if (level == 0) {
+            return occupancy(handle) == 0;
+        } else {
+            return nodes.getInt(handle, FULL_COUNT) == 0 && nodes.getInt(handle, REAL_COUNT) == 0;
+        }
+    }
+
+    private boolean isFull(int handle, int level) {
+        if (level == 0) {
+            return occupancy(handle) >= maximumOccupancy;
+        } else {
+            return nodes.getInt(handle, FULL_COUNT) >= maximumOccupancy;
+        }
+    }
+
+    private int allocate(int level) {
+        return (level == 0) ? leaves.allocate() : nodes.allocate();
+    }
+
+    /**
+     * Release a record and all records of its underlying levels
+     */
+    private void release(int handle, int level) {
+        if (level == 0) {
+            leaves.release(handle);
+            return;
+        }
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            int underlying = underlying(handle, segment);
+
+            if (underlying >= FIRST_HANDLE) {
+                release(underlying, level - 1);
+            }
+        }
+
+        nodes.release(handle);
+    }
+
+    /**
+     * Set all bits of a newly allocated record
+     */
+    private void fill(int handle, int level) {
+        if (level == 0) {
+            for (int i = 0; i < LEAF_SIZE; i += Long.BYTES) {
+                leaves.putLong(handle, i, -1L);
+            }
+        } else {
+            for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+                setUnderlying(handle, segment, FULL_HANDLE);
+            }
+
+            nodes.putInt(handle, FULL_COUNT, SparseBitUtil.LEVEL_SIZE);
+        }
+    }
+
+    private int requireUnderlying(int handle, int level, int segment) {
+        int underlying = allocate(level - 1);
+
+        setUnderlying(handle, segment, underlying);
+        addCount(handle, REAL_COUNT, 1);
+
+        return underlying;
+    }
+
+    private int unfoldUnderlying(int handle, int level, int segment) {
+        int underlying = allocate(level - 1);
+        fill(underlying, level - 1);
+
+        setUnderlying(handle, segment, underlying);
+        addCount(handle, FULL_COUNT, -1);
+        addCount(handle, REAL_COUNT, 1);
+
+        addCardinality(handle, underlying, level - 1);
+
+        return underlying;
+    }
+
+    private void fillUnderlying(int handle, int segment, int underlying, int level) {
+        if (underlying >= FIRST_HANDLE) {
+            dismissUnderlying(handle, level, segment, underlying);
+        }
+
+        if (underlying != FULL_HANDLE) {
+            setUnderlying(handle, segment, FULL_HANDLE);
+            addCount(handle, FULL_COUNT, 1);
+        }
+    }
+
+    private void resetUnderlying(int handle, int segment, int underlying, int level) {
+        if (underlying >= FIRST_HANDLE) {
+            dismissUnderlying(handle, level, segment, underlying);
+        } else if (underlying == FULL_HANDLE) {
+            setUnderlying(handle, segment, NULL_HANDLE);
+            addCount(handle, FULL_COUNT, -1);
+        }
+    }
+
+    /**
+     * Collapse an existing real level after setting bits, dismiss it after clearing bits or do any of them
+     * after flipping bits. Like on heap a real level which is just created or unfolded is kept as it is.
+     */
+    private void normalizeUnderlying(int handle, int level, int segment, int underlying, int operation) {
+        if (operation != CLEAR && isFull(underlying, level - 1)) {
+            dismissUnderlying(handle, level, segment, underlying);
+
+            setUnderlying(handle, segment, FULL_HANDLE);
+            addCount(handle, FULL_COUNT, 1);
+        } else if (operation != SET && isEmpty(underlying, level - 1)) {
+            dismissUnderlying(handle, level, segment, underlying);
+        }
+    }
+
+    private void dismissUnderlying(int handle, int level, int segment, int underlying) {
+        subtractCardinality(handle, underlying, level - 1);
+        release(underlying, level - 1);
+
+        setUnderlying(handle, segment, NULL_HANDLE);
+        addCount(handle, REAL_COUNT, -1);
+    }
+
+    private long cardinalityHigh(int handle, int level) {
+        if (level == 0) {
+            return 0;
+        }
+
+        long fullLow = fullCardinalityLow(handle, level);
+        long low = nodes.getLong(handle, CARDINALITY_LOW) + fullLow;
+        long carry = Long.compareUnsigned(low, fullLow) < 0 ? 1 : 0;
+
+        return nodes.getLong(handle, CARDINALITY_HIGH) + fullCardinalityHigh(handle, level) + carry;
+    }
+
+    private long cardinalityLow(int handle, int level) {
+        if (level == 0) {
+            return occupancy(handle);
+        }
+
+        return nodes.getLong(handle, CARDINALITY_LOW) + fullCardinalityLow(handle, level);
+    }
+
+    private long fullCardinalityHigh(int handle, int level) {
+        long count = nodes.getInt(handle, FULL_COUNT);
+        int shift = level << 3;
+
+        if (shift < Long.SIZE) {
+            return count >>> (Long.SIZE - shift);
+        } else if (shift < 2 * Long.SIZE) {
+            return count << (shift - Long.SIZE);
+        } else {
+            return 0;
+        }
+    }
+
+    private long fullCardinalityLow(int handle, int level) {
+        long count = nodes.getInt(handle, FULL_COUNT);
+        int shift = level << 3;
+
+        if (shift < Long.SIZE) {
+            return count << shift;
+        } else {
+            return 0;
+        }
+    }
+
+    private void addCardinality(int handle, int underlying, int underlyingLevel) {
+        long high = cardinalityHigh(underlying, underlyingLevel);
+        long low = cardinalityLow(underlying, underlyingLevel);
+
+        long current = nodes.getLong(handle, CARDINALITY_LOW);
+        long sum = current + low;
+        long carry = Long.compareUnsigned(sum, low) < 0 ? 1 : 0;
+
+        nodes.putLong(handle, CARDINALITY_HIGH, nodes.getLong(handle, CARDINALITY_HIGH) + high + carry);
+        nodes.putLong(handle, CARDINALITY_LOW, sum);
+    }
+
+    private void subtractCardinality(int handle, int underlying, int underlyingLevel) {
+        long high = cardinalityHigh(underlying, underlyingLevel);
+        long low = cardinalityLow(underlying, underlyingLevel);
+
+        long current = nodes.getLong(handle, CARDINALITY_LOW);
+        long borrow = Long.compareUnsigned(current, low) < 0 ? 1 : 0;
+
+        nodes.putLong(handle, CARDINALITY_HIGH, nodes.getLong(handle, CARDINALITY_HIGH) - high - borrow);
+        nodes.putLong(handle, CARDINALITY_LOW, current - low);
+    }
+
+    /**
+     * Records of the same size in slabs of direct buffers
+     */
+    private static final class Pool {
+
+        private final int recordSize;
+
+        private final int slabShift;
+
+        private final List<ByteBuffer> slabs;
+
+        /**
+         * How many records have ever been allocated (including released ones)
+         */
+        private int allocated;
+
+        /**
+         * Head of the list of released records
+         */
+        private int released;
+
+        private boolean closed;
+
+        private Pool(int recordSize, int slabShift) {
+            this.recordSize = recordSize;
+            this.slabShift = slabShift;
+            this.slabs = new ArrayList<>();
+        }
+
+        private Pool(Pool source) {
+            source.checkOpen();
+
+            this.recordSize = source.recordSize;
+            this.slabShift = source.slabShift;
+            this.slabs = new ArrayList<>(source.slabs.size());
+
+            for (ByteBuffer slab : source.slabs) {
+                ByteBuffer copy = ByteBuffer.allocateDirect(slab.capacity()).order(ByteOrder.nativeOrder());
+                copy.put(slab.duplicate());
+                copy.clear();
+
+                this.slabs.add(copy);
+            }
+
+            this.allocated = source.allocated;
+            this.released = source.released;
+        }
+
+        private int allocate() {
+            checkOpen();
+
+            if (released != NULL_HANDLE) {
+                int handle = released;
+                released = getInt(handle, 0);
+
+                for (int i = 0; i < recordSize; i += Long.BYTES) {
+                    putLong(handle, i, 0L);
+                }
+
+                return handle;
+            }
+
+            if (allocated == Integer.MAX_VALUE - FIRST_HANDLE) {
+                throw new IllegalStateException("Off-heap storage is exhausted");
+            }
+
+            int record = allocated++;
+
+            // direct buffers are allocated with zeros
+            if ((record >>> slabShift) == slabs.size()) {
+                slabs.add(ByteBuffer.allocateDirect(recordSize << slabShift).order(ByteOrder.nativeOrder()));
+            }
+
+            return record + FIRST_HANDLE;
+        }
+
+        private void release(int handle) {
+            putInt(handle, 0, released);
+            released = handle;
+        }
+
+        private void reset() {
+            slabs.clear();
+            allocated = 0;
+            released = NULL_HANDLE;
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            // the slabs are detached first, so nothing refers to them when they are freed
+            List<ByteBuffer> detached = new ArrayList<>(slabs);
+            reset();
+
+            for (ByteBuffer slab : detached) {
+                SparseBitBufferCleaner.clean(slab);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Off-heap level is closed");
+            }
+        }
+
+        private boolean isAllocated(int handle) {
+            return handle >= FIRST_HANDLE && handle - FIRST_HANDLE < allocated;
+        }
+
+        private int getInt(int handle, int offset) {
+            int record = handle - FIRST_HANDLE;
+            return slab(record).getInt(position(record) + offset);
+        }
+
+        private void putInt(int handle, int offset, int value) {
+            int record = handle - FIRST_HANDLE;
+            slab(record).putInt(position(record) + offset, value);
+        }
+
+        private long getLong(int handle, int offset) {
+            int record = handle - FIRST_HANDLE;
+            return slab(record).getLong(position(record) + offset);
+        }
+
+        private void putLong(int handle, int offset, long value) {
+            int record = handle - FIRST_HANDLE;
+            slab(record).putLong(position(record) + offset, value);
+        }
+
+        private ByteBuffer slab(int record) {
+            checkOpen();
+
+            return slabs.get(record >>> slabShift);
+        }
+
+        private int position(int record) {
+            return (record & ((1 << slabShift) - 1)) * recordSize;
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.util.SparseBitUtil;
+
+/**
+ * <p>Structural statistics of a set: how many REAL levels there are at every level number, how their underlying
+ * levels are split into REAL, FULL and NULL ones, how many bits the final levels hold and how many heap bytes
+ * the levels are estimated to retain.</p>
+ *
+ * <p>Bytes are estimated for a 64-bit JVM with compressed references (12-byte object headers, 16-byte array
+ * headers and 8-byte alignment). Levels shared with copies of the set are counted as if they were owned by the
+ * set. Levels which don't keep their data on heap or don't expose their structure (off-heap, memory-mapped)
+ * are only counted as {@link #getOpaqueCount() opaque}.</p>
+ */
+public final class SparseBitLevelStats {
+
+    private static final int OBJECT_HEADER = 12;
+
+    private static final int ARRAY_HEADER = 16;
+
+    static final int REFERENCE_BYTES = 4;
+
+    private static final int ALIGNMENT = 8;
+
+    private final boolean detailed;
+
+    private final long[] nodes;
+
+    private final long[] realChildren;
+
+    private final long[] fullChildren;
+
+    private final long[] nullChildren;
+
+    private final long[] compressed;
+
+    private final long[] bytes;
+
+    private final long[] leafFill;
+
+    private long opaqueCount;
+
+    /**
+     * Constructs empty statistics
+     *
+     * @param levels How many levels the set has
+     * @param detailed Visit every final level to build the fill histogram, otherwise make a shallow walk: every
+     *                 intermediate level is still visited but final levels are counted by their parents
+     */
+    public SparseBitLevelStats(int levels, boolean detailed) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Need positive level count: " + levels);
+        }
+
+        this.detailed = detailed;
+
+        this.nodes = new long[levels];
+        this.realChildren = new long[levels];
+        this.fullChildren = new long[levels];
+        this.nullChildren = new long[levels];
+        this.compressed = new long[levels];
+        this.bytes = new long[levels];
+
+        this.leafFill = new long[SparseBitUtil.LEVEL_SIZE + 1];
+    }
+
+    /**
+     * Check whether final levels were visited
+     *
+     * @return {@code true} if the fill histogram is collected
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    /**
+     * Get the number of levels
+     *
+     * @return How many levels the set has
+     */
+    public int getLevels() {
+        return nodes.length;
+    }
+
+    /**
+     * Get the count of REAL levels
+     *
+     * @param level Level number, {@code 0} is the final level
+     *
+     * @return Count of REAL levels with the number
+     */
+    public long getNodeCount(int level) {
+        return nodes[level];
+    }
+
+    /**
+     * Get the count of REAL underlying levels of all REAL levels with the number
+     *
+     * @param level Level number
+     *
+     * @return Count of REAL underlying levels
+     */
+    public long getRealCount(int level) {
+        return realChildren[level];
+    }
+
+    /**
+     * Get the count of FULL underlying levels of all REAL levels with the number
+     *
+     * @param level Level number
+     *
+     * @return Count of FULL underlying levels
+     */
+    public long getFullCount(int level) {
+        return fullChildren[level];
+    }
+
+    /**
+     * Get the count of NULL underlying levels of all REAL levels with the number
+     *
+     * @param level Level number
+     *
+     * @return Count of NULL underlying levels
+     */
+    public long getNullCount(int level) {
+        return nullChildren[level];
+    }
+
+    /**
+     * Get the count of levels which are compressed into prefixes of REAL levels with the number, those levels
+     * take no memory of their own
+     *
+     * @param level Level number
+     *
+     * @return Count of compressed levels
+     */
+    public long getCompressedCount(int level) {
+        return compressed[level];
+    }
+
+    /**
+     * Get the estimated heap bytes retained by REAL levels with the number (not including underlying levels)
+     *
+     * @param level Level number
+     *
+     * @return Estimated bytes
+     */
+    public long getBytes(int level) {
+        return bytes[level];
+    }
+
+    /**
+     * Get the estimated heap bytes retained by all levels of the set
+     *
+     * @return Estimated bytes
+     */
+    public long getBytes() {
+        long total = 0;
+
+        for (long value : bytes) {
+            total += value;
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the fill histogram of final levels
+     *
+     * @param bits Count of set bits from {@code 0} to {@code 256}
+     *
+     * @return How many REAL final levels have exactly that count of bits set, always zero if the statistics
+     *         are not detailed
+     */
+    public long getLeafCount(int bits) {
+        return leafFill[bits];
+    }
+
+    /**
+     * Get the count of levels which don't expose their structure
+     *
+     * @return Count of opaque levels
+     */
+    public long getOpaqueCount() {
+        return opaqueCount;
+    }
+
+    void addNode(int level, int reals, int fulls, int prefix, long size) {
+        nodes[level]++;
+        realChildren[level] += reals;
+        fullChildren[level] += fulls;
+        nullChildren[level] += SparseBitUtil.LEVEL_SIZE - reals - fulls;
+        compressed[level] += prefix;
+        bytes[level] += size;
+    }
+
+    void addLeaves(long count, long size) {
+        nodes[0] += count;
+        bytes[0] += count * size;
+    }
+
+    void addLeaf(int bits, long size) {
+        addLeaves(1, size);
+        leafFill[bits]++;
+    }
+
+    void addOpaque() {
+        opaqueCount++;
+    }
+
+    static long objectBytes(int fields) {
+        return align(OBJECT_HEADER + fields);
+    }
+
+    static long arrayBytes(int elementSize, int length) {
+        return align(ARRAY_HEADER + (long) elementSize * length);
+    }
+
+    static long referenceArrayBytes(int length) {
+        return arrayBytes(REFERENCE_BYTES, length);
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format("%5s %12s %12s %12s %12s %12s %14s%n",
+                "level", "nodes", "real", "full", "null", "compressed", "bytes"));
+
+        for (int level = nodes.length - 1; level >= 0; level--) {
+            builder.append(String.format("%5d %12d %12d %12d %12d %12d %14d%n", level, nodes[level],
+                    realChildren[level], fullChildren[level], nullChildren[level], compressed[level], bytes[level]));
+        }
+
+        builder.append(String.format("total bytes %d, opaque levels %d", getBytes(), opaqueCount));
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,675 @@
+package org.sparsebitset.level;
+
+import org.sparsebitset.index.SparseBitConstIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Base level which guards every of its 256 underlying levels (stripes) with its own read-write lock, so
+ * operations on different segments of the level don't wait for each other.</p>
+ *
+ * <p>Underlying levels are always REAL and are updated in place, they are never squashed into the base level.
+ * Operations which touch several stripes take their locks in the ascending order of segments, so they can't
+ * deadlock. Range operations and operations on the whole level are atomic, iteration and algebra are atomic
+ * for every stripe but not as a whole.</p>
+ */
+public final class SparseBitLevelStriped implements SparseBitLevel {
+
+    /**
+     * Estimated heap size of a lock: the lock itself, its synchronizer and both lock views
+     */
+    private static final long LOCK_BYTES = 104;
+
+    private final int level;
+
+    private final int maximumOccupancy;
+
+    private final SparseBitLevel[] stripes;
+
+    private final ReadWriteLock[] locks;
+
+    SparseBitLevelStriped(int maximumOccupancy, int level) {
+        if (level <= 0) {
+            throw new IllegalArgumentException("Striped level needs underlying levels");
+        }
+
+        this.level = level;
+        this.maximumOccupancy = maximumOccupancy;
+
+        this.stripes = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        this.locks = new ReadWriteLock[SparseBitUtil.LEVEL_SIZE];
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            this.stripes[segment] = SparseBitLevels.createLevel(maximumOccupancy, level);
+            this.locks[segment] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private SparseBitLevelStriped(SparseBitLevelStriped source) {
+        this.level = source.level;
+        this.maximumOccupancy = source.maximumOccupancy;
+
+        this.stripes = new SparseBitLevel[SparseBitUtil.LEVEL_SIZE];
+        this.locks = new ReadWriteLock[SparseBitUtil.LEVEL_SIZE];
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            this.stripes[segment] = source.stripes[segment].copy();
+            this.locks[segment] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public SparseBitLevelType getType() {
+        return SparseBitLevelType.REAL;
+    }
+
+    @Override
+    public SparseBitLevel copy() {
+        lockAll(false);
+        try {
+            return new SparseBitLevelStriped(this);
+        } finally {
+            unlockAll(false);
+        }
+    }
+
+    @Override
+    public int getMaximumOccupancy() {
+        return maximumOccupancy;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lockAll(false);
+        try {
+            for (SparseBitLevel stripe : stripes) {
+                if (!stripe.isEmpty()) {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            unlockAll(false);
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        lockAll(false);
+        try {
+            for (SparseBitLevel stripe : stripes) {
+                if (!stripe.isFull()) {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            unlockAll(false);
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        lockAll(true);
+        try {
+            for (SparseBitLevel stripe : stripes) {
+                stripe.clearAll();
+            }
+        } finally {
+            unlockAll(true);
+        }
+    }
+
+    @Override
+    public void setAll() {
+        lockAll(true);
+        try {
+            for (SparseBitLevel stripe : stripes) {
+                stripe.setAll();
+            }
+        } finally {
+            unlockAll(true);
+        }
+    }
+
+    @Override
+    public void flipAll() {
+        lockAll(true);
+        try {
+            for (SparseBitLevel stripe : stripes) {
+                stripe.flipAll();
+            }
+        } finally {
+            unlockAll(true);
+        }
+    }
+
+    @Override
+    public void validate() {
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Lock lock = lock(segment, false);
+            try {
+                if (stripes[segment].getType() != SparseBitLevelType.REAL) {
+                    throw new IllegalStateException("Stripe is not a real level on level " + level);
+                }
+
+                stripes[segment].validate();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long cardinalityHigh() {
+        return cardinality().shiftRight(Long.SIZE).longValue();
+    }
+
+    @Override
+    public long cardinalityLow() {
+        return cardinality().longValue();
+    }
+
+    @Override
+    public BigInteger cardinality() {
+        lockAll(false);
+        try {
+            BigInteger cardinality = BigInteger.ZERO;
+
+            for (SparseBitLevel stripe : stripes) {
+                cardinality = cardinality.add(stripe.cardinality());
+            }
+
+            return cardinality;
+        } finally {
+            unlockAll(false);
+        }
+    }
+
+    @Override
+    public boolean get(SparseBitIndex index) {
+        int segment = segment(index);
+
+        Lock lock = lock(segment, false);
+        try {
+            return stripes[segment].get(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean set(SparseBitIndex index) {
+        int segment = segment(index);
+
+        Lock lock = lock(segment, true);
+        try {
+            return stripes[segment].set(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean clear(SparseBitIndex index) {
+        int segment = segment(index);
+
+        Lock lock = lock(segment, true);
+        try {
+            return stripes[segment].clear(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flip(SparseBitIndex index) {
+        int segment = segment(index);
+
+        Lock lock = lock(segment, true);
+        try {
+            stripes[segment].flip(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void set(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        int segmentFrom = segment(fromIndexInclusive);
+        int segmentTo = segment(toIndexInclusive);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        lockRange(segmentFrom, segmentTo);
+        try {
+            if (segmentFrom != segmentTo) {
+                stripes[segmentFrom].set(fromIndexInclusive, SparseBitConstIndex.MAX);
+
+                for (int segment = segmentFrom + 1; segment < segmentTo; segment++) {
+                    stripes[segment].setAll();
+                }
+
+                stripes[segmentTo].set(SparseBitConstIndex.MIN, toIndexInclusive);
+            } else {
+                stripes[segmentFrom].set(fromIndexInclusive, toIndexInclusive);
+            }
+        } finally {
+            unlockRange(segmentFrom, segmentTo);
+        }
+    }
+
+    @Override
+    public void clear(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        int segmentFrom = segment(fromIndexInclusive);
+        int segmentTo = segment(toIndexInclusive);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        lockRange(segmentFrom, segmentTo);
+        try {
+            if (segmentFrom != segmentTo) {
+                stripes[segmentFrom].clear(fromIndexInclusive, SparseBitConstIndex.MAX);
+
+                for (int segment = segmentFrom + 1; segment < segmentTo; segment++) {
+                    stripes[segment].clearAll();
+                }
+
+                stripes[segmentTo].clear(SparseBitConstIndex.MIN, toIndexInclusive);
+            } else {
+                stripes[segmentFrom].clear(fromIndexInclusive, toIndexInclusive);
+            }
+        } finally {
+            unlockRange(segmentFrom, segmentTo);
+        }
+    }
+
+    @Override
+    public void flip(SparseBitIndex fromIndexInclusive, SparseBitIndex toIndexInclusive) {
+        int segmentFrom = segment(fromIndexInclusive);
+        int segmentTo = segment(toIndexInclusive);
+        SparseBitUtil.checkSegments(segmentFrom, segmentTo);
+
+        lockRange(segmentFrom, segmentTo);
+        try {
+            if (segmentFrom != segmentTo) {
+                stripes[segmentFrom].flip(fromIndexInclusive, SparseBitConstIndex.MAX);
+
+                for (int segment = segmentFrom + 1; segment < segmentTo; segment++) {
+                    stripes[segment].flipAll();
+                }
+
+                stripes[segmentTo].flip(SparseBitConstIndex.MIN, toIndexInclusive);
+            } else {
+                stripes[segmentFrom].flip(fromIndexInclusive, toIndexInclusive);
+            }
+        } finally {
+            unlockRange(segmentFrom, segmentTo);
+        }
+    }
+
+    @Override
+    public boolean get(long index) {
+        int segment = SparseBitUtil.segment(index, level);
+
+        Lock lock = lock(segment, false);
+        try {
+            return stripes[segment].get(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean set(long index) {
+        int segment = SparseBitUtil.segment(index, level);
+
+        Lock lock = lock(segment, true);
+        try {
+            return stripes[segment].set(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean clear(long index) {
+        int segment = SparseBitUtil.segment(index, level);
+
+        Lock lock = lock(segment, true);
+        try {
+            return stripes[segment].clear(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flip(long index) {
+        int segment = SparseBitUtil.segment(index, level);
+
+        Lock lock = lock(segment, true);
+        try {
+            stripes[segment].flip(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void get(long[] keys, int from, int to, long[] bitmap) {
+        int start = from;
+
+        // a run of keys of the same stripe is read under a single lock
+        while (start < to) {
+            int segment = SparseBitUtil.segment(keys[start], level);
+            int end = runEnd(keys, start, to, segment);
+
+            Lock lock = lock(segment, false);
+            try {
+                stripes[segment].get(keys, start, end, bitmap);
+            } finally {
+                lock.unlock();
+            }
+
+            start = end;
+        }
+    }
+
+    @Override
+    public void set(long[] keys, int from, int to) {
+        int start = from;
+
+        while (start < to) {
+            int segment = SparseBitUtil.segment(keys[start], level);
+            int end = runEnd(keys, start, to, segment);
+
+            Lock lock = lock(segment, true);
+            try {
+                stripes[segment].set(keys, start, end);
+            } finally {
+                lock.unlock();
+            }
+
+            start = end;
+        }
+    }
+
+    @Override
+    public boolean nextSetBit(int[] position) {
+        return nextBit(position, true);
+    }
+
+    @Override
+    public boolean nextClearBit(int[] position) {
+        return nextBit(position, false);
+    }
+
+    @Override
+    public boolean previousSetBit(int[] position) {
+        return previousBit(position, true);
+    }
+
+    @Override
+    public boolean previousClearBit(int[] position) {
+        return previousBit(position, false);
+    }
+
+    /**
+     * Union with another striped level, every stripe of the other level is copied under its own lock and then
+     * is applied under the lock of the stripe of this level. Levels of other kinds are walked range by range.
+     *
+     * @param other Level with the same number of levels
+     */
+    @Override
+    public void or(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevelStriped)) {
+            SparseBitLevels.forEachRange(other, level + 1, true, this::set);
+            return;
+        }
+
+        SparseBitLevelStriped that = checkCompatible(other);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel theirs = that.copyStripe(segment);
+
+            Lock lock = lock(segment, true);
+            try {
+                stripes[segment].or(theirs);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void and(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevelStriped)) {
+            SparseBitLevels.forEachRange(other, level + 1, false, this::clear);
+            return;
+        }
+
+        SparseBitLevelStriped that = checkCompatible(other);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel theirs = that.copyStripe(segment);
+
+            Lock lock = lock(segment, true);
+            try {
+                stripes[segment].and(theirs);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void andNot(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevelStriped)) {
+            SparseBitLevels.forEachRange(other, level + 1, true, this::clear);
+            return;
+        }
+
+        SparseBitLevelStriped that = checkCompatible(other);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel theirs = that.copyStripe(segment);
+
+            Lock lock = lock(segment, true);
+            try {
+                stripes[segment].andNot(theirs);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void xor(SparseBitLevel other) {
+        if (!(other instanceof SparseBitLevelStriped)) {
+            SparseBitLevels.forEachRange(other, level + 1, true, this::flip);
+            return;
+        }
+
+        SparseBitLevelStriped that = checkCompatible(other);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            SparseBitLevel theirs = that.copyStripe(segment);
+
+            Lock lock = lock(segment, true);
+            try {
+                stripes[segment].xor(theirs);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Write the level in the format of heap levels, empty stripes are written as {@code NULL} levels
+     *
+     * @param output Output
+     *
+     * @throws IOException on I/O error
+     */
+    @Override
+    public void collectStats(SparseBitLevelStats stats) {
+        long size = SparseBitLevelStats.objectBytes(2 * Integer.BYTES + 2 * SparseBitLevelStats.REFERENCE_BYTES)
+                + 2 * SparseBitLevelStats.referenceArrayBytes(SparseBitUtil.LEVEL_SIZE)
+                + SparseBitUtil.LEVEL_SIZE * LOCK_BYTES;
+
+        // every stripe is a REAL level even if it's empty
+        stats.addNode(level, SparseBitUtil.LEVEL_SIZE, 0, 0, size);
+
+        for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Lock lock = lock(segment, false);
+            try {
+                stripes[segment].collectStats(stats);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        lockAll(false);
+        try {
+            for (int segment = 0; segment < SparseBitUtil.LEVEL_SIZE; segment += SparseBitLevelN.CODES_PER_INT) {
+                int codes = 0;
+
+                for (int i = 0; i < SparseBitLevelN.CODES_PER_INT; i++) {
+                    int code = stripes[segment + i].isEmpty() ? SparseBitLevelN.NULL_CODE : SparseBitLevelN.REAL_CODE;
+
+                    codes |= code << (i << 1);
+                }
+
+                output.writeInt(codes);
+            }
+
+            for (SparseBitLevel stripe : stripes) {
+                if (!stripe.isEmpty()) {
+                    stripe.write(output);
+                }
+            }
+        } finally {
+            unlockAll(false);
+        }
+    }
+
+    private boolean nextBit(int[] position, boolean set) {
+        for (int segment = position[level]; segment < SparseBitUtil.LEVEL_SIZE; segment++) {
+            Lock lock = lock(segment, false);
+            try {
+                boolean found = set ? stripes[segment].nextSetBit(position) : stripes[segment].nextClearBit(position);
+
+                if (found) {
+                    position[level] = segment;
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // the next stripe is scanned from its very beginning
+            SparseBitUtil.fillPosition(position, level, 0);
+        }
+
+        return false;
+    }
+
+    private boolean previousBit(int[] position, boolean set) {
+        for (int segment = position[level]; segment >= 0; segment--) {
+            Lock lock = lock(segment, false);
+            try {
+                boolean found = set
+                        ? stripes[segment].previousSetBit(position)
+                        : stripes[segment].previousClearBit(position);
+
+                if (found) {
+                    position[level] = segment;
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // the previous stripe is scanned from its very end
+            SparseBitUtil.fillPosition(position, level, SparseBitUtil.LEVEL_SIZE - 1);
+        }
+
+        return false;
+    }
+
+    private SparseBitLevel copyStripe(int segment) {
+        Lock lock = lock(segment, false);
+        try {
+            return stripes[segment].copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int runEnd(long[] keys, int from, int to, int segment) {
+        int end = from + 1;
+        while (end < to && SparseBitUtil.segment(keys[end], level) == segment) {
+            end++;
+        }
+
+        return end;
+    }
+
+    private Lock lock(int segment, boolean write) {
+        Lock lock = write ? locks[segment].writeLock() : locks[segment].readLock();
+        lock.lock();
+        return lock;
+    }
+
+    private void lockRange(int segmentFrom, int segmentTo) {
+        // the ascending order of segments prevents deadlocks
+        for (int segment = segmentFrom; segment <= segmentTo; segment++) {
+            locks[segment].writeLock().lock();
+        }
+    }
+
+    private void unlockRange(int segmentFrom, int segmentTo) {
+        for (int segment = segmentTo; segment >= segmentFrom; segment--) {
+            locks[segment].writeLock().unlock();
+        }
+    }
+
+    private void lockAll(boolean write) {
+        for (ReadWriteLock lock : locks) {
+            (write ? lock.writeLock() : lock.readLock()).lock();
+        }
+    }
+
+    private void unlockAll(boolean write) {
+        for (int segment = SparseBitUtil.LEVEL_SIZE - 1; segment >= 0; segment--) {
+            (write ? locks[segment].writeLock() : locks[segment].readLock()).unlock();
+        }
+    }
+
+    private int segment(SparseBitIndex index) {
+        int segment = index.segment(level);
+        SparseBitUtil.checkSegment(segment);
+
+        return segment;
+    }
+
+    private SparseBitLevelStriped checkCompatible(SparseBitLevel other) {
+        if (other instanceof SparseBitLevelStriped && ((SparseBitLevelStriped) other).level == level) {
+            return (SparseBitLevelStriped) other;
+        } else {
+            throw new IllegalArgumentException("Level is not compatible with striped level " + level);
+        }
+    }
+
+}
@@ -1,5 +1,15 @@
 package org.sparsebitset.level;
 
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitIndex;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+
 /**
  * Factory for layers
  */
@@ -21,15 +31,172 @@ public final class SparseBitLevels {
      * @return Level object
      */
     public static SparseBitLevel createLevel(int maximumOccupancy, int levels) {
+        return createLevel(maximumOccupancy, levels, null);
+    }
+
+    /**
+     * Create underlying level which reports structural changes of its heap levels to a listener. Without a
+     * listener the only cost is a check of a field on a structural change, operations which don't change the
+     * structure are not affected at all.
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the level
+     * @param listener Listener of structural changes of the level, its underlying levels and its copies
+     *                 (optional)
+     *
+     * @return Level object
+     */
+    public static SparseBitLevel createLevel(int maximumOccupancy, int levels, SparseBitLevelListener listener) {
         int level = levels - 1;
 
         if (level > 0) {
-            return new SparseBitLevelN(maximumOccupancy, level);
+            return new SparseBitLevelN(maximumOccupancy, level, listener);
         } else {
             return new SparseBitLevel0(maximumOccupancy);
         }
     }
 
+    /**
+     * Create a base level which keeps all its underlying levels off heap
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the level
+     *
+     * @return Level object
+     */
+    public static SparseBitLevel createOffHeapLevel(int maximumOccupancy, int levels) {
+        return new SparseBitLevelOffHeap(maximumOccupancy, levels - 1);
+    }
+
+    /**
+     * Create a base level which may be read and updated by many threads without locks
+     *
+     * @param levels How many levels are below and including the level
+     *
+     * @return Level object
+     */
+    public static SparseBitLevel createConcurrentLevel(int levels) {
+        return new SparseBitLevelConcurrent(levels - 1);
+    }
+
+    /**
+     * Create a base level which guards every of its underlying levels with its own lock
+     *
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the level (at least 2)
+     *
+     * @return Level object
+     */
+    public static SparseBitLevel createStripedLevel(int maximumOccupancy, int levels) {
+        return new SparseBitLevelStriped(maximumOccupancy, levels - 1);
+    }
+
+    /**
+     * Read a level written by {@link SparseBitLevel#write(java.io.DataOutput)}
+     *
+     * @param input Input
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the level
+     *
+     * @return Level object
+     *
+     * @throws IOException on I/O error or if the data is corrupted
+     */
+    public static SparseBitLevel readLevel(DataInput input, int maximumOccupancy, int levels) throws IOException {
+        int level = levels - 1;
+
+        if (level > 0) {
+            return SparseBitLevelN.read(input, maximumOccupancy, level);
+        } else {
+            return SparseBitLevel0.read(input, maximumOccupancy);
+        }
+    }
+
+    /**
+     * Get a level in heap levels, levels of other kinds (off-heap, concurrent, striped, mapped) are copied
+     * range by range
+     *
+     * @param level Level of any kind
+     * @param levels How many levels are below and including the level
+     *
+     * @return The level itself if it is a heap level or its heap copy otherwise
+     */
+    public static SparseBitLevel toHeapLevel(SparseBitLevel level, int levels) {
+        if (level instanceof SparseBitLevelN || level instanceof SparseBitLevel0) {
+            return level;
+        }
+
+        SparseBitLevel heap = createLevel(level.getMaximumOccupancy(), levels);
+        heap.or(level);
+
+        return heap;
+    }
+
+    /**
+     * Write a level in the mapped layout (see {@link SparseBitLevelMapped})
+     *
+     * @param level Heap level to write (see {@link #toHeapLevel(SparseBitLevel, int)})
+     * @param output Output, its size is used as the current offset
+     *
+     * @return Offset of the written level
+     *
+     * @throws IOException on I/O error or if the offsets overflow
+     */
+    public static int writeMappedLevel(SparseBitLevel level, DataOutputStream output) throws IOException {
+        return SparseBitLevelMapped.write(level, output);
+    }
+
+    /**
+     * Create a read-only level over a buffer with the mapped layout (see {@link SparseBitLevelMapped})
+     *
+     * @param buffer Buffer
+     * @param offset Offset of the level in the buffer
+     * @param maximumOccupancy How many items must be in underlying level in order to collapse it
+     * @param levels How many levels are below and including the level
+     *
+     * @return Level object
+     */
+    public static SparseBitLevel mapLevel(ByteBuffer buffer, int offset, int maximumOccupancy, int levels) {
+        return new SparseBitLevelMapped(buffer, offset, maximumOccupancy, levels - 1);
+    }
+
+    /**
+     * Walk ranges of another level through the common level API, heap levels use it to combine with levels
+     * of other kinds (off-heap, mapped, concurrent, striped) which they can't walk in lockstep
+     *
+     * @param other Another level of the same height
+     * @param levels How many levels are below and including the level
+     * @param setRanges Walk ranges of set bits if {@code true} or ranges of clear bits otherwise
+     * @param update Operation which is applied to every range (both indexes are inclusive)
+     */
+    static void forEachRange(SparseBitLevel other, int levels, boolean setRanges,
+                             BiConsumer<SparseBitIndex, SparseBitIndex> update) {
+        int[] position = new int[levels];
+
+        SparseBitArrayIndex from = new SparseBitArrayIndex(new int[levels]);
+        SparseBitArrayIndex to = new SparseBitArrayIndex(new int[levels]);
+
+        while (setRanges ? other.nextSetBit(position) : other.nextClearBit(position)) {
+            System.arraycopy(position, 0, from.segments(), 0, levels);
+
+            // the end of the range is found before the range is updated, so the other level may be this one
+            boolean bounded = setRanges ? other.nextClearBit(position) : other.nextSetBit(position);
+
+            if (bounded) {
+                System.arraycopy(position, 0, to.segments(), 0, levels);
+                SparseBitUtil.decrementPosition(to.segments());
+            } else {
+                SparseBitUtil.fillPosition(to.segments(), levels, SparseBitUtil.LEVEL_SIZE - 1);
+            }
+
+            update.accept(from, to);
+
+            if (!bounded) {
+                break;
+            }
+        }
+    }
+
     private SparseBitLevels() {
     }
 
@@ -0,0 +1,94 @@
+package org.sparsebitset.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Releases the memory of direct and memory-mapped buffers right away instead of waiting for the garbage
+ * collector to find out that the buffer is unreachable.</p>
+ *
+ * <p>A cleaned buffer must not be accessed anymore: the access reads freed or unmapped memory and may crash
+ * the JVM. Callers drop all their references to the buffer before it is cleaned.</p>
+ */
+public final class SparseBitBufferCleaner {
+
+    /**
+     * Cleaner with the type {@code (ByteBuffer) void} or {@code null} if the runtime doesn't provide one
+     */
+    private static final MethodHandle CLEANER = findCleaner();
+
+    private SparseBitBufferCleaner() {
+    }
+
+    /**
+     * Check if buffers can be cleaned on this runtime
+     *
+     * @return {@code true} if {@link #clean(ByteBuffer)} releases the memory
+     */
+    public static boolean isSupported() {
+        return CLEANER != null;
+    }
+
+    /**
+     * Release the memory of a buffer
+     *
+     * @param buffer Direct or memory-mapped buffer which owns its memory (not a slice or a duplicate)
+     *
+     * @return {@code true} if the memory is released, {@code false} if the buffer is a heap one, a slice or
+     *         a duplicate, or if the runtime doesn't support cleaning (the memory is released by the garbage
+     *         collector then)
+     */
+    public static boolean clean(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer can't be null");
+        }
+
+        if (CLEANER == null || !buffer.isDirect()) {
+            return false;
+        }
+
+        try {
+            CLEANER.invokeExact(buffer);
+            return true;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // slices and duplicates don't own their memory
+            return false;
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            // Java 9+: sun.misc.Unsafe.invokeCleaner(ByteBuffer)
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+
+            MethodHandle invokeCleaner = lookup.findVirtual(type, "invokeCleaner",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+
+            return invokeCleaner.bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not available before Java 9
+        }
+
+        try {
+            // Java 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = cleaner.getReturnType().getMethod("clean");
+
+            return MethodHandles.filterReturnValue(lookup.unreflect(cleaner), lookup.unreflect(clean))
+                    .asType(MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
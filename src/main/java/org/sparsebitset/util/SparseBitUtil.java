@@ -1,5 +1,8 @@
 package org.sparsebitset.util;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+
 /**
  * Utility methods and constants
  */
@@ -19,6 +22,144 @@ public final class SparseBitUtil {
     private SparseBitUtil() {
     }
 
+    /**
+     * Get a segment of a primitive index (treated as unsigned) for the specified level
+     *
+     * @param index Primitive index
+     * @param level Level of the index
+     *
+     * @return Segment byte, value from {@code 0} to {@code 255} (levels above 7 always give {@code 0})
+     */
+    public static int segment(long index, int level) {
+        if (level < Long.BYTES) {
+            return BYTE_MASK & (int) (index >>> (level << 3));
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Fill the lower segments of a position
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}
+     * @param levels How many lower levels to fill
+     * @param segment Segment value
+     */
+    public static void fillPosition(int[] position, int levels, int segment) {
+        Arrays.fill(position, 0, levels, segment);
+    }
+
+    /**
+     * Move a position to the next bit
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}
+     *
+     * @return {@code false} if the position was the last one (then it wraps around to the first one)
+     */
+    public static boolean incrementPosition(int[] position) {
+        for (int level = 0; level < position.length; level++) {
+            if (position[level] < LEVEL_SIZE - 1) {
+                position[level]++;
+                return true;
+            } else {
+                position[level] = 0;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Move a position to the previous bit
+     *
+     * @param position Position where the element {@code 0} is the segment of the level {@code 0}
+     *
+     * @return {@code false} if the position was the first one (then it wraps around to the last one)
+     */
+    public static boolean decrementPosition(int[] position) {
+        for (int level = 0; level < position.length; level++) {
+            if (position[level] > 0) {
+                position[level]--;
+                return true;
+            } else {
+                position[level] = LEVEL_SIZE - 1;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Convert an unsigned 128-bit number to a big integer
+     *
+     * @param high Upper 64 bits
+     * @param low Lower 64 bits
+     *
+     * @return Non-negative big integer
+     */
+    public static BigInteger toBigInteger(long high, long low) {
+        byte[] magnitude = new byte[2 * Long.BYTES];
+
+        for (int i = 0; i < Long.BYTES; i++) {
+            magnitude[Long.BYTES - 1 - i] = (byte) (high >>> (i << 3));
+            magnitude[2 * Long.BYTES - 1 - i] = (byte) (low >>> (i << 3));
+        }
+
+        return new BigInteger(1, magnitude);
+    }
+
+    /**
+     * Truncate a value to the unsigned 128 bits which the incremental counters of levels keep (they wrap around
+     * in sets deeper than 16 levels)
+     *
+     * @param value Non-negative big integer
+     *
+     * @return Value modulo {@code 2^128}
+     */
+    public static BigInteger truncate128(BigInteger value) {
+        return (value.bitLength() > 2 * Long.SIZE) ? value.mod(BigInteger.ONE.shiftLeft(2 * Long.SIZE)) : value;
+    }
+
+    /**
+     * Compare positions of the same length
+     *
+     * @param position1 The first position
+     * @param position2 The second position
+     *
+     * @return Negative, zero or positive value if the first position is lower, equal or higher
+     */
+    public static int comparePositions(int[] position1, int[] position2) {
+        for (int level = position1.length - 1; level >= 0; level--) {
+            if (position1[level] != position2[level]) {
+                return (position1[level] < position2[level]) ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Count bits between positions of the same length
+     *
+     * @param fromInclusive The first position
+     * @param toInclusive The last position, not lower than the first one
+     *
+     * @return Count of bits including both positions
+     */
+    public static BigInteger distance(int[] fromInclusive, int[] toInclusive) {
+        return toBigInteger(toInclusive).subtract(toBigInteger(fromInclusive)).add(BigInteger.ONE);
+    }
+
+    private static BigInteger toBigInteger(int[] position) {
+        byte[] magnitude = new byte[position.length];
+
+        for (int level = 0; level < position.length; level++) {
+            magnitude[position.length - 1 - level] = (byte) position[level];
+        }
+
+        return new BigInteger(1, magnitude);
+    }
+
     public static void checkSegment(int segment) {
         if (segment < 0 || segment >= SparseBitUtil.LEVEL_SIZE) {
             throw new IllegalArgumentException("Index returned invalid segment value: " + segment);
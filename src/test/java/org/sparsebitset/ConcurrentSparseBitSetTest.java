@@ -0,0 +1,441 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentSparseBitSetTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void testIsolatedSegments() throws Exception {
+        ConcurrentSparseBitSet<SparseBitIntIndex> set = new ConcurrentSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        // segments and ranges are isolated but share the same levels
+        List<WorkerThread> threads = new ArrayList<>();
+
+        for (int segment : new int[] {0, 2, 53, 102, 143, 176, 234, 252}) {
+            threads.add(new WorkerThread(2000, new SingleBitJuggler(set, segment).createTasks()));
+        }
+
+        threads.add(new WorkerThread(2000, new MultipleBitJuggler(set, 3, 10).createTasks()));
+        threads.add(new WorkerThread(2000, new MultipleBitJuggler(set, 12, 52).createTasks()));
+        threads.add(new WorkerThread(2000, new MultipleBitJuggler(set, 54, 100).createTasks()));
+        threads.add(new WorkerThread(2000, new MultipleBitJuggler(set, 177, 230).createTasks()));
+
+        runAll(threads);
+
+        set.validate();
+        assertTrue(set.isEmpty());
+        assertEquals(BigInteger.ZERO, set.cardinality());
+    }
+
+    @Test
+    public void testSameBit() throws Exception {
+        ConcurrentSparseBitSet<SparseBitLongIndex> set = new ConcurrentSparseBitSet<>(SparseBitLongIndex.FACTORY);
+
+        AtomicInteger sets = new AtomicInteger();
+        AtomicInteger clears = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+        List<WorkerThread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new WorkerThread(1, () -> {
+                for (long key = 0; key < 5000; key++) {
+                    // all threads race for the same new levels
+                    SparseBitLongIndex index = SparseBitLongIndex.of(key * 0x0123456789ABCDEFL);
+
+                    await(barrier);
+                    if (set.set(index)) {
+                        sets.incrementAndGet();
+                    }
+
+                    await(barrier);
+                    if (set.clear(index)) {
+                        clears.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        runAll(threads);
+
+        // only one thread switches the bit every time
+        assertEquals(5000, sets.get());
+        assertEquals(5000, clears.get());
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testFlips() throws Exception {
+        ConcurrentSparseBitSet<SparseBitLongIndex> set = new ConcurrentSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        set.set(SparseBitLongIndex.of(0x8000000000000000L), SparseBitLongIndex.of(-1L));
+
+        List<WorkerThread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            List<SparseBitLongIndex> indexes = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                indexes.add(SparseBitLongIndex.of(i * 0x0040000000000001L));
+                indexes.add(SparseBitLongIndex.of(i * 0x0040000000000001L));
+            }
+
+            Collections.shuffle(indexes, new Random(t));
+
+            threads.add(new WorkerThread(1, () -> {
+                // every thread flips every bit twice in its own order
+                for (SparseBitLongIndex index : indexes) {
+                    set.flip(index);
+                }
+
+                set.flip(SparseBitLongIndex.of(0x4000000000000000L), SparseBitLongIndex.of(0xBFFFFFFFFFFFFFFFL));
+            }));
+        }
+
+        runAll(threads);
+
+        set.validate();
+
+        // an even number of flips of every bit
+        assertEquals(BigInteger.ONE.shiftLeft(63), set.cardinality());
+        assertEquals(SparseBitLongIndex.of(0x8000000000000000L), set.nextSetBit(SparseBitLongIndex.of(0)));
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        ConcurrentSparseBitSet<SparseBitIntIndex> set = new ConcurrentSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        List<WorkerThread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int base = t * 0x1000;
+
+            threads.add(new WorkerThread(500, () -> {
+                // disjoint ranges of different threads share the final levels
+                set.set(SparseBitIntIndex.of(base + 1), SparseBitIntIndex.of(base + 0x0FFE));
+                assertTrue(set.get(SparseBitIntIndex.of(base + 0x0800)));
+
+                set.flip(SparseBitIntIndex.of(base + 0x0100), SparseBitIntIndex.of(base + 0x0200));
+                assertFalse(set.get(SparseBitIntIndex.of(base + 0x0180)));
+                assertTrue(set.get(SparseBitIntIndex.of(base + 0x0800)));
+
+                set.clear(SparseBitIntIndex.of(base + 1), SparseBitIntIndex.of(base + 0x0FFE));
+                assertFalse(set.get(SparseBitIntIndex.of(base + 0x0800)));
+            }));
+        }
+
+        runAll(threads);
+
+        set.validate();
+
+        assertTrue(set.isEmpty());
+        assertNull(set.nextSetBit(SparseBitIntIndex.of(0)));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        ConcurrentSparseBitSet<SparseBitIntIndex> set = new ConcurrentSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        // a final level filled bit by bit is squashed
+        for (int i = 0; i < 0x100; i++) {
+            set.set(SparseBitIntIndex.of(0x11223300 + i));
+        }
+        assertEquals(1, set.stats(true).getLeafCount(0x100));
+
+        set.compact();
+        set.validate();
+        assertEquals(1, set.stats(true).getFullCount(1));
+        assertEquals(0, set.stats(true).getNodeCount(0));
+
+        long bytes = set.stats(true).getBytes();
+
+        Random random = new Random(19);
+        for (int round = 0; round < 10; round++) {
+            int[] keys = new int[1000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt();
+                set.set(SparseBitIntIndex.of(keys[i]));
+            }
+            for (int key : keys) {
+                if ((key & 0xFFFFFF00) != 0x11223300) {
+                    set.clear(SparseBitIntIndex.of(key));
+                }
+            }
+
+            // levels which became empty are kept until the compaction
+            assertTrue(set.stats(true).getBytes() > bytes);
+
+            set.compact();
+            set.validate();
+
+            assertEquals(bytes, set.stats(true).getBytes());
+            assertEquals(BigInteger.valueOf(0x100), set.cardinality());
+        }
+    }
+
+    @Test
+    public void testSameAsHeap() throws Exception {
+        Random random = new Random(7);
+
+        DeepSparseBitSet<SparseBitLongIndex> expected = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        ConcurrentSparseBitSet<SparseBitLongIndex> actual = new ConcurrentSparseBitSet<>(SparseBitLongIndex.FACTORY);
+
+        long[] bases = new long[16];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = random.nextLong();
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            long from = bases[random.nextInt(bases.length)] ^ (random.nextLong() >>> random.nextInt(64));
+            long to = Math.max(from, from + random.nextInt(1 << random.nextInt(12)));
+
+            SparseBitLongIndex index = SparseBitLongIndex.of(from);
+
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.set(index), actual.set(index));
+                    break;
+                case 2:
+                    assertEquals(expected.clear(index), actual.clear(index));
+                    break;
+                case 3:
+                    expected.flip(index);
+                    actual.flip(index);
+                    break;
+                case 4:
+                    expected.set(index, SparseBitLongIndex.of(to));
+                    actual.set(index, SparseBitLongIndex.of(to));
+                    break;
+                case 5:
+                    expected.clear(index, SparseBitLongIndex.of(to));
+                    actual.clear(index, SparseBitLongIndex.of(to));
+                    break;
+                case 6:
+                    expected.flip(index, SparseBitLongIndex.of(to));
+                    actual.flip(index, SparseBitLongIndex.of(to));
+                    break;
+                default:
+                    assertEquals(expected.nextSetBit(index), actual.nextSetBit(index));
+                    assertEquals(expected.nextClearBit(index), actual.nextClearBit(index));
+                    assertEquals(DeepSparseBitSetTest.enclosingRange(expected, index),
+                            DeepSparseBitSetTest.enclosingRange(actual, index));
+                    assertEquals(expected.findCoveringPrefix(index, 64), actual.findCoveringPrefix(index, 64));
+                    break;
+            }
+        }
+
+        checkSame(expected, actual);
+
+        DeepSparseBitSet<SparseBitLongIndex> other = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        for (int i = 0; i < 100; i++) {
+            other.set(SparseBitLongIndex.of(bases[random.nextInt(bases.length)] ^ random.nextInt(0x10000)));
+        }
+
+        checkSame(DeepSparseBitSet.xor(expected, other), DeepSparseBitSet.xor(actual, other));
+        checkSame(DeepSparseBitSet.and(expected, other), DeepSparseBitSet.and(actual, other));
+        checkSame(DeepSparseBitSet.or(expected, other), DeepSparseBitSet.or(actual, other));
+
+        ConcurrentSparseBitSet<SparseBitLongIndex> copy = actual.copy();
+        copy.andNot(other);
+        checkSame(DeepSparseBitSet.andNot(expected, other), copy);
+
+        actual.flipAll();
+        expected.flipAll();
+        checkSame(expected, actual);
+
+        actual.clearAll();
+        assertTrue(actual.isEmpty());
+        actual.setAll();
+        assertTrue(actual.isFull());
+    }
+
+    private static void checkSame(DeepSparseBitSet<SparseBitLongIndex> expected,
+                                  DeepSparseBitSet<SparseBitLongIndex> actual) throws IOException {
+        actual.validate();
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(ranges(expected), ranges(actual));
+
+        // the written snapshot is read back as a heap set
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        actual.writeTo(output);
+
+        DeepSparseBitSet<SparseBitLongIndex> snapshot = DeepSparseBitSet.readFrom(
+                new ByteArrayInputStream(output.toByteArray()), SparseBitLongIndex.FACTORY);
+
+        snapshot.validate();
+        assertEquals(ranges(expected), ranges(snapshot));
+    }
+
+    private static List<String> ranges(SparseBitSet<SparseBitLongIndex> set) {
+        List<String> ranges = new ArrayList<>();
+        set.forEachRange((from, to) -> ranges.add(from + ".." + to));
+        return ranges;
+    }
+
+    private static void runAll(List<WorkerThread> threads) throws InterruptedException {
+        for (WorkerThread thread : threads) {
+            thread.start();
+        }
+
+        for (WorkerThread thread : threads) {
+            thread.join();
+        }
+
+        for (WorkerThread thread : threads) {
+            assertNull(thread.exception);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A sequence of commands on a single bit
+     */
+    private static final class SingleBitJuggler {
+
+        private final int segment;
+
+        private final SparseBitSet<SparseBitIntIndex> set;
+
+        private final Random random;
+
+        private int index;
+
+        private SingleBitJuggler(SparseBitSet<SparseBitIntIndex> set, int segment) {
+            this.set = set;
+            this.segment = segment;
+            this.random = new Random(segment);
+        }
+
+        private Runnable[] createTasks() {
+            return new Runnable[] {
+                    // a few high segments, so the final levels are shared with the other threads
+                    () -> index = random.nextInt(0x40) << 8 | segment,
+
+                    () -> assertFalse(set.get(SparseBitIntIndex.of(index))),
+                    () -> assertTrue(set.set(SparseBitIntIndex.of(index))),
+                    () -> assertFalse(set.set(SparseBitIntIndex.of(index))),
+                    () -> assertTrue(set.get(SparseBitIntIndex.of(index))),
+                    () -> assertTrue(set.clear(SparseBitIntIndex.of(index))),
+                    () -> assertFalse(set.clear(SparseBitIntIndex.of(index))),
+                    () -> assertFalse(set.get(SparseBitIntIndex.of(index))),
+                    () -> set.flip(SparseBitIntIndex.of(index)),
+                    () -> assertTrue(set.get(SparseBitIntIndex.of(index))),
+                    () -> set.flip(SparseBitIntIndex.of(index)),
+                    () -> assertFalse(set.get(SparseBitIntIndex.of(index))),
+            };
+        }
+    }
+
+    /**
+     * A sequence of commands on a range of bits
+     */
+    private static final class MultipleBitJuggler {
+
+        private final int fromSegment;
+
+        private final int toSegment;
+
+        private final SparseBitSet<SparseBitIntIndex> set;
+
+        private final Random random;
+
+        private int fromIndex;
+
+        private int toIndex;
+
+        private MultipleBitJuggler(SparseBitSet<SparseBitIntIndex> set, int fromSegment, int toSegment) {
+            this.set = set;
+            this.fromSegment = fromSegment;
+            this.toSegment = toSegment;
+            this.random = new Random(fromSegment + toSegment);
+        }
+
+        private Runnable[] createTasks() {
+            return new Runnable[] {
+                    () -> {
+                        int index = random.nextInt(0x40) << 8;
+                        fromIndex = index | fromSegment;
+                        toIndex = index | toSegment;
+                    },
+
+                    () -> checkRange(set, fromIndex, toIndex, false),
+                    () -> set.set(SparseBitIntIndex.of(fromIndex), SparseBitIntIndex.of(toIndex)),
+                    () -> checkRange(set, fromIndex, toIndex, true),
+                    () -> set.clear(SparseBitIntIndex.of(fromIndex), SparseBitIntIndex.of(toIndex)),
+                    () -> checkRange(set, fromIndex, toIndex, false),
+                    () -> set.flip(SparseBitIntIndex.of(fromIndex), SparseBitIntIndex.of(toIndex)),
+                    () -> checkRange(set, fromIndex, toIndex, true),
+                    () -> set.flip(SparseBitIntIndex.of(fromIndex), SparseBitIntIndex.of(toIndex)),
+                    () -> checkRange(set, fromIndex, toIndex, false),
+            };
+        }
+    }
+
+    /**
+     * Thread which runs the tasks in a loop for a number of rounds
+     */
+    private static final class WorkerThread extends Thread {
+
+        private final Runnable[] delegates;
+
+        private final int rounds;
+
+        private volatile Throwable exception;
+
+        private WorkerThread(int rounds, Runnable... delegates) {
+            this.rounds = rounds;
+            this.delegates = delegates;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < rounds; i++) {
+                    for (Runnable delegate : delegates) {
+                        delegate.run();
+                    }
+                }
+            } catch (Throwable e) {
+                this.exception = e;
+            }
+        }
+    }
+
+    private static void checkRange(SparseBitSet<SparseBitIntIndex> set,
+                                   int fromIndexInclusive, int toIndexInclusive, boolean expected) {
+        for (int i = fromIndexInclusive; i <= toIndexInclusive; i++) {
+            boolean result = set.get(SparseBitIntIndex.of(i));
+
+            assertEquals(String.format("Mismatch on %08X", i), expected, result);
+        }
+    }
+
+}
@@ -1,15 +1,34 @@
 package org.sparsebitset;
 
 import org.junit.Test;
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitBytesIndex;
+import org.sparsebitset.index.SparseBitIndex;
 import org.sparsebitset.index.SparseBitInetAddressIndex;
 import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLong2Index;
 import org.sparsebitset.index.SparseBitLongIndex;
+import org.sparsebitset.level.SparseBitLevelStats;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.net.Inet6Address;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class DeepSparseBitSetTest {
 
@@ -416,6 +435,128 @@ public class DeepSparseBitSetTest {
         assertTrue(set.get(SparseBitIntIndex.of(0xFE)));
     }
 
+    @Test
+    public void testLevel0WordBoundaries() {
+        SparseBitSet<SparseBitIntIndex> set = DeepSparseBitSet.createWithFactory(SparseBitIntIndex.FACTORY);
+
+        set.set(SparseBitIntIndex.of(0x3F), SparseBitIntIndex.of(0xC0));
+        set.validate();
+
+        assertEquals(BigInteger.valueOf(0x82), set.cardinality());
+        assertFalse(set.get(SparseBitIntIndex.of(0x3E)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x3F)));
+        assertTrue(set.get(SparseBitIntIndex.of(0xC0)));
+        assertFalse(set.get(SparseBitIntIndex.of(0xC1)));
+
+        assertEquals(SparseBitIntIndex.of(0x3F), set.nextSetBit(SparseBitIntIndex.of(0x00)));
+        assertEquals(SparseBitIntIndex.of(0xC1), set.nextClearBit(SparseBitIntIndex.of(0x40)));
+
+        set.flip(SparseBitIntIndex.of(0x40), SparseBitIntIndex.of(0x7F));
+        set.validate();
+
+        assertEquals(BigInteger.valueOf(0x42), set.cardinality());
+        assertEquals(SparseBitIntIndex.of(0x80), set.nextSetBit(SparseBitIntIndex.of(0x40)));
+        assertEquals(SparseBitIntIndex.of(0x40), set.nextClearBit(SparseBitIntIndex.of(0x3F)));
+
+        set.clear(SparseBitIntIndex.of(0x00), SparseBitIntIndex.of(0xFF));
+        set.validate();
+
+        assertTrue(set.isEmpty());
+        assertNull(set.nextSetBit(SparseBitIntIndex.of(0x00)));
+    }
+
+    @Test
+    public void testAdaptiveNodes() {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        List<Integer> segments = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            segments.add(i);
+        }
+        Collections.shuffle(segments, new Random(5));
+
+        // the node grows through every kind
+        for (int i = 0; i < segments.size(); i++) {
+            assertTrue(set.set(SparseBitIntIndex.of(segments.get(i) << 8 | 0x11)));
+            set.validate();
+
+            assertEquals(BigInteger.valueOf(i + 1), set.cardinality());
+        }
+
+        for (int segment = 0; segment < 256; segment++) {
+            assertTrue(set.get(SparseBitIntIndex.of(segment << 8 | 0x11)));
+            assertFalse(set.get(SparseBitIntIndex.of(segment << 8 | 0x12)));
+        }
+
+        // FULL levels don't take slots in the node
+        set.set(SparseBitIntIndex.of(0x1000), SparseBitIntIndex.of(0x10FF));
+        set.validate();
+
+        assertEquals(SparseBitIntIndex.of(0x1000), set.nextSetBit(SparseBitIntIndex.of(0x0F12)));
+        assertEquals(SparseBitIntIndex.of(0x1100), set.nextClearBit(SparseBitIntIndex.of(0x1000)));
+
+        DeepSparseBitSet<SparseBitIntIndex> copy = set.copy();
+
+        // and shrinks back
+        Collections.shuffle(segments, new Random(7));
+        for (int segment : segments) {
+            set.clear(SparseBitIntIndex.of(segment << 8), SparseBitIntIndex.of(segment << 8 | 0xFF));
+            set.validate();
+        }
+
+        assertTrue(set.isEmpty());
+        assertEquals(BigInteger.valueOf(255 + 256), copy.cardinality());
+        copy.validate();
+    }
+
+    @Test
+    public void testPathCompression() throws Exception {
+        DeepSparseBitSet<SparseBitLong2Index> set = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+
+        SparseBitLong2Index index1 = new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000000001L);
+        SparseBitLong2Index index2 = new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000010001L);
+        SparseBitLong2Index index3 = new SparseBitLong2Index(0x20010DB900000000L, 0x0000000000000001L);
+
+        // the chains are split where the indexes diverge
+        assertTrue(set.set(index1));
+        assertTrue(set.set(index2));
+        assertTrue(set.set(index3));
+        assertFalse(set.set(index2));
+        set.validate();
+
+        assertTrue(set.get(index1));
+        assertTrue(set.get(index2));
+        assertTrue(set.get(index3));
+        assertFalse(set.get(new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000000002L)));
+        assertFalse(set.get(new SparseBitLong2Index(0x20010DB800000001L, 0x0000000000000001L)));
+        assertEquals(BigInteger.valueOf(3), set.cardinality());
+
+        assertEquals(index1, set.nextSetBit(new SparseBitLong2Index(0L, 0L)));
+        assertEquals(index2, set.nextSetBit(new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000000002L)));
+        assertEquals(index3, set.nextSetBit(new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000010002L)));
+        assertNull(set.nextSetBit(new SparseBitLong2Index(0x20010DB900000000L, 0x0000000000000002L)));
+        assertEquals(new SparseBitLong2Index(0x20010DB800000000L, 0x0000000000000002L),
+                set.nextClearBit(index1));
+
+        // the same layout is written as without the compression
+        DeepSparseBitSet<SparseBitLong2Index> copy = deserialize(serialize(set));
+        copy.validate();
+        assertEquals(set.cardinality(), copy.cardinality());
+        assertTrue(copy.get(index2));
+
+        assertTrue(set.clear(index1));
+        assertFalse(set.clear(new SparseBitLong2Index(0x20010DB800000001L, 0x0000000000000001L)));
+        set.clear(new SparseBitLong2Index(0L, 0L), new SparseBitLong2Index(0x20010DB8FFFFFFFFL, -1L));
+        set.validate();
+
+        assertFalse(set.get(index2));
+        assertTrue(set.get(index3));
+        assertEquals(BigInteger.ONE, set.cardinality());
+
+        set.clear(index3);
+        assertTrue(set.isEmpty());
+    }
+
     @Test
     public void testPrematureSquashing() {
         SparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS, 240);
@@ -436,6 +577,7 @@ public class DeepSparseBitSetTest {
 
         // there should be squashing on this level
         assertTrue(set.get(SparseBitIntIndex.of(0x112233FF)));
+        assertEquals(BigInteger.valueOf(256), set.cardinality());
 
         // but no squashing on neighbour levels
         assertFalse(set.get(SparseBitIntIndex.of(0x112232FF)));
@@ -468,6 +610,76 @@ public class DeepSparseBitSetTest {
         assertTrue(set.get(SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_FFFFL)));
     }
 
+    @Test
+    public void testDeepRangeEdges() {
+        SparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        // the edges differ from the segment bounds only on the lowest level
+        set.set(SparseBitIntIndex.of(0x11000005), SparseBitIntIndex.of(0x11FFFFFA));
+        set.validate();
+
+        checkRange(set, 0x11000000, 0x11000004, false);
+        checkRange(set, 0x11000005, 0x11000105, true);
+        checkRange(set, 0x11FFFF00, 0x11FFFFFA, true);
+        checkRange(set, 0x11FFFFFB, 0x11FFFFFF, false);
+
+        set.clear(SparseBitIntIndex.of(0x11000006), SparseBitIntIndex.of(0x11FFFFF9));
+        set.validate();
+
+        checkRange(set, 0x11000005, 0x11000005, true);
+        checkRange(set, 0x11000006, 0x11000106, false);
+        checkRange(set, 0x11FFFF00, 0x11FFFFF9, false);
+        checkRange(set, 0x11FFFFFA, 0x11FFFFFA, true);
+
+        set.flip(SparseBitIntIndex.of(0x11000001), SparseBitIntIndex.of(0x11FFFFFE));
+        set.validate();
+
+        checkRange(set, 0x11000001, 0x11000004, true);
+        checkRange(set, 0x11000005, 0x11000005, false);
+        checkRange(set, 0x11000006, 0x11000106, true);
+        checkRange(set, 0x11FFFFFA, 0x11FFFFFA, false);
+        checkRange(set, 0x11FFFFFB, 0x11FFFFFE, true);
+        checkRange(set, 0x11FFFFFF, 0x11FFFFFF, false);
+    }
+
+    @Test
+    public void testRangeEdgesAreNotCovered() {
+        // an underlying level is covered only when the range reaches both of its bounds on all lower levels
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        set.set(SparseBitIntIndex.of(0x11000005), SparseBitIntIndex.of(0x11FFFFFF));
+        set.validate();
+
+        assertFalse(set.get(SparseBitIntIndex.of(0x11000000)));
+        assertFalse(set.get(SparseBitIntIndex.of(0x11000004)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x11000005)));
+        assertEquals(BigInteger.valueOf(0x1000000 - 5), set.cardinality());
+
+        set.clear(SparseBitIntIndex.of(0x11000000), SparseBitIntIndex.of(0x11FFFFFA));
+        set.validate();
+
+        assertFalse(set.get(SparseBitIntIndex.of(0x11FFFFFA)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x11FFFFFB)));
+        assertEquals(BigInteger.valueOf(5), set.cardinality());
+
+        set.flip(SparseBitIntIndex.of(0x11000001), SparseBitIntIndex.of(0x11FFFFFF));
+        set.validate();
+
+        assertFalse(set.get(SparseBitIntIndex.of(0x11000000)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x11000001)));
+        assertFalse(set.get(SparseBitIntIndex.of(0x11FFFFFB)));
+        assertEquals(BigInteger.valueOf(0x1000000 - 1 - 5), set.cardinality());
+
+        // a lossy set still collapses the edge level, as it has more than maximumOccupancy bits set
+        DeepSparseBitSet<SparseBitIntIndex> lossy = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS, 2);
+
+        lossy.set(SparseBitIntIndex.of(0x11000005), SparseBitIntIndex.of(0x11FFFFFF));
+        lossy.validate();
+
+        assertTrue(lossy.get(SparseBitIntIndex.of(0x11000000)));
+        assertEquals(BigInteger.valueOf(0x1000000), lossy.cardinality());
+    }
+
     @Test
     public void testClone() {
         SparseBitSet<SparseBitIntIndex> set = DeepSparseBitSet.createWithLevels(SparseBitIntIndex.LEVELS);
@@ -496,6 +708,999 @@ public class DeepSparseBitSetTest {
         assertFalse(clone.get(SparseBitIntIndex.of(0x9002_0000)));
     }
 
+    @Test
+    public void testGenericBatch() {
+        Random random = new Random(23);
+
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        DeepSparseBitSet<SparseBitLong2Index> wide = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+
+        SparseBitIntIndex[] indexes = new SparseBitIntIndex[200];
+        SparseBitLong2Index[] wideIndexes = new SparseBitLong2Index[200];
+
+        for (int i = 0; i < indexes.length; i++) {
+            int value = random.nextInt(0x1000);
+            indexes[i] = SparseBitIntIndex.of(value);
+            wideIndexes[i] = new SparseBitLong2Index(value, -value);
+        }
+
+        // indexes of 16 levels are processed one by one
+        set.setAll(Arrays.copyOf(indexes, 100));
+        wide.setAll(Arrays.copyOf(wideIndexes, 100));
+        set.validate();
+        wide.validate();
+
+        boolean[] result = new boolean[indexes.length];
+        boolean[] wideResult = new boolean[indexes.length];
+
+        set.getAll(indexes, result);
+        wide.getAll(wideIndexes, wideResult);
+
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals(set.get(indexes[i]), result[i]);
+            assertEquals(wide.get(wideIndexes[i]), wideResult[i]);
+            assertEquals(result[i], wideResult[i]);
+        }
+
+        try {
+            set.getAll(indexes, new boolean[1]);
+            fail("Result is too short");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStats() {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        // a FULL level and a final level of 100 bits
+        set.set(SparseBitIntIndex.of(0x0A00_0000), SparseBitIntIndex.of(0x0A00_00FF));
+        for (int i = 0; i < 100; i++) {
+            set.set(SparseBitIntIndex.of(0x0A00_0100 + i * 2));
+        }
+
+        SparseBitLevelStats stats = set.stats();
+
+        assertEquals(SparseBitIntIndex.LEVELS, stats.getLevels());
+        assertEquals(1, stats.getNodeCount(0));
+        assertEquals(1, stats.getLeafCount(100));
+        assertEquals(1, stats.getFullCount(1));
+        assertEquals(1, stats.getRealCount(1));
+        assertEquals(0, stats.getOpaqueCount());
+
+        assertEquals(1, stats.getNodeCount(2));
+        assertEquals(1, stats.getNodeCount(3));
+        assertEquals(0, stats.getCompressedCount(1));
+
+        // a single bit under another top segment is kept by a level with the compressed level above it
+        set.set(SparseBitIntIndex.of(0x0102_0304));
+
+        stats = set.stats();
+        assertEquals(2, stats.getNodeCount(1));
+        assertEquals(1, stats.getNodeCount(2));
+        assertEquals(1, stats.getCompressedCount(1));
+
+        SparseBitLevelStats quick = set.stats(false);
+
+        assertFalse(quick.isDetailed());
+        assertEquals(0, quick.getLeafCount(100));
+        assertEquals(0, quick.getLeafCount(1));
+        assertEquals(stats.getNodeCount(0), quick.getNodeCount(0));
+        assertEquals(stats.getBytes(), quick.getBytes());
+
+        for (int maximumOccupancy : new int[] {2, 256}) {
+            Random random = new Random(maximumOccupancy);
+
+            DeepSparseBitSet<SparseBitIntIndex> randomSet = new DeepSparseBitSet<>(3, maximumOccupancy);
+            for (int i = 0; i < 3000; i++) {
+                int from = random.nextInt(0x1000000);
+                int to = Math.min(0xFFFFFF, from + random.nextInt(300));
+
+                randomSet.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            }
+
+            checkStats(randomSet.stats(), randomSet.cardinality());
+            checkStats(randomSet.stats(false), null);
+        }
+    }
+
+    private static void checkStats(SparseBitLevelStats stats, BigInteger cardinality) {
+        long nodes = 0;
+        long reals = 0;
+
+        for (int level = 0; level < stats.getLevels(); level++) {
+            nodes += stats.getNodeCount(level);
+            reals += stats.getRealCount(level);
+
+            if (level > 0) {
+                assertEquals(stats.getNodeCount(level) * 256,
+                        stats.getRealCount(level) + stats.getFullCount(level) + stats.getNullCount(level));
+            }
+        }
+
+        // every REAL level but the top one is referred by its parent
+        assertEquals(nodes - 1, reals);
+
+        if (cardinality != null) {
+            long leafBits = 0;
+            for (int bits = 0; bits <= 256; bits++) {
+                leafBits += bits * stats.getLeafCount(bits);
+            }
+
+            long fullBits = 0;
+            for (int level = 1; level < stats.getLevels(); level++) {
+                fullBits += stats.getFullCount(level) << (8 * level);
+            }
+
+            assertEquals(cardinality, BigInteger.valueOf(leafBits + fullBits));
+        }
+    }
+
+    @Test
+    public void testSnapshots() {
+        Random random = new Random(17);
+
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(3);
+        BitSet expected = new BitSet();
+
+        List<SparseBitSet<SparseBitIntIndex>> snapshots = new ArrayList<>();
+        List<BitSet> snapshotBits = new ArrayList<>();
+
+        DeepSparseBitSet<SparseBitIntIndex> copy = null;
+        BitSet copyBits = null;
+
+        for (int i = 0; i < 5000; i++) {
+            int from = random.nextInt(0x40000);
+            int to = Math.min(0x3FFFF, from + random.nextInt(1 << random.nextInt(12)));
+
+            switch (random.nextInt(4)) {
+                case 0: {
+                    set.flip(SparseBitIntIndex.of(from));
+                    expected.flip(from);
+                    break;
+                }
+                case 1: {
+                    set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+                    expected.set(from, to + 1);
+                    break;
+                }
+                case 2: {
+                    set.clear(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+                    expected.clear(from, to + 1);
+                    break;
+                }
+                default: {
+                    set.flip(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+                    expected.flip(from, to + 1);
+                    break;
+                }
+            }
+
+            // the copy and the set modify the same shared levels independently
+            if (copy != null) {
+                copy.flip(SparseBitIntIndex.of(to));
+                copyBits.flip(to);
+            }
+
+            if (i % 1000 == 0) {
+                snapshots.add(set.snapshot());
+                snapshotBits.add((BitSet) expected.clone());
+
+                copy = set.copy();
+                copyBits = (BitSet) expected.clone();
+            }
+        }
+
+        set.validate();
+        copy.validate();
+
+        checkBits(set, expected, 0x40000);
+        checkBits(copy, copyBits, 0x40000);
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            checkBits(snapshots.get(i), snapshotBits.get(i), 0x40000);
+        }
+
+        try {
+            snapshots.get(0).set(SparseBitIntIndex.of(0));
+            fail("Snapshot is read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNextBit() {
+        SparseBitSet<SparseBitIntIndex> set = DeepSparseBitSet.createWithFactory(SparseBitIntIndex.FACTORY);
+
+        // empty set
+        assertNull(set.nextSetBit(SparseBitIntIndex.of(0x00000000)));
+        assertEquals(SparseBitIntIndex.of(0x11223344), set.nextClearBit(SparseBitIntIndex.of(0x11223344)));
+
+        set.set(SparseBitIntIndex.of(0x11223344));
+        set.set(SparseBitIntIndex.of(0x7001_0000), SparseBitIntIndex.of(0x9001_FFFF));
+        set.validate();
+
+        // search the set bits
+        assertEquals(SparseBitIntIndex.of(0x11223344), set.nextSetBit(SparseBitIntIndex.of(0x00000000)));
+        assertEquals(SparseBitIntIndex.of(0x11223344), set.nextSetBit(SparseBitIntIndex.of(0x11223344)));
+        assertEquals(SparseBitIntIndex.of(0x7001_0000), set.nextSetBit(SparseBitIntIndex.of(0x11223345)));
+        assertEquals(SparseBitIntIndex.of(0x8000_0000), set.nextSetBit(SparseBitIntIndex.of(0x8000_0000)));
+        assertNull(set.nextSetBit(SparseBitIntIndex.of(0x9002_0000)));
+
+        // search the clear bits
+        assertEquals(SparseBitIntIndex.of(0x11223345), set.nextClearBit(SparseBitIntIndex.of(0x11223344)));
+        assertEquals(SparseBitIntIndex.of(0x9002_0000), set.nextClearBit(SparseBitIntIndex.of(0x7001_0000)));
+
+        // search in the full set
+        set.setAll();
+
+        assertNull(set.nextClearBit(SparseBitIntIndex.of(0x00000000)));
+        assertEquals(SparseBitIntIndex.of(0x12345678), set.nextSetBit(SparseBitIntIndex.of(0x12345678)));
+    }
+
+    @Test
+    public void testRangeCursor() {
+        SparseBitSet<SparseBitIntIndex> set = DeepSparseBitSet.createWithFactory(SparseBitIntIndex.FACTORY);
+
+        // empty set
+        assertFalse(set.rangeCursor().next());
+
+        set.set(SparseBitIntIndex.of(0x00000000));
+        set.set(SparseBitIntIndex.of(0x11223344));
+        set.set(SparseBitIntIndex.of(0x11223345));
+        set.set(SparseBitIntIndex.of(0x7001_0000), SparseBitIntIndex.of(0x9001_FFFF));
+        set.set(SparseBitIntIndex.of(0x9002_0000), SparseBitIntIndex.of(0x9002_0010));
+        set.set(SparseBitIntIndex.of(0xFFFF_FF00), SparseBitIntIndex.of(0xFFFF_FFFF));
+        set.validate();
+
+        SparseBitRangeCursor<SparseBitIntIndex> cursor = set.rangeCursor();
+
+        assertTrue(cursor.next());
+        assertEquals(SparseBitIntIndex.of(0x00000000), cursor.from());
+        assertEquals(SparseBitIntIndex.of(0x00000000), cursor.to());
+
+        assertTrue(cursor.next());
+        assertEquals(SparseBitIntIndex.of(0x11223344), cursor.from());
+        assertEquals(SparseBitIntIndex.of(0x11223345), cursor.to());
+
+        // adjacent ranges are merged
+        assertTrue(cursor.next());
+        assertEquals(SparseBitIntIndex.of(0x7001_0000), cursor.from());
+        assertEquals(SparseBitIntIndex.of(0x9002_0010), cursor.to());
+
+        // the last range ends on the last bit
+        assertTrue(cursor.next());
+        assertEquals(SparseBitIntIndex.of(0xFFFF_FF00), cursor.from());
+        assertEquals(SparseBitIntIndex.of(0xFFFF_FFFF), cursor.to());
+
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+
+        // callback gets the same ranges
+        List<String> ranges = new ArrayList<>();
+        set.forEachRange((from, to) -> ranges.add(from + "-" + to));
+
+        assertEquals(4, ranges.size());
+        assertEquals("70010000-90020010", ranges.get(2));
+
+        // the inverted set has the gaps as ranges
+        set.flipAll();
+
+        SparseBitRangeCursor<SparseBitIntIndex> inverted = set.rangeCursor();
+
+        assertTrue(inverted.next());
+        assertEquals(SparseBitIntIndex.of(0x00000001), inverted.from());
+        assertEquals(SparseBitIntIndex.of(0x11223343), inverted.to());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIterationWithoutFactory() {
+        SparseBitSet<SparseBitIntIndex> set = DeepSparseBitSet.createWithLevels(SparseBitIntIndex.LEVELS);
+
+        set.nextSetBit(SparseBitIntIndex.of(0x00000000));
+    }
+
+    @Test
+    public void testPositionIterationWithoutFactory() {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt();
+            int to = from + random.nextInt(1 << random.nextInt(20));
+
+            if (Integer.compareUnsigned(from, to) <= 0) {
+                set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+                expected.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            }
+        }
+
+        List<String> ranges = new ArrayList<>();
+        expected.forEachRange((from, to) -> ranges.add(from + "-" + to));
+
+        List<String> positions = new ArrayList<>();
+        set.forEachPositionRange((from, to) ->
+                positions.add(SparseBitIntIndex.FACTORY.create(new SparseBitArrayIndex(from.clone())) + "-"
+                        + SparseBitIntIndex.FACTORY.create(new SparseBitArrayIndex(to.clone()))));
+
+        assertEquals(ranges, positions);
+
+        int[] position = {0x00, 0x00, 0x00, 0x00};
+        assertTrue(set.nextSetBit(position));
+
+        SparseBitIntIndex first = expected.nextSetBit(SparseBitIntIndex.of(0));
+        assertEquals(first, SparseBitIntIndex.FACTORY.create(new SparseBitArrayIndex(position)));
+
+        assertTrue(set.nextClearBit(position));
+        assertEquals(expected.nextClearBit(first), SparseBitIntIndex.FACTORY.create(new SparseBitArrayIndex(position)));
+
+        try {
+            set.nextSetBit(new int[3]);
+            fail("Position is too short");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            set.nextSetBit(new int[] {0, 0, 256, 0});
+            fail("Segment is invalid");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAlgebra() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20; i++) {
+            BitSet expected1 = new BitSet();
+            BitSet expected2 = new BitSet();
+
+            DeepSparseBitSet<SparseBitIntIndex> set1 = createRandom(random, expected1);
+            DeepSparseBitSet<SparseBitIntIndex> set2 = createRandom(random, expected2);
+
+            BitSet or = (BitSet) expected1.clone();
+            or.or(expected2);
+            checkBits(DeepSparseBitSet.or(set1, set2), or);
+
+            BitSet and = (BitSet) expected1.clone();
+            and.and(expected2);
+            checkBits(DeepSparseBitSet.and(set1, set2), and);
+
+            BitSet andNot = (BitSet) expected1.clone();
+            andNot.andNot(expected2);
+            checkBits(DeepSparseBitSet.andNot(set1, set2), andNot);
+
+            BitSet xor = (BitSet) expected1.clone();
+            xor.xor(expected2);
+            checkBits(DeepSparseBitSet.xor(set1, set2), xor);
+
+            // the operands are not changed by copying operations
+            checkBits(set1, expected1);
+            checkBits(set2, expected2);
+
+            // in-place operation
+            set1.xor(set2);
+            checkBits(set1, xor);
+        }
+    }
+
+    @Test
+    public void testAlgebraShortCircuit() {
+        DeepSparseBitSet<SparseBitLongIndex> set1 = new DeepSparseBitSet<>(SparseBitLongIndex.LEVELS);
+        DeepSparseBitSet<SparseBitLongIndex> set2 = new DeepSparseBitSet<>(SparseBitLongIndex.LEVELS);
+
+        set1.set(SparseBitLongIndex.of(0x1122334455667788L));
+        set2.set(SparseBitLongIndex.of(0x0000_0000_0000_0000L), SparseBitLongIndex.of(0x7FFF_FFFF_FFFF_FFFFL));
+
+        // union with a huge range takes the FULL levels as they are
+        set1.or(set2);
+        set1.validate();
+
+        assertTrue(set1.get(SparseBitLongIndex.of(0x0000_0000_0000_0000L)));
+        assertTrue(set1.get(SparseBitLongIndex.of(0x7FFF_FFFF_FFFF_FFFFL)));
+        assertFalse(set1.get(SparseBitLongIndex.of(0x8000_0000_0000_0000L)));
+
+        // difference with itself gives an empty set
+        set1.andNot(set2);
+        set1.validate();
+
+        assertTrue(set1.isEmpty());
+
+        // symmetric difference with the inverted set gives a full set
+        DeepSparseBitSet<SparseBitLongIndex> inverted = set2.copy();
+        inverted.flipAll();
+
+        set2.xor(inverted);
+        set2.validate();
+
+        assertTrue(set2.isFull());
+    }
+
+    @Test
+    public void testParallelAlgebra() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            Random random = new Random(7);
+
+            for (int maximumOccupancy : new int[] {256, 16}) {
+                for (int span : new int[] {0xFFFF_FFFF, 0x00FF_FFFF}) {
+                    DeepSparseBitSet<SparseBitIntIndex> set1 = createSpread(random, maximumOccupancy, span);
+                    DeepSparseBitSet<SparseBitIntIndex> set2 = createSpread(random, maximumOccupancy, span);
+
+                    set1.validate(pool);
+                    set2.validate(pool);
+
+                    DeepSparseBitSet<SparseBitIntIndex> expected = set1.copy();
+                    DeepSparseBitSet<SparseBitIntIndex> actual = set1.copy();
+
+                    expected.or(set2);
+                    actual.or(set2, pool);
+                    checkSame(expected, actual, pool);
+
+                    expected.xor(set1);
+                    actual.xor(set1, pool);
+                    checkSame(expected, actual, pool);
+
+                    expected.andNot(set2);
+                    actual.andNot(set2, pool);
+                    checkSame(expected, actual, pool);
+
+                    expected = set1.copy();
+                    actual = set1.copy();
+
+                    expected.and(set2);
+                    actual.and(set2, pool);
+                    checkSame(expected, actual, pool);
+
+                    // the operands are not changed
+                    set1.validate(pool);
+                    set2.validate(pool);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static DeepSparseBitSet<SparseBitIntIndex> createSpread(Random random, int maximumOccupancy, int span) {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+
+        for (int i = 0; i < 2000; i++) {
+            int from = random.nextInt() & span;
+            int length = random.nextInt(4) == 0 ? random.nextInt(0x10000) : random.nextInt(4);
+
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of((int) Math.min(span, (long) from + length)));
+        }
+
+        return set;
+    }
+
+    private static void checkSame(DeepSparseBitSet<?> expected, DeepSparseBitSet<?> actual, ForkJoinPool pool)
+            throws IOException {
+        actual.validate(pool);
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertTrue(Arrays.equals(serialize(expected), serialize(actual)));
+    }
+
+    @Test
+    public void testPrefixes() throws Exception {
+        Random random = new Random(23);
+
+        for (int i = 0; i < 200; i++) {
+            int address = random.nextInt();
+            int length = random.nextInt(33);
+
+            long mask = (length == 0) ? 0 : (0xFFFF_FFFFL << (32 - length)) & 0xFFFF_FFFFL;
+            int from = (int) (address & mask);
+            int to = (int) (address | ~mask);
+
+            DeepSparseBitSet<SparseBitIntIndex> expected = createSpread(new Random(i), 256, 0x7FFF_FFFF);
+            DeepSparseBitSet<SparseBitIntIndex> actual = expected.copy();
+
+            expected.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            actual.setPrefix(SparseBitIntIndex.of(address), length);
+
+            actual.validate();
+            assertTrue(Arrays.equals(serialize(expected), serialize(actual)));
+
+            assertTrue(actual.containsPrefix(SparseBitIntIndex.of(address), length));
+
+            expected.clear(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            actual.clearPrefix(SparseBitIntIndex.of(address), length);
+
+            actual.validate();
+            assertTrue(Arrays.equals(serialize(expected), serialize(actual)));
+
+            assertFalse(actual.containsPrefix(SparseBitIntIndex.of(address), length));
+        }
+    }
+
+    @Test
+    public void testContainsPrefix() {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        set.setPrefix(SparseBitIntIndex.of(0x0A00_0000), 8);
+        set.setPrefix(SparseBitIntIndex.of(0x0B00_0000), 21);
+
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0A12_3456), 8));
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0A12_3456), 16));
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0A12_3456), 32));
+        assertFalse(set.containsPrefix(SparseBitIntIndex.of(0x0A12_3456), 7));
+        assertFalse(set.containsPrefix(SparseBitIntIndex.of(0x0A12_3456), 0));
+
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0B00_07FF), 21));
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0B00_0400), 22));
+        assertFalse(set.containsPrefix(SparseBitIntIndex.of(0x0B00_0000), 20));
+        assertFalse(set.containsPrefix(SparseBitIntIndex.of(0x0B00_0800), 32));
+
+        // a clear bit right after the prefix doesn't matter, a clear bit at its end does
+        set.setPrefix(SparseBitIntIndex.of(0x0C00_0000), 24);
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0C00_0000), 24));
+        set.clear(SparseBitIntIndex.of(0x0C00_00FF));
+        assertFalse(set.containsPrefix(SparseBitIntIndex.of(0x0C00_0000), 24));
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0x0C00_0000), 25));
+
+        // the whole space
+        set.setPrefix(SparseBitIntIndex.of(0x1234_5678), 0);
+        assertTrue(set.isFull());
+        assertTrue(set.containsPrefix(SparseBitIntIndex.of(0), 0));
+
+        set.clearPrefix(SparseBitIntIndex.of(0xFFFF_FFFF), 0);
+        assertTrue(set.isEmpty());
+
+        // an IPv6 network which is not aligned to a segment
+        DeepSparseBitSet<SparseBitLong2Index> wide = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+        wide.setPrefix(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 0), 45);
+        wide.validate();
+
+        assertEquals(BigInteger.ONE.shiftLeft(128 - 45), wide.cardinality());
+        assertTrue(wide.containsPrefix(new SparseBitLong2Index(0x2001_0DB8_0007_FFFFL, -1L), 45));
+        assertFalse(wide.get(new SparseBitLong2Index(0x2001_0DB8_0008_0000L, 0)));
+
+        try {
+            set.setPrefix(SparseBitIntIndex.of(0), 33);
+            fail("Prefix is too long");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            set.containsPrefix(SparseBitIntIndex.of(0), -1);
+            fail("Prefix length is negative");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEnclosingRange() {
+        Random random = new Random(24);
+
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        BitSet bits = new BitSet();
+
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(0x100000);
+            int to = Math.min(0xFFFFF, from + random.nextInt(1 << random.nextInt(17)));
+
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            bits.set(from, to + 1);
+        }
+
+        set.setPrefix(SparseBitIntIndex.of(0), 16);
+        bits.set(0, 0x10000);
+
+        for (int i = 0; i < 20000; i++) {
+            int index = random.nextInt(0x100000);
+
+            List<SparseBitIntIndex> range = enclosingRange(set, SparseBitIntIndex.of(index));
+
+            if (!bits.get(index)) {
+                assertTrue(range.isEmpty());
+                assertEquals(-1, set.findCoveringPrefix(SparseBitIntIndex.of(index), 32));
+                continue;
+            }
+
+            long from = bits.previousClearBit(index) + 1;
+            long to = bits.nextClearBit(index) - 1;
+
+            assertEquals(Arrays.asList(SparseBitIntIndex.of((int) from), SparseBitIntIndex.of((int) to)), range);
+
+            int length = 0;
+            while (length < 32) {
+                long size = 1L << (32 - length);
+                long start = index & -size;
+
+                if (start >= from && start + size - 1 <= to) {
+                    break;
+                }
+
+                length++;
+            }
+
+            assertEquals(length, set.findCoveringPrefix(SparseBitIntIndex.of(index), 32));
+            assertEquals(length <= 24 ? length : -1, set.findCoveringPrefix(SparseBitIntIndex.of(index), 24));
+            assertTrue(set.containsPrefix(SparseBitIntIndex.of(index), length));
+        }
+
+        assertEquals(16, set.findCoveringPrefix(SparseBitIntIndex.of(0x1234), 32));
+
+        // ranges which reach the ends of the whole space
+        DeepSparseBitSet<SparseBitLongIndex> longs = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        longs.set(SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_0000L), SparseBitLongIndex.of(-1L));
+        longs.set(SparseBitLongIndex.of(0), SparseBitLongIndex.of(0x1_0000_0004L));
+
+        assertEquals(Arrays.asList(SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_0000L), SparseBitLongIndex.of(-1L)),
+                enclosingRange(longs, SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_1234L)));
+        assertEquals(Arrays.asList(SparseBitLongIndex.of(0), SparseBitLongIndex.of(0x1_0000_0004L)),
+                enclosingRange(longs, SparseBitLongIndex.of(0x1_0000_0002L)));
+        assertEquals(48, longs.findCoveringPrefix(SparseBitLongIndex.of(-1L), 64));
+        assertEquals(62, longs.findCoveringPrefix(SparseBitLongIndex.of(0x1_0000_0002L), 64));
+        assertEquals(32, longs.findCoveringPrefix(SparseBitLongIndex.of(0x5555), 64));
+
+        longs.setAll();
+        assertEquals(Arrays.asList(SparseBitLongIndex.of(0), SparseBitLongIndex.of(-1L)),
+                enclosingRange(longs, SparseBitLongIndex.of(0x5555)));
+        assertEquals(0, longs.findCoveringPrefix(SparseBitLongIndex.of(0x5555), 64));
+
+        longs.clearAll();
+        assertTrue(enclosingRange(longs, SparseBitLongIndex.of(0x5555)).isEmpty());
+    }
+
+    static <I extends SparseBitIndex> List<I> enclosingRange(DeepSparseBitSet<I> set, I index) {
+        List<I> range = new ArrayList<>();
+
+        set.findEnclosingRange(index, (from, to) -> {
+            range.add(from);
+            range.add(to);
+        });
+
+        return range;
+    }
+
+    @Test
+    public void testRangeQueries() {
+        Random random = new Random(25);
+
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        BitSet bits = new BitSet();
+
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(0x100000);
+            int to = Math.min(0xFFFFF, from + random.nextInt(1 << random.nextInt(17)));
+
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            bits.set(from, to + 1);
+
+            int bit = random.nextInt(0x100000);
+            set.flip(SparseBitIntIndex.of(bit));
+            bits.flip(bit);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            int from = random.nextInt(0x100000);
+            int to = from + random.nextInt(1 << random.nextInt(21));
+
+            SparseBitIntIndex fromIndex = SparseBitIntIndex.of(from);
+            SparseBitIntIndex toIndex = SparseBitIntIndex.of(to);
+
+            int count = bits.get(from, to + 1).cardinality();
+
+            assertEquals(BigInteger.valueOf(count), set.countInRange(fromIndex, toIndex));
+            assertEquals(count > 0, set.intersectsRange(fromIndex, toIndex));
+            assertEquals(count == to - from + 1, set.coversRange(fromIndex, toIndex));
+        }
+
+        assertEquals(set.cardinality(), set.countInRange(SparseBitIntIndex.of(0), SparseBitIntIndex.of(-1)));
+
+        // FULL levels and compressed chains at the ends of the whole space
+        DeepSparseBitSet<SparseBitLong2Index> wide = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+        wide.setPrefix(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 0), 45);
+        wide.set(new SparseBitLong2Index(-1L, -3L));
+
+        SparseBitLong2Index first = new SparseBitLong2Index(0, 0);
+        SparseBitLong2Index last = new SparseBitLong2Index(-1L, -1L);
+
+        assertEquals(wide.cardinality(), wide.countInRange(first, last));
+        assertEquals(BigInteger.ONE, wide.countInRange(new SparseBitLong2Index(-1L, -4L), last));
+        assertEquals(BigInteger.ONE.shiftLeft(64 + 18),
+                wide.countInRange(new SparseBitLong2Index(0x2001_0DB8_0004_0000L, 0), last)
+                        .subtract(BigInteger.ONE));
+        assertEquals(BigInteger.valueOf(2), wide.countInRange(
+                new SparseBitLong2Index(0x2001_0DB8_0007_FFFFL, -2L), new SparseBitLong2Index(0x2001_0DB8_0008_0000L, 5)));
+
+        assertTrue(wide.coversRange(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 0),
+                new SparseBitLong2Index(0x2001_0DB8_0007_FFFFL, -1L)));
+        assertFalse(wide.coversRange(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 0),
+                new SparseBitLong2Index(0x2001_0DB8_0008_0000L, 0)));
+        assertTrue(wide.intersectsRange(new SparseBitLong2Index(0x2001_0DB8_0007_FFFFL, -1L), last));
+        assertFalse(wide.intersectsRange(new SparseBitLong2Index(0x2001_0DB8_0008_0000L, 0),
+                new SparseBitLong2Index(-1L, -4L)));
+        assertFalse(wide.intersectsRange(first, new SparseBitLong2Index(0x2001_0DB7_FFFF_FFFFL, -1L)));
+
+        try {
+            set.countInRange(SparseBitIntIndex.of(5), SparseBitIntIndex.of(4));
+            fail("Range is reversed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRangeQueriesAroundChains() {
+        // the ranges start or end outside of a compressed chain and the edge subtree is FULL
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        set.set(SparseBitIntIndex.of(0x12345678));
+        set.set(SparseBitIntIndex.of(0x12340000), SparseBitIntIndex.of(0x123400FF));
+
+        assertEquals(BigInteger.valueOf(17), set.countInRange(SparseBitIntIndex.of(0), SparseBitIntIndex.of(0x12340010)));
+        assertEquals(BigInteger.valueOf(240),
+                set.countInRange(SparseBitIntIndex.of(0x12340010), SparseBitIntIndex.of(0x12345677)));
+        assertEquals(BigInteger.valueOf(257), set.countInRange(SparseBitIntIndex.of(0), SparseBitIntIndex.of(-1)));
+
+        set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        set.set(SparseBitIntIndex.of(0xFFFFE3B3));
+        set.set(SparseBitIntIndex.of(0xFFFF0000), SparseBitIntIndex.of(0xFFFF00FF));
+
+        assertEquals(BigInteger.valueOf(256), set.countInRange(SparseBitIntIndex.of(0), SparseBitIntIndex.of(0xFFFF00FF)));
+        assertEquals(BigInteger.valueOf(129),
+                set.countInRange(SparseBitIntIndex.of(0xFFFF0080), SparseBitIntIndex.of(-1)));
+
+        // random ranges across the chains are checked against an intersection with the range
+        Random random = new Random(25);
+
+        for (int n = 0; n < 50; n++) {
+            set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+            for (int i = 0; i < 3; i++) {
+                int from = random.nextInt();
+                int to = from + random.nextInt(1 << random.nextInt(17));
+
+                if (Integer.compareUnsigned(from, to) <= 0) {
+                    set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+                }
+
+                set.set(SparseBitIntIndex.of(random.nextInt()));
+            }
+
+            for (int i = 0; i < 200; i++) {
+                int from = random.nextInt();
+                int to = random.nextInt();
+
+                if (Integer.compareUnsigned(from, to) > 0) {
+                    int swap = from;
+                    from = to;
+                    to = swap;
+                }
+
+                DeepSparseBitSet<SparseBitIntIndex> range = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+                range.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+
+                BigInteger expected = DeepSparseBitSet.and(set, range).cardinality();
+
+                assertEquals(expected, set.countInRange(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to)));
+                assertEquals(expected.signum() > 0,
+                        set.intersectsRange(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to)));
+            }
+        }
+    }
+
+    @Test
+    public void testCardinality() {
+        DeepSparseBitSet<SparseBitLongIndex> set = new DeepSparseBitSet<>(SparseBitLongIndex.LEVELS);
+        assertEquals(BigInteger.ZERO, set.cardinality());
+
+        set.set(SparseBitLongIndex.of(0x0000000000000005L));
+        set.set(SparseBitLongIndex.of(0x7000000000000000L));
+        assertEquals(BigInteger.valueOf(2), set.cardinality());
+
+        // the range contains one of the bits
+        set.set(SparseBitLongIndex.of(0x0000000000000000L), SparseBitLongIndex.of(0x00000000FFFFFFFFL));
+        assertEquals(BigInteger.valueOf(0x100000001L), set.cardinality());
+
+        set.clear(SparseBitLongIndex.of(0x0000000000001000L));
+        set.flip(SparseBitLongIndex.of(0x0000000100000000L));
+        assertEquals(BigInteger.valueOf(0x100000001L), set.cardinality());
+
+        set.flip(SparseBitLongIndex.of(0x0000000080000000L), SparseBitLongIndex.of(0x00000001000000FFL));
+        assertEquals(BigInteger.valueOf(0x80000000L + 0xFFL), set.cardinality());
+
+        set.setAll();
+        assertEquals(BigInteger.ONE.shiftLeft(64), set.cardinality());
+
+        set.clear(SparseBitLongIndex.of(0x1234567812345678L));
+        assertEquals(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE), set.cardinality());
+
+        set.flipAll();
+        assertEquals(BigInteger.ONE, set.cardinality());
+
+        set.validate();
+    }
+
+    @Test
+    public void testCardinalityLimit() {
+        DeepSparseBitSet<SparseBitLong2Index> set = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+        set.setAll();
+        assertEquals(BigInteger.ONE.shiftLeft(128), set.cardinality());
+
+        set.clear(new SparseBitLong2Index(0x1234567812345678L, 0x1234567812345678L));
+        assertEquals(BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE), set.cardinality());
+
+        set.validate();
+
+        try {
+            new DeepSparseBitSet<SparseBitIntIndex>(17).cardinality();
+            fail("Cardinality is not supported for such a deep set");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDeepValidate() {
+        // the counters of levels above 16 wrap around 128 bits
+        byte[] from = new byte[20];
+        byte[] to = new byte[20];
+        Arrays.fill(to, (byte) 0xFF);
+        to[19] = 0;
+        to[18] = 0;
+        to[17] = 1;
+
+        DeepSparseBitSet<SparseBitBytesIndex> set = new DeepSparseBitSet<>(SparseBitBytesIndex.factory(20));
+        set.set(SparseBitBytesIndex.of(from), SparseBitBytesIndex.of(to));
+        set.validate();
+
+        set.clear(SparseBitBytesIndex.of(to));
+        set.validate();
+
+        Random random = new Random(4);
+
+        for (int i = 0; i < 20; i++) {
+            random.nextBytes(from);
+            random.nextBytes(to);
+
+            if (SparseBitBytesIndex.of(from).compareTo(SparseBitBytesIndex.of(to)) > 0) {
+                set.flip(SparseBitBytesIndex.of(to), SparseBitBytesIndex.of(from));
+            } else {
+                set.flip(SparseBitBytesIndex.of(from), SparseBitBytesIndex.of(to));
+            }
+
+            set.validate();
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Random random = new Random(7);
+
+        for (int iteration = 0; iteration < 10; iteration++) {
+            BitSet expected = new BitSet();
+
+            DeepSparseBitSet<SparseBitIntIndex> set = createRandom(random, expected);
+
+            checkBits(deserialize(serialize(set)), expected);
+        }
+    }
+
+    @Test
+    public void testSerializationWithFactory() throws Exception {
+        DeepSparseBitSet<SparseBitLongIndex> set = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY, 200);
+        set.set(SparseBitLongIndex.of(0x1122334455667788L));
+        set.set(SparseBitLongIndex.of(0x7000000000000000L), SparseBitLongIndex.of(0x7000000100000000L));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        set.writeTo(Channels.newChannel(output));
+
+        DeepSparseBitSet<SparseBitLongIndex> copy = DeepSparseBitSet.readFrom(
+                Channels.newChannel(new ByteArrayInputStream(output.toByteArray())), SparseBitLongIndex.FACTORY);
+        copy.validate();
+
+        assertEquals(set.cardinality(), copy.cardinality());
+        assertEquals(SparseBitLongIndex.of(0x1122334455667788L), copy.nextSetBit(SparseBitLongIndex.of(0)));
+        assertEquals(SparseBitLongIndex.of(0x7000000100000001L),
+                copy.nextClearBit(SparseBitLongIndex.of(0x7000000000000000L)));
+
+        // maximum occupancy is kept
+        for (int i = 0; i < 200; i++) {
+            copy.set(SparseBitLongIndex.of(0x0000000000000100L + i));
+        }
+        assertTrue(copy.get(SparseBitLongIndex.of(0x00000000000001FFL)));
+
+        // levels of the factory must match
+        try {
+            DeepSparseBitSet.readFrom(new ByteArrayInputStream(output.toByteArray()), SparseBitIntIndex.FACTORY);
+            fail("Factory doesn't match the set");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSerializationOfCorruptedData() throws Exception {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        set.set(SparseBitIntIndex.of(0x11223344));
+
+        byte[] bytes = serialize(set);
+
+        byte[] magic = bytes.clone();
+        magic[0] = 0;
+        checkCorrupted(magic);
+
+        // the type code of the first segment of the root level is 3
+        byte[] type = bytes.clone();
+        type[16] = 0x03;
+        checkCorrupted(type);
+
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        checkCorrupted(truncated);
+    }
+
+    private static byte[] serialize(DeepSparseBitSet<?> set) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        set.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private static <I extends SparseBitIndex> DeepSparseBitSet<I> deserialize(byte[] bytes) throws IOException {
+        return DeepSparseBitSet.readFrom(new ByteArrayInputStream(bytes));
+    }
+
+    private static void checkCorrupted(byte[] bytes) {
+        try {
+            deserialize(bytes);
+            fail("Data is corrupted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static DeepSparseBitSet<SparseBitIntIndex> createRandom(Random random, BitSet expected) {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(2);
+
+        for (int i = 0; i < 10; i++) {
+            int from = random.nextInt(0x10000);
+            int to = Math.min(0xFFFF, from + random.nextInt(0x1000));
+
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            expected.set(from, to + 1);
+
+            int index = random.nextInt(0x10000);
+
+            set.flip(SparseBitIntIndex.of(index));
+            expected.flip(index);
+        }
+
+        set.validate();
+
+        return set;
+    }
+
+    private static void checkBits(DeepSparseBitSet<SparseBitIntIndex> set, BitSet expected) {
+        set.validate();
+
+        assertEquals(BigInteger.valueOf(expected.cardinality()), set.cardinality());
+
+        for (int i = 0; i < 0x10000; i++) {
+            assertEquals(String.format("Mismatch on %04X", i), expected.get(i), set.get(SparseBitIntIndex.of(i)));
+        }
+    }
+
+    private static void checkBits(SparseBitSet<SparseBitIntIndex> set, BitSet expected, int size) {
+        assertEquals(BigInteger.valueOf(expected.cardinality()), set.cardinality());
+
+        for (int i = 0; i < size; i++) {
+            assertEquals(String.format("Mismatch on %08X", i), expected.get(i), set.get(SparseBitIntIndex.of(i)));
+        }
+    }
+
     private static void checkRange(SparseBitSet<SparseBitIntIndex> set,
                                    int fromIndexInclusive, int toIndexInclusive, boolean expected)
     {
@@ -3,11 +3,13 @@ package org.sparsebitset;
 import org.junit.Before;
 import org.junit.Test;
 import org.sparsebitset.index.SparseBitInetAddressIndex;
+import org.sparsebitset.index.SparseBitLong2Index;
 
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -63,6 +65,35 @@ public class IPv6Test {
         assertTrue(set.get(IPv6(0x0000000001000000L, 0x00000000211E729CL)));
     }
 
+    @Test
+    public void testRangeCursor() {
+        SparseBitSet<SparseBitLong2Index> set = DeepSparseBitSet.createWithFactory(SparseBitLong2Index.FACTORY);
+
+        // huge ranges consist of FULL levels which are reported as a whole
+        set.set(new SparseBitLong2Index(0x0386330000000000L, 0x0000000000665320L),
+                new SparseBitLong2Index(0x0629872300000000L, 0x0089727327777777L));
+        set.set(new SparseBitLong2Index(0x8000000000000000L, 0x0000000000000000L),
+                new SparseBitLong2Index(0xFFFFFFFFFFFFFFFFL, 0xFFFFFFFFFFFFFFFFL));
+
+        set.flip(new SparseBitLong2Index(0xFE80CD0000000000L, 0x00000000211E729CL));
+
+        SparseBitRangeCursor<SparseBitLong2Index> cursor = set.rangeCursor();
+
+        assertTrue(cursor.next());
+        assertEquals(new SparseBitLong2Index(0x0386330000000000L, 0x0000000000665320L), cursor.from());
+        assertEquals(new SparseBitLong2Index(0x0629872300000000L, 0x0089727327777777L), cursor.to());
+
+        assertTrue(cursor.next());
+        assertEquals(new SparseBitLong2Index(0x8000000000000000L, 0x0000000000000000L), cursor.from());
+        assertEquals(new SparseBitLong2Index(0xFE80CD0000000000L, 0x00000000211E729BL), cursor.to());
+
+        assertTrue(cursor.next());
+        assertEquals(new SparseBitLong2Index(0xFE80CD0000000000L, 0x00000000211E729DL), cursor.from());
+        assertEquals(new SparseBitLong2Index(0xFFFFFFFFFFFFFFFFL, 0xFFFFFFFFFFFFFFFFL), cursor.to());
+
+        assertFalse(cursor.next());
+    }
+
     private static SparseBitInetAddressIndex IPv6(long l1, long l2) {
         byte[] bytes = {
                 (byte) (l1 >> 56),
@@ -0,0 +1,140 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntSparseBitSetTest {
+
+    @Test
+    public void testPrimitive() {
+        IntSparseBitSet set = new IntSparseBitSet();
+
+        // set a bit
+        assertTrue(set.set(0x11223344));
+        assertFalse(set.set(0x11223344));
+        set.validate();
+
+        // check the bit with both APIs
+        assertTrue(set.get(0x11223344));
+        assertTrue(set.get(SparseBitIntIndex.of(0x11223344)));
+
+        // check neighbour bits
+        assertFalse(set.get(0x11223343));
+        assertFalse(set.get(0x11223345));
+
+        // clear the bit
+        assertTrue(set.clear(0x11223344));
+        assertFalse(set.clear(0x11223344));
+        set.validate();
+
+        assertFalse(set.get(0x11223344));
+        assertTrue(set.isEmpty());
+
+        // flip the bit
+        set.flip(0x11223344);
+        set.validate();
+
+        assertTrue(set.get(0x11223344));
+    }
+
+    @Test
+    public void testUnsigned() {
+        IntSparseBitSet set = new IntSparseBitSet();
+
+        assertTrue(set.set(0xFFFFFFFF));
+        assertTrue(set.set(0x80000000));
+        set.validate();
+
+        assertTrue(set.get(SparseBitIntIndex.of(0xFFFFFFFF)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x80000000)));
+        assertFalse(set.get(0x7FFFFFFF));
+    }
+
+    @Test
+    public void testSharedLevels() {
+        IntSparseBitSet set = new IntSparseBitSet();
+
+        // set the range with generic API
+        set.set(SparseBitIntIndex.of(0x11223300), SparseBitIntIndex.of(0x112233FF));
+        set.validate();
+
+        // level is squashed - check and unfold it with primitive API
+        assertTrue(set.get(0x11223344));
+        assertTrue(set.clear(0x11223344));
+        set.validate();
+
+        assertFalse(set.get(SparseBitIntIndex.of(0x11223344)));
+        assertTrue(set.get(SparseBitIntIndex.of(0x11223345)));
+
+        // a copy is detached from the original set
+        IntSparseBitSet copy = set.copy();
+        copy.validate();
+
+        set.clearAll();
+
+        assertFalse(set.get(0x11223345));
+        assertTrue(copy.get(0x11223345));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        for (int maximumOccupancy : new int[] {256, 2}) {
+            Random random = new Random(maximumOccupancy);
+
+            IntSparseBitSet batch = new IntSparseBitSet(maximumOccupancy);
+            IntSparseBitSet single = new IntSparseBitSet(maximumOccupancy);
+
+            // some of the keys fall into a full range
+            batch.set(SparseBitIntIndex.of(0x8000_0000), SparseBitIntIndex.of(0x8000_FFFF));
+            single.set(SparseBitIntIndex.of(0x8000_0000), SparseBitIntIndex.of(0x8000_FFFF));
+
+            for (int round = 0; round < 50; round++) {
+                int[] keys = randomKeys(random, 1 + random.nextInt(500));
+
+                batch.setAll(keys);
+                for (int key : keys) {
+                    single.set(key);
+                }
+
+                batch.validate();
+                assertArrayEquals(serialize(single), serialize(batch));
+
+                int[] queries = randomKeys(random, random.nextInt(300));
+                long[] bitmap = new long[(queries.length + 63) / 64];
+                batch.getAll(queries, bitmap);
+
+                for (int i = 0; i < queries.length; i++) {
+                    assertEquals(single.get(queries[i]), (bitmap[i >>> 6] & (1L << i)) != 0);
+                }
+            }
+        }
+    }
+
+    private static int[] randomKeys(Random random, int count) {
+        int[] keys = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            // a few high parts, so the keys share the upper levels, and duplicates
+            keys[i] = random.nextInt(4) == 0 && i > 0
+                    ? keys[random.nextInt(i)]
+                    : (0x8000_0000 + random.nextInt(4) * 0x8000) ^ random.nextInt(0x1_0000);
+        }
+
+        return keys;
+    }
+
+    private static byte[] serialize(IntSparseBitSet set) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        set.writeTo(output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,111 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LongSparseBitSetTest {
+
+    @Test
+    public void testPrimitive() {
+        LongSparseBitSet set = new LongSparseBitSet();
+
+        // set a bit
+        assertTrue(set.set(0x1122334455667788L));
+        assertFalse(set.set(0x1122334455667788L));
+        set.validate();
+
+        // check the bit with both APIs
+        assertTrue(set.get(0x1122334455667788L));
+        assertTrue(set.get(SparseBitLongIndex.of(0x1122334455667788L)));
+
+        // check neighbour bits
+        assertFalse(set.get(0x1122334455667787L));
+        assertFalse(set.get(0x1122334455667789L));
+
+        // clear the bit
+        assertTrue(set.clear(0x1122334455667788L));
+        assertFalse(set.clear(0x1122334455667788L));
+        set.validate();
+
+        assertFalse(set.get(0x1122334455667788L));
+        assertTrue(set.isEmpty());
+
+        // flip the bit
+        set.flip(0xFFFFFFFFFFFFFFFFL);
+        set.validate();
+
+        assertTrue(set.get(SparseBitLongIndex.of(0xFFFFFFFFFFFFFFFFL)));
+    }
+
+    @Test
+    public void testSharedLevels() {
+        LongSparseBitSet set = new LongSparseBitSet();
+
+        // set all bits with generic API
+        set.set(SparseBitLongIndex.of(0x0000_0000_0000_0000L), SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_FFFFL));
+        set.validate();
+
+        // clear one bit with primitive API - all levels on the path are unfolded
+        assertTrue(set.clear(0x8000_0000_0000_0000L));
+        set.validate();
+
+        assertFalse(set.get(SparseBitLongIndex.of(0x8000_0000_0000_0000L)));
+        assertTrue(set.get(0x8000_0000_0000_0001L));
+        assertTrue(set.get(0x7FFF_FFFF_FFFF_FFFFL));
+
+        // set it back - all levels on the path are squashed
+        assertTrue(set.set(0x8000_0000_0000_0000L));
+        set.validate();
+
+        assertTrue(set.isFull());
+    }
+
+    @Test
+    public void testBatch() {
+        Random random = new Random(5);
+
+        LongSparseBitSet set = new LongSparseBitSet();
+
+        // keys on both sides of the sign bit are sorted as unsigned ones
+        long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (random.nextBoolean() ? 0x8000_0000_0000_0000L : 0L) | random.nextInt(0x10000);
+        }
+
+        long[] original = keys.clone();
+
+        set.setAll(keys);
+        set.validate();
+        assertArrayEquals(original, keys);
+
+        long[] queries = new long[keys.length * 2];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = i % 2 == 0 ? keys[i / 2] : keys[i / 2] ^ 0x4000_0000_0000_0000L;
+        }
+
+        long[] bitmap = new long[queries.length / 64 + 1];
+        Arrays.fill(bitmap, -1L);
+        set.getAll(queries, bitmap);
+
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(i % 2 == 0, (bitmap[i >>> 6] & (1L << i)) != 0);
+            assertEquals(set.get(queries[i]), (bitmap[i >>> 6] & (1L << i)) != 0);
+        }
+
+        try {
+            set.getAll(queries, new long[1]);
+            fail("Bitmap is too short");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.sparsebitset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedSparseBitSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMappedFile() throws Exception {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            int from = random.nextInt();
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(from + random.nextInt(0x1000)));
+            set.flip(SparseBitIntIndex.of(random.nextInt()));
+        }
+        set.set(SparseBitIntIndex.of(0x11000000), SparseBitIntIndex.of(0x11FFFFFF));
+
+        Path path = folder.newFile().toPath();
+        MappedSparseBitSet.write(set, path);
+
+        MappedSparseBitSet<SparseBitIntIndex> mapped = MappedSparseBitSet.open(path, SparseBitIntIndex.FACTORY);
+        mapped.validate();
+
+        assertEquals(set.cardinality(), mapped.cardinality());
+        assertEquals(set.isEmpty(), mapped.isEmpty());
+        assertEquals(set.isFull(), mapped.isFull());
+
+        for (int i = 0; i < 100000; i++) {
+            SparseBitIntIndex index = SparseBitIntIndex.of(random.nextInt());
+            assertEquals(set.get(index), mapped.get(index));
+        }
+
+        // iteration gives the same ranges
+        SparseBitRangeCursor<SparseBitIntIndex> expected = set.rangeCursor();
+        SparseBitRangeCursor<SparseBitIntIndex> actual = mapped.rangeCursor();
+        while (expected.next()) {
+            assertTrue(actual.next());
+            assertEquals(expected.from(), actual.from());
+            assertEquals(expected.to(), actual.to());
+        }
+        assertFalse(actual.next());
+
+        // a range is found from any of its bits
+        expected = set.rangeCursor();
+        for (int i = 0; i < 1000 && expected.next(); i++) {
+            SparseBitIntIndex from = expected.from();
+            SparseBitIntIndex to = expected.to();
+
+            assertTrue(mapped.findEnclosingRange(to, (first, last) -> {
+                assertEquals(from, first);
+                assertEquals(to, last);
+            }));
+
+            assertEquals(set.findCoveringPrefix(from, 32), mapped.findCoveringPrefix(from, 32));
+        }
+
+        // the copy is loaded into heap
+        DeepSparseBitSet<SparseBitIntIndex> copy = mapped.copy();
+        copy.validate();
+        assertEquals(set.cardinality(), copy.cardinality());
+        copy.clearAll();
+        assertEquals(set.cardinality(), mapped.cardinality());
+    }
+
+    @Test
+    public void testPrimitiveKeys() throws Exception {
+        DeepSparseBitSet<SparseBitLongIndex> set = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        set.set(SparseBitLongIndex.of(0x1122334455667788L));
+        set.set(SparseBitLongIndex.of(0x7000000000000000L), SparseBitLongIndex.of(0x70000000FFFFFFFEL));
+
+        MappedSparseBitSet<SparseBitLongIndex> mapped = MappedSparseBitSet.wrap(toBuffer(set),
+                SparseBitLongIndex.FACTORY);
+        mapped.validate();
+
+        assertTrue(mapped.get(SparseBitLongIndex.of(0x1122334455667788L)));
+        assertFalse(mapped.get(SparseBitLongIndex.of(0x1122334455667789L)));
+        assertTrue(mapped.get(SparseBitLongIndex.of(0x7000000012345678L)));
+        assertFalse(mapped.get(SparseBitLongIndex.of(0x70000000FFFFFFFFL)));
+
+        assertEquals(SparseBitLongIndex.of(0x1122334455667788L), mapped.nextSetBit(SparseBitLongIndex.of(0)));
+        assertEquals(SparseBitLongIndex.of(0x70000000FFFFFFFFL),
+                mapped.nextClearBit(SparseBitLongIndex.of(0x7000000000000000L)));
+        assertNull(mapped.nextSetBit(SparseBitLongIndex.of(0x7000000100000000L)));
+
+        assertEquals(BigInteger.valueOf(0x100000000L), mapped.cardinality());
+    }
+
+    @Test
+    public void testHeapAlgebraWithMapped() throws Exception {
+        Random random = new Random(13);
+
+        DeepSparseBitSet<SparseBitIntIndex> heap1 = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        DeepSparseBitSet<SparseBitIntIndex> heap2 = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        for (int i = 0; i < 100; i++) {
+            int from1 = random.nextInt(0x100000);
+            int from2 = random.nextInt(0x100000);
+
+            heap1.set(SparseBitIntIndex.of(from1), SparseBitIntIndex.of(from1 + random.nextInt(0x1000)));
+            heap2.set(SparseBitIntIndex.of(from2), SparseBitIntIndex.of(from2 + random.nextInt(0x1000)));
+        }
+
+        MappedSparseBitSet<SparseBitIntIndex> mapped2 = MappedSparseBitSet.wrap(toBuffer(heap2),
+                SparseBitIntIndex.FACTORY);
+
+        DeepSparseBitSet<SparseBitIntIndex> actual = heap1.copy();
+        actual.or(mapped2);
+        checkSame(DeepSparseBitSet.or(heap1, heap2), actual);
+
+        actual = heap1.copy();
+        actual.and(mapped2);
+        checkSame(DeepSparseBitSet.and(heap1, heap2), actual);
+
+        actual = heap1.copy();
+        actual.andNot(mapped2);
+        checkSame(DeepSparseBitSet.andNot(heap1, heap2), actual);
+
+        actual = heap1.copy();
+        actual.xor(mapped2);
+        checkSame(DeepSparseBitSet.xor(heap1, heap2), actual);
+    }
+
+    private static void checkSame(DeepSparseBitSet<SparseBitIntIndex> expected,
+                                  DeepSparseBitSet<SparseBitIntIndex> actual) {
+        actual.validate();
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+
+        SparseBitRangeCursor<SparseBitIntIndex> cursor = expected.rangeCursor();
+        SparseBitRangeCursor<SparseBitIntIndex> other = actual.rangeCursor();
+        while (cursor.next()) {
+            assertTrue(other.next());
+            assertEquals(cursor.from(), other.from());
+            assertEquals(cursor.to(), other.to());
+        }
+        assertFalse(other.next());
+    }
+
+    @Test
+    public void testSetKinds() throws Exception {
+        DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        Random random = new Random(17);
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(0x1000000);
+            expected.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(from + random.nextInt(0x1000)));
+        }
+        expected.set(SparseBitIntIndex.of(0x11000000), SparseBitIntIndex.of(0x11FFFFFF));
+
+        List<DeepSparseBitSet<SparseBitIntIndex>> sets = Arrays.asList(
+                new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY),
+                new OffHeapSparseBitSet<>(SparseBitIntIndex.FACTORY),
+                new ConcurrentSparseBitSet<>(SparseBitIntIndex.FACTORY),
+                new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY));
+
+        for (DeepSparseBitSet<SparseBitIntIndex> set : sets) {
+            set.or(expected);
+
+            MappedSparseBitSet<SparseBitIntIndex> mapped = MappedSparseBitSet.wrap(toBuffer(set),
+                    SparseBitIntIndex.FACTORY);
+            mapped.validate();
+
+            assertEquals(expected.cardinality(), mapped.cardinality());
+            checkSame(expected, mapped.copy());
+        }
+    }
+
+    @Test
+    public void testFullCardinality() throws Exception {
+        DeepSparseBitSet<SparseBitArrayIndex> set = new DeepSparseBitSet<>(16);
+        set.setAll();
+
+        // 2^128 bits don't fit in the header counters
+        MappedSparseBitSet<SparseBitArrayIndex> mapped = MappedSparseBitSet.wrap(toBuffer(set), null);
+        assertTrue(mapped.isFull());
+        assertEquals(BigInteger.ONE.shiftLeft(128), mapped.cardinality());
+
+        set.clear(new SparseBitArrayIndex(new int[16]));
+
+        mapped = MappedSparseBitSet.wrap(toBuffer(set), null);
+        assertFalse(mapped.isFull());
+        assertEquals(BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE), mapped.cardinality());
+
+        set.clearAll();
+
+        mapped = MappedSparseBitSet.wrap(toBuffer(set), null);
+        assertTrue(mapped.isEmpty());
+        assertEquals(BigInteger.ZERO, mapped.cardinality());
+    }
+
+    @Test
+    public void testImmutable() throws Exception {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        set.set(SparseBitIntIndex.of(1));
+
+        MappedSparseBitSet<SparseBitIntIndex> mapped = MappedSparseBitSet.wrap(toBuffer(set), null);
+
+        try {
+            mapped.set(SparseBitIntIndex.of(2));
+            fail("Set is immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        try {
+            mapped.clearAll();
+            fail("Set is immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertTrue(mapped.get(SparseBitIntIndex.of(1)));
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        set.set(SparseBitIntIndex.of(1));
+
+        ByteBuffer buffer = toBuffer(set);
+        buffer.putInt(0, 0);
+
+        try {
+            MappedSparseBitSet.wrap(buffer, null);
+            fail("Buffer is corrupted");
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            MappedSparseBitSet.wrap(toBuffer(set), SparseBitLongIndex.FACTORY);
+            fail("Factory doesn't match the set");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static ByteBuffer toBuffer(DeepSparseBitSet<?> set) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MappedSparseBitSet.write(set, output);
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+}
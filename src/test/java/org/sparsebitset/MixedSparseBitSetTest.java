@@ -1,7 +1,15 @@
 package org.sparsebitset;
 
 import org.junit.Test;
+import org.sparsebitset.index.SparseBitArrayIndex;
+import org.sparsebitset.index.SparseBitIndex;
 import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLong2Index;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -29,4 +37,235 @@ public class MixedSparseBitSetTest {
         assertFalse(set.get(SparseBitIntIndex.of(0x08000000)));
         assertFalse(set.get(SparseBitIntIndex.of(0x28000000)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCardinality() {
+        SparseBitSet<SparseBitIntIndex> set = new MixedSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        set.set(SparseBitIntIndex.of(0x10000000), SparseBitIntIndex.of(0x1FFFFFFF));
+        set.set(SparseBitIntIndex.of(0x60000000));
+
+        // the individual bit inside the range is not counted twice
+        set.set(SparseBitIntIndex.of(0x10000001));
+
+        assertEquals(BigInteger.valueOf(0x10000001L), set.cardinality());
+    }
+
+    @Test
+    public void testWideIndexes() {
+        SparseBitSet<SparseBitLong2Index> set = new MixedSparseBitSet<>(SparseBitLong2Index.LEVELS);
+
+        set.set(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 0L), new SparseBitLong2Index(0x2001_0DB8_0000_0000L, -1L));
+
+        // the bit is set by the range already
+        assertFalse(set.set(new SparseBitLong2Index(0x2001_0DB8_0000_0000L, 5L)));
+        assertTrue(set.set(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+        assertFalse(set.set(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+
+        assertTrue(set.get(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+        assertFalse(set.get(new SparseBitLong2Index(0x2001_0DB8_0000_0002L, 5L)));
+        assertFalse(set.get(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 6L)));
+
+        // the individual bit inside the range is not counted twice
+        assertEquals(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE), set.cardinality());
+
+        SparseBitSet<SparseBitLong2Index> copy = set.copy();
+
+        assertTrue(set.clear(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+        assertFalse(set.get(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+        assertTrue(copy.get(new SparseBitLong2Index(0x2001_0DB8_0000_0001L, 5L)));
+    }
+
+    @Test
+    public void testManyIndividuals() {
+        SparseBitSet<SparseBitIntIndex> set = new MixedSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        for (int i = 0; i < 100000; i++) {
+            set.set(SparseBitIntIndex.of(i * 7919));
+        }
+
+        for (int i = 0; i < 100000; i += 2) {
+            assertTrue(set.clear(SparseBitIntIndex.of(i * 7919)));
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i % 2 != 0, set.get(SparseBitIntIndex.of(i * 7919)));
+        }
+
+        assertEquals(BigInteger.valueOf(50000), set.cardinality());
+    }
+
+    @Test
+    public void testDeepIndexes() {
+        // indices of more than 16 levels are kept in the ranges
+        SparseBitSet<SparseBitArrayIndex> set = new MixedSparseBitSet<>(20);
+
+        SparseBitArrayIndex index = new SparseBitArrayIndex(new int[20]);
+
+        assertTrue(set.set(index));
+        assertTrue(set.get(index));
+        assertFalse(set.isEmpty());
+
+        assertTrue(set.clear(index));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testSameAsDeep() {
+        for (boolean adaptive : new boolean[] {false, true}) {
+            Random random = new Random(adaptive ? 1 : 2);
+
+            MixedSparseBitSet<SparseBitIntIndex> set = new MixedSparseBitSet<>(SparseBitIntIndex.FACTORY, adaptive);
+            DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+            for (int i = 0; i < 30000; i++) {
+                // clusters of single bits in a few final levels and lone bits elsewhere
+                int index = (random.nextInt(4) == 0) ? random.nextInt(0x10_0000) : 0x1000 + random.nextInt(0x800);
+                int length = random.nextInt(0x300);
+
+                SparseBitIntIndex from = SparseBitIntIndex.of(index);
+                SparseBitIntIndex to = SparseBitIntIndex.of(index + length);
+
+                int operation = random.nextInt(100);
+
+                if (operation < 60) {
+                    assertEquals(expected.set(from), set.set(from));
+                } else if (operation < 80) {
+                    assertEquals(expected.clear(from), set.clear(from));
+                } else if (operation < 90) {
+                    set.flip(from);
+                    expected.flip(from);
+                } else if (operation < 94) {
+                    set.set(from, to);
+                    expected.set(from, to);
+                } else if (operation < 97) {
+                    set.clear(from, to);
+                    expected.clear(from, to);
+                } else if (operation < 99) {
+                    set.flip(from, to);
+                    expected.flip(from, to);
+                } else if (random.nextInt(10) == 0) {
+                    set.flipAll();
+                    expected.flipAll();
+                }
+
+                if (i % 3000 == 0) {
+                    checkSame(expected, set, random);
+                }
+            }
+
+            checkSame(expected, set, random);
+        }
+    }
+
+    @Test
+    public void testSameAsDeepWide() {
+        Random random = new Random(3);
+
+        MixedSparseBitSet<SparseBitLong2Index> set = new MixedSparseBitSet<>(SparseBitLong2Index.FACTORY, true);
+        DeepSparseBitSet<SparseBitLong2Index> expected = new DeepSparseBitSet<>(SparseBitLong2Index.FACTORY);
+
+        for (int i = 0; i < 20000; i++) {
+            // the lower part overflows into the upper one sometimes
+            long high = random.nextInt(3);
+            long low = -0x400L + random.nextInt(0x800);
+
+            SparseBitLong2Index from = new SparseBitLong2Index(high, low);
+            SparseBitLong2Index to = new SparseBitLong2Index(high, low + random.nextInt(0x100));
+
+            int operation = random.nextInt(10);
+
+            if (operation < 6) {
+                assertEquals(expected.set(from), set.set(from));
+            } else if (operation < 8) {
+                assertEquals(expected.clear(from), set.clear(from));
+            } else if (operation < 9 && Long.compareUnsigned(low, low + 0x100) < 0) {
+                set.clear(from, to);
+                expected.clear(from, to);
+            } else {
+                set.flip(from);
+                expected.flip(from);
+            }
+        }
+
+        assertEquals(expected.cardinality(), set.cardinality());
+        assertEquals(ranges(expected), ranges(set));
+
+        for (int i = 0; i < 1000; i++) {
+            SparseBitLong2Index index = new SparseBitLong2Index(random.nextInt(3), -0x400L + random.nextInt(0x800));
+
+            assertEquals(expected.get(index), set.get(index));
+            assertEquals(expected.nextSetBit(index), set.nextSetBit(index));
+            assertEquals(expected.nextClearBit(index), set.nextClearBit(index));
+        }
+    }
+
+    @Test
+    public void testPromotion() {
+        MixedSparseBitSet<SparseBitIntIndex> set = new MixedSparseBitSet<>(SparseBitIntIndex.LEVELS, true);
+
+        // 8 bits on every final level take less memory as levels
+        for (int i = 0; i < 2048; i++) {
+            set.set(SparseBitIntIndex.of((i << 8) | 7));
+            set.set(SparseBitIntIndex.of((i << 8) | 8));
+            set.set(SparseBitIntIndex.of((i << 8) | 9));
+            set.set(SparseBitIntIndex.of((i << 8) | 10));
+        }
+
+        assertTrue(set.getIndividualCount() < 1024);
+        assertEquals(BigInteger.valueOf(8192), set.cardinality());
+
+        // a bit left alone on its final level goes back to the hashtable
+        int before = set.getIndividualCount();
+
+        set.clear(SparseBitIntIndex.of(7), SparseBitIntIndex.of(9));
+
+        assertEquals(before + 1, set.getIndividualCount());
+        assertTrue(set.get(SparseBitIntIndex.of(10)));
+        assertFalse(set.get(SparseBitIntIndex.of(9)));
+        assertEquals(BigInteger.valueOf(8189), set.cardinality());
+
+        // sparse bits stay in the hashtable
+        MixedSparseBitSet<SparseBitIntIndex> sparse = new MixedSparseBitSet<>(SparseBitIntIndex.LEVELS, true);
+
+        for (int i = 0; i < 4096; i++) {
+            sparse.set(SparseBitIntIndex.of(i << 12));
+        }
+
+        assertEquals(4096, sparse.getIndividualCount());
+    }
+
+    private static <I extends SparseBitIndex> void checkSame(SparseBitSet<I> expected, SparseBitSet<I> actual,
+                                                             Random random) {
+        actual.validate();
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(ranges(expected), ranges(actual));
+
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(0x10_0000);
+
+            @SuppressWarnings("unchecked")
+            I index = (I) SparseBitIntIndex.of(value);
+
+            assertEquals(expected.get(index), actual.get(index));
+            assertEquals(expected.nextSetBit(index), actual.nextSetBit(index));
+            assertEquals(expected.nextClearBit(index), actual.nextClearBit(index));
+
+            @SuppressWarnings("unchecked")
+            I to = (I) SparseBitIntIndex.of(value + random.nextInt(1 << random.nextInt(12)));
+
+            assertEquals(expected.intersectsRange(index, to), actual.intersectsRange(index, to));
+            assertEquals(expected.coversRange(index, to), actual.coversRange(index, to));
+            assertEquals(expected.countInRange(index, to), actual.countInRange(index, to));
+        }
+    }
+
+    private static <I extends SparseBitIndex> List<String> ranges(SparseBitSet<I> set) {
+        List<String> ranges = new ArrayList<>();
+        set.forEachRange((from, to) -> ranges.add(from + "-" + to));
+        return ranges;
+    }
+
+}
@@ -0,0 +1,335 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitBytesIndex;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapSparseBitSetTest {
+
+    @Test
+    public void testSameAsHeap() throws Exception {
+        for (int maximumOccupancy : new int[] {256, 200}) {
+            Random random = new Random(maximumOccupancy);
+
+            DeepSparseBitSet<SparseBitIntIndex> expected =
+                    new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+            OffHeapSparseBitSet<SparseBitIntIndex> actual =
+                    new OffHeapSparseBitSet<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+
+            for (int i = 0; i < 5000; i++) {
+                int from = random.nextInt(0x01000000);
+                int to = from + random.nextInt(1 << random.nextInt(20));
+
+                SparseBitIntIndex index = SparseBitIntIndex.of(from);
+
+                switch (random.nextInt(6)) {
+                    case 0:
+                        assertEquals(expected.set(index), actual.set(index));
+                        break;
+                    case 1:
+                        assertEquals(expected.clear(index), actual.clear(index));
+                        break;
+                    case 2:
+                        expected.flip(index);
+                        actual.flip(index);
+                        break;
+                    case 3:
+                        expected.set(index, SparseBitIntIndex.of(to));
+                        actual.set(index, SparseBitIntIndex.of(to));
+                        break;
+                    case 4:
+                        expected.clear(index, SparseBitIntIndex.of(to));
+                        actual.clear(index, SparseBitIntIndex.of(to));
+                        break;
+                    default:
+                        expected.flip(index, SparseBitIntIndex.of(to));
+                        actual.flip(index, SparseBitIntIndex.of(to));
+                        break;
+                }
+            }
+
+            actual.validate();
+            checkSame(expected, actual);
+
+            actual.flipAll();
+            expected.flipAll();
+            checkSame(expected, actual);
+
+            for (int i = 0; i < 1000; i++) {
+                int value = random.nextInt(0x01000000);
+                SparseBitIntIndex index = SparseBitIntIndex.of(value);
+
+                assertEquals(DeepSparseBitSetTest.enclosingRange(expected, index),
+                        DeepSparseBitSetTest.enclosingRange(actual, index));
+
+                // the off-heap level counts by walking the ranges
+                SparseBitIntIndex to = SparseBitIntIndex.of(value + random.nextInt(1 << random.nextInt(24)));
+
+                assertEquals(expected.countInRange(index, to), actual.countInRange(index, to));
+                assertEquals(expected.intersectsRange(index, to), actual.intersectsRange(index, to));
+                assertEquals(expected.coversRange(index, to), actual.coversRange(index, to));
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsHeapWithDeepKeys() throws Exception {
+        for (int maximumOccupancy : new int[] {256, 2}) {
+            Random random = new Random(maximumOccupancy);
+
+            DeepSparseBitSet<SparseBitLongIndex> expected =
+                    new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY, maximumOccupancy);
+            OffHeapSparseBitSet<SparseBitLongIndex> actual =
+                    new OffHeapSparseBitSet<>(SparseBitLongIndex.FACTORY, maximumOccupancy);
+
+            // scattered keys which share prefixes of various lengths
+            long[] bases = new long[16];
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = random.nextLong();
+            }
+
+            for (int i = 0; i < 5000; i++) {
+                long from = bases[random.nextInt(bases.length)] ^ (random.nextLong() >>> random.nextInt(64));
+                long to = from + (random.nextInt(1 << random.nextInt(12)));
+                if (to < from) {
+                    to = from;
+                }
+
+                SparseBitLongIndex index = SparseBitLongIndex.of(from);
+
+                switch (random.nextInt(8)) {
+                    case 0:
+                    case 1:
+                        assertEquals(expected.set(index), actual.set(index));
+                        break;
+                    case 2:
+                        assertEquals(expected.clear(index), actual.clear(index));
+                        break;
+                    case 3:
+                        expected.flip(index);
+                        actual.flip(index);
+                        break;
+                    case 4:
+                        expected.set(index, SparseBitLongIndex.of(to));
+                        actual.set(index, SparseBitLongIndex.of(to));
+                        break;
+                    case 5:
+                        expected.clear(index, SparseBitLongIndex.of(to));
+                        actual.clear(index, SparseBitLongIndex.of(to));
+                        break;
+                    case 6:
+                        expected.flip(index, SparseBitLongIndex.of(to));
+                        actual.flip(index, SparseBitLongIndex.of(to));
+                        break;
+                    default:
+                        assertEquals(actual.nextSetBit(index), expected.nextSetBit(index));
+                        assertEquals(actual.nextClearBit(index), expected.nextClearBit(index));
+                        break;
+                }
+            }
+
+            expected.validate();
+            checkSame(expected, actual);
+
+            actual.flipAll();
+            expected.flipAll();
+            checkSame(expected, actual);
+        }
+    }
+
+    @Test
+    public void testAlgebraWithDeepKeys() throws Exception {
+        Random random = new Random(13);
+
+        DeepSparseBitSet<SparseBitLongIndex> expected = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        OffHeapSparseBitSet<SparseBitLongIndex> actual = new OffHeapSparseBitSet<>(SparseBitLongIndex.FACTORY);
+
+        long[] bases = new long[16];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = random.nextLong();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            long from = bases[random.nextInt(bases.length)] ^ (random.nextLong() >>> random.nextInt(64));
+            long to = Math.max(from, from + random.nextInt(0x100));
+
+            expected.set(SparseBitLongIndex.of(from), SparseBitLongIndex.of(to));
+            actual.set(SparseBitLongIndex.of(from), SparseBitLongIndex.of(to));
+        }
+
+        DeepSparseBitSet<SparseBitLongIndex> other = new DeepSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        for (int i = 0; i < 100; i++) {
+            other.set(SparseBitLongIndex.of(bases[random.nextInt(bases.length)] ^ random.nextInt(0x10000)));
+        }
+
+        OffHeapSparseBitSet<SparseBitLongIndex> otherOffHeap = new OffHeapSparseBitSet<>(SparseBitLongIndex.FACTORY);
+        otherOffHeap.or(other);
+
+        // bulk operations over compressed levels of different shapes
+        checkSame(DeepSparseBitSet.xor(expected, other), DeepSparseBitSet.xor(actual, other));
+        checkSame(DeepSparseBitSet.and(expected, other), DeepSparseBitSet.and(actual, other));
+        checkSame(DeepSparseBitSet.or(other, expected), DeepSparseBitSet.or(actual, other));
+        checkSame(DeepSparseBitSet.andNot(other, expected), DeepSparseBitSet.andNot(otherOffHeap, actual));
+    }
+
+    @Test
+    public void testPrimitiveKeys() {
+        IntSparseBitSet expected = new IntSparseBitSet();
+        OffHeapSparseBitSet<SparseBitIntIndex> actual = new OffHeapSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        assertTrue(actual.set(SparseBitIntIndex.of(0xFFFFFFF0)));
+        assertFalse(actual.set(SparseBitIntIndex.of(0xFFFFFFF0)));
+        expected.set(0xFFFFFFF0);
+
+        assertTrue(actual.get(SparseBitIntIndex.of(0xFFFFFFF0)));
+        assertEquals(SparseBitIntIndex.of(0xFFFFFFF0), actual.nextSetBit(SparseBitIntIndex.of(0)));
+        assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    public void testDeepValidate() {
+        // the counters of levels above 16 wrap around 128 bits
+        byte[] from = new byte[20];
+        byte[] to = new byte[20];
+        Arrays.fill(to, (byte) 0xFF);
+        to[19] = 0;
+        to[18] = 0;
+        to[17] = 1;
+
+        OffHeapSparseBitSet<SparseBitBytesIndex> set = new OffHeapSparseBitSet<>(SparseBitBytesIndex.factory(20));
+        set.set(SparseBitBytesIndex.of(from), SparseBitBytesIndex.of(to));
+        set.validate();
+
+        set.clear(SparseBitBytesIndex.of(to));
+        set.validate();
+
+        Random random = new Random(4);
+
+        for (int i = 0; i < 20; i++) {
+            random.nextBytes(from);
+            random.nextBytes(to);
+
+            if (SparseBitBytesIndex.of(from).compareTo(SparseBitBytesIndex.of(to)) > 0) {
+                set.flip(SparseBitBytesIndex.of(to), SparseBitBytesIndex.of(from));
+            } else {
+                set.flip(SparseBitBytesIndex.of(from), SparseBitBytesIndex.of(to));
+            }
+
+            set.validate();
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        OffHeapSparseBitSet<SparseBitIntIndex> set = new OffHeapSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        set.set(SparseBitIntIndex.of(0x10000000), SparseBitIntIndex.of(0x1FFFFFFF));
+
+        OffHeapSparseBitSet<SparseBitIntIndex> copy = set.copy();
+        copy.clear(SparseBitIntIndex.of(0x12345678));
+        copy.validate();
+
+        assertTrue(set.get(SparseBitIntIndex.of(0x12345678)));
+        assertFalse(copy.get(SparseBitIntIndex.of(0x12345678)));
+        assertEquals(BigInteger.valueOf(0x10000000L), set.cardinality());
+        assertEquals(BigInteger.valueOf(0x0FFFFFFFL), copy.cardinality());
+
+        set.setAll();
+        assertEquals(BigInteger.ONE.shiftLeft(32), set.cardinality());
+
+        set.clearAll();
+        assertTrue(set.isEmpty());
+        set.validate();
+    }
+
+    @Test
+    public void testAlgebra() throws Exception {
+        Random random = new Random(3);
+
+        DeepSparseBitSet<SparseBitIntIndex> heap1 = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        DeepSparseBitSet<SparseBitIntIndex> heap2 = new DeepSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        OffHeapSparseBitSet<SparseBitIntIndex> offHeap1 = new OffHeapSparseBitSet<>(SparseBitIntIndex.LEVELS);
+        OffHeapSparseBitSet<SparseBitIntIndex> offHeap2 = new OffHeapSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        for (int i = 0; i < 100; i++) {
+            int from1 = random.nextInt(0x100000);
+            int from2 = random.nextInt(0x100000);
+
+            heap1.set(SparseBitIntIndex.of(from1), SparseBitIntIndex.of(from1 + random.nextInt(0x1000)));
+            heap2.set(SparseBitIntIndex.of(from2), SparseBitIntIndex.of(from2 + random.nextInt(0x1000)));
+        }
+
+        offHeap1.or(heap1);
+        offHeap2.or(heap2);
+
+        checkSame(DeepSparseBitSet.or(heap1, heap2), DeepSparseBitSet.or(offHeap1, offHeap2));
+        checkSame(DeepSparseBitSet.and(heap1, heap2), DeepSparseBitSet.and(offHeap1, offHeap2));
+        checkSame(DeepSparseBitSet.andNot(heap1, heap2), DeepSparseBitSet.andNot(offHeap1, offHeap2));
+        checkSame(DeepSparseBitSet.xor(heap1, heap2), DeepSparseBitSet.xor(offHeap1, offHeap2));
+
+        // the other set may be the same one
+        offHeap1.xor(offHeap1);
+        assertTrue(offHeap1.isEmpty());
+    }
+
+    @Test
+    public void testHeapAlgebraWithOffHeap() throws Exception {
+        for (int levels : new int[] {1, SparseBitIntIndex.LEVELS}) {
+            Random random = new Random(levels);
+            int bound = (levels == 1) ? 0xF0 : 0x100000;
+
+            DeepSparseBitSet<SparseBitIntIndex> heap1 = new DeepSparseBitSet<>(levels);
+            DeepSparseBitSet<SparseBitIntIndex> heap2 = new DeepSparseBitSet<>(levels);
+
+            for (int i = 0; i < 100; i++) {
+                int from1 = random.nextInt(bound);
+                int from2 = random.nextInt(bound);
+
+                heap1.set(SparseBitIntIndex.of(from1), SparseBitIntIndex.of(from1 + random.nextInt(0x10)));
+                heap2.set(SparseBitIntIndex.of(from2), SparseBitIntIndex.of(from2 + random.nextInt(0x10)));
+            }
+
+            OffHeapSparseBitSet<SparseBitIntIndex> offHeap2 = new OffHeapSparseBitSet<>(levels);
+            offHeap2.or(heap2);
+
+            // the heap set walks the off-heap levels range by range
+            checkSame(DeepSparseBitSet.or(heap1, heap2), DeepSparseBitSet.or(heap1, offHeap2));
+            checkSame(DeepSparseBitSet.and(heap1, heap2), DeepSparseBitSet.and(heap1, offHeap2));
+            checkSame(DeepSparseBitSet.andNot(heap1, heap2), DeepSparseBitSet.andNot(heap1, offHeap2));
+            checkSame(DeepSparseBitSet.xor(heap1, heap2), DeepSparseBitSet.xor(heap1, offHeap2));
+        }
+    }
+
+    private static void checkSame(DeepSparseBitSet<?> expected, DeepSparseBitSet<?> actual) throws IOException {
+        actual.validate();
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+
+        // both sets have the same structure of levels
+        byte[] bytes = serialize(actual);
+        assertArrayEquals(serialize(expected), bytes);
+
+        // a real level which is kept full after unfolding is read back as well
+        assertArrayEquals(bytes, serialize(DeepSparseBitSet.readFrom(new ByteArrayInputStream(bytes))));
+    }
+
+    private static byte[] serialize(DeepSparseBitSet<?> set) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        set.writeTo(output);
+        return output.toByteArray();
+    }
+
+}
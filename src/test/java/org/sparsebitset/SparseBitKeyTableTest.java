@@ -0,0 +1,76 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SparseBitKeyTableTest {
+
+    @Test
+    public void testSameAsHashSet() {
+        for (boolean wide : new boolean[] {false, true}) {
+            Random random = new Random(wide ? 1 : 2);
+
+            SparseBitKeyTable table = new SparseBitKeyTable(wide);
+            Set<String> expected = new HashSet<>();
+
+            for (int i = 0; i < 200000; i++) {
+                // a narrow range of keys makes clusters in the table, so removals shift keys back
+                long high = wide ? random.nextInt(4) : 0;
+                long low = (i < 100000) ? random.nextInt(5000) : random.nextInt(50) - 25;
+                String key = high + "/" + low;
+
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals(expected.add(key), table.add(high, low));
+                        break;
+                    case 1:
+                        assertEquals(expected.remove(key), table.remove(high, low));
+                        break;
+                    default:
+                        assertEquals(expected.contains(key), table.contains(high, low));
+                        break;
+                }
+
+                assertEquals(expected.size(), table.size());
+            }
+
+            Set<String> actual = new HashSet<>();
+            table.forEach((high, low) -> assertTrue(actual.add(high + "/" + low)));
+            assertEquals(expected, actual);
+
+            SparseBitKeyTable copy = table.copy();
+            table.clear();
+
+            assertTrue(table.isEmpty());
+            assertEquals(expected.size(), copy.size());
+        }
+    }
+
+    @Test
+    public void testExtremeKeys() {
+        SparseBitKeyTable table = new SparseBitKeyTable(true);
+
+        // zero is an ordinary key since free slots are marked in the bitmap
+        assertFalse(table.contains(0, 0));
+        assertTrue(table.add(0, 0));
+        assertTrue(table.add(-1L, -1L));
+        assertTrue(table.add(-1L, 0));
+        assertFalse(table.add(0, 0));
+
+        assertTrue(table.contains(0, 0));
+        assertTrue(table.contains(-1L, -1L));
+        assertFalse(table.contains(0, -1L));
+
+        assertTrue(table.remove(0, 0));
+        assertFalse(table.contains(0, 0));
+        assertEquals(2, table.size());
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.index.SparseBitLongIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SparseBitSetBuilderTest {
+
+    @Test
+    public void testSameAsIncremental() throws Exception {
+        for (int maximumOccupancy : new int[] {256, 16, 2}) {
+            Random random = new Random(maximumOccupancy);
+
+            SparseBitSetBuilder<SparseBitIntIndex> builder =
+                    new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+            DeepSparseBitSet<SparseBitIntIndex> expected =
+                    new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+
+            long from = 0;
+
+            while (true) {
+                // mostly single hosts, sometimes dense networks and large blocks
+                from += random.nextInt(1 << random.nextInt(20));
+
+                long length;
+                switch (random.nextInt(8)) {
+                    case 0:
+                        length = 255;
+                        break;
+                    case 1:
+                        length = random.nextInt(1 << random.nextInt(24));
+                        break;
+                    default:
+                        length = random.nextInt(3) == 0 ? random.nextInt(4) : 0;
+                        break;
+                }
+
+                long to = Math.min(0xFFFF_FFFFL, from + length);
+
+                if (from > to) {
+                    break;
+                }
+
+                builder.add(from, to);
+
+                if (from == to) {
+                    expected.set(SparseBitIntIndex.of((int) from));
+                } else {
+                    expected.set(SparseBitIntIndex.of((int) from), SparseBitIntIndex.of((int) to));
+                }
+
+                // overlapping ranges start at the same point sometimes
+                if (random.nextInt(10) != 0) {
+                    from = to + 1;
+                }
+            }
+
+            DeepSparseBitSet<SparseBitIntIndex> actual = builder.build();
+            actual.validate();
+
+            assertEquals(expected.cardinality(), actual.cardinality());
+            assertArrayEquals(serialize(expected), serialize(actual));
+        }
+    }
+
+    @Test
+    public void testWholeBlocks() {
+        SparseBitSetBuilder<SparseBitLongIndex> builder = new SparseBitSetBuilder<>(SparseBitLongIndex.FACTORY);
+
+        builder.add(0x1000, 0x1FFFF);
+        builder.add(0x1_0000_0000L);
+        builder.add(0xFF00_0000_0000_0000L, 0xFFFF_FFFF_FFFF_FFFFL);
+
+        DeepSparseBitSet<SparseBitLongIndex> set = builder.build();
+        set.validate();
+
+        assertEquals(BigInteger.valueOf(0x1F000 + 1).add(BigInteger.ONE.shiftLeft(56)), set.cardinality());
+        assertTrue(set.get(SparseBitLongIndex.of(0xFFFF_FFFF_FFFF_FFFFL)));
+        assertTrue(set.get(SparseBitLongIndex.of(0x1_0000_0000L)));
+        assertFalse(set.get(SparseBitLongIndex.of(0x0FFF)));
+        assertFalse(set.get(SparseBitLongIndex.of(0x2_0000)));
+    }
+
+    @Test
+    public void testFullAndEmpty() {
+        DeepSparseBitSet<SparseBitIntIndex> empty = new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY).build();
+        empty.validate();
+        assertTrue(empty.isEmpty());
+
+        DeepSparseBitSet<SparseBitIntIndex> full = new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY)
+                .add(0, 0x7FFF_FFFF)
+                .add(0x8000_0000L, 0xFFFF_FFFFL)
+                .build();
+
+        full.validate();
+        assertTrue(full.isFull());
+
+        // a single level
+        DeepSparseBitSet<SparseBitIntIndex> single = new SparseBitSetBuilder<SparseBitIntIndex>(1, 2)
+                .add(3)
+                .add(5, 7)
+                .build();
+
+        single.validate();
+        assertEquals(BigInteger.valueOf(4), single.cardinality());
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int maximumOccupancy : new int[] {256, 2}) {
+                Random random = new Random(maximumOccupancy);
+
+                long[] keys = new long[100000];
+                for (int i = 0; i < keys.length; i++) {
+                    // dense networks in a few top segments and single hosts everywhere
+                    keys[i] = (i % 2 == 0)
+                            ? (random.nextInt(4) << 24) | random.nextInt(0x20000)
+                            : random.nextInt() & 0xFFFF_FFFFL;
+                }
+
+                Arrays.sort(keys);
+
+                SparseBitSetBuilder<SparseBitIntIndex> builder =
+                        new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY, maximumOccupancy);
+                for (long key : keys) {
+                    builder.add(key);
+                }
+
+                DeepSparseBitSet<SparseBitIntIndex> expected = builder.build();
+                DeepSparseBitSet<SparseBitIntIndex> actual =
+                        SparseBitSetBuilder.build(SparseBitIntIndex.FACTORY, maximumOccupancy, keys, pool);
+
+                actual.validate(pool);
+
+                assertEquals(expected.cardinality(), actual.cardinality());
+                assertArrayEquals(serialize(expected), serialize(actual));
+            }
+
+            // a single top segment is compressed as it is by a single builder
+            long[] keys = {0x0A000001L, 0x0A000002L, 0x0A0000FFL};
+            DeepSparseBitSet<SparseBitIntIndex> expected = new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY)
+                    .add(keys[0]).add(keys[1]).add(keys[2]).build();
+            assertArrayEquals(serialize(expected),
+                    serialize(SparseBitSetBuilder.build(SparseBitIntIndex.FACTORY, 256, keys, pool)));
+
+            assertTrue(SparseBitSetBuilder.build(SparseBitIntIndex.FACTORY, 256, new long[0], pool).isEmpty());
+
+            try {
+                SparseBitSetBuilder.build(SparseBitIntIndex.FACTORY, 256, new long[] {0x0B000000L, 0x0A000000L}, pool);
+                fail("Keys are not sorted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            try {
+                SparseBitSetBuilder.build(SparseBitIntIndex.FACTORY, 256, new long[] {0x1_0000_0000L}, pool);
+                fail("Key is too large");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidKeys() {
+        SparseBitSetBuilder<SparseBitIntIndex> builder = new SparseBitSetBuilder<>(SparseBitIntIndex.FACTORY);
+
+        builder.add(100, 200);
+        builder.add(150);
+
+        try {
+            builder.add(99);
+            fail("Keys are not sorted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.add(0x1_0000_0000L);
+            fail("Key is too large");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.add(300, 250);
+            fail("Range is reversed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        builder.build();
+
+        try {
+            builder.add(300);
+            fail("Builder is used");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            new SparseBitSetBuilder<>(9, 256);
+            fail("Too many levels");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] serialize(DeepSparseBitSet<?> set) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        set.writeTo(output);
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.sparsebitset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sparsebitset.index.SparseBitIntIndex;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SparseBitSetHolderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRelease() {
+        List<SparseBitSet<SparseBitIntIndex>> released = new ArrayList<>();
+
+        SparseBitSet<SparseBitIntIndex> first = createGeneration(1);
+        SparseBitSet<SparseBitIntIndex> second = createGeneration(2);
+
+        SparseBitSetHolder<SparseBitIntIndex> holder = new SparseBitSetHolder<>(first, released::add);
+
+        SparseBitSetHolder.Lease<SparseBitIntIndex> lease = holder.acquire();
+        assertSame(first, lease.set());
+        assertEquals(0, lease.generation());
+
+        // the replaced generation is still leased
+        assertEquals(1, holder.publish(second));
+        assertEquals(1, holder.generation());
+        assertTrue(released.isEmpty());
+        assertTrue(lease.set().get(SparseBitIntIndex.of(1)));
+
+        lease.close();
+        lease.close();
+        assertEquals(Collections.singletonList(first), released);
+
+        try (SparseBitSetHolder.Lease<SparseBitIntIndex> current = holder.acquire()) {
+            assertSame(second, current.set());
+
+            holder.close();
+            assertEquals(1, released.size());
+        }
+
+        assertEquals(2, released.size());
+        assertSame(second, released.get(1));
+
+        try {
+            holder.acquire();
+            fail("Holder is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testClosedLease() {
+        SparseBitSetHolder<SparseBitIntIndex> holder = new SparseBitSetHolder<>(createGeneration(1));
+
+        SparseBitSetHolder.Lease<SparseBitIntIndex> lease = holder.acquire();
+        lease.close();
+
+        try {
+            lease.set();
+            fail("Lease is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentReload() throws Exception {
+        Set<SparseBitSet<SparseBitIntIndex>> released = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        AtomicBoolean twice = new AtomicBoolean();
+
+        SparseBitSet<SparseBitIntIndex> initial = createGeneration(0);
+
+        SparseBitSetHolder<SparseBitIntIndex> holder = new SparseBitSetHolder<>(initial, set -> {
+            if (!released.add(set)) {
+                twice.set(true);
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int t = 0; t < 6; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        try (SparseBitSetHolder.Lease<SparseBitIntIndex> lease = holder.acquire()) {
+                            // a leased generation is never released
+                            assertFalse(released.contains(lease.set()));
+                            assertTrue(lease.set().get(SparseBitIntIndex.of((int) lease.generation())));
+                            assertFalse(released.contains(lease.set()));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+
+        threads.add(new Thread(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                holder.publish(createGeneration(i));
+            }
+        }));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+
+        holder.close();
+
+        // every generation is released exactly once
+        assertFalse(twice.get());
+        assertEquals(2001, released.size());
+    }
+
+    @Test
+    public void testReleaseMemory() throws Exception {
+        long before = bufferMemory("direct");
+
+        OffHeapSparseBitSet<SparseBitIntIndex> offHeap = new OffHeapSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        for (int i = 0; i < 10000; i++) {
+            offHeap.set(SparseBitIntIndex.of(i * 0x10000));
+        }
+
+        long allocated = bufferMemory("direct");
+        assertTrue(allocated > before);
+
+        Path path = folder.newFile().toPath();
+        MappedSparseBitSet.write(offHeap, path);
+
+        MappedSparseBitSet<SparseBitIntIndex> mapped = MappedSparseBitSet.open(path, SparseBitIntIndex.FACTORY);
+        long mappings = bufferCount("mapped");
+
+        // the default releaser closes both generations once their last leases are returned
+        SparseBitSetHolder<SparseBitIntIndex> holder = new SparseBitSetHolder<>(offHeap);
+        SparseBitSetHolder.Lease<SparseBitIntIndex> lease = holder.acquire();
+
+        holder.publish(mapped);
+        assertTrue(lease.set().get(SparseBitIntIndex.of(0x10000)));
+
+        // writing the file may cache temporary direct buffers, so only the freed amount is checked
+        long held = bufferMemory("direct");
+        lease.close();
+        assertTrue(held - bufferMemory("direct") >= allocated - before);
+
+        try {
+            offHeap.get(SparseBitIntIndex.of(0x10000));
+            fail("Set is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try (SparseBitSetHolder.Lease<SparseBitIntIndex> current = holder.acquire()) {
+            assertTrue(current.set().get(SparseBitIntIndex.of(0x10000)));
+
+            holder.close();
+            assertEquals(mappings, bufferCount("mapped"));
+        }
+
+        assertEquals(mappings - 1, bufferCount("mapped"));
+
+        try {
+            mapped.get(SparseBitIntIndex.of(0x10000));
+            fail("Set is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static long bufferMemory(String pool) {
+        return bufferPool(pool).getMemoryUsed();
+    }
+
+    private static long bufferCount(String pool) {
+        return bufferPool(pool).getCount();
+    }
+
+    private static BufferPoolMXBean bufferPool(String name) {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals(name)) {
+                return pool;
+            }
+        }
+
+        throw new IllegalStateException("Buffer pool is not found: " + name);
+    }
+
+    private static SparseBitSet<SparseBitIntIndex> createGeneration(int generation) {
+        DeepSparseBitSet<SparseBitIntIndex> set = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        set.set(SparseBitIntIndex.of(generation));
+
+        return set.snapshot();
+    }
+
+}
@@ -0,0 +1,178 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+import org.sparsebitset.level.SparseBitLevelEvent;
+import org.sparsebitset.util.SparseBitUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparseBitSetMetricsTest {
+
+    @Test
+    public void testOperations() {
+        SparseBitSetMetrics metrics = new SparseBitSetMetrics();
+
+        ReadWriteLock lock = new InstrumentedReadWriteLock(new ReentrantReadWriteLock(), metrics);
+
+        SparseBitSet<SparseBitIntIndex> delegate = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        SparseBitSet<SparseBitIntIndex> set = new InstrumentedSparseBitSetProxy<>(
+                new ConcurrentSparseBitSetProxy<>(delegate, lock), metrics, 1);
+
+        for (int i = 0; i < 10; i++) {
+            set.set(SparseBitIntIndex.of(i));
+        }
+
+        set.get(SparseBitIntIndex.of(1));
+        set.get(SparseBitIntIndex.of(100));
+        set.set(SparseBitIntIndex.of(100), SparseBitIntIndex.of(200));
+        set.cardinality();
+
+        assertEquals(10, metrics.getCount(SparseBitSetOperation.SET));
+        assertEquals(2, metrics.getCount(SparseBitSetOperation.GET));
+        assertEquals(1, metrics.getCount(SparseBitSetOperation.SET_RANGE));
+        assertEquals(1, metrics.getCount(SparseBitSetOperation.QUERY));
+        assertEquals(0, metrics.getCount(SparseBitSetOperation.FLIP));
+
+        // every operation is measured
+        assertEquals(10, metrics.getSampleCount(SparseBitSetOperation.SET));
+        assertEquals(10, sum(metrics.getLatencyHistogram(SparseBitSetOperation.SET)));
+
+        assertEquals(11, metrics.getLockAcquisitions(true));
+        assertEquals(3, metrics.getLockAcquisitions(false));
+        assertEquals(0, metrics.getLockContentions(true));
+        assertEquals(14, metrics.getLockWaitHistogram(false)[0] + metrics.getLockWaitHistogram(true)[0]);
+    }
+
+    @Test
+    public void testLockWait() throws Exception {
+        SparseBitSetMetrics metrics = new SparseBitSetMetrics();
+
+        ReadWriteLock lock = new InstrumentedReadWriteLock(new ReentrantReadWriteLock(), metrics);
+
+        lock.writeLock().lock();
+
+        Thread reader = new Thread(() -> {
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        });
+
+        reader.start();
+
+        Thread.sleep(50);
+        lock.writeLock().unlock();
+
+        reader.join();
+
+        assertEquals(1, metrics.getLockContentions(false));
+        assertEquals(0, metrics.getLockContentions(true));
+        assertTrue(metrics.getLockWaitTotal(false) >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testQueuedWriter() throws Exception {
+        checkQueuedWriter(new ReentrantReadWriteLock(false));
+        checkQueuedWriter(new ReentrantReadWriteLock(true));
+    }
+
+    private static void checkQueuedWriter(ReentrantReadWriteLock delegate) throws Exception {
+        SparseBitSetMetrics metrics = new SparseBitSetMetrics();
+
+        ReadWriteLock lock = new InstrumentedReadWriteLock(delegate, metrics);
+
+        delegate.readLock().lock();
+
+        Thread writer = new Thread(() -> {
+            lock.writeLock().lock();
+            lock.writeLock().unlock();
+        });
+
+        writer.start();
+
+        while (!delegate.hasQueuedThread(writer)) {
+            Thread.sleep(1);
+        }
+
+        Thread reader = new Thread(() -> {
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        });
+
+        reader.start();
+
+        // the reader must not barge in ahead of the queued writer
+        Thread.sleep(50);
+        assertEquals(1, delegate.getReadLockCount());
+        assertTrue(delegate.hasQueuedThread(reader));
+
+        delegate.readLock().unlock();
+
+        writer.join();
+        reader.join();
+
+        assertEquals(1, metrics.getLockContentions(true));
+        assertEquals(1, metrics.getLockContentions(false));
+    }
+
+    @Test
+    public void testLevelEvents() {
+        SparseBitSetMetrics metrics = new SparseBitSetMetrics();
+
+        DeepSparseBitSet<SparseBitIntIndex> set =
+                new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY, SparseBitUtil.LEVEL_SIZE, metrics);
+
+        for (int i = 0; i < 256; i++) {
+            set.set(SparseBitIntIndex.of(0x0A00_0000 + i));
+        }
+
+        assertTrue(metrics.getEventCount(SparseBitLevelEvent.ALLOCATE) > 0);
+        assertEquals(1, metrics.getEventCount(SparseBitLevelEvent.SQUASH));
+
+        set.clear(SparseBitIntIndex.of(0x0A00_0000));
+        assertEquals(1, metrics.getEventCount(SparseBitLevelEvent.UNFOLD));
+
+        DeepSparseBitSet<SparseBitIntIndex> copy = set.copy();
+        copy.clear(SparseBitIntIndex.of(0x0A00_0001));
+        assertTrue(metrics.getEventCount(SparseBitLevelEvent.COPY) > 0);
+
+        set.clear(SparseBitIntIndex.of(0x0A00_0001), SparseBitIntIndex.of(0x0A00_00FF));
+        assertTrue(metrics.getEventCount(SparseBitLevelEvent.DISMISS) > 0);
+
+        // other sets don't report to the listener
+        long allocations = metrics.getEventCount(SparseBitLevelEvent.ALLOCATE);
+
+        DeepSparseBitSet<SparseBitIntIndex> other = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        other.set(SparseBitIntIndex.of(0x0B00_0000));
+
+        assertEquals(allocations, metrics.getEventCount(SparseBitLevelEvent.ALLOCATE));
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, SparseBitSetMetrics.bucket(0));
+        assertEquals(1, SparseBitSetMetrics.bucket(1));
+        assertEquals(2, SparseBitSetMetrics.bucket(2));
+        assertEquals(2, SparseBitSetMetrics.bucket(3));
+        assertEquals(11, SparseBitSetMetrics.bucket(1024));
+        assertEquals(63, SparseBitSetMetrics.bucket(Long.MAX_VALUE));
+
+        // the clock may go backwards
+        assertEquals(0, SparseBitSetMetrics.bucket(-5));
+    }
+
+    private static long sum(long[] histogram) {
+        long total = 0;
+
+        for (long count : histogram) {
+            total += count;
+        }
+
+        return total;
+    }
+
+}
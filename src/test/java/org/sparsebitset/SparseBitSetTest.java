@@ -0,0 +1,164 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SparseBitSetTest {
+
+    private static final int SIZE = 1 << 16;
+
+    @Test
+    public void testDefaultRangeQueries() {
+        Random random = new Random(25);
+
+        SparseBitSet<SparseBitIntIndex> set = new BitSetSparseBitSet();
+        DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        for (int i = 0; i < 100; i++) {
+            int from = random.nextInt(SIZE);
+            int to = Math.min(SIZE - 1, from + random.nextInt(1 << random.nextInt(12)));
+
+            set.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+            expected.set(SparseBitIntIndex.of(from), SparseBitIntIndex.of(to));
+
+            int bit = random.nextInt(SIZE);
+            set.flip(SparseBitIntIndex.of(bit));
+            expected.flip(SparseBitIntIndex.of(bit));
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            int from = random.nextInt(SIZE);
+            int to = from + random.nextInt(1 << random.nextInt(17));
+
+            SparseBitIntIndex fromIndex = SparseBitIntIndex.of(from);
+            SparseBitIntIndex toIndex = SparseBitIntIndex.of(to);
+
+            assertEquals(expected.countInRange(fromIndex, toIndex), set.countInRange(fromIndex, toIndex));
+            assertEquals(expected.intersectsRange(fromIndex, toIndex), set.intersectsRange(fromIndex, toIndex));
+            assertEquals(expected.coversRange(fromIndex, toIndex), set.coversRange(fromIndex, toIndex));
+        }
+
+        try {
+            set.countInRange(SparseBitIntIndex.of(5), SparseBitIntIndex.of(4));
+            fail("Range is reversed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            set.forEachRange((from, to) -> { });
+            fail("Ranges can't be created by the default methods");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * External implementation which provides only the abstract methods and the search of bits
+     */
+    private static final class BitSetSparseBitSet implements SparseBitSet<SparseBitIntIndex> {
+
+        private final BitSet bits = new BitSet(SIZE);
+
+        @Override
+        public SparseBitSet<SparseBitIntIndex> copy() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return bits.isEmpty();
+        }
+
+        @Override
+        public boolean isFull() {
+            return false;
+        }
+
+        @Override
+        public BigInteger cardinality() {
+            return BigInteger.valueOf(bits.cardinality());
+        }
+
+        @Override
+        public void clearAll() {
+            bits.clear();
+        }
+
+        @Override
+        public void setAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flipAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void validate() {
+        }
+
+        @Override
+        public boolean get(SparseBitIntIndex index) {
+            return bits.get(value(index));
+        }
+
+        @Override
+        public boolean set(SparseBitIntIndex index) {
+            boolean previous = bits.get(value(index));
+            bits.set(value(index));
+            return !previous;
+        }
+
+        @Override
+        public boolean clear(SparseBitIntIndex index) {
+            boolean previous = bits.get(value(index));
+            bits.clear(value(index));
+            return previous;
+        }
+
+        @Override
+        public void flip(SparseBitIntIndex index) {
+            bits.flip(value(index));
+        }
+
+        @Override
+        public void set(SparseBitIntIndex fromIndexInclusive, SparseBitIntIndex toIndexInclusive) {
+            bits.set(value(fromIndexInclusive), value(toIndexInclusive) + 1);
+        }
+
+        @Override
+        public void clear(SparseBitIntIndex fromIndexInclusive, SparseBitIntIndex toIndexInclusive) {
+            bits.clear(value(fromIndexInclusive), value(toIndexInclusive) + 1);
+        }
+
+        @Override
+        public void flip(SparseBitIntIndex fromIndexInclusive, SparseBitIntIndex toIndexInclusive) {
+            bits.flip(value(fromIndexInclusive), value(toIndexInclusive) + 1);
+        }
+
+        @Override
+        public SparseBitIntIndex nextSetBit(SparseBitIntIndex fromIndexInclusive) {
+            int found = bits.nextSetBit(value(fromIndexInclusive));
+            return (found >= 0) ? SparseBitIntIndex.of(found) : null;
+        }
+
+        @Override
+        public SparseBitIntIndex nextClearBit(SparseBitIntIndex fromIndexInclusive) {
+            return SparseBitIntIndex.of(bits.nextClearBit(value(fromIndexInclusive)));
+        }
+
+        private static int value(SparseBitIntIndex index) {
+            return index.segment(3) << 24 | index.segment(2) << 16 | index.segment(1) << 8 | index.segment(0);
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package org.sparsebitset;
+
+import org.junit.Test;
+import org.sparsebitset.index.SparseBitIntIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StripedSparseBitSetTest {
+
+    @Test
+    public void testSameAsHeap() throws Exception {
+        Random random = new Random(11);
+
+        // stripes are never squashed, so only a precise set matches the heap one
+        DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        StripedSparseBitSet<SparseBitIntIndex> actual = new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        for (int i = 0; i < 5000; i++) {
+            int from = random.nextInt();
+            int to = maxUnsigned(from, from + random.nextInt(1 << random.nextInt(28)));
+
+            SparseBitIntIndex index = SparseBitIntIndex.of(from);
+
+            switch (random.nextInt(7)) {
+                case 0:
+                    assertEquals(expected.set(index), actual.set(index));
+                    break;
+                case 1:
+                    assertEquals(expected.clear(index), actual.clear(index));
+                    break;
+                case 2:
+                    expected.flip(index);
+                    actual.flip(index);
+                    break;
+                case 3:
+                    expected.set(index, SparseBitIntIndex.of(to));
+                    actual.set(index, SparseBitIntIndex.of(to));
+                    break;
+                case 4:
+                    expected.clear(index, SparseBitIntIndex.of(to));
+                    actual.clear(index, SparseBitIntIndex.of(to));
+                    break;
+                case 5:
+                    expected.flip(index, SparseBitIntIndex.of(to));
+                    actual.flip(index, SparseBitIntIndex.of(to));
+                    break;
+                default:
+                    assertEquals(expected.nextSetBit(index), actual.nextSetBit(index));
+                    assertEquals(expected.nextClearBit(index), actual.nextClearBit(index));
+                    assertEquals(DeepSparseBitSetTest.enclosingRange(expected, index),
+                            DeepSparseBitSetTest.enclosingRange(actual, index));
+                    assertEquals(expected.findCoveringPrefix(index, 32), actual.findCoveringPrefix(index, 32));
+                    break;
+            }
+        }
+
+        checkSame(expected, actual);
+
+        expected.flipAll();
+        actual.flipAll();
+        checkSame(expected, actual);
+    }
+
+    @Test
+    public void testWritersOfDifferentSegments() throws Exception {
+        StripedSparseBitSet<SparseBitIntIndex> set = new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            int segment = t;
+
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(segment);
+                    BitSet expected = new BitSet();
+
+                    for (int i = 0; i < 20000; i++) {
+                        int low = random.nextInt(0x10000);
+
+                        if (random.nextInt(4) == 0) {
+                            int high = Math.min(0xFFFF, low + random.nextInt(100));
+
+                            set.flip(SparseBitIntIndex.of(segment << 24 | low),
+                                    SparseBitIntIndex.of(segment << 24 | high));
+                            expected.flip(low, high + 1);
+                        } else {
+                            assertEquals(!expected.get(low), set.set(SparseBitIntIndex.of(segment << 24 | low)));
+                            expected.set(low);
+                        }
+                    }
+
+                    for (int low = 0; low < 0x10000; low++) {
+                        assertEquals(expected.get(low), set.get(SparseBitIntIndex.of(segment << 24 | low)));
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+
+        // ranges over several segments take their locks in order
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    set.set(SparseBitIntIndex.of(0xA0FFFF00), SparseBitIntIndex.of(0xB00000FF));
+                    set.clear(SparseBitIntIndex.of(0xA0FFFF00), SparseBitIntIndex.of(0xB00000FF));
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(new ArrayList<Throwable>(), errors);
+
+        set.validate();
+        assertNull(set.nextSetBit(SparseBitIntIndex.of(0x08000000)));
+    }
+
+    @Test
+    public void testAlgebra() throws Exception {
+        Random random = new Random(3);
+
+        DeepSparseBitSet<SparseBitIntIndex> heap1 = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        DeepSparseBitSet<SparseBitIntIndex> heap2 = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        StripedSparseBitSet<SparseBitIntIndex> striped1 = new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        StripedSparseBitSet<SparseBitIntIndex> striped2 = new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        for (int i = 0; i < 100; i++) {
+            int from1 = random.nextInt();
+            int from2 = random.nextInt();
+            int to1 = maxUnsigned(from1, from1 + random.nextInt(0x1000000));
+            int to2 = maxUnsigned(from2, from2 + random.nextInt(0x1000000));
+
+            heap1.set(SparseBitIntIndex.of(from1), SparseBitIntIndex.of(to1));
+            striped1.set(SparseBitIntIndex.of(from1), SparseBitIntIndex.of(to1));
+            heap2.set(SparseBitIntIndex.of(from2), SparseBitIntIndex.of(to2));
+            striped2.set(SparseBitIntIndex.of(from2), SparseBitIntIndex.of(to2));
+        }
+
+        checkSame(DeepSparseBitSet.or(heap1, heap2), DeepSparseBitSet.or(striped1, striped2));
+        checkSame(DeepSparseBitSet.and(heap1, heap2), DeepSparseBitSet.and(striped1, striped2));
+        checkSame(DeepSparseBitSet.andNot(heap1, heap2), DeepSparseBitSet.andNot(striped1, striped2));
+        checkSame(DeepSparseBitSet.xor(heap1, heap2), DeepSparseBitSet.xor(striped1, striped2));
+
+        // the other set may be the same one
+        striped1.xor(striped1);
+        assertTrue(striped1.isEmpty());
+    }
+
+    @Test
+    public void testWholeSet() {
+        StripedSparseBitSet<SparseBitIntIndex> set = new StripedSparseBitSet<>(SparseBitIntIndex.LEVELS);
+
+        set.setAll();
+        assertTrue(set.isFull());
+        assertEquals(BigInteger.ONE.shiftLeft(32), set.cardinality());
+
+        StripedSparseBitSet<SparseBitIntIndex> copy = set.copy();
+        copy.clear(SparseBitIntIndex.of(0x12345678));
+        assertFalse(copy.isFull());
+        assertTrue(set.isFull());
+
+        set.flipAll();
+        assertTrue(set.isEmpty());
+        set.validate();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Random random = new Random(19);
+
+        DeepSparseBitSet<SparseBitIntIndex> expected = new DeepSparseBitSet<>(SparseBitIntIndex.FACTORY);
+        StripedSparseBitSet<SparseBitIntIndex> actual = new StripedSparseBitSet<>(SparseBitIntIndex.FACTORY);
+
+        // keys of a few stripes
+        SparseBitIntIndex[] indexes = new SparseBitIntIndex[2000];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = SparseBitIntIndex.of(random.nextInt(4) << 24 | random.nextInt(0x10000));
+        }
+
+        expected.setAll(indexes);
+        actual.setAll(indexes);
+        checkSame(expected, actual);
+
+        boolean[] result = new boolean[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = SparseBitIntIndex.of(random.nextInt(4) << 24 | random.nextInt(0x10000));
+        }
+
+        actual.getAll(indexes, result);
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals(expected.get(indexes[i]), result[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSingleLevel() {
+        new StripedSparseBitSet<>(1);
+    }
+
+    private static void checkSame(DeepSparseBitSet<SparseBitIntIndex> expected,
+                                  DeepSparseBitSet<SparseBitIntIndex> actual) throws IOException {
+        actual.validate();
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(ranges(expected), ranges(actual));
+
+        // the striped set is read back as a heap set
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        actual.writeTo(output);
+
+        DeepSparseBitSet<SparseBitIntIndex> copy = DeepSparseBitSet.readFrom(
+                new ByteArrayInputStream(output.toByteArray()), SparseBitIntIndex.FACTORY);
+
+        copy.validate();
+        assertEquals(ranges(expected), ranges(copy));
+    }
+
+    private static List<String> ranges(SparseBitSet<SparseBitIntIndex> set) {
+        List<String> ranges = new ArrayList<>();
+        set.forEachRange((from, to) -> ranges.add(from + ".." + to));
+        return ranges;
+    }
+
+    private static int maxUnsigned(int a, int b) {
+        return Integer.compareUnsigned(a, b) >= 0 ? a : b;
+    }
+
+}
@@ -22,4 +22,14 @@ public class SparseBitBytesIndexTest {
         assertEquals("FF112233", index.toString());
     }
 
+    @Test
+    public void testFactory() {
+        SparseBitIndex source = SparseBitBytesIndex.of((byte) 0xFF, (byte) 0x11, (byte) 0x22);
+
+        SparseBitIndexFactory<SparseBitBytesIndex> factory = SparseBitBytesIndex.factory(3);
+
+        assertEquals(3, factory.levels());
+        assertEquals(source, factory.create(SparseBitArrayIndex.of(source, 3)));
+    }
+
 }
\ No newline at end of file
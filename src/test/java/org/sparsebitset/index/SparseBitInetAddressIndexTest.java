@@ -23,6 +23,15 @@ public class SparseBitInetAddressIndexTest {
         assertEquals("7F010203", index.toString());
     }
 
+    @Test
+    public void testFactory() throws Exception {
+        SparseBitIndex ipv4 = SparseBitInetAddressIndex.of(InetAddress.getByName("127.1.2.3"));
+        SparseBitIndex ipv6 = SparseBitInetAddressIndex.of(InetAddress.getByName("FE80:CD00::211E:729C"));
+
+        assertEquals(ipv4, SparseBitInetAddressIndex.IPV4_FACTORY.create(SparseBitArrayIndex.of(ipv4, 4)));
+        assertEquals(ipv6, SparseBitInetAddressIndex.IPV6_FACTORY.create(SparseBitArrayIndex.of(ipv6, 16)));
+    }
+
     @Test
     public void testCompare() throws Exception {
         SparseBitInetAddressIndex i1 = SparseBitInetAddressIndex.of(InetAddress.getByName("127.1.2.3"));
@@ -21,6 +21,14 @@ public class SparseBitIntIndexTest {
         assertEquals("FF112233", index.toString());
     }
 
+    @Test
+    public void testFactory() {
+        SparseBitIndex source = new SparseBitArrayIndex(new int[] { 0x33, 0x22, 0x11, 0xFF });
+
+        assertEquals(4, SparseBitIntIndex.FACTORY.levels());
+        assertEquals(SparseBitIntIndex.of(0xFF112233), SparseBitIntIndex.FACTORY.create(source));
+    }
+
     @Test
     public void testToString() {
         SparseBitIndex index = SparseBitIntIndex.of(0x00000000);
@@ -34,6 +34,14 @@ public class SparseBitLong2IndexTest {
         assertEquals("FF11223344556677A1B1C1D1E1F10111", index.toString());
     }
 
+    @Test
+    public void testFactory() {
+        SparseBitIndex source = new SparseBitLong2Index(0xFF112233_44556677L, 0xA1B1C1D1_E1F10111L);
+
+        assertEquals(16, SparseBitLong2Index.FACTORY.levels());
+        assertEquals(source, SparseBitLong2Index.FACTORY.create(SparseBitArrayIndex.of(source, 16)));
+    }
+
     @Test
     public void testToString() {
         SparseBitIndex index =new SparseBitLong2Index(0x0000000000000000L, 0x0000000000000000L);
@@ -24,6 +24,14 @@ public class SparseBitLongIndexTest {
         assertEquals("FF11223344556677", index.toString());
     }
 
+    @Test
+    public void testFactory() {
+        SparseBitIndex source = SparseBitLongIndex.of(0xFF112233_44556677L);
+
+        assertEquals(8, SparseBitLongIndex.FACTORY.levels());
+        assertEquals(source, SparseBitLongIndex.FACTORY.create(SparseBitArrayIndex.of(source, 8)));
+    }
+
     @Test
     public void testToString() {
         SparseBitIndex index = SparseBitLongIndex.of(0x0000000000000000L);